@@ -27,7 +27,10 @@ import org.brekka.stillingar.api.ConfigurationSource;
  */
 public class DelegatingConfigurationSource<CS extends ConfigurationSource> implements ConfigurationSource {
 
-    private CS delegate;
+    /**
+     * Volatile as the delegate may be swapped by a background refresh while other threads are reading.
+     */
+    private volatile CS delegate;
 
     /**
      * @param delegate
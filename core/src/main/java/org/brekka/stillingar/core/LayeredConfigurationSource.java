@@ -0,0 +1,268 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
+
+/**
+ * Combines a number of configuration sources into one, with each expression or type resolved by the first layer able
+ * to provide it. Layers are ordered highest priority first.
+ * 
+ * The layer that resolves each expression and type is remembered in an index. When only some of the layers change,
+ * {@link #rebuild(List)} carries the index over to the new source, keeping every entry whose resolving layer is
+ * retained and not masked by one of the new layers. The cost of a rebuild is therefore proportional to the number of
+ * layers that changed rather than the total size of the configuration.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class LayeredConfigurationSource implements ConfigurationSource {
+
+    /**
+     * The layers, highest priority first.
+     */
+    private final List<ConfigurationSource> layers;
+    
+    /**
+     * The layer resolving each expression.
+     */
+    private final ConcurrentMap<String, ConfigurationSource> expressionIndex;
+    
+    /**
+     * The layer resolving each type.
+     */
+    private final ConcurrentMap<Class<?>, ConfigurationSource> typeIndex;
+    
+    /**
+     * @param layers
+     *            the sources to combine, highest priority first.
+     */
+    public LayeredConfigurationSource(List<ConfigurationSource> layers) {
+        this(layers, new ConcurrentHashMap<String, ConfigurationSource>(), 
+                new ConcurrentHashMap<Class<?>, ConfigurationSource>());
+    }
+    
+    private LayeredConfigurationSource(List<ConfigurationSource> layers, 
+            ConcurrentMap<String, ConfigurationSource> expressionIndex,
+            ConcurrentMap<Class<?>, ConfigurationSource> typeIndex) {
+        if (layers == null) {
+            throw new IllegalArgumentException("Layers may not be null");
+        }
+        this.layers = Collections.unmodifiableList(new ArrayList<ConfigurationSource>(layers));
+        this.expressionIndex = expressionIndex;
+        this.typeIndex = typeIndex;
+    }
+    
+    /**
+     * Create a new source from the specified layers, carrying over the index entries of this source that remain
+     * valid. Layers that are unchanged should be passed as the same instances.
+     * 
+     * @param newLayers
+     *            the layers of the new source, highest priority first.
+     * @return the new source
+     */
+    public LayeredConfigurationSource rebuild(List<ConfigurationSource> newLayers) {
+        Map<ConfigurationSource, Boolean> retained = new IdentityHashMap<ConfigurationSource, Boolean>();
+        for (ConfigurationSource layer : layers) {
+            retained.put(layer, Boolean.TRUE);
+        }
+        /*
+         * For each layer position, the layers that are new and rank above it.
+         */
+        Map<ConfigurationSource, List<ConfigurationSource>> addedAbove = 
+                new IdentityHashMap<ConfigurationSource, List<ConfigurationSource>>();
+        List<ConfigurationSource> added = new ArrayList<ConfigurationSource>();
+        for (ConfigurationSource layer : newLayers) {
+            if (retained.containsKey(layer)) {
+                addedAbove.put(layer, new ArrayList<ConfigurationSource>(added));
+            } else {
+                added.add(layer);
+            }
+        }
+        
+        ConcurrentMap<String, ConfigurationSource> newExpressionIndex = 
+                new ConcurrentHashMap<String, ConfigurationSource>();
+        for (Map.Entry<String, ConfigurationSource> entry : expressionIndex.entrySet()) {
+            List<ConfigurationSource> masking = addedAbove.get(entry.getValue());
+            if (masking != null 
+                    && !availableInAny(masking, entry.getKey())) {
+                newExpressionIndex.put(entry.getKey(), entry.getValue());
+            }
+        }
+        ConcurrentMap<Class<?>, ConfigurationSource> newTypeIndex = 
+                new ConcurrentHashMap<Class<?>, ConfigurationSource>();
+        for (Map.Entry<Class<?>, ConfigurationSource> entry : typeIndex.entrySet()) {
+            List<ConfigurationSource> masking = addedAbove.get(entry.getValue());
+            if (masking != null 
+                    && !availableInAny(masking, entry.getKey())) {
+                newTypeIndex.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return new LayeredConfigurationSource(newLayers, newExpressionIndex, newTypeIndex);
+    }
+    
+    /**
+     * @return the layers, highest priority first.
+     */
+    public List<ConfigurationSource> getLayers() {
+        return layers;
+    }
+    
+    /**
+     * @return the number of expressions and types whose resolving layer is currently indexed.
+     */
+    public int getIndexSize() {
+        return expressionIndex.size() + typeIndex.size();
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.api.ConfigurationSource#isAvailable(java.lang.String)
+     */
+    @Override
+    public boolean isAvailable(String expression) {
+        if (expression == null) {
+            throw new IllegalArgumentException("An expression must be specified");
+        }
+        return layerFor(expression) != null;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.api.ConfigurationSource#isAvailable(java.lang.Class)
+     */
+    @Override
+    public boolean isAvailable(Class<?> valueType) {
+        if (valueType == null) {
+            throw new IllegalArgumentException("A value type must be specified");
+        }
+        return layerFor(valueType) != null;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.api.ConfigurationSource#retrieve(java.lang.String, java.lang.Class)
+     */
+    @Override
+    public <T> T retrieve(String expression, Class<T> valueType) {
+        return requireLayer(expression, valueType).retrieve(expression, valueType);
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.api.ConfigurationSource#retrieve(java.lang.Class)
+     */
+    @Override
+    public <T> T retrieve(Class<T> valueType) {
+        return requireLayer(valueType).retrieve(valueType);
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.api.ConfigurationSource#retrieveList(java.lang.String, java.lang.Class)
+     */
+    @Override
+    public <T> List<T> retrieveList(String expression, Class<T> valueType) {
+        return requireLayer(expression, valueType).retrieveList(expression, valueType);
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.api.ConfigurationSource#retrieveList(java.lang.Class)
+     */
+    @Override
+    public <T> List<T> retrieveList(Class<T> valueType) {
+        return requireLayer(valueType).retrieveList(valueType);
+    }
+    
+    private ConfigurationSource requireLayer(String expression, Class<?> valueType) {
+        if (expression == null) {
+            throw new IllegalArgumentException("An expression must be specified");
+        }
+        if (valueType == null) {
+            throw new IllegalArgumentException("A value type must be specified");
+        }
+        ConfigurationSource layer = layerFor(expression);
+        if (layer == null) {
+            throw new ConfigurationException(String.format("Expression '%s' did not evaluate to a value "
+                    + "in any of the %d layers. Expected return type '%s'.", 
+                    expression, layers.size(), valueType.getName()));
+        }
+        return layer;
+    }
+    
+    private ConfigurationSource requireLayer(Class<?> valueType) {
+        if (valueType == null) {
+            throw new IllegalArgumentException("A value type must be specified");
+        }
+        ConfigurationSource layer = layerFor(valueType);
+        if (layer == null) {
+            throw new ConfigurationException(String.format(
+                    "No value found of type '%s' in any of the %d layers", valueType.getName(), layers.size()));
+        }
+        return layer;
+    }
+    
+    private ConfigurationSource layerFor(String expression) {
+        ConfigurationSource layer = expressionIndex.get(expression);
+        if (layer == null) {
+            for (ConfigurationSource candidate : layers) {
+                if (candidate.isAvailable(expression)) {
+                    layer = candidate;
+                    expressionIndex.put(expression, layer);
+                    break;
+                }
+            }
+        }
+        return layer;
+    }
+    
+    private ConfigurationSource layerFor(Class<?> valueType) {
+        ConfigurationSource layer = typeIndex.get(valueType);
+        if (layer == null) {
+            for (ConfigurationSource candidate : layers) {
+                if (candidate.isAvailable(valueType)) {
+                    layer = candidate;
+                    typeIndex.put(valueType, layer);
+                    break;
+                }
+            }
+        }
+        return layer;
+    }
+    
+    private static boolean availableInAny(List<ConfigurationSource> sources, String expression) {
+        for (ConfigurationSource source : sources) {
+            if (source.isAvailable(expression)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean availableInAny(List<ConfigurationSource> sources, Class<?> valueType) {
+        for (ConfigurationSource source : sources) {
+            if (source.isAvailable(valueType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.conversion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Converts the elements of a list, optionally switching to parallel conversion via fork-join once the list reaches a
+ * size threshold. Parallel conversion is off unless a threshold is specified, as it competes for the common fork-join
+ * pool with the rest of the application. Results are written by index into a single presized list so no resizing,
+ * copying or synchronization is required, and should the conversion of any element fail, the remaining work is
+ * abandoned and the first failure is rethrown as-is, ie the whole list fails. Parallel conversion always runs on the
+ * common fork-join pool, so no threads are owned by this class.
+ * 
+ * The element conversion must be safe to call from multiple threads. Sources backed by non thread-safe structures
+ * (such as DOM nodes) should extract the raw values serially before handing them to this converter.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class BulkConverter {
+
+    /**
+     * The smallest number of elements a single task will convert.
+     */
+    private static final int MIN_CHUNK_SIZE = 1024;
+    
+    /**
+     * Converts lists serially, regardless of size.
+     */
+    public static final BulkConverter SERIAL = new BulkConverter();
+    
+    /**
+     * Lists with at least this many elements will be converted in parallel
+     */
+    private final int threshold;
+    
+    /**
+     * The maximum number of tasks a list will be split into (zero to size the split on the common pool).
+     */
+    private final int parallelism;
+    
+    /**
+     * Convert serially, regardless of size.
+     */
+    public BulkConverter() {
+        this(Integer.MAX_VALUE, 0);
+    }
+    
+    /**
+     * @param threshold
+     *            the minimum list size for which parallel conversion will be used.
+     * @param parallelism
+     *            the maximum number of tasks a large list will be split into, which bounds the number of common
+     *            fork-join pool threads used. Zero or less will size the split on the parallelism of the common pool.
+     */
+    public BulkConverter(int threshold, int parallelism) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Threshold must be greater than zero, not %d", threshold));
+        }
+        this.threshold = threshold;
+        this.parallelism = Math.max(parallelism, 0);
+    }
+    
+    /**
+     * Convert each of the source values.
+     * 
+     * @param sources
+     *            the values to convert, which should support efficient random access.
+     * @param element
+     *            converts an individual value.
+     * @return a new mutable list containing the converted values in the same order as <code>sources</code>.
+     */
+    public <S, T> List<T> convert(List<S> sources, Element<? super S, T> element) {
+        int size = sources.size();
+        if (size < threshold) {
+            List<T> results = new ArrayList<T>(size);
+            for (S source : sources) {
+                results.add(element.convert(source));
+            }
+            return results;
+        }
+        List<T> results = new ArrayList<T>(size);
+        for (int i = 0; i < size; i++) {
+            results.add(null);
+        }
+        AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+        ForkJoinPool forkJoinPool = ForkJoinPool.commonPool();
+        int tasks = (parallelism > 0 ? parallelism : forkJoinPool.getParallelism() * 4);
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, (size + tasks - 1) / tasks);
+        forkJoinPool.invoke(new ConvertTask<S, T>(sources, element, results, 0, size, chunkSize, failure));
+        RuntimeException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+        return results;
+    }
+    
+    /**
+     * @return the minimum list size for which parallel conversion will be used, {@link Integer#MAX_VALUE} if it will
+     *         not be used.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+    
+    /**
+     * Converts a single element of the list.
+     */
+    public interface Element<S, T> {
+        
+        /**
+         * @param source
+         *            the value to convert
+         * @return the converted value
+         */
+        T convert(S source);
+    }
+    
+    /**
+     * Converts the range <code>from</code> (inclusive) to <code>to</code> (exclusive), splitting in two until the
+     * range is no bigger than the chunk size.
+     */
+    @SuppressWarnings("serial")
+    private static class ConvertTask<S, T> extends RecursiveAction {
+        private final List<S> sources;
+        private final Element<? super S, T> element;
+        private final List<T> results;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+        private final AtomicReference<RuntimeException> failure;
+
+        ConvertTask(List<S> sources, Element<? super S, T> element, List<T> results, int from, int to,
+                int chunkSize, AtomicReference<RuntimeException> failure) {
+            this.sources = sources;
+            this.element = element;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.failure = failure;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.RecursiveAction#compute()
+         */
+        @Override
+        protected void compute() {
+            if (to - from > chunkSize) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ConvertTask<S, T>(sources, element, results, from, mid, chunkSize, failure),
+                          new ConvertTask<S, T>(sources, element, results, mid, to, chunkSize, failure));
+                return;
+            }
+            try {
+                for (int i = from; i < to && failure.get() == null; i++) {
+                    // Each index is only set by one task, with the join ensuring visibility
+                    results.set(i, element.convert(sources.get(i)));
+                }
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+}
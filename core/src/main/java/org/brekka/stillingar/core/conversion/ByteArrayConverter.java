@@ -33,16 +33,11 @@ public class ByteArrayConverter extends AbstractTypeConverter<byte[]> {
     private final boolean base64Available;
     
     /**
-     * Determines whether JodaTime is available, caching the fact
+     * Determines whether the iHarder base64 library is available, via the {@link ConverterCatalogue} which caches
+     * the fact for the lifetime of the process.
      */
     public ByteArrayConverter() {
-        boolean base64Available = false;
-        try {
-            Thread.currentThread().getContextClassLoader().loadClass("net.iharder.Base64");
-            base64Available = true;
-        } catch (ClassNotFoundException e) {
-        }
-        this.base64Available = base64Available;
+        this.base64Available = ConverterCatalogue.isBase64Available();
     }
     
     
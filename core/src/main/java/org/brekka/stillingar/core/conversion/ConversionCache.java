@@ -0,0 +1,486 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.conversion;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Optional cache for the results of expensive conversions, allowing values whose source text has not changed
+ * between snapshots to be reused rather than converted again. Entries are keyed on the target type and the source
+ * text, or for a DOM node a 128-bit hash of its structure. The hash of each node is computed once and remembered for
+ * as long as the node remains in use, so a snapshot's document is only traversed once however many of its nodes are
+ * converted. The least recently used entries are evicted once either the entry count or the estimated total size is
+ * exceeded.
+ * 
+ * Caching is enabled per target type. Byte arrays are copied each time they are handed out, which is cheap compared to
+ * decoding them again. Any other type, including DOM nodes, will have the same instance handed out for every matching
+ * conversion, so only enable those that are immutable or treated as read-only by the application.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ConversionCache {
+
+    /**
+     * Default maximum number of entries
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+    
+    /**
+     * Default maximum estimated size of all entries (8MB).
+     */
+    public static final long DEFAULT_MAX_WEIGHT = 8L * 1024 * 1024;
+    
+    /**
+     * Approximate fixed cost of an entry, included in its weight.
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+    
+    /**
+     * The target types for which caching is enabled
+     */
+    private final Set<Class<?>> enabledTypes;
+    
+    /**
+     * Maximum number of entries
+     */
+    private final int maxEntries;
+    
+    /**
+     * Maximum estimated size in bytes
+     */
+    private final long maxWeight;
+    
+    /**
+     * The entries in access order. Guarded by this.
+     */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    
+    /**
+     * The estimated size of all entries. Guarded by this.
+     */
+    private long weight;
+    
+    /**
+     * The structural key of each DOM node encountered, held only while the node remains in use. Guarded by itself.
+     */
+    private final Map<Node, NodeKey> nodeKeys = new WeakHashMap<Node, NodeKey>();
+    
+    private final AtomicLong hits = new AtomicLong();
+    
+    private final AtomicLong misses = new AtomicLong();
+    
+    private final AtomicLong evictions = new AtomicLong();
+    
+    private final AtomicLong evictedBytes = new AtomicLong();
+    
+    /**
+     * @param enabledTypes
+     *            the target types for which caching is enabled.
+     */
+    public ConversionCache(Collection<Class<?>> enabledTypes) {
+        this(enabledTypes, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT);
+    }
+    
+    /**
+     * @param enabledTypes
+     *            the target types for which caching is enabled.
+     * @param maxEntries
+     *            the maximum number of entries to retain
+     * @param maxWeight
+     *            the maximum estimated size in bytes of all retained entries
+     */
+    public ConversionCache(Collection<Class<?>> enabledTypes, int maxEntries, long maxWeight) {
+        if (enabledTypes == null) {
+            throw new IllegalArgumentException("null passed for enabledTypes");
+        }
+        this.enabledTypes = Collections.unmodifiableSet(new HashSet<Class<?>>(enabledTypes));
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+    
+    /**
+     * Is caching enabled for the specified target type.
+     * 
+     * @param targetType
+     *            the type being converted to
+     * @return true if conversions to this type should be cached.
+     */
+    public boolean isEnabled(Class<?> targetType) {
+        return enabledTypes.contains(targetType);
+    }
+    
+    /**
+     * Return the cached result of converting <code>value</code> to <code>targetType</code>, performing the conversion
+     * via <code>converter</code> if there is no cached result. Values that cannot be keyed are always converted. Mutable
+     * results are copied (see {@link #copyOf(Object)}) so that the cached value itself is never handed out.
+     * 
+     * @param value
+     *            the value to convert
+     * @param targetType
+     *            the type being converted to
+     * @param converter
+     *            the converter to use on a cache miss.
+     * @return the converted value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T convert(Object value, Class<T> targetType, TypeConverter<T> converter) {
+        Object sourceKey = keyFor(value);
+        if (sourceKey == null) {
+            return converter.convert(value);
+        }
+        Key key = new Key(targetType, sourceKey);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+            return (T) copyOf(entry.value);
+        }
+        misses.incrementAndGet();
+        T result = converter.convert(value);
+        if (result == null) {
+            return null;
+        }
+        put(key, new Entry(result, weigh(sourceKey, result)));
+        return (T) copyOf(result);
+    }
+    
+    /**
+     * Discard all entries. Does not count as eviction.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+    
+    /**
+     * @return the number of conversions satisfied from the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+    
+    /**
+     * @return the number of conversions that had to be performed.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+    
+    /**
+     * @return the proportion of lookups satisfied from the cache, between 0 and 1.
+     */
+    public double getHitRate() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0d : (double) hitCount / total;
+    }
+    
+    /**
+     * @return the number of entries evicted to keep within the limits.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+    
+    /**
+     * @return the estimated number of bytes evicted to keep within the limits.
+     */
+    public long getEvictedBytes() {
+        return evictedBytes.get();
+    }
+    
+    /**
+     * @return the number of entries currently cached
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+    
+    /**
+     * @return the estimated number of bytes currently cached
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+    
+    /**
+     * Determine the key that identifies the source value. Strings are used as-is, DOM nodes are identified by a hash of
+     * their structure. Any other type returns null, meaning the value will not be cached. Subclasses can override to
+     * support the value types of other configuration sources.
+     * 
+     * @param value
+     *            the value being converted
+     * @return the key or null if the value cannot be cached.
+     */
+    protected Object keyFor(Object value) {
+        if (value instanceof String) {
+            return value;
+        }
+        if (value instanceof Node) {
+            return nodeKey((Node) value);
+        }
+        return null;
+    }
+    
+    /**
+     * Copy the cached value before it is handed out, if it can be modified by the caller. Byte arrays are cloned, any
+     * other value is returned as-is. Subclasses can override to copy other mutable types.
+     * 
+     * @param value
+     *            the cached value
+     * @return the value to hand out.
+     */
+    protected Object copyOf(Object value) {
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        return value;
+    }
+    
+    /**
+     * Estimate the size in bytes of the entry.
+     * 
+     * @param sourceKey
+     *            the key identifying the source
+     * @param result
+     *            the converted value
+     * @return the estimated size
+     */
+    protected long weigh(Object sourceKey, Object result) {
+        long size = ENTRY_OVERHEAD;
+        long sourceSize = 0;
+        if (sourceKey instanceof CharSequence) {
+            sourceSize = ((CharSequence) sourceKey).length() * 2L;
+        } else if (sourceKey instanceof NodeKey) {
+            sourceSize = ((NodeKey) sourceKey).length * 2L;
+        }
+        size += sourceSize;
+        if (result instanceof byte[]) {
+            size += ((byte[]) result).length;
+        } else if (result instanceof CharSequence) {
+            size += ((CharSequence) result).length() * 2L;
+        } else if (result instanceof Node) {
+            // Approximate a DOM as several times the size of its text
+            size += sourceSize * 2;
+        }
+        return size;
+    }
+    
+    private synchronized void put(Key key, Entry entry) {
+        if (entry.weight > maxWeight) {
+            // Would evict everything else and itself
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += entry.weight;
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while ((weight > maxWeight || entries.size() > maxEntries) 
+                && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            weight -= eldest.weight;
+            evictions.incrementAndGet();
+            evictedBytes.addAndGet(eldest.weight);
+        }
+    }
+    
+    /**
+     * Retrieve the structural key of the node, computing it (and that of any descendant elements) on first use.
+     */
+    private NodeKey nodeKey(Node node) {
+        NodeKey key;
+        synchronized (nodeKeys) {
+            key = nodeKeys.get(node);
+        }
+        if (key != null) {
+            return key;
+        }
+        Hasher hasher = new Hasher();
+        short nodeType = node.getNodeType();
+        hasher.add(nodeType);
+        switch (nodeType) {
+            case Node.ELEMENT_NODE:
+                hasher.add(node.getNamespaceURI());
+                hasher.add(node.getLocalName() != null ? node.getLocalName() : node.getNodeName());
+                NamedNodeMap attributes = node.getAttributes();
+                hasher.add(attributes.getLength());
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    Node attribute = attributes.item(i);
+                    hasher.add(attribute.getNamespaceURI());
+                    hasher.add(attribute.getNodeName());
+                    hasher.add(attribute.getNodeValue());
+                }
+                // Fall through to children
+            case Node.DOCUMENT_NODE:
+            case Node.DOCUMENT_FRAGMENT_NODE:
+                hasher.add('{');
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    if (child.getNodeType() == Node.ELEMENT_NODE) {
+                        hasher.add(nodeKey(child));
+                    } else {
+                        hasher.add(child.getNodeType());
+                        hasher.add(child.getNodeName());
+                        hasher.add(child.getNodeValue());
+                    }
+                }
+                hasher.add('}');
+                break;
+            default:
+                hasher.add(node.getNodeName());
+                hasher.add(node.getNodeValue());
+                break;
+        }
+        key = hasher.toKey();
+        synchronized (nodeKeys) {
+            nodeKeys.put(node, key);
+        }
+        return key;
+    }
+    
+    /**
+     * Combination of target type and source key
+     */
+    private static final class Key {
+        private final Class<?> targetType;
+        private final Object sourceKey;
+        private final int hash;
+        
+        Key(Class<?> targetType, Object sourceKey) {
+            this.targetType = targetType;
+            this.sourceKey = sourceKey;
+            this.hash = 31 * targetType.hashCode() + sourceKey.hashCode();
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return targetType == other.targetType 
+                    && sourceKey.equals(other.sourceKey);
+        }
+    }
+    
+    /**
+     * Identifies the structure of a DOM node by two independent 64-bit hashes of a length prefixed encoding of the
+     * node and its descendants, along with the length of that encoding.
+     */
+    private static final class NodeKey {
+        private final long hash1;
+        private final long hash2;
+        private final long length;
+        
+        NodeKey(long hash1, long hash2, long length) {
+            this.hash1 = hash1;
+            this.hash2 = hash2;
+            this.length = length;
+        }
+        
+        @Override
+        public int hashCode() {
+            return (int) (hash1 ^ (hash1 >>> 32));
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof NodeKey)) {
+                return false;
+            }
+            NodeKey other = (NodeKey) obj;
+            return hash1 == other.hash1
+                    && hash2 == other.hash2
+                    && length == other.length;
+        }
+    }
+    
+    /**
+     * Accumulates the hashes of a {@link NodeKey}, FNV-1a for the first and a multiply/rotate mix for the second.
+     */
+    private static final class Hasher {
+        private long hash1 = 0xcbf29ce484222325L;
+        private long hash2 = 0x9e3779b97f4a7c15L;
+        private long length;
+        
+        void add(long value) {
+            hash1 = (hash1 ^ value) * 0x100000001b3L;
+            hash2 = Long.rotateLeft(hash2 ^ value, 31) * 0xbf58476d1ce4e5b9L;
+            length++;
+        }
+        
+        void add(String value) {
+            if (value == null) {
+                add(-1L);
+                return;
+            }
+            add(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                add(value.charAt(i));
+            }
+        }
+        
+        void add(NodeKey key) {
+            add(key.hash1);
+            add(key.hash2);
+            length += key.length;
+        }
+        
+        NodeKey toKey() {
+            return new NodeKey(hash1, hash2, length);
+        }
+    }
+    
+    /**
+     * A cached value and its estimated size
+     */
+    private static final class Entry {
+        private final Object value;
+        private final long weight;
+        
+        Entry(Object value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -18,8 +18,10 @@ package org.brekka.stillingar.core.conversion;
 
 import static java.lang.String.format;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -31,8 +33,37 @@ public class ConversionManager {
 
     private final Map<Class<?>, TypeConverter<?>> converters;
     
+    /**
+     * The converter registered for {@link Enum}, resolved up front as it serves every enum type.
+     */
+    private EnumConverter enumConverter;
+    
+    /**
+     * Optional cache of conversion results (can be null).
+     */
+    private volatile ConversionCache conversionCache;
+    
+    /**
+     * Converts the values of lists, serially unless a bulk converter with a parallel threshold has been set.
+     */
+    private volatile BulkConverter bulkConverter = BulkConverter.SERIAL;
+    
     public ConversionManager(Collection<TypeConverter<?>> converters) {
         this.converters = prepare(converters);
+        this.enumConverter = enumConverter(this.converters);
+    }
+    
+    /**
+     * Combine a shared list of converters (typically from {@link ConverterCatalogue}) with converters specific to
+     * this manager. Where both specify a converter for the same target type, the additional converter wins.
+     * 
+     * @param shared
+     *            the shared converters, not modified.
+     * @param additional
+     *            converters specific to this manager.
+     */
+    public ConversionManager(Collection<TypeConverter<?>> shared, Collection<TypeConverter<?>> additional) {
+        this(concat(shared, additional));
     }
     
     @SuppressWarnings("unchecked")
@@ -53,9 +84,8 @@ public class ConversionManager {
     @SuppressWarnings("unchecked")
     public <T> T convert(Object value, Class<T> valueType) {
         if (valueType.isEnum()) {
-            Object converterForTarget = getConverterForTarget(Enum.class);
-            if (converterForTarget instanceof EnumConverter) {
-                EnumConverter converter = (EnumConverter) converterForTarget;
+            EnumConverter converter = enumConverter;
+            if (converter != null) {
                 return (T) converter.convert(value, (Class<Enum<?>>) valueType);
             }
         }
@@ -64,6 +94,11 @@ public class ConversionManager {
             throw new IllegalArgumentException(format("Unable to find converter"
                     + " to convert value '%s' to requested type '%s'.", value, valueType.getName()));
         }
+        ConversionCache cache = conversionCache;
+        if (cache != null 
+                && cache.isEnabled(valueType)) {
+            return cache.convert(value, valueType, converterForTarget);
+        }
         return converterForTarget.convert(value);
     }
     
@@ -72,9 +107,79 @@ public class ConversionManager {
         if (targetType != null) {
             // Target type can be null if the converter is not available due to missing libraries
             converters.put(targetType, converter);
+            enumConverter = enumConverter(converters);
         }
     }
     
+    /**
+     * @return the converter used for all enum types (can be null).
+     */
+    public EnumConverter getEnumConverter() {
+        return enumConverter;
+    }
+    
+    /**
+     * Replace the converter used for all enum types, for example with one that matches names ignoring case or that
+     * recognises aliases.
+     * 
+     * @param enumConverter
+     *            the enum converter to use.
+     */
+    public void setEnumConverter(EnumConverter enumConverter) {
+        addConverter(enumConverter);
+    }
+    
+    /**
+     * @return the conversion result cache (can be null).
+     */
+    public ConversionCache getConversionCache() {
+        return conversionCache;
+    }
+    
+    /**
+     * Enable caching of conversion results for the types configured in the cache. Pass null to disable.
+     * 
+     * @param conversionCache
+     *            the cache to use (can be null).
+     */
+    public void setConversionCache(ConversionCache conversionCache) {
+        this.conversionCache = conversionCache;
+    }
+    
+    /**
+     * @return the converter used by configuration sources for list values (never null).
+     */
+    public BulkConverter getBulkConverter() {
+        return bulkConverter;
+    }
+    
+    /**
+     * Set the converter used by configuration sources for list values, which determines the list size above which
+     * conversion happens in parallel, and with how many threads. Pass null to always convert lists serially.
+     * 
+     * @param bulkConverter
+     *            the bulk converter to use (can be null).
+     */
+    public void setBulkConverter(BulkConverter bulkConverter) {
+        this.bulkConverter = (bulkConverter != null ? bulkConverter : BulkConverter.SERIAL);
+    }
+    
+    private static EnumConverter enumConverter(Map<Class<?>, TypeConverter<?>> converters) {
+        TypeConverter<?> converter = converters.get(Enum.class);
+        if (converter instanceof EnumConverter) {
+            return (EnumConverter) converter;
+        }
+        return null;
+    }
+    
+    private static List<TypeConverter<?>> concat(Collection<TypeConverter<?>> shared,
+            Collection<TypeConverter<?>> additional) {
+        List<TypeConverter<?>> all = new ArrayList<TypeConverter<?>>(shared.size() + additional.size());
+        all.addAll(shared);
+        all.addAll(additional);
+        return all;
+    }
+    
     protected static Map<Class<?>, TypeConverter<?>> prepare(Collection<TypeConverter<?>> converters) {
         Map<Class<?>, TypeConverter<?>> converterMap = new HashMap<Class<?>, TypeConverter<?>>();
         for (TypeConverter<?> converter : converters) {
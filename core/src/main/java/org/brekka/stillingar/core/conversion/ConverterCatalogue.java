@@ -0,0 +1,235 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.conversion;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Catalogue of converter lists, held separately for each class loader. Each named list is built once, on first
+ * request, and the same immutable list is then shared by every {@link ConversionManager} that asks for it, so that
+ * applications with many contexts do not repeat the class probing and construction involved. Converters are
+ * stateless so can safely be shared.
+ * 
+ * Any converters registered as services under <code>META-INF/services/org.brekka.stillingar.core.conversion.TypeConverter</code>
+ * are appended to every list, allowing them to replace the built-in converter for a given type.
+ * 
+ * The availability of optional libraries is also determined here, once per class name. Both the detection and the
+ * construction of converters use the loader returned by {@link #getClassLoader()}, so that the two cannot disagree.
+ * The catalogue of a class loader is only weakly referenced, as are the lists themselves, so that it does not prevent
+ * a redeployed application from being unloaded. A list is therefore retained only for as long as something uses it.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class ConverterCatalogue {
+
+    /**
+     * The catalogue of each class loader encountered
+     */
+    private static final Map<ClassLoader, ConverterCatalogue> CATALOGUES = 
+            new WeakHashMap<ClassLoader, ConverterCatalogue>();
+    
+    /**
+     * The loader this catalogue loads classes with.
+     */
+    private final ClassLoader classLoader;
+    
+    /**
+     * Converter lists keyed on name
+     */
+    private final ConcurrentMap<String, Reference<List<TypeConverter<?>>>> lists = 
+            new ConcurrentHashMap<String, Reference<List<TypeConverter<?>>>>();
+    
+    /**
+     * Whether a given class name can be loaded
+     */
+    private final ConcurrentMap<String, Boolean> availableClasses = new ConcurrentHashMap<String, Boolean>();
+    
+    /**
+     * Converters registered via {@link ServiceLoader}, reloaded only once no longer in use.
+     */
+    private volatile Reference<List<TypeConverter<?>>> serviceConverters;
+    
+    /**
+     * @param classLoader
+     *            the loader this catalogue loads classes with.
+     */
+    private ConverterCatalogue(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+    
+    /**
+     * Retrieve the converter list with the specified name, using <code>source</code> to create it if this is the first
+     * request for that name from the current class loader. Should two threads race to create the same list, it will
+     * still only be created once.
+     * 
+     * @param name
+     *            the unique name of the list.
+     * @param source
+     *            creates the list if it has not yet been created.
+     * @return the immutable list of converters.
+     */
+    public static List<TypeConverter<?>> get(String name, Source source) {
+        return current().list(name, source);
+    }
+    
+    /**
+     * Determine whether the class with the given name is available to the current class loader. The result is cached
+     * for as long as the loader remains in use.
+     * 
+     * @param className
+     *            the fully qualified class name
+     * @return true if the class can be loaded.
+     */
+    public static boolean isClassAvailable(String className) {
+        return current().available(className);
+    }
+    
+    /**
+     * Is JodaTime available.
+     */
+    public static boolean isJodaTimeAvailable() {
+        return isClassAvailable("org.joda.time.format.ISODateTimeFormat");
+    }
+    
+    /**
+     * Is the iHarder Base64 library available.
+     */
+    public static boolean isBase64Available() {
+        return isClassAvailable("net.iharder.Base64");
+    }
+    
+    /**
+     * The converters registered as services with the current class loader, loaded on first call. Converters whose
+     * target type is not available are excluded.
+     * 
+     * @return the immutable list of service converters.
+     */
+    public static List<TypeConverter<?>> getServiceConverters() {
+        return current().services();
+    }
+    
+    /**
+     * The class loader used to both detect and load converters and the libraries they depend on. This is the context
+     * class loader of the current thread, or the loader of this class should there be none.
+     * 
+     * @return the class loader
+     */
+    public static ClassLoader getClassLoader() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = ConverterCatalogue.class.getClassLoader();
+        }
+        return classLoader;
+    }
+    
+    /**
+     * The catalogue for the current class loader, created on first use.
+     */
+    private static ConverterCatalogue current() {
+        ClassLoader classLoader = getClassLoader();
+        synchronized (CATALOGUES) {
+            ConverterCatalogue catalogue = CATALOGUES.get(classLoader);
+            if (catalogue == null) {
+                catalogue = new ConverterCatalogue(classLoader);
+                CATALOGUES.put(classLoader, catalogue);
+            }
+            return catalogue;
+        }
+    }
+    
+    private List<TypeConverter<?>> list(String name, Source source) {
+        List<TypeConverter<?>> list = referent(lists.get(name));
+        if (list == null) {
+            synchronized (lists) {
+                list = referent(lists.get(name));
+                if (list == null) {
+                    List<TypeConverter<?>> created = new ArrayList<TypeConverter<?>>(source.create());
+                    created.addAll(services());
+                    list = Collections.unmodifiableList(created);
+                    lists.put(name, new WeakReference<List<TypeConverter<?>>>(list));
+                }
+            }
+        }
+        return list;
+    }
+    
+    private boolean available(String className) {
+        Boolean available = availableClasses.get(className);
+        if (available == null) {
+            try {
+                Class.forName(className, false, classLoader);
+                available = Boolean.TRUE;
+            } catch (ClassNotFoundException e) {
+                available = Boolean.FALSE;
+            } catch (LinkageError e) {
+                available = Boolean.FALSE;
+            }
+            availableClasses.put(className, available);
+        }
+        return available.booleanValue();
+    }
+    
+    private List<TypeConverter<?>> services() {
+        List<TypeConverter<?>> converters = referent(serviceConverters);
+        if (converters == null) {
+            converters = new ArrayList<TypeConverter<?>>();
+            @SuppressWarnings("rawtypes")
+            Iterator<TypeConverter> iterator = ServiceLoader.load(TypeConverter.class, classLoader).iterator();
+            while (iterator.hasNext()) {
+                try {
+                    TypeConverter<?> converter = iterator.next();
+                    if (converter.targetType() != null) {
+                        converters.add(converter);
+                    }
+                } catch (ServiceConfigurationError e) {
+                    // Provider not available, same as an optional class
+                } catch (LinkageError e) {
+                    // Provider not available, same as an optional class
+                }
+            }
+            converters = Collections.unmodifiableList(converters);
+            serviceConverters = new WeakReference<List<TypeConverter<?>>>(converters);
+        }
+        return converters;
+    }
+    
+    private static <T> T referent(Reference<T> ref) {
+        return (ref != null ? ref.get() : null);
+    }
+    
+    /**
+     * Creates a converter list on first request.
+     */
+    public interface Source {
+        
+        /**
+         * @return the list of converters
+         */
+        List<TypeConverter<?>> create();
+    }
+}
@@ -16,7 +16,6 @@
 
 package org.brekka.stillingar.core.conversion;
 
-import java.util.Calendar;
 import java.util.Date;
 
 /**
@@ -56,8 +55,7 @@ public class DateConverter extends AbstractTypeConverter<Date> {
         if (obj instanceof Date) {
             value = (Date) obj;
         } else {
-            Calendar cal = temporalAdapter.toCalendar(obj, true, true, targetType());
-            value = cal.getTime();
+            value = Date.from(temporalAdapter.toInstant(obj, targetType()));
         }
         return value;
     }
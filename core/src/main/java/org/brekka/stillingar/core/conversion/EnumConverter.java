@@ -16,19 +16,48 @@
 
 package org.brekka.stillingar.core.conversion;
 
+import static java.lang.String.format;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
 
 /**
- * EnumConverter
+ * EnumConverter. The constants of each enum type are indexed by name the first time that type is converted, with the
+ * index shared by all converter instances. Names can optionally be matched ignoring case, and aliases can be
+ * registered for individual constants.
  *
  * @author Andrew Taylor (andrew@brekka.org)
  */
 public class EnumConverter extends AbstractTypeConverter<Enum<?>> {
 
+    /**
+     * The name index for each enum type, computed on first use.
+     */
+    private static final ClassValue<EnumLookup> LOOKUPS = new ClassValue<EnumLookup>() {
+        @Override
+        protected EnumLookup computeValue(Class<?> type) {
+            return new EnumLookup(type);
+        }
+    };
+    
     /**
      * The enum type
      */
     private final Class<Enum<?>> targetType;
     
+    /**
+     * Should names that do not match exactly be matched ignoring case.
+     */
+    private final boolean caseInsensitive;
+    
+    /**
+     * Aliases by enum type
+     */
+    private final Map<Class<?>, Map<String, Enum<?>>> aliases;
+    
     /**
      * 
      */
@@ -41,7 +70,31 @@ public class EnumConverter extends AbstractTypeConverter<Enum<?>> {
      * @param targetType
      */
     public EnumConverter(Class<Enum<?>> targetType) {
+        this(targetType, false, Collections.<String, Enum<?>>emptyMap());
+    }
+    
+    /**
+     * @param caseInsensitive
+     *            should names that do not match exactly be matched ignoring case.
+     * @param aliases
+     *            alternative names for enum constants, keyed on the alias. Aliases are always matched exactly.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public EnumConverter(boolean caseInsensitive, Map<String, ? extends Enum<?>> aliases) {
+        this((Class) Enum.class, caseInsensitive, aliases);
+    }
+    
+    /**
+     * @param targetType
+     * @param caseInsensitive
+     *            should names that do not match exactly be matched ignoring case.
+     * @param aliases
+     *            alternative names for enum constants, keyed on the alias. Aliases are always matched exactly.
+     */
+    public EnumConverter(Class<Enum<?>> targetType, boolean caseInsensitive, Map<String, ? extends Enum<?>> aliases) {
         this.targetType = targetType;
+        this.caseInsensitive = caseInsensitive;
+        this.aliases = prepareAliases(aliases);
     }
 
     public final Class<Enum<?>> targetType() {
@@ -52,17 +105,89 @@ public class EnumConverter extends AbstractTypeConverter<Enum<?>> {
         return convert(obj, targetType);
     }
     
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     public Enum<?> convert(Object obj, Class<Enum<?>> enumType) {
+        return toEnum(obj, enumType);
+    }
+    
+    private Enum<?> toEnum(Object obj, Class<?> enumType) {
         Enum<?> value;
         if (obj instanceof Enum<?>) {
             value = (Enum<?>) obj;
         } else if (obj instanceof String) {
-            String strValue = (String) obj;
-            value = Enum.valueOf((Class) enumType, strValue);
+            value = lookup((String) obj, enumType);
         } else {
             value = super.convert(obj);
         }
         return value;
     }
+    
+    protected Enum<?> lookup(String name, Class<?> enumType) {
+        EnumLookup lookup = LOOKUPS.get(enumType);
+        Enum<?> value = lookup.exact.get(name);
+        if (value == null 
+                && caseInsensitive) {
+            value = lookup.ignoreCase.get(name.toUpperCase(Locale.ROOT));
+        }
+        if (value == null) {
+            Map<String, Enum<?>> typeAliases = aliases.get(enumType);
+            if (typeAliases != null) {
+                value = typeAliases.get(name);
+            }
+        }
+        if (value == null) {
+            throw new IllegalArgumentException(format(
+                    "No enum constant %s.%s", enumType.getName(), name));
+        }
+        return value;
+    }
+    
+    private static Map<Class<?>, Map<String, Enum<?>>> prepareAliases(Map<String, ? extends Enum<?>> aliases) {
+        if (aliases == null 
+                || aliases.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Class<?>, Map<String, Enum<?>>> byType = new HashMap<Class<?>, Map<String, Enum<?>>>();
+        for (Map.Entry<String, ? extends Enum<?>> entry : aliases.entrySet()) {
+            Class<?> enumType = entry.getValue().getDeclaringClass();
+            Map<String, Enum<?>> typeAliases = byType.get(enumType);
+            if (typeAliases == null) {
+                typeAliases = new HashMap<String, Enum<?>>();
+                byType.put(enumType, typeAliases);
+            }
+            typeAliases.put(entry.getKey(), entry.getValue());
+        }
+        return byType;
+    }
+    
+    /**
+     * Immutable index of the constants of a single enum type. Case insensitive matches use a second index keyed on the
+     * upper-cased name, so both are a single hash lookup.
+     */
+    private static final class EnumLookup {
+        
+        private final Map<String, Enum<?>> exact;
+        
+        private final Map<String, Enum<?>> ignoreCase;
+        
+        EnumLookup(Class<?> type) {
+            Object[] constants = type.getEnumConstants();
+            if (constants == null) {
+                throw new IllegalArgumentException(format(
+                        "The type '%s' is not an enum", type.getName()));
+            }
+            Map<String, Enum<?>> exact = new HashMap<String, Enum<?>>(constants.length * 2);
+            Map<String, Enum<?>> ignoreCase = new HashMap<String, Enum<?>>(constants.length * 2);
+            for (Object constant : constants) {
+                Enum<?> enumConstant = (Enum<?>) constant;
+                exact.put(enumConstant.name(), enumConstant);
+                String upperName = enumConstant.name().toUpperCase(Locale.ROOT);
+                if (!ignoreCase.containsKey(upperName)) {
+                    // First declared wins should constants differ only by case
+                    ignoreCase.put(upperName, enumConstant);
+                }
+            }
+            this.exact = exact;
+            this.ignoreCase = ignoreCase;
+        }
+    }
 }
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.conversion;
+
+import static java.lang.String.format;
+
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parses ISO-8601 (XML Schema) date, time, date-time and duration strings using only the JDK. The formatters are
+ * constructed once and are thread-safe, and the parsed results are immutable so they are kept in a small LRU cache,
+ * meaning identical strings seen again in subsequent snapshots will not be parsed again.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ISOTemporalParser {
+
+    /**
+     * The default maximum number of parsed values to retain.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    /**
+     * Shared instance used by {@link TemporalAdapter} by default.
+     */
+    private static final ISOTemporalParser SHARED = new ISOTemporalParser(DEFAULT_CACHE_SIZE);
+
+    /**
+     * The local date, optionally followed by a time and/or offset (xsd:date and xsd:dateTime).
+     */
+    private static final DateTimeFormatter DATE_OPTIONAL_TIME = new DateTimeFormatterBuilder()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE)
+            .optionalStart()
+                .appendLiteral('T')
+                .append(DateTimeFormatter.ISO_LOCAL_TIME)
+            .optionalEnd()
+            .optionalStart()
+                .appendOffsetId()
+            .optionalEnd()
+            .toFormatter();
+
+    /**
+     * The local time, optionally followed by an offset (xsd:time).
+     */
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ISO_TIME;
+
+    /**
+     * Date assigned to values that only specify a time, consistent with the previous JodaTime based parsing.
+     */
+    private static final LocalDate EPOCH_DATE = LocalDate.of(1970, 1, 1);
+
+    /**
+     * Previously parsed temporal values, keyed on their source string.
+     */
+    private final Map<String, Parsed> temporalCache;
+
+    /**
+     * Previously parsed durations, keyed on their source string.
+     */
+    private final Map<String, Duration> durationCache;
+
+    /**
+     * @param cacheSize
+     *            the maximum number of parsed values to retain for each kind (temporal and duration). Zero disables
+     *            caching.
+     */
+    public ISOTemporalParser(int cacheSize) {
+        this.temporalCache = lruMap(cacheSize);
+        this.durationCache = lruMap(cacheSize);
+    }
+
+    /**
+     * Retrieve the shared instance.
+     *
+     * @return the shared parser
+     */
+    public static ISOTemporalParser getInstance() {
+        return SHARED;
+    }
+
+    /**
+     * Parse a date, time or date-time string.
+     *
+     * @param value
+     *            the string to parse
+     * @return the parsed value, never null.
+     * @throws IllegalArgumentException
+     *             if the value is not a valid ISO-8601 date, time or date-time.
+     */
+    public Parsed parse(String value) {
+        Parsed parsed = temporalCache.get(value);
+        if (parsed == null) {
+            parsed = doParse(value);
+            temporalCache.put(value, parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * Parse an ISO-8601 duration string (for example <code>PT15M</code> or <code>P1DT2H</code>). Year and month
+     * components are not supported as their length is not fixed.
+     *
+     * @param value
+     *            the string to parse
+     * @return the duration, never null.
+     * @throws IllegalArgumentException
+     *             if the value is not a valid duration.
+     */
+    public Duration parseDuration(String value) {
+        Duration duration = durationCache.get(value);
+        if (duration == null) {
+            try {
+                duration = Duration.parse(value);
+            } catch (DateTimeException e) {
+                throw new IllegalArgumentException(format(
+                        "Unable to parse the value '%s' as an ISO-8601 duration", value), e);
+            }
+            durationCache.put(value, duration);
+        }
+        return duration;
+    }
+
+    protected Parsed doParse(String value) {
+        String dateTimeStr = value;
+        if (dateTimeStr.length() < 14
+                && dateTimeStr.endsWith("Z")) {
+            dateTimeStr = dateTimeStr.substring(0, dateTimeStr.length() - 1);
+        }
+        try {
+            if (dateTimeStr.length() > 2
+                    && dateTimeStr.charAt(2) == ':') {
+                TemporalAccessor accessor = TIME.parse(dateTimeStr);
+                return new Parsed(null, LocalTime.from(accessor), offset(accessor));
+            }
+            TemporalAccessor accessor = DATE_OPTIONAL_TIME.parse(dateTimeStr);
+            LocalTime time = null;
+            if (accessor.isSupported(ChronoField.HOUR_OF_DAY)) {
+                time = LocalTime.from(accessor);
+            }
+            return new Parsed(LocalDate.from(accessor), time, offset(accessor));
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException(format(
+                    "Unable to parse the value '%s' as an ISO-8601 date/time", value), e);
+        }
+    }
+
+    private static ZoneOffset offset(TemporalAccessor accessor) {
+        if (accessor.isSupported(ChronoField.OFFSET_SECONDS)) {
+            return ZoneOffset.from(accessor);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("serial")
+    private static <V> Map<String, V> lruMap(final int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /**
+     * Immutable result of parsing a date, time or date-time string. The date and time parts are optional, though one
+     * of them will always be present. The offset is only present if the source string specified one.
+     */
+    public static final class Parsed {
+
+        private final LocalDate date;
+
+        private final LocalTime time;
+
+        private final ZoneOffset offset;
+
+        Parsed(LocalDate date, LocalTime time, ZoneOffset offset) {
+            this.date = date;
+            this.time = time;
+            this.offset = offset;
+        }
+
+        /**
+         * The instant this value represents. Where no date was specified the epoch date is assumed, where no time was
+         * specified midnight is assumed and where no offset was specified the system default zone is used.
+         *
+         * @return the instant
+         */
+        public Instant toInstant() {
+            LocalDateTime dateTime = LocalDateTime.of(
+                    date != null ? date : EPOCH_DATE,
+                    time != null ? time : LocalTime.MIDNIGHT);
+            if (offset != null) {
+                return dateTime.toInstant(offset);
+            }
+            return dateTime.atZone(ZoneId.systemDefault()).toInstant();
+        }
+
+        /**
+         * A new calendar in the default time zone set to the instant of this value. A new instance is returned on each
+         * call as calendars are mutable.
+         *
+         * @return the calendar
+         */
+        public Calendar toCalendar() {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(toInstant().toEpochMilli());
+            return calendar;
+        }
+
+        /**
+         * @return the date part (can be null if only a time was specified).
+         */
+        public LocalDate getDate() {
+            return date;
+        }
+
+        /**
+         * @return the time part (can be null if only a date was specified).
+         */
+        public LocalTime getTime() {
+            return time;
+        }
+
+        /**
+         * @return the offset (can be null if none was specified).
+         */
+        public ZoneOffset getOffset() {
+            return offset;
+        }
+    }
+}
@@ -18,11 +18,18 @@ package org.brekka.stillingar.core.conversion;
 
 import static java.lang.String.format;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
 import java.util.Calendar;
 import java.util.Date;
 
 /**
- * TODO Description of TemporalAdapter
+ * Adapts the various temporal representations that configuration sources may provide to the standard Java types.
+ * String values are parsed as ISO-8601 using {@link ISOTemporalParser}, which has no external dependencies.
+ * Subclasses can override {@link #toCalendar(Object, boolean, boolean, Class)} to handle the temporal types of a
+ * specific XML binding library.
  *
  * @author Andrew Taylor (andrew@brekka.org)
  */
@@ -34,16 +41,26 @@ public class TemporalAdapter {
     protected final boolean jodaTimeAvailable;
     
     /**
-     * Determines whether JodaTime is available, caching the fact
+     * Parses string values
+     */
+    private final ISOTemporalParser parser;
+    
+    /**
+     * Use the shared {@link ISOTemporalParser}
      */
     public TemporalAdapter() {
-        boolean jodaTimeAvailable = false;
-        try {
-            Thread.currentThread().getContextClassLoader().loadClass("org.joda.time.format.ISODateTimeFormat");
-            jodaTimeAvailable = true;
-        } catch (ClassNotFoundException e) {
-        }
-        this.jodaTimeAvailable = jodaTimeAvailable;
+        this(ISOTemporalParser.getInstance());
+    }
+    
+    /**
+     * Determines whether JodaTime is available, via the {@link ConverterCatalogue} which caches the fact for the
+     * lifetime of the process.
+     * 
+     * @param parser the parser to use for string values
+     */
+    public TemporalAdapter(ISOTemporalParser parser) {
+        this.jodaTimeAvailable = ConverterCatalogue.isJodaTimeAvailable();
+        this.parser = parser;
     }
     
     public Calendar toCalendar(Object obj, boolean supportsDate, boolean supportsTime, Class<?> expectedType) {
@@ -54,25 +71,7 @@ public class TemporalAdapter {
             value = Calendar.getInstance();
             value.setTime((Date) obj);
         } else if (obj instanceof String) {
-            String dateTimeStr = (String) obj;
-            if (!jodaTimeAvailable) {
-                throw new IllegalArgumentException(format(
-                        "Date/time conversion unavailable for value '%s' to '%s'." +
-                                " Add JodaTime library to enable default ISO conversion.", 
-                                dateTimeStr, expectedType.getName()));
-            }
-            if (dateTimeStr.length() < 14
-                    && dateTimeStr.endsWith("Z")) {
-                dateTimeStr = dateTimeStr.substring(0, dateTimeStr.length() - 1);
-            }
-            org.joda.time.format.DateTimeFormatter dateTimeParser;
-            if (dateTimeStr.charAt(2) == ':') {
-                dateTimeParser = org.joda.time.format.ISODateTimeFormat.timeParser();
-            } else {
-                dateTimeParser = org.joda.time.format.ISODateTimeFormat.dateTimeParser();
-            }
-            org.joda.time.DateTime dateTime = dateTimeParser.parseDateTime(dateTimeStr);
-            value = dateTime.toCalendar(null);
+            value = parser.parse((String) obj).toCalendar();
         } else {
             throw new IllegalArgumentException(format(
                     "No temporal conversion available for value of type '%s' to '%s'.", 
@@ -80,4 +79,71 @@ public class TemporalAdapter {
         }
         return value;
     }
+    
+    /**
+     * Convert the value to an {@link Instant}. Strings are parsed directly without creating an intermediate
+     * {@link Calendar}.
+     */
+    public Instant toInstant(Object obj, Class<?> expectedType) {
+        Instant value;
+        if (obj instanceof Instant) {
+            value = (Instant) obj;
+        } else if (obj instanceof String) {
+            value = parser.parse((String) obj).toInstant();
+        } else if (obj instanceof Date) {
+            value = ((Date) obj).toInstant();
+        } else {
+            value = toCalendar(obj, true, true, expectedType).toInstant();
+        }
+        return value;
+    }
+    
+    /**
+     * Convert the value to a {@link LocalDate}. Any offset present in a string value is ignored.
+     */
+    public LocalDate toLocalDate(Object obj, Class<?> expectedType) {
+        LocalDate value;
+        if (obj instanceof LocalDate) {
+            value = (LocalDate) obj;
+        } else if (obj instanceof String) {
+            value = parser.parse((String) obj).getDate();
+            if (value == null) {
+                throw new IllegalArgumentException(format(
+                        "The value '%s' does not specify a date required by '%s'.", obj, expectedType.getName()));
+            }
+        } else {
+            value = toZonedDateTime(toCalendar(obj, true, false, expectedType)).toLocalDate();
+        }
+        return value;
+    }
+    
+    /**
+     * Convert the value to a {@link LocalTime}. Any offset present in a string value is ignored.
+     */
+    public LocalTime toLocalTime(Object obj, Class<?> expectedType) {
+        LocalTime value;
+        if (obj instanceof LocalTime) {
+            value = (LocalTime) obj;
+        } else if (obj instanceof String) {
+            value = parser.parse((String) obj).getTime();
+            if (value == null) {
+                throw new IllegalArgumentException(format(
+                        "The value '%s' does not specify a time required by '%s'.", obj, expectedType.getName()));
+            }
+        } else {
+            value = toZonedDateTime(toCalendar(obj, false, true, expectedType)).toLocalTime();
+        }
+        return value;
+    }
+    
+    /**
+     * @return the parser used for string values
+     */
+    protected final ISOTemporalParser getParser() {
+        return parser;
+    }
+    
+    private static ZonedDateTime toZonedDateTime(Calendar calendar) {
+        return ZonedDateTime.ofInstant(calendar.toInstant(), calendar.getTimeZone().toZoneId());
+    }
 }
@@ -143,7 +143,7 @@ public class TypeConverterListBuilder {
      */
     private TypeConverterListBuilder addClass(boolean failOnNotFound, String className, Object... args) {
         TypeConverter<?> typeConverter = null;
-        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ClassLoader classLoader = ConverterCatalogue.getClassLoader();
         Throwable error = null;
         try {
             Class<?> loadClass = classLoader.loadClass(className);
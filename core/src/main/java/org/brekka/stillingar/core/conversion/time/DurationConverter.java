@@ -0,0 +1,72 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.conversion.time;
+
+import java.time.Duration;
+
+import org.brekka.stillingar.core.conversion.AbstractTypeConverter;
+import org.brekka.stillingar.core.conversion.ISOTemporalParser;
+
+/**
+ * Converts ISO-8601 duration strings (for example <code>PT15M</code>) to {@link Duration}.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class DurationConverter extends AbstractTypeConverter<Duration> {
+
+    /**
+     * Parser that will perform the conversion
+     */
+    private final ISOTemporalParser parser;
+    
+    /**
+     * 
+     */
+    public DurationConverter() {
+        this(ISOTemporalParser.getInstance());
+    }
+    
+    /**
+     * @param parser
+     */
+    public DurationConverter(ISOTemporalParser parser) {
+        this.parser = parser;
+    }
+    
+    /**
+     * Target type
+     */
+    public final Class<Duration> targetType() {
+        return Duration.class;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.conversion.TypeConverter#convert(java.lang.Object)
+     */
+    @Override
+    public Duration convert(Object obj) {
+        Duration value;
+        if (obj instanceof Duration) {
+            value = (Duration) obj;
+        } else if (obj instanceof String) {
+            value = parser.parseDuration((String) obj);
+        } else {
+            value = super.convert(obj);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.conversion.time;
+
+import java.time.Instant;
+
+import org.brekka.stillingar.core.conversion.AbstractTypeConverter;
+import org.brekka.stillingar.core.conversion.TemporalAdapter;
+
+/**
+ * Converts to {@link Instant}. Strings are parsed as ISO-8601 date-times, with the system default zone assumed where no offset is given.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class InstantConverter extends AbstractTypeConverter<Instant> {
+
+    /**
+     * Adapter that will perform the conversion
+     */
+    private final TemporalAdapter temporalAdapter;
+    
+    /**
+     * 
+     */
+    public InstantConverter() {
+        this(new TemporalAdapter());
+    }
+    
+    /**
+     * @param temporalAdapter
+     */
+    public InstantConverter(TemporalAdapter temporalAdapter) {
+        this.temporalAdapter = temporalAdapter;
+    }
+    
+    /**
+     * Target type
+     */
+    public final Class<Instant> targetType() {
+        return Instant.class;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.conversion.TypeConverter#convert(java.lang.Object)
+     */
+    @Override
+    public Instant convert(Object obj) {
+        return temporalAdapter.toInstant(obj, targetType());
+    }
+}
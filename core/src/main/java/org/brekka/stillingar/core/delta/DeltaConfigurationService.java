@@ -19,6 +19,7 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -34,6 +35,7 @@ import org.brekka.stillingar.core.Expirable;
 import org.brekka.stillingar.core.FallbackConfigurationSource;
 import org.brekka.stillingar.core.ValueDefinition;
 import org.brekka.stillingar.core.ValueDefinitionGroup;
+import org.brekka.stillingar.core.conversion.ConversionCache;
 
 /**
  * A configuration source that is 'change aware' supporting the registration of value definitions and value definition
@@ -70,6 +72,12 @@ public class DeltaConfigurationService
      * Interceptor for value changes.
      */
     private DeltaValueInterceptor deltaValueInterceptor;
+    
+    /**
+     * The conversion cache used by the configuration sources, if any. Values of the types it caches may be the same
+     * instance between snapshots, in which case they are neither released nor recreated.
+     */
+    private ConversionCache conversionCache;
 
     
     public DeltaConfigurationService(ConfigurationSource defaultConfigurationSource) {
@@ -99,11 +107,21 @@ public class DeltaConfigurationService
      */
     public synchronized void register(ValueDefinitionGroup valueDefinitionGroup, boolean fireImmediately) {
         GroupChangeAction groupUpdateAction = deltaOperations.prepareGroupChange(valueDefinitionGroup, this);
-        groupUpdateAction = interceptGroupRefresh(groupUpdateAction, lastValueMap);
-        if (fireImmediately) {
-            deltaOperations.enactGroupChange(groupUpdateAction, this);
+        Map<ValueDefinition<?, ?>, WeakReference<?>> newValueMap = new LinkedHashMap<ValueDefinition<?, ?>, WeakReference<?>>();
+        List<Object> supersededValues = new ArrayList<Object>();
+        List<Object> createdValues = new ArrayList<Object>();
+        groupUpdateAction = interceptGroupRefresh(groupUpdateAction, newValueMap, supersededValues, createdValues);
+        boolean enacted = false;
+        try {
+            if (fireImmediately) {
+                deltaOperations.enactGroupChange(groupUpdateAction, this);
+            }
+            valueGroups.add(valueDefinitionGroup);
+            lastValueMap.putAll(newValueMap);
+            enacted = true;
+        } finally {
+            releaseValues(enacted ? supersededValues : createdValues);
         }
-        valueGroups.add(valueDefinitionGroup);
     }
 
     /*
@@ -158,11 +176,16 @@ public class DeltaConfigurationService
      * Updates the primary configuration source and notify all registered listeners of the change. Must be called at
      * least once prior to any of the {@link #register} methods being called.
      * 
+     * Replacement values are created (and started by any {@link DeltaValueInterceptor}) before the values they
+     * supersede are released, so there is no point at which a listener is left without a running value. The outcome
+     * of phase two is tracked per group. Each group that was enacted has the values it replaced released, while each
+     * group that failed keeps its current values and has the values created for it released instead. The new source is
+     * only swapped in should every group succeed.
+     * 
      * @throws ChangeConfigurationException
      *             if problems are encountered during the first or second phases.
      */
     protected synchronized void refresh(ConfigurationSource latest) throws ChangeConfigurationException {
-        Map<ValueDefinition<?, ?>, WeakReference<?>> newValueMap = new LinkedHashMap<ValueDefinition<?, ?>, WeakReference<?>>();
         FallbackConfigurationSource newSource = new FallbackConfigurationSource(latest, getDelegate()
                 .getSecondarySource());
 
@@ -173,61 +196,133 @@ public class DeltaConfigurationService
         // Phase One
         List<GroupChangeAction> updateActionList = updater.phaseOneUpdate();
         
-        updateActionList = interceptRefresh(updateActionList, newValueMap);
-
-        // Phase Two
-        updater.phaseTwoUpdate(updateActionList);
-
-        // No exception, means success
-        setDelegate(newSource);
-        this.lastValueMap = newValueMap;
-    }
-
-
-    /**
-     * @param updateActionList
-     * @return
-     */
-    protected List<GroupChangeAction> interceptRefresh(List<GroupChangeAction> updateActionList, 
-            Map<ValueDefinition<?, ?>, WeakReference<?>> newValueMap) {
-        List<GroupChangeAction> groupChangeActions = new ArrayList<GroupChangeAction>();
+        List<PreparedGroup> preparedGroups = new ArrayList<PreparedGroup>(updateActionList.size());
+        List<GroupChangeAction> interceptedActionList = new ArrayList<GroupChangeAction>(updateActionList.size());
         for (GroupChangeAction groupChangeAction : updateActionList) {
-            groupChangeActions.add(interceptGroupRefresh(groupChangeAction, newValueMap));
+            PreparedGroup preparedGroup = new PreparedGroup();
+            preparedGroup.action = interceptGroupRefresh(groupChangeAction, preparedGroup.newValueMap, 
+                    preparedGroup.supersededValues, preparedGroup.createdValues);
+            preparedGroups.add(preparedGroup);
+            interceptedActionList.add(preparedGroup.action);
+        }
+
+        Set<GroupChangeAction> enactedActions = Collections.newSetFromMap(
+                new IdentityHashMap<GroupChangeAction, Boolean>());
+        boolean complete = false;
+        try {
+            // Phase Two
+            updater.phaseTwoUpdate(interceptedActionList, enactedActions);
+    
+            // No exception, means success
+            setDelegate(newSource);
+            complete = true;
+        } finally {
+            /*
+             * Groups that were enacted are now running on their new values, so break their old ones. Groups that
+             * failed keep their old values and discard the new ones.
+             */
+            Map<ValueDefinition<?, ?>, WeakReference<?>> newValueMap;
+            if (complete) {
+                newValueMap = new LinkedHashMap<ValueDefinition<?, ?>, WeakReference<?>>();
+            } else {
+                newValueMap = new LinkedHashMap<ValueDefinition<?, ?>, WeakReference<?>>(lastValueMap);
+            }
+            for (PreparedGroup preparedGroup : preparedGroups) {
+                if (enactedActions.contains(preparedGroup.action)) {
+                    newValueMap.putAll(preparedGroup.newValueMap);
+                    releaseValues(preparedGroup.supersededValues);
+                } else {
+                    releaseValues(preparedGroup.createdValues);
+                }
+            }
+            this.lastValueMap = newValueMap;
         }
-        return groupChangeActions;
     }
 
     /**
      * @param groupChangeAction
+     * @param newValueMap
+     * @param supersededValues
+     *            collects the values replaced by this refresh, to be released once it has been enacted.
+     * @param createdValues
+     *            collects the values created by this refresh, to be released should it fail.
      * @return
      */
     protected GroupChangeAction interceptGroupRefresh(GroupChangeAction groupChangeAction, 
-            Map<ValueDefinition<?, ?>, WeakReference<?>> newValueMap) {
+            Map<ValueDefinition<?, ?>, WeakReference<?>> newValueMap, List<Object> supersededValues, 
+            List<Object> createdValues) {
         List<ValueChangeAction> currentActionList = groupChangeAction.getActionList();
         List<ValueChangeAction> updatedActionList = new ArrayList<ValueChangeAction>(currentActionList.size());
         ValueDefinitionGroup group = groupChangeAction.getGroup();
         for (ValueChangeAction valueChangeAction : groupChangeAction.getActionList()) {
             ValueDefinition<?, ?> valueDefinition = valueChangeAction.getValueDefinition();
             
-            // Release old value
             WeakReference<?> originalValueRef = lastValueMap.get(valueDefinition);
             Object oldValue = null;
             if (originalValueRef != null) {
                 oldValue = originalValueRef.get();
+            }
+            Object newValue = valueChangeAction.getNewValue();
+            
+            /*
+             * The same instance can be returned again when conversion results are cached, in which case it
+             * should neither be released nor recreated.
+             */
+            if (!(isCached(valueDefinition) && sameInstances(oldValue, newValue))) {
+                // Prepare new value (make before break)
+                newValue = interceptCreatedValue(newValue);
+                if (newValue != null) {
+                    createdValues.add(newValue);
+                }
+                // Old value is released once the new value has been enacted
                 if (oldValue != null) {
-                    interceptReleasedValue(oldValue);
+                    supersededValues.add(oldValue);
                 }
             }
-            
-            // Prepare new value
-            Object newValue = valueChangeAction.getNewValue();
-            newValue = interceptCreatedValue(newValue);
             newValueMap.put(valueDefinition, new WeakReference<Object>(newValue));
             updatedActionList.add(new ValueChangeAction(valueDefinition, newValue, oldValue));
         }
         return new GroupChangeAction(group, updatedActionList);
     }
 
+    /**
+     * Determine whether conversions to the type of the value definition are cached.
+     */
+    protected boolean isCached(ValueDefinition<?, ?> valueDefinition) {
+        ConversionCache cache = conversionCache;
+        return cache != null 
+                && cache.isEnabled(valueDefinition.getType());
+    }
+
+    /**
+     * Determine whether the two values are the same instance, or lists containing the same instances in the same
+     * order.
+     */
+    protected static boolean sameInstances(Object oldValue, Object newValue) {
+        if (oldValue == null) {
+            return false;
+        }
+        if (oldValue == newValue) {
+            return true;
+        }
+        if (oldValue instanceof List 
+                && newValue instanceof List) {
+            List<?> oldList = (List<?>) oldValue;
+            List<?> newList = (List<?>) newValue;
+            if (oldList.isEmpty() 
+                    || oldList.size() != newList.size()) {
+                return false;
+            }
+            for (int i = 0; i < oldList.size(); i++) {
+                if (oldList.get(i) != newList.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Check whether any of the value/group definitions have expired and remove them.
      */
@@ -262,6 +357,18 @@ public class DeltaConfigurationService
     }
 
 
+    /**
+     * Release each of the values that have been superseded.
+     * 
+     * @param supersededValues
+     *            the values to release
+     */
+    protected void releaseValues(List<Object> supersededValues) {
+        for (Object supersededValue : supersededValues) {
+            interceptReleasedValue(supersededValue);
+        }
+    }
+
     /**
      * @param newValue
      * @param valueDefinition
@@ -301,6 +408,13 @@ public class DeltaConfigurationService
         this.deltaValueInterceptor = deltaValueInterceptor;
     }
     
+    /**
+     * @param conversionCache the conversion cache used by the configuration sources (can be null).
+     */
+    public void setConversionCache(ConversionCache conversionCache) {
+        this.conversionCache = conversionCache;
+    }
+    
 
     /**
      * Checks to see if the specified instance implements {@link Expirable} and if it is, check whether it has
@@ -316,4 +430,15 @@ public class DeltaConfigurationService
         }
         return false;
     }
+    
+    /**
+     * The intercepted change for a single group, along with the values it would create and supersede.
+     */
+    private static final class PreparedGroup {
+        private GroupChangeAction action;
+        private final Map<ValueDefinition<?, ?>, WeakReference<?>> newValueMap = 
+                new LinkedHashMap<ValueDefinition<?, ?>, WeakReference<?>>();
+        private final List<Object> supersededValues = new ArrayList<Object>();
+        private final List<Object> createdValues = new ArrayList<Object>();
+    }
 }
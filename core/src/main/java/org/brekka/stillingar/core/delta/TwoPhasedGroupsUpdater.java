@@ -113,10 +113,25 @@ public class TwoPhasedGroupsUpdater {
      *             if any problems are encountered carrying out the value updates.
      */
     public void phaseTwoUpdate(List<GroupChangeAction> updateActionList) throws ChangeConfigurationException {
+        phaseTwoUpdate(updateActionList, new ArrayList<GroupChangeAction>(updateActionList.size()));
+    }
+    
+    /**
+     * As {@link #phaseTwoUpdate(List)}, additionally collecting the actions that were enacted successfully, so that
+     * the caller can tell which groups are running on their new values should others fail.
+     * 
+     * @param updateActionList the list of update actions to enact.
+     * @param enactedActions collects each action once it has been enacted without error.
+     * @throws ChangeConfigurationException
+     *             if any problems are encountered carrying out the value updates.
+     */
+    public void phaseTwoUpdate(List<GroupChangeAction> updateActionList, Collection<GroupChangeAction> enactedActions) 
+            throws ChangeConfigurationException {
         List<GroupConfigurationException> groupErrors = new ArrayList<GroupConfigurationException>();
         for (GroupChangeAction groupUpdateAction : updateActionList) {
             try {
                 this.deltaOperations.enactGroupChange(groupUpdateAction, this.configurationSource);
+                enactedActions.add(groupUpdateAction);
             } catch (GroupConfigurationException e) {
                 groupErrors.add(e);
             }
@@ -31,6 +31,7 @@ import javax.xml.xpath.XPathFactory;
 
 import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.api.ValueConfigurationException;
+import org.brekka.stillingar.core.conversion.BulkConverter;
 import org.brekka.stillingar.core.conversion.ConversionManager;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
@@ -108,15 +109,32 @@ public class DOMConfigurationSource implements ConfigurationSource {
      * @see org.brekka.stillingar.core.ConfigurationSource#retrieveList(java.lang.String, java.lang.Class)
      */
     @Override
-    public <T> List<T> retrieveList(String expression, Class<T> valueType) {
+    public <T> List<T> retrieveList(final String expression, final Class<T> valueType) {
         NodeList nodeList = doXPathList(expression, valueType);
-        List<T> retVal = new ArrayList<T>(nodeList.getLength());
-        for (int i = 0; i < nodeList.getLength(); i++) {
-            Node node = nodeList.item(i);
-            T value = toObject(node, valueType, expression);
-            retVal.add(value);
+        int length = nodeList.getLength();
+        BulkConverter bulkConverter = conversionManager.getBulkConverter();
+        if (length < bulkConverter.getThreshold()
+                || Object.class == valueType
+                || Node.class.isAssignableFrom(valueType)) {
+            List<T> retVal = new ArrayList<T>(length);
+            for (int i = 0; i < length; i++) {
+                Node node = nodeList.item(i);
+                T value = toObject(node, valueType, expression);
+                retVal.add(value);
+            }
+            return retVal;
         }
-        return retVal;
+        // The DOM is not thread-safe, so extract the text serially and only convert in parallel
+        List<String> textList = new ArrayList<String>(length);
+        for (int i = 0; i < length; i++) {
+            textList.add(nodeList.item(i).getTextContent());
+        }
+        return bulkConverter.convert(textList, new BulkConverter.Element<String, T>() {
+            @Override
+            public T convert(String text) {
+                return convertValue(text, valueType, expression);
+            }
+        });
     }
 
     /*
@@ -207,12 +225,24 @@ public class DOMConfigurationSource implements ConfigurationSource {
             // Not expecting anything in particular
             return (T) node;
         } 
-        T retVal;
         Object value = node;
         if (!Node.class.isAssignableFrom(valueType)) {
             // Non-node, extract text content
             value = node.getTextContent();
         }
+        return convertValue(value, valueType, expression);
+    }
+    
+    /**
+     * Convert a value extracted from a node (either the node itself or its text content).
+     * 
+     * @param value
+     * @param valueType
+     * @param expression
+     * @return
+     */
+    protected <T> T convertValue(Object value, Class<T> valueType, String expression) {
+        T retVal;
         if (conversionManager.hasConverter(valueType)) {
             retVal = conversionManager.convert(value, valueType);
         } else {
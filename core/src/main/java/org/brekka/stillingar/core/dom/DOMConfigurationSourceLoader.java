@@ -21,6 +21,7 @@ import org.brekka.stillingar.core.conversion.BooleanConverter;
 import org.brekka.stillingar.core.conversion.ByteConverter;
 import org.brekka.stillingar.core.conversion.CalendarConverter;
 import org.brekka.stillingar.core.conversion.ConversionManager;
+import org.brekka.stillingar.core.conversion.ConverterCatalogue;
 import org.brekka.stillingar.core.conversion.DateConverter;
 import org.brekka.stillingar.core.conversion.DoubleConverter;
 import org.brekka.stillingar.core.conversion.EnumConverter;
@@ -35,6 +36,10 @@ import org.brekka.stillingar.core.conversion.TypeConverter;
 import org.brekka.stillingar.core.conversion.TypeConverterListBuilder;
 import org.brekka.stillingar.core.conversion.URIConverter;
 import org.brekka.stillingar.core.conversion.UUIDConverter;
+import org.brekka.stillingar.core.conversion.time.DurationConverter;
+import org.brekka.stillingar.core.conversion.time.InstantConverter;
+import org.brekka.stillingar.core.conversion.time.LocalDateConverter;
+import org.brekka.stillingar.core.conversion.time.LocalTimeConverter;
 import org.brekka.stillingar.core.conversion.xml.DocumentConverter;
 import org.brekka.stillingar.core.conversion.xml.ElementConverter;
 import org.w3c.dom.Document;
@@ -68,7 +73,7 @@ public class DOMConfigurationSourceLoader implements ConfigurationSourceLoader {
      * @param xPathNamespaceContext
      */
     public DOMConfigurationSourceLoader(DefaultNamespaceContext xPathNamespaceContext) {
-        this(new ConversionManager(prepareConverters(new TemporalAdapter())), xPathNamespaceContext);
+        this(new ConversionManager(defaultConverters()), xPathNamespaceContext);
     }
     
     /**
@@ -107,6 +112,20 @@ public class DOMConfigurationSourceLoader implements ConfigurationSourceLoader {
         return new DOMConfigurationSource(document, xPathNamespaceContext, conversionManager);
     }
     
+    /**
+     * The default converters, shared via the {@link ConverterCatalogue} so they are only prepared once per process.
+     * 
+     * @return the immutable list of default converters
+     */
+    public static List<TypeConverter<?>> defaultConverters() {
+        return ConverterCatalogue.get(DOMConfigurationSourceLoader.class.getName(), new ConverterCatalogue.Source() {
+            @Override
+            public List<TypeConverter<?>> create() {
+                return prepareConverters(new TemporalAdapter());
+            }
+        });
+    }
+    
     public static List<TypeConverter<?>> prepareConverters(TemporalAdapter temporalAdapter) {
         return new TypeConverterListBuilder().<TypeConverter<?>> 
             addAll(
@@ -114,8 +133,9 @@ public class DOMConfigurationSourceLoader implements ConfigurationSourceLoader {
                 new DoubleConverter(), new FloatConverter(), new IntegerConverter(), new LongConverter(), 
                 new ShortConverter(), new StringConverter(), new URIConverter(), new ElementConverter(), 
                 new DocumentConverter(), new LocaleConverter(), new UUIDConverter(), new EnumConverter(),
-                new ElementConverter(), new DocumentConverter(), 
-                new CalendarConverter(temporalAdapter), new DateConverter(temporalAdapter))
+                new CalendarConverter(temporalAdapter), new DateConverter(temporalAdapter),
+                new InstantConverter(temporalAdapter), new LocalDateConverter(temporalAdapter),
+                new LocalTimeConverter(temporalAdapter), new DurationConverter())
             .inPackage("org.brekka.stillingar.core.conversion")
                 .addOptionalClass("DateTimeConverter", temporalAdapter)
                 .addOptionalClass("LocalTimeConverter", temporalAdapter)
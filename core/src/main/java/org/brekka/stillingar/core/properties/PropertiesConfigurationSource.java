@@ -26,7 +26,9 @@ import java.util.Properties;
 import org.brekka.stillingar.api.ConfigurationException;
 import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.api.ValueConfigurationException;
+import org.brekka.stillingar.core.conversion.BulkConverter;
 import org.brekka.stillingar.core.conversion.ConversionManager;
+import org.w3c.dom.Node;
 
 /**
  * A {@link ConfigurationSource} implementation that is backed by a {@link Properties} instance. The nature of
@@ -122,18 +124,28 @@ public class PropertiesConfigurationSource implements ConfigurationSource {
      * @param valueType
      *            can be any type supported by the {@link PropertyEditorManager}.
      */
-    public <T> List<T> retrieveList(String expression, Class<T> valueType) {
-        List<T> valueList = new ArrayList<T>();
+    public <T> List<T> retrieveList(final String expression, final Class<T> valueType) {
+        List<String> rawList = new ArrayList<String>();
         String value = properties.getProperty(expression);
         if (value == null) {
             value = properties.getProperty(expression + ".0");
         }
         int index = 1;
         while (value != null) {
-            valueList.add(resolve(valueType, value, expression));
+            rawList.add(value);
             value = properties.getProperty(expression + "." + (index++));
         }
-        return valueList;
+        BulkConverter bulkConverter = conversionManager.getBulkConverter();
+        if (Node.class.isAssignableFrom(valueType)) {
+            // DOM conversion is not thread-safe
+            bulkConverter = BulkConverter.SERIAL;
+        }
+        return bulkConverter.convert(rawList, new BulkConverter.Element<String, T>() {
+            @Override
+            public T convert(String rawValue) {
+                return resolve(valueType, rawValue, expression);
+            }
+        });
     }
 
     /**
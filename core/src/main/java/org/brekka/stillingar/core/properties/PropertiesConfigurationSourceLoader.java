@@ -8,6 +8,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
@@ -18,7 +19,9 @@ import org.brekka.stillingar.core.conversion.BigDecimalConverter;
 import org.brekka.stillingar.core.conversion.BigIntegerConverter;
 import org.brekka.stillingar.core.conversion.BooleanConverter;
 import org.brekka.stillingar.core.conversion.ByteConverter;
+import org.brekka.stillingar.core.conversion.CalendarConverter;
 import org.brekka.stillingar.core.conversion.ConversionManager;
+import org.brekka.stillingar.core.conversion.DateConverter;
 import org.brekka.stillingar.core.conversion.DoubleConverter;
 import org.brekka.stillingar.core.conversion.EnumConverter;
 import org.brekka.stillingar.core.conversion.FloatConverter;
@@ -30,6 +33,10 @@ import org.brekka.stillingar.core.conversion.StringConverter;
 import org.brekka.stillingar.core.conversion.TypeConverter;
 import org.brekka.stillingar.core.conversion.URIConverter;
 import org.brekka.stillingar.core.conversion.UUIDConverter;
+import org.brekka.stillingar.core.conversion.time.DurationConverter;
+import org.brekka.stillingar.core.conversion.time.InstantConverter;
+import org.brekka.stillingar.core.conversion.time.LocalDateConverter;
+import org.brekka.stillingar.core.conversion.time.LocalTimeConverter;
 import org.brekka.stillingar.core.conversion.xml.DocumentConverter;
 import org.brekka.stillingar.core.conversion.xml.ElementConverter;
 
@@ -44,7 +51,9 @@ public class PropertiesConfigurationSourceLoader implements ConfigurationSourceL
             new BigDecimalConverter(), new BigIntegerConverter(), new BooleanConverter(), new ByteConverter(),
             new DoubleConverter(), new FloatConverter(), new IntegerConverter(), new LongConverter(), 
             new ShortConverter(), new StringConverter(), new URIConverter(), new ElementConverter(), 
-            new DocumentConverter(), new LocaleConverter(), new UUIDConverter(), new EnumConverter());
+            new DocumentConverter(), new LocaleConverter(), new UUIDConverter(), new EnumConverter(),
+            new CalendarConverter(), new DateConverter(), new InstantConverter(), new LocalDateConverter(),
+            new LocalTimeConverter(), new DurationConverter());
     
     /**
      * The conversion manager
@@ -80,4 +89,11 @@ public class PropertiesConfigurationSourceLoader implements ConfigurationSourceL
         }
         return new PropertiesConfigurationSource(props, conversionManager);
     }
+    
+    /**
+     * @return the immutable list of default converters
+     */
+    public static List<TypeConverter<?>> defaultConverters() {
+        return Collections.unmodifiableList(CONVERTERS);
+    }
 }
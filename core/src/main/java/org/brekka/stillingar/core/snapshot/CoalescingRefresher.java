@@ -0,0 +1,263 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.snapshot;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Coalesces bursts of refresh triggers into a single call to {@link SnapshotBasedConfigurationService#refresh()}.
+ * Editors and deployment tools frequently write a file in several steps (truncate, write, rename, chmod), each of
+ * which can be reported as a change. Rather than refreshing on each one (potentially from a half-written file), the
+ * refresh waits until no further trigger has arrived for the quiet period. To ensure a steady stream of triggers cannot
+ * postpone the refresh forever, it will always happen within the max delay of the first pending trigger.
+ * 
+ * Triggers are made by calling {@link #run()}, and the refresh itself happens on the scheduler thread. By default a
+ * single daemon scheduler thread is shared by all instances. As nobody waits on the scheduled refresh, any failure is
+ * logged rather than left in its future.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class CoalescingRefresher implements Runnable {
+    
+    /**
+     * Logger
+     */
+    private static final Log log = LogFactory.getLog(CoalescingRefresher.class);
+
+    /**
+     * Default time to wait after the last trigger before refreshing (milliseconds).
+     */
+    public static final long DEFAULT_QUIET_PERIOD = 250;
+    
+    /**
+     * Default maximum time to wait after the first pending trigger before refreshing (milliseconds).
+     */
+    public static final long DEFAULT_MAX_DELAY = 2000;
+    
+    /**
+     * The configuration service to refresh
+     */
+    private final SnapshotBasedConfigurationService configurationService;
+    
+    /**
+     * Time to wait after the last trigger (milliseconds)
+     */
+    private final long quietPeriod;
+    
+    /**
+     * Maximum time to wait after the first pending trigger (milliseconds)
+     */
+    private final long maxDelay;
+    
+    /**
+     * Performs the delayed refresh
+     */
+    private final ScheduledExecutorService scheduler;
+    
+    /**
+     * Time of the first trigger not yet refreshed, or -1 if there is none. Guarded by this.
+     */
+    private long firstPendingTime = -1;
+    
+    /**
+     * Number of triggers not yet refreshed. Guarded by this.
+     */
+    private int pendingTriggers;
+    
+    /**
+     * The scheduled refresh, if any. Guarded by this.
+     */
+    private ScheduledFuture<?> scheduledRefresh;
+    
+    /*
+     * Metrics
+     */
+    private final AtomicLong triggerCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong coalescedTriggerCount = new AtomicLong();
+    private volatile int lastTriggersPerRefresh;
+    private volatile int maxTriggersPerRefresh;
+    
+    /**
+     * Use the default quiet period and max delay.
+     * 
+     * @param configurationService the service to refresh
+     */
+    public CoalescingRefresher(SnapshotBasedConfigurationService configurationService) {
+        this(configurationService, DEFAULT_QUIET_PERIOD, DEFAULT_MAX_DELAY);
+    }
+    
+    /**
+     * @param configurationService the service to refresh
+     * @param quietPeriod time to wait after the last trigger before refreshing (milliseconds).
+     * @param maxDelay maximum time to wait after the first pending trigger (milliseconds).
+     */
+    public CoalescingRefresher(SnapshotBasedConfigurationService configurationService, 
+            long quietPeriod, long maxDelay) {
+        this(configurationService, quietPeriod, maxDelay, SharedScheduler.INSTANCE);
+    }
+    
+    /**
+     * @param configurationService the service to refresh
+     * @param quietPeriod time to wait after the last trigger before refreshing (milliseconds).
+     * @param maxDelay maximum time to wait after the first pending trigger (milliseconds).
+     * @param scheduler performs the delayed refresh.
+     */
+    public CoalescingRefresher(SnapshotBasedConfigurationService configurationService, 
+            long quietPeriod, long maxDelay, ScheduledExecutorService scheduler) {
+        if (quietPeriod < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Quiet period cannot be negative, found %d", quietPeriod));
+        }
+        if (maxDelay < quietPeriod) {
+            throw new IllegalArgumentException(String.format(
+                    "Max delay %d cannot be less than the quiet period %d", maxDelay, quietPeriod));
+        }
+        this.configurationService = configurationService;
+        this.quietPeriod = quietPeriod;
+        this.maxDelay = maxDelay;
+        this.scheduler = scheduler;
+    }
+    
+    /**
+     * Trigger a refresh, which will happen once the quiet period has elapsed without further triggers, or the max
+     * delay has elapsed since the first pending trigger.
+     */
+    @Override
+    public synchronized void run() {
+        triggerCount.incrementAndGet();
+        long now = System.currentTimeMillis();
+        if (firstPendingTime < 0) {
+            firstPendingTime = now;
+        }
+        pendingTriggers++;
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        long delay = Math.max(0, Math.min(quietPeriod, firstPendingTime + maxDelay - now));
+        scheduledRefresh = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Perform the refresh, merging all pending triggers. Errors are logged, as there is no caller to report them to.
+     */
+    protected void refresh() {
+        int triggers;
+        synchronized (this) {
+            triggers = pendingTriggers;
+            if (triggers == 0) {
+                // Already handled
+                return;
+            }
+            pendingTriggers = 0;
+            firstPendingTime = -1;
+            scheduledRefresh = null;
+        }
+        refreshCount.incrementAndGet();
+        coalescedTriggerCount.addAndGet(triggers - 1);
+        lastTriggersPerRefresh = triggers;
+        if (triggers > maxTriggersPerRefresh) {
+            maxTriggersPerRefresh = triggers;
+        }
+        try {
+            configurationService.refresh();
+        } catch (RuntimeException e) {
+            // Log just in case, can always disable WARN on this class.
+            if (log.isWarnEnabled()) {
+                log.warn("Coalesced configuration refresh problem", e);
+            }
+        }
+    }
+    
+    /**
+     * @return the total number of triggers received.
+     */
+    public long getTriggerCount() {
+        return triggerCount.get();
+    }
+    
+    /**
+     * @return the number of refreshes actually performed.
+     */
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+    
+    /**
+     * @return the number of triggers that were merged into another trigger's refresh.
+     */
+    public long getCoalescedTriggerCount() {
+        return coalescedTriggerCount.get();
+    }
+    
+    /**
+     * @return the number of triggers merged into the most recent refresh.
+     */
+    public int getLastTriggersPerRefresh() {
+        return lastTriggersPerRefresh;
+    }
+    
+    /**
+     * @return the largest number of triggers merged into a single refresh.
+     */
+    public int getMaxTriggersPerRefresh() {
+        return maxTriggersPerRefresh;
+    }
+    
+    /**
+     * @return the average number of triggers per refresh.
+     */
+    public double getAverageTriggersPerRefresh() {
+        long refreshes = refreshCount.get();
+        if (refreshes == 0) {
+            return 0;
+        }
+        return (double) (refreshes + coalescedTriggerCount.get()) / refreshes;
+    }
+    
+    /**
+     * Lazily created daemon scheduler shared by all instances that are not given their own.
+     */
+    private static final class SharedScheduler {
+        private static final ScheduledExecutorService INSTANCE;
+        static {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "stillingar-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            INSTANCE = executor;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.core.snapshot;
+
+/**
+ * A {@link Snapshot} that knows the length of the content it was parsed from. Used by {@link SnapshotHistory} to
+ * estimate how much memory retained snapshots are holding on to.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public interface MeasurableSnapshot extends Snapshot {
+
+    /**
+     * The length in bytes of the content this snapshot was parsed from.
+     * 
+     * @return the content length, or a negative value if it is not known.
+     */
+    long getContentLength();
+}
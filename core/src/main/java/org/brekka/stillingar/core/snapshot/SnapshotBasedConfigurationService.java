@@ -50,6 +50,11 @@ public class SnapshotBasedConfigurationService extends DeltaConfigurationService
 	 * cannot just rely on the defaults to load correctly.
 	 */
 	private final boolean initialSnapshotRequired;
+	
+	/**
+	 * The most recently applied snapshots, available for rollback.
+	 */
+	private final SnapshotHistory snapshotHistory = new SnapshotHistory();
 
 	
     /**
@@ -115,6 +120,10 @@ public class SnapshotBasedConfigurationService extends DeltaConfigurationService
 	    } 
 	    try {
 	        refresh(initialSource);
+	        if (initial != null) {
+	            snapshotManager.accepted(initial);
+	            snapshotHistory.record(initial);
+	        }
 	        snapshotEventHandler.initialConfigure(initial, null);
 	    } catch (ChangeConfigurationException e) {
 	        snapshotManager.reject(initial);
@@ -143,7 +152,11 @@ public class SnapshotBasedConfigurationService extends DeltaConfigurationService
         if (updated != null) {
             // Configuration has changed, trigger a refresh
             try {
-                refresh(updated.getSource());
+                synchronized (this) {
+                    refresh(updated.getSource());
+                    snapshotHistory.record(updated);
+                }
+                snapshotManager.accepted(updated);
                 snapshotEventHandler.refreshConfigure(updated, null);
             } catch (ChangeConfigurationException e) {
                 snapshotManager.reject(updated);
@@ -151,4 +164,60 @@ public class SnapshotBasedConfigurationService extends DeltaConfigurationService
             }
         }
     }
+    
+    /**
+     * Re-apply a previously applied snapshot that is still retained in the history. The snapshot is already parsed so
+     * no loading takes place, it simply passes through the same two-phase update as any other refresh. Should the
+     * update fail, the configuration in use will remain unchanged.
+     * 
+     * The snapshot manager is not involved, so the rolled back configuration will remain in place until the manager
+     * next detects a change to the underlying resource.
+     * 
+     * @param generation
+     *            the generation to roll back to, as listed by {@link SnapshotHistory#getGenerations()}.
+     * @throws IllegalArgumentException
+     *             if the generation is no longer retained.
+     * @throws ConfigurationException
+     *             if the snapshot could not be re-applied.
+     */
+    public synchronized void rollbackTo(long generation) {
+        Snapshot snapshot = snapshotHistory.get(generation);
+        if (snapshot == null) {
+            throw new IllegalArgumentException(String.format(
+                    "No snapshot with generation %d is retained, available: %s", 
+                    generation, snapshotHistory.getGenerations()));
+        }
+        try {
+            refresh(snapshot.getSource());
+            snapshotHistory.markCurrent(generation);
+            snapshotEventHandler.refreshConfigure(snapshot, null);
+        } catch (ChangeConfigurationException e) {
+            snapshotEventHandler.refreshConfigure(snapshot, e);
+            throw new ConfigurationException(String.format(
+                    "Failed to roll back to snapshot generation %d", generation), e);
+        }
+    }
+    
+    /**
+     * @param historySize
+     *            the maximum number of applied snapshots to retain for rollback, at least one.
+     */
+    public void setHistorySize(int historySize) {
+        snapshotHistory.setLimits(historySize, snapshotHistory.getMaxRetainedBytes());
+    }
+    
+    /**
+     * @param historyMaxBytes
+     *            the limit on the total content length of the snapshots retained for rollback.
+     */
+    public void setHistoryMaxBytes(long historyMaxBytes) {
+        snapshotHistory.setLimits(snapshotHistory.getCapacity(), historyMaxBytes);
+    }
+    
+    /**
+     * @return the history of applied snapshots, which reports its occupancy.
+     */
+    public SnapshotHistory getSnapshotHistory() {
+        return snapshotHistory;
+    }
 }
@@ -3,6 +3,8 @@
  */
 package org.brekka.stillingar.core.snapshot;
 
+import java.net.URI;
+
 import org.brekka.stillingar.core.ChangeConfigurationException;
 
 /**
@@ -61,4 +63,15 @@ public interface SnapshotEventHandler {
      */
     void invalidSnapshotUpdate(InvalidSnapshotException e);
 
+    /**
+     * For when a snapshot change is detected, but the content turns out to be identical to the snapshot already in use
+     * (for example the file was touched or rewritten as-is). The reload is skipped entirely. Does nothing by default.
+     * 
+     * @param location
+     *            the location of the unchanged snapshot.
+     */
+    default void unchangedSnapshotSkipped(URI location) {
+        // No action by default
+    }
+
 }
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.core.snapshot;
+
+import static java.lang.String.format;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Bounded ring of the most recently applied snapshots, retained in their parsed form so that any of them can be
+ * re-applied without loading anything. Each snapshot is assigned an increasing generation number as it is recorded.
+ * 
+ * The ring is limited both by the number of snapshots and by the total content length of those that implement
+ * {@link MeasurableSnapshot}, which serves as a proxy for the memory their parsed form holds on to. The oldest
+ * snapshots are evicted first, though the most recent is always retained as it is the one in use.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class SnapshotHistory {
+
+    /**
+     * The default number of snapshots to retain.
+     */
+    public static final int DEFAULT_CAPACITY = 4;
+    
+    /**
+     * The default limit on the total content length of retained snapshots (16MB).
+     */
+    public static final long DEFAULT_MAX_RETAINED_BYTES = 16L * 1024 * 1024;
+    
+    /**
+     * The ring itself
+     */
+    private Entry[] ring;
+    
+    /**
+     * Index within the ring of the oldest entry
+     */
+    private int head;
+    
+    /**
+     * Number of entries currently retained
+     */
+    private int count;
+    
+    /**
+     * Limit on the total content length of the retained snapshots
+     */
+    private long maxRetainedBytes;
+    
+    /**
+     * Total content length of the retained snapshots
+     */
+    private long retainedBytes;
+    
+    /**
+     * The generation that will be assigned to the next snapshot recorded
+     */
+    private long nextGeneration = 1;
+    
+    /**
+     * The generation currently applied, zero if none.
+     */
+    private long currentGeneration;
+    
+    /**
+     * Number of snapshots evicted to honour the limits
+     */
+    private long evictionCount;
+    
+    /**
+     * Uses {@link #DEFAULT_CAPACITY} and {@link #DEFAULT_MAX_RETAINED_BYTES}.
+     */
+    public SnapshotHistory() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_RETAINED_BYTES);
+    }
+    
+    /**
+     * @param capacity
+     *            the maximum number of snapshots to retain, at least one.
+     * @param maxRetainedBytes
+     *            the limit on the total content length of the retained snapshots.
+     */
+    public SnapshotHistory(int capacity, long maxRetainedBytes) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(format("The history capacity must be at least one, not %d", capacity));
+        }
+        this.ring = new Entry[capacity];
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+    
+    /**
+     * Record a snapshot that has just been applied, evicting the oldest entries as required to stay within the limits.
+     * 
+     * @param snapshot
+     *            the snapshot that has been applied
+     * @return the generation assigned to the snapshot
+     */
+    public synchronized long record(Snapshot snapshot) {
+        long generation = nextGeneration++;
+        if (count == ring.length) {
+            evictOldest();
+        }
+        Entry entry = new Entry(generation, snapshot, contentLength(snapshot), new Date());
+        ring[(head + count) % ring.length] = entry;
+        count++;
+        retainedBytes += entry.contentLength;
+        currentGeneration = generation;
+        trim();
+        return generation;
+    }
+    
+    /**
+     * Retrieve the retained snapshot with the specified generation.
+     * 
+     * @param generation
+     *            the generation to look for
+     * @return the snapshot or null if it is not (or no longer) retained.
+     */
+    public synchronized Snapshot get(long generation) {
+        Entry entry = find(generation);
+        return (entry != null ? entry.snapshot : null);
+    }
+    
+    /**
+     * Mark a retained generation as the one currently applied, for example after a rollback.
+     * 
+     * @param generation
+     *            the generation now applied
+     */
+    public synchronized void markCurrent(long generation) {
+        if (find(generation) == null) {
+            throw new IllegalArgumentException(format(
+                    "No snapshot with generation %d is retained, available: %s", generation, getGenerations()));
+        }
+        currentGeneration = generation;
+    }
+    
+    /**
+     * Change the limits of this history, evicting the oldest entries if they are now exceeded.
+     * 
+     * @param capacity
+     *            the maximum number of snapshots to retain, at least one.
+     * @param maxRetainedBytes
+     *            the limit on the total content length of the retained snapshots.
+     */
+    public synchronized void setLimits(int capacity, long maxRetainedBytes) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(format("The history capacity must be at least one, not %d", capacity));
+        }
+        while (count > capacity) {
+            evictOldest();
+        }
+        Entry[] resized = new Entry[capacity];
+        for (int i = 0; i < count; i++) {
+            resized[i] = ring[(head + i) % ring.length];
+        }
+        this.ring = resized;
+        this.head = 0;
+        this.maxRetainedBytes = maxRetainedBytes;
+        trim();
+    }
+    
+    /**
+     * @return the generations currently retained, oldest first.
+     */
+    public synchronized List<Long> getGenerations() {
+        List<Long> generations = new ArrayList<Long>(count);
+        for (int i = 0; i < count; i++) {
+            generations.add(ring[(head + i) % ring.length].generation);
+        }
+        return generations;
+    }
+    
+    /**
+     * @return the generation currently applied, or zero if nothing has been recorded.
+     */
+    public synchronized long getCurrentGeneration() {
+        return currentGeneration;
+    }
+    
+    /**
+     * @return the time the specified generation was recorded, or null if it is not retained.
+     */
+    public synchronized Date getRecordedAt(long generation) {
+        Entry entry = find(generation);
+        return (entry != null ? entry.recordedAt : null);
+    }
+    
+    /**
+     * @return the number of snapshots currently retained
+     */
+    public synchronized int getOccupancy() {
+        return count;
+    }
+    
+    /**
+     * @return the maximum number of snapshots that will be retained
+     */
+    public synchronized int getCapacity() {
+        return ring.length;
+    }
+    
+    /**
+     * @return the total content length of the retained snapshots
+     */
+    public synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+    
+    /**
+     * @return the limit on the total content length of the retained snapshots
+     */
+    public synchronized long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+    
+    /**
+     * @return the number of snapshots evicted so far to honour the limits
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+    
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public synchronized String toString() {
+        return format("%s[%d/%d snapshots, %d/%d bytes, current=%d]", getClass().getSimpleName(), 
+                count, ring.length, retainedBytes, maxRetainedBytes, currentGeneration);
+    }
+    
+    /**
+     * Evict the oldest entries while the byte limit is exceeded, always keeping the newest.
+     */
+    private void trim() {
+        while (count > 1 
+                && retainedBytes > maxRetainedBytes) {
+            evictOldest();
+        }
+    }
+    
+    private void evictOldest() {
+        Entry oldest = ring[head];
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        count--;
+        retainedBytes -= oldest.contentLength;
+        evictionCount++;
+    }
+    
+    private Entry find(long generation) {
+        for (int i = 0; i < count; i++) {
+            Entry entry = ring[(head + i) % ring.length];
+            if (entry.generation == generation) {
+                return entry;
+            }
+        }
+        return null;
+    }
+    
+    private static long contentLength(Snapshot snapshot) {
+        if (snapshot instanceof MeasurableSnapshot) {
+            return Math.max(0, ((MeasurableSnapshot) snapshot).getContentLength());
+        }
+        return 0;
+    }
+    
+    /**
+     * A retained snapshot
+     */
+    private static final class Entry {
+        private final long generation;
+        
+        private final Snapshot snapshot;
+        
+        private final long contentLength;
+        
+        private final Date recordedAt;
+
+        public Entry(long generation, Snapshot snapshot, long contentLength, Date recordedAt) {
+            this.generation = generation;
+            this.snapshot = snapshot;
+            this.contentLength = contentLength;
+            this.recordedAt = recordedAt;
+        }
+    }
+}
@@ -53,4 +53,16 @@ public interface SnapshotManager {
      *            the snapshot being rejected, which must have been returned by {@link #retrieveLatest()}.
      */
     void reject(Snapshot rejectedSnapshot);
+    
+    /**
+     * Allows this manager to be informed when a snapshot has been applied successfully, for example so that it can be
+     * retained as the last known good configuration. Does nothing by default.
+     * 
+     * @param acceptedSnapshot
+     *            the snapshot now in use, which must have been returned by {@link #retrieveInitial()} or
+     *            {@link #retrieveUpdated()}.
+     */
+    default void accepted(Snapshot acceptedSnapshot) {
+        // No action by default
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.core;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.properties.PropertiesConfigurationSourceLoader;
+import org.junit.Test;
+
+/**
+ * LayeredConfigurationSource Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class LayeredConfigurationSourceTest {
+
+    private final PropertiesConfigurationSourceLoader loader = new PropertiesConfigurationSourceLoader();
+    
+    @Test
+    public void highestPriorityWins() throws Exception {
+        ConfigurationSource local = props("a=local");
+        ConfigurationSource base = props("a=base\nb=base");
+        LayeredConfigurationSource layered = new LayeredConfigurationSource(Arrays.asList(local, base));
+        
+        assertEquals("local", layered.retrieve("a", String.class));
+        assertEquals("base", layered.retrieve("b", String.class));
+        assertFalse(layered.isAvailable("c"));
+        assertEquals(2, layered.getIndexSize());
+    }
+    
+    @Test(expected=ConfigurationException.class)
+    public void missingExpression() throws Exception {
+        new LayeredConfigurationSource(Collections.singletonList(props("a=1"))).retrieve("b", String.class);
+    }
+    
+    @Test
+    public void rebuildKeepsUnaffectedEntries() throws Exception {
+        ConfigurationSource local = props("a=local");
+        ConfigurationSource base = props("a=base\nb=base\nc=base");
+        LayeredConfigurationSource layered = new LayeredConfigurationSource(Arrays.asList(local, base));
+        layered.retrieve("a", String.class);
+        layered.retrieve("b", String.class);
+        layered.retrieve("c", String.class);
+        
+        // Replace the local layer, which now masks 'b' but no longer provides 'a'
+        ConfigurationSource newLocal = props("b=local");
+        LayeredConfigurationSource rebuilt = layered.rebuild(Arrays.asList(newLocal, base));
+        
+        // Only 'c' carried over
+        assertEquals(1, rebuilt.getIndexSize());
+        assertEquals("base", rebuilt.retrieve("a", String.class));
+        assertEquals("local", rebuilt.retrieve("b", String.class));
+        assertEquals("base", rebuilt.retrieve("c", String.class));
+        
+        // The original is unaffected
+        assertEquals("local", layered.retrieve("a", String.class));
+    }
+    
+    private ConfigurationSource props(String content) throws Exception {
+        return loader.parse(new ByteArrayInputStream(content.getBytes("UTF-8")), null);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.conversion;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.brekka.stillingar.api.ValueConfigurationException;
+import org.brekka.stillingar.core.properties.PropertiesConfigurationSource;
+import org.brekka.stillingar.core.properties.PropertiesConfigurationSourceLoader;
+import org.junit.Test;
+
+/**
+ * BulkConverter Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class BulkConverterTest {
+
+    private static final BulkConverter.Element<String, Integer> PARSE_INT = new BulkConverter.Element<String, Integer>() {
+        @Override
+        public Integer convert(String source) {
+            return Integer.valueOf(source);
+        }
+    };
+    
+    @Test
+    public void testParallelPreservesOrder() {
+        List<String> sources = numbers(50000);
+        List<Integer> results = new BulkConverter(100, 4).convert(sources, PARSE_INT);
+        assertEquals(sources.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(Integer.valueOf(i), results.get(i));
+        }
+    }
+    
+    @Test
+    public void testSerialBelowThreshold() {
+        List<Integer> results = new BulkConverter(100, 4).convert(numbers(99), PARSE_INT);
+        assertEquals(99, results.size());
+        assertEquals(Integer.valueOf(98), results.get(98));
+    }
+    
+    @Test
+    public void testSerialByDefault() {
+        assertEquals(Integer.MAX_VALUE, new BulkConverter().getThreshold());
+        ConversionManager conversionManager = new ConversionManager(PropertiesConfigurationSourceLoader.defaultConverters());
+        assertSame(BulkConverter.SERIAL, conversionManager.getBulkConverter());
+    }
+    
+    @Test
+    public void testParallelResultMutable() {
+        List<Integer> results = new BulkConverter(100, 4).convert(numbers(1000), PARSE_INT);
+        results.add(Integer.valueOf(1000));
+        assertEquals(1001, results.size());
+    }
+    
+    @Test(expected = NumberFormatException.class)
+    public void testAnyFailureFailsList() {
+        List<String> sources = numbers(50000);
+        sources.set(31234, "not-a-number");
+        new BulkConverter(100, 4).convert(sources, PARSE_INT);
+    }
+    
+    @Test
+    public void testPropertiesListParallel() {
+        Properties properties = new Properties();
+        for (int i = 0; i < 5000; i++) {
+            properties.setProperty("port." + i, String.valueOf(i));
+        }
+        ConversionManager conversionManager = new ConversionManager(PropertiesConfigurationSourceLoader.defaultConverters());
+        conversionManager.setBulkConverter(new BulkConverter(1000, 2));
+        PropertiesConfigurationSource source = new PropertiesConfigurationSource(properties, conversionManager);
+        List<Integer> ports = source.retrieveList("port", Integer.class);
+        assertEquals(5000, ports.size());
+        assertEquals(Integer.valueOf(4999), ports.get(4999));
+        
+        properties.setProperty("port.2500", "oops");
+        try {
+            source.retrieveList("port", Integer.class);
+            fail("Expected conversion failure");
+        } catch (ValueConfigurationException e) {
+            // Expected
+        }
+    }
+    
+    private static List<String> numbers(int count) {
+        List<String> list = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(String.valueOf(i));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.conversion;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.brekka.stillingar.core.conversion.xml.DocumentConverter;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * ConversionCache Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ConversionCacheTest {
+
+    private ConversionManager conversionManager;
+    
+    @Before
+    public void setup() {
+        conversionManager = new ConversionManager(Arrays.<TypeConverter<?>>asList(
+                new UUIDConverter(), new StringConverter(), new IntegerConverter(), new ByteArrayConverter(), 
+                new DocumentConverter()));
+    }
+    
+    @Test
+    public void testHitReturnsSameInstance() {
+        ConversionCache cache = new ConversionCache(Collections.<Class<?>>singleton(UUID.class));
+        conversionManager.setConversionCache(cache);
+        String uuid = "a65a0ab0-285b-11e2-81c1-0800200c9a66";
+        UUID first = conversionManager.convert(uuid, UUID.class);
+        UUID second = conversionManager.convert(new String(uuid), UUID.class);
+        assertSame(first, second);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5d, cache.getHitRate(), 0.0001d);
+    }
+    
+    @Test
+    public void testMutableResultCopied() {
+        ConversionCache cache = new ConversionCache(Collections.<Class<?>>singleton(byte[].class));
+        conversionManager.setConversionCache(cache);
+        byte[] first = conversionManager.convert("AQID", byte[].class);
+        first[0] = 9;
+        byte[] second = conversionManager.convert("AQID", byte[].class);
+        assertNotSame(first, second);
+        assertArrayEquals(new byte[] { 1, 2, 3 }, second);
+        assertEquals(1, cache.getHitCount());
+    }
+    
+    @Test
+    public void testNodeKeyedOnStructure() throws Exception {
+        ConversionCache cache = new ConversionCache(Collections.<Class<?>>singleton(Document.class));
+        conversionManager.setConversionCache(cache);
+        Document first = conversionManager.convert(parse("<a x=\"1\"><b>text</b><c/></a>"), Document.class);
+        // Separately parsed, but the same structure
+        Document second = conversionManager.convert(parse("<a x=\"1\"><b>text</b><c/></a>"), Document.class);
+        assertSame(first, second);
+        assertEquals(1, cache.getHitCount());
+        
+        Document changed = conversionManager.convert(parse("<a x=\"1\"><b>texT</b><c/></a>"), Document.class);
+        assertNotSame(first, changed);
+        assertEquals("texT", changed.getDocumentElement().getFirstChild().getTextContent());
+        conversionManager.convert(parse("<a x=\"2\"><b>text</b><c/></a>"), Document.class);
+        conversionManager.convert(parse("<a x=\"1\"><c/><b>text</b></a>"), Document.class);
+        assertEquals(4, cache.getMissCount());
+    }
+    
+    @Test
+    public void testNestedNodeKeyReused() throws Exception {
+        ConversionCache cache = new ConversionCache(Collections.<Class<?>>singleton(Document.class));
+        conversionManager.setConversionCache(cache);
+        Element root = parse("<a><b>text</b></a>");
+        Element nested = (Element) root.getFirstChild();
+        Document whole = conversionManager.convert(root, Document.class);
+        Document part = conversionManager.convert(nested, Document.class);
+        assertNotSame(whole, part);
+        assertEquals("b", part.getDocumentElement().getTagName());
+        assertSame(part, conversionManager.convert(parse("<b>text</b>"), Document.class));
+    }
+    
+    @Test
+    public void testNotEnabledForType() {
+        ConversionCache cache = new ConversionCache(Collections.<Class<?>>singleton(UUID.class));
+        conversionManager.setConversionCache(cache);
+        assertEquals(Integer.valueOf(5000), conversionManager.convert("5000", Integer.class));
+        assertEquals(0, cache.getMissCount());
+        assertEquals(0, cache.getSize());
+    }
+    
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ConversionCache cache = new ConversionCache(Collections.<Class<?>>singleton(UUID.class), 2, 
+                ConversionCache.DEFAULT_MAX_WEIGHT);
+        conversionManager.setConversionCache(cache);
+        UUID first = conversionManager.convert("a65a0ab0-285b-11e2-81c1-0800200c9a61", UUID.class);
+        conversionManager.convert("a65a0ab0-285b-11e2-81c1-0800200c9a62", UUID.class);
+        // Touch the first so the second is eldest
+        assertSame(first, conversionManager.convert("a65a0ab0-285b-11e2-81c1-0800200c9a61", UUID.class));
+        conversionManager.convert("a65a0ab0-285b-11e2-81c1-0800200c9a63", UUID.class);
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(cache.getEvictedBytes() > 0);
+        assertSame(first, conversionManager.convert("a65a0ab0-285b-11e2-81c1-0800200c9a61", UUID.class));
+    }
+    
+    @Test
+    public void testEvictsBySize() {
+        ConversionCache cache = new ConversionCache(Collections.<Class<?>>singleton(String.class), 100, 500);
+        conversionManager.setConversionCache(cache);
+        char[] chars = new char[100];
+        Arrays.fill(chars, 'a');
+        conversionManager.convert(new String(chars), String.class);
+        chars[0] = 'b';
+        conversionManager.convert(new String(chars), String.class);
+        assertEquals(1, cache.getSize());
+        assertTrue(cache.getWeight() <= 500);
+        assertEquals(1, cache.getEvictionCount());
+    }
+    
+    private static Element parse(String xml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8"))).getDocumentElement();
+    }
+}
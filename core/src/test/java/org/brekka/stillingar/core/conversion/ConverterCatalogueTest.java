@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.conversion;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.brekka.stillingar.core.dom.DOMConfigurationSourceLoader;
+import org.junit.Test;
+
+/**
+ * ConverterCatalogue Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ConverterCatalogueTest {
+
+    @Test
+    public void testListCreatedOnce() {
+        final List<String> calls = new ArrayList<String>();
+        ConverterCatalogue.Source source = new ConverterCatalogue.Source() {
+            @Override
+            public List<TypeConverter<?>> create() {
+                calls.add("create");
+                return Collections.<TypeConverter<?>>singletonList(new IntegerConverter());
+            }
+        };
+        List<TypeConverter<?>> first = ConverterCatalogue.get("ConverterCatalogueTest.once", source);
+        List<TypeConverter<?>> second = ConverterCatalogue.get("ConverterCatalogueTest.once", source);
+        assertSame(first, second);
+        assertEquals(1, calls.size());
+    }
+    
+    @Test
+    public void testListPerClassLoader() {
+        final List<String> calls = new ArrayList<String>();
+        ConverterCatalogue.Source source = new ConverterCatalogue.Source() {
+            @Override
+            public List<TypeConverter<?>> create() {
+                calls.add("create");
+                return Collections.<TypeConverter<?>>singletonList(new IntegerConverter());
+            }
+        };
+        List<TypeConverter<?>> first = ConverterCatalogue.get("ConverterCatalogueTest.perLoader", source);
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        ClassLoader other = new URLClassLoader(new URL[0], original);
+        thread.setContextClassLoader(other);
+        try {
+            assertSame(other, ConverterCatalogue.getClassLoader());
+            List<TypeConverter<?>> second = ConverterCatalogue.get("ConverterCatalogueTest.perLoader", source);
+            assertNotSame(first, second);
+            assertSame(second, ConverterCatalogue.get("ConverterCatalogueTest.perLoader", source));
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+        assertSame(first, ConverterCatalogue.get("ConverterCatalogueTest.perLoader", source));
+        assertEquals(2, calls.size());
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void testListImmutable() {
+        DOMConfigurationSourceLoader.defaultConverters().add(new IntegerConverter());
+    }
+    
+    @Test
+    public void testClassAvailable() {
+        assertTrue(ConverterCatalogue.isClassAvailable(String.class.getName()));
+        assertFalse(ConverterCatalogue.isClassAvailable("org.brekka.stillingar.NoSuchClass"));
+    }
+    
+    @Test
+    public void testAdditionalConvertersWin() {
+        final IntegerConverter custom = new IntegerConverter();
+        ConversionManager conversionManager = new ConversionManager(DOMConfigurationSourceLoader.defaultConverters(), 
+                Collections.<TypeConverter<?>>singletonList(custom));
+        assertSame(custom, conversionManager.getConverterForTarget(Integer.class));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.conversion;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * EnumConverter Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class EnumConverterTest {
+
+    @Test
+    public void testExactName() {
+        ConversionManager conversionManager = new ConversionManager(
+                Collections.<TypeConverter<?>>singletonList(new EnumConverter()));
+        assertEquals(TimeUnit.HOURS, conversionManager.convert("HOURS", TimeUnit.class));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testCaseSensitiveByDefault() {
+        new EnumConverter().convert("hours", enumType(TimeUnit.class));
+    }
+    
+    @Test
+    public void testCaseInsensitive() {
+        EnumConverter converter = new EnumConverter(true, null);
+        assertEquals(TimeUnit.HOURS, converter.convert("hours", enumType(TimeUnit.class)));
+        assertEquals(TimeUnit.MINUTES, converter.convert("Minutes", enumType(TimeUnit.class)));
+    }
+    
+    @Test
+    public void testAlias() {
+        EnumConverter converter = new EnumConverter(false, Collections.singletonMap("hrs", TimeUnit.HOURS));
+        assertEquals(TimeUnit.HOURS, converter.convert("hrs", enumType(TimeUnit.class)));
+        assertEquals(TimeUnit.HOURS, converter.convert("HOURS", enumType(TimeUnit.class)));
+    }
+    
+    @Test
+    public void testEnumConverterReplaced() {
+        ConversionManager conversionManager = new ConversionManager(
+                Collections.<TypeConverter<?>>singletonList(new EnumConverter()));
+        EnumConverter converter = new EnumConverter(true, Collections.singletonMap("hrs", TimeUnit.HOURS));
+        conversionManager.setEnumConverter(converter);
+        assertSame(converter, conversionManager.getEnumConverter());
+        assertEquals(TimeUnit.HOURS, conversionManager.convert("hours", TimeUnit.class));
+        assertEquals(TimeUnit.HOURS, conversionManager.convert("hrs", TimeUnit.class));
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Class<Enum<?>> enumType(Class<?> type) {
+        return (Class) type;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.conversion;
+
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Calendar;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * ISOTemporalParser Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ISOTemporalParserTest {
+
+    private ISOTemporalParser parser;
+    
+    @Before
+    public void setup() {
+        parser = new ISOTemporalParser(ISOTemporalParser.DEFAULT_CACHE_SIZE);
+    }
+    
+    @Test
+    public void testDateTimeWithOffset() {
+        ISOTemporalParser.Parsed parsed = parser.parse("2012-12-31T12:00:00+01:00");
+        assertEquals(LocalDate.of(2012, 12, 31), parsed.getDate());
+        assertEquals(LocalTime.of(12, 0), parsed.getTime());
+        assertEquals(ZoneOffset.ofHours(1), parsed.getOffset());
+        assertEquals(Instant.parse("2012-12-31T11:00:00Z"), parsed.toInstant());
+    }
+    
+    @Test
+    public void testDateTimeDefaultZone() {
+        ISOTemporalParser.Parsed parsed = parser.parse("2012-12-31T12:00:00");
+        assertNull(parsed.getOffset());
+        Instant expected = LocalDateTime.of(2012, 12, 31, 12, 0).atZone(ZoneId.systemDefault()).toInstant();
+        assertEquals(expected, parsed.toInstant());
+        assertEquals(expected.toEpochMilli(), parsed.toCalendar().getTimeInMillis());
+    }
+    
+    @Test
+    public void testDateOnlyWithUTCMarker() {
+        ISOTemporalParser.Parsed parsed = parser.parse("2012-12-31Z");
+        assertEquals(LocalDate.of(2012, 12, 31), parsed.getDate());
+        assertNull(parsed.getTime());
+        Calendar cal = parsed.toCalendar();
+        assertEquals(2012, cal.get(Calendar.YEAR));
+        assertEquals(0, cal.get(Calendar.HOUR_OF_DAY));
+    }
+    
+    @Test
+    public void testTimeOnly() {
+        ISOTemporalParser.Parsed parsed = parser.parse("14:30:15.250");
+        assertNull(parsed.getDate());
+        assertEquals(LocalTime.of(14, 30, 15, 250000000), parsed.getTime());
+    }
+    
+    @Test
+    public void testCachedInstanceReturned() {
+        assertSame(parser.parse("2012-12-31T12:00:00Z"), parser.parse("2012-12-31T12:00:00Z"));
+        assertSame(parser.parseDuration("PT15M"), parser.parseDuration("PT15M"));
+    }
+    
+    @Test
+    public void testDuration() {
+        assertEquals(Duration.ofHours(26), parser.parseDuration("P1DT2H"));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidDateTime() {
+        parser.parse("31/12/2012");
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidDuration() {
+        parser.parseDuration("15 minutes");
+    }
+}
@@ -17,20 +17,25 @@
 package org.brekka.stillingar.core.delta;
 
 import static org.junit.Assert.*;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
 import static org.mockito.Mockito.*;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.ChangeConfigurationException;
 import org.brekka.stillingar.core.GroupChangeListener;
 import org.brekka.stillingar.core.SingleValueDefinition;
 import org.brekka.stillingar.core.ValueChangeListener;
 import org.brekka.stillingar.core.ValueDefinition;
 import org.brekka.stillingar.core.ValueDefinitionGroup;
+import org.brekka.stillingar.core.conversion.ConversionCache;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -249,6 +254,126 @@ public class DeltaConfigurationServiceTest {
         verify(deltaValueInterceptor).released(eq(THE_VALUE));
     }
     
+    /**
+     * The replacement value must be created and assigned before the value it replaces is released.
+     */
+    @Test
+    public void testRefreshCreatesBeforeRelease() throws Exception {
+        ValueChangeListener<String> valueChangeListener = mock(ValueChangeListener.class);
+        SingleValueDefinition<String> valueDefinition = new SingleValueDefinition<String>(String.class, valueChangeListener);
+        when(deltaValueInterceptor.created(eq(THE_VALUE))).thenReturn(THE_VALUE);
+        configurationSource.register(valueDefinition, true);
+        
+        when(defaultConfigurationSource.retrieve(eq(String.class))).thenReturn(CHANGED_VALUE);
+        when(deltaValueInterceptor.created(eq(CHANGED_VALUE))).thenReturn(CHANGED_VALUE);
+        
+        configurationSource.refresh(defaultConfigurationSource);
+        
+        InOrder inOrder = inOrder(deltaValueInterceptor, valueChangeListener);
+        inOrder.verify(deltaValueInterceptor).created(eq(CHANGED_VALUE));
+        inOrder.verify(valueChangeListener).onChange(eq(CHANGED_VALUE), eq(THE_VALUE));
+        inOrder.verify(deltaValueInterceptor).released(eq(THE_VALUE));
+    }
+    
+    /**
+     * A failure in phase two must leave the current values in place, releasing the replacements instead.
+     */
+    @Test
+    public void testRefreshPhaseTwoFailureKeepsOldValues() throws Exception {
+        ValueChangeListener<String> valueChangeListener = mock(ValueChangeListener.class);
+        SingleValueDefinition<String> valueDefinition = new SingleValueDefinition<String>(String.class, valueChangeListener);
+        when(deltaValueInterceptor.created(eq(THE_VALUE))).thenReturn(THE_VALUE);
+        configurationSource.register(valueDefinition, true);
+        
+        ConfigurationSource latest = mock(ConfigurationSource.class);
+        when(latest.isAvailable(eq(String.class))).thenReturn(Boolean.TRUE);
+        when(latest.retrieve(eq(String.class))).thenReturn(CHANGED_VALUE);
+        when(deltaValueInterceptor.created(eq(CHANGED_VALUE))).thenReturn(CHANGED_VALUE);
+        doThrow(new IllegalStateException("Rejected")).when(valueChangeListener).onChange(eq(CHANGED_VALUE), eq(THE_VALUE));
+        
+        try {
+            configurationSource.refresh(latest);
+            fail("Expected phase two to fail");
+        } catch (ChangeConfigurationException e) {
+            // Expected
+        }
+        verify(deltaValueInterceptor).released(eq(CHANGED_VALUE));
+        verify(deltaValueInterceptor, never()).released(eq(THE_VALUE));
+        // Still serving from the previous source
+        assertEquals(THE_VALUE, configurationSource.retrieve(String.class));
+        
+        // The old value is released once a later refresh succeeds
+        doNothing().when(valueChangeListener).onChange(eq(CHANGED_VALUE), eq(THE_VALUE));
+        configurationSource.refresh(latest);
+        verify(deltaValueInterceptor).released(eq(THE_VALUE));
+    }
+    
+    /**
+     * When only some groups fail in phase two, the groups that succeeded keep running on their new values and release
+     * their old ones, while the failed groups keep their old values.
+     */
+    @Test
+    public void testRefreshPartialPhaseTwoFailure() throws Exception {
+        when(deltaValueInterceptor.created(any())).then(returnsFirstArg());
+        when(defaultConfigurationSource.isAvailable(eq(Integer.class))).thenReturn(Boolean.TRUE);
+        when(defaultConfigurationSource.retrieve(eq(Integer.class))).thenReturn(Integer.valueOf(1));
+        
+        ValueChangeListener<String> goodListener = mock(ValueChangeListener.class);
+        SingleValueDefinition<String> goodValue = new SingleValueDefinition<String>(String.class, goodListener);
+        configurationSource.register(new ValueDefinitionGroup("Good", 
+                Arrays.<ValueDefinition<?, ?>>asList(goodValue), null), true);
+        
+        ValueChangeListener<Integer> badListener = mock(ValueChangeListener.class);
+        SingleValueDefinition<Integer> badValue = new SingleValueDefinition<Integer>(Integer.class, badListener);
+        configurationSource.register(new ValueDefinitionGroup("Bad", 
+                Arrays.<ValueDefinition<?, ?>>asList(badValue), null), true);
+        
+        ConfigurationSource latest = mock(ConfigurationSource.class);
+        when(latest.isAvailable(any(Class.class))).thenReturn(Boolean.TRUE);
+        when(latest.retrieve(eq(String.class))).thenReturn(CHANGED_VALUE);
+        when(latest.retrieve(eq(Integer.class))).thenReturn(Integer.valueOf(2));
+        doThrow(new IllegalStateException("Rejected")).when(badListener).onChange(eq(Integer.valueOf(2)), eq(Integer.valueOf(1)));
+        
+        try {
+            configurationSource.refresh(latest);
+            fail("Expected phase two to fail");
+        } catch (ChangeConfigurationException e) {
+            // Expected
+        }
+        verify(goodListener).onChange(eq(CHANGED_VALUE), eq(THE_VALUE));
+        // The good group is running on its new value, so only its old one is released
+        verify(deltaValueInterceptor).released(eq(THE_VALUE));
+        verify(deltaValueInterceptor, never()).released(eq(CHANGED_VALUE));
+        // The bad group keeps its old value
+        verify(deltaValueInterceptor).released(eq(Integer.valueOf(2)));
+        verify(deltaValueInterceptor, never()).released(eq(Integer.valueOf(1)));
+        
+        // The live values are the ones released on shutdown
+        configurationSource.shutdown();
+        verify(deltaValueInterceptor).released(eq(CHANGED_VALUE));
+        verify(deltaValueInterceptor).released(eq(Integer.valueOf(1)));
+    }
+    
+    /**
+     * The same instance is only retained across a refresh when conversions to its type are cached.
+     */
+    @Test
+    public void testSameInstanceRetainedOnlyWhenCached() throws Exception {
+        ValueChangeListener<String> valueChangeListener = mock(ValueChangeListener.class);
+        SingleValueDefinition<String> valueDefinition = new SingleValueDefinition<String>(String.class, valueChangeListener);
+        when(deltaValueInterceptor.created(eq(THE_VALUE))).thenReturn(THE_VALUE);
+        configurationSource.register(valueDefinition, true);
+        
+        configurationSource.refresh(defaultConfigurationSource);
+        verify(deltaValueInterceptor, times(2)).created(eq(THE_VALUE));
+        verify(deltaValueInterceptor).released(eq(THE_VALUE));
+        
+        configurationSource.setConversionCache(new ConversionCache(Collections.<Class<?>>singleton(String.class)));
+        configurationSource.refresh(defaultConfigurationSource);
+        verify(deltaValueInterceptor, times(2)).created(eq(THE_VALUE));
+        verify(deltaValueInterceptor).released(eq(THE_VALUE));
+    }
+    
     @Test(expected=IllegalArgumentException.class)
     public void testSetDeltaOperationsNull() {
         configurationSource.setDeltaOperations(null);
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.core.snapshot;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/**
+ * CoalescingRefresher Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CoalescingRefresherTest {
+
+    @Mock
+    private SnapshotBasedConfigurationService configurationService;
+    
+    @Test
+    public void testBurstCoalesced() throws Exception {
+        CoalescingRefresher refresher = new CoalescingRefresher(configurationService, 200, 5000);
+        for (int i = 0; i < 5; i++) {
+            refresher.run();
+            Thread.sleep(20);
+        }
+        verify(configurationService, never()).refresh();
+        Thread.sleep(600);
+        verify(configurationService, times(1)).refresh();
+        assertEquals(5, refresher.getTriggerCount());
+        assertEquals(1, refresher.getRefreshCount());
+        assertEquals(4, refresher.getCoalescedTriggerCount());
+        assertEquals(5, refresher.getLastTriggersPerRefresh());
+        assertEquals(5.0, refresher.getAverageTriggersPerRefresh(), 0.001);
+    }
+    
+    @Test
+    public void testMaxDelayPreventsStarvation() throws Exception {
+        CoalescingRefresher refresher = new CoalescingRefresher(configurationService, 200, 400);
+        long end = System.currentTimeMillis() + 1500;
+        while (System.currentTimeMillis() < end) {
+            refresher.run();
+            Thread.sleep(50);
+        }
+        // Triggers never stopped for the quiet period, but the max delay forced refreshes
+        assertTrue(refresher.getRefreshCount() >= 2);
+    }
+    
+    @Test
+    public void testRefreshFailureDoesNotEscape() throws Exception {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        doThrow(new IllegalStateException("Broken")).when(configurationService).refresh();
+        CoalescingRefresher refresher = new CoalescingRefresher(configurationService, 0, 0, scheduler);
+        refresher.run();
+        // Nobody waits on the scheduled refresh, so the failure is logged rather than thrown
+        refresher.refresh();
+        verify(configurationService, times(1)).refresh();
+        assertEquals(1, refresher.getRefreshCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxDelayLessThanQuietPeriod() {
+        new CoalescingRefresher(configurationService, 500, 100);
+    }
+}
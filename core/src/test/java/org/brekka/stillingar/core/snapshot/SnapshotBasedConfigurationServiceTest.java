@@ -16,6 +16,7 @@
 
 package org.brekka.stillingar.core.snapshot;
 
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 import java.util.Collections;
@@ -23,6 +24,8 @@ import java.util.Collections;
 import org.brekka.stillingar.api.ConfigurationException;
 import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.core.ChangeConfigurationException;
+import org.brekka.stillingar.core.SingleValueDefinition;
+import org.brekka.stillingar.core.ValueChangeListener;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
@@ -75,4 +78,48 @@ public class SnapshotBasedConfigurationServiceTest {
         verify(snapshotEventHandler).initialConfigure(eq(initialSnapshot), isNull(ChangeConfigurationException.class));
     }
     
+    @Test
+    public void testRollbackReappliesRetainedSnapshot() throws Exception {
+        when(snapshotManager.retrieveInitial()).thenReturn(initialSnapshot);
+        when(initialSnapshot.getSource()).thenReturn(snapshotConfigurationSource);
+        when(snapshotConfigurationSource.isAvailable("//value")).thenReturn(Boolean.TRUE);
+        when(snapshotConfigurationSource.retrieve("//value", String.class)).thenReturn("initial");
+        
+        Snapshot updatedSnapshot = mock(Snapshot.class);
+        ConfigurationSource updatedSource = mock(ConfigurationSource.class);
+        when(updatedSnapshot.getSource()).thenReturn(updatedSource);
+        when(updatedSource.isAvailable("//value")).thenReturn(Boolean.TRUE);
+        when(updatedSource.retrieve("//value", String.class)).thenReturn("updated");
+        when(snapshotManager.retrieveUpdated()).thenReturn(updatedSnapshot);
+        
+        source = new SnapshotBasedConfigurationService(snapshotManager, true, defaultConfigurationSource, snapshotEventHandler);
+        final String[] holder = new String[1];
+        source.register(new SingleValueDefinition<String>(String.class, "//value", new ValueChangeListener<String>() {
+            @Override
+            public void onChange(String newValue, String oldValue) {
+                holder[0] = newValue;
+            }
+        }), true);
+        assertEquals("initial", holder[0]);
+        
+        source.refresh();
+        assertEquals("updated", holder[0]);
+        SnapshotHistory history = source.getSnapshotHistory();
+        assertEquals(2, history.getOccupancy());
+        assertEquals(2, history.getCurrentGeneration());
+        
+        source.rollbackTo(1);
+        assertEquals("initial", holder[0]);
+        assertEquals(1, history.getCurrentGeneration());
+        verify(snapshotManager, times(1)).retrieveUpdated();
+        verify(snapshotEventHandler).refreshConfigure(initialSnapshot, null);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testRollbackToUnknownGeneration() throws Exception {
+        when(snapshotManager.retrieveInitial()).thenReturn(initialSnapshot);
+        when(initialSnapshot.getSource()).thenReturn(snapshotConfigurationSource);
+        source = new SnapshotBasedConfigurationService(snapshotManager, defaultConfigurationSource);
+        source.rollbackTo(7);
+    }
 }
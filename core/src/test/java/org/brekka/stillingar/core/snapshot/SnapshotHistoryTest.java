@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.core.snapshot;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * SnapshotHistory Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class SnapshotHistoryTest {
+
+    @Test
+    public void evictsOldestBeyondCapacity() {
+        SnapshotHistory history = new SnapshotHistory(2, Long.MAX_VALUE);
+        Snapshot first = mock(Snapshot.class);
+        Snapshot second = mock(Snapshot.class);
+        Snapshot third = mock(Snapshot.class);
+        assertEquals(1, history.record(first));
+        assertEquals(2, history.record(second));
+        assertEquals(3, history.record(third));
+        
+        assertEquals(Arrays.asList(2L, 3L), history.getGenerations());
+        assertNull(history.get(1));
+        assertSame(second, history.get(2));
+        assertEquals(2, history.getOccupancy());
+        assertEquals(1, history.getEvictionCount());
+        assertEquals(3, history.getCurrentGeneration());
+    }
+    
+    @Test
+    public void evictsToStayWithinByteLimit() {
+        SnapshotHistory history = new SnapshotHistory(4, 100);
+        history.record(measured(40));
+        history.record(measured(40));
+        assertEquals(80, history.getRetainedBytes());
+        history.record(measured(40));
+        assertEquals(Arrays.asList(2L, 3L), history.getGenerations());
+        assertEquals(80, history.getRetainedBytes());
+        
+        // Always keeps the current, even if too large
+        history.record(measured(500));
+        assertEquals(Arrays.asList(4L), history.getGenerations());
+        assertEquals(500, history.getRetainedBytes());
+    }
+    
+    @Test
+    public void shrinkKeepsNewest() {
+        SnapshotHistory history = new SnapshotHistory(4, Long.MAX_VALUE);
+        for (int i = 0; i < 6; i++) {
+            history.record(mock(Snapshot.class));
+        }
+        assertEquals(Arrays.asList(3L, 4L, 5L, 6L), history.getGenerations());
+        history.setLimits(2, Long.MAX_VALUE);
+        assertEquals(Arrays.asList(5L, 6L), history.getGenerations());
+        history.record(mock(Snapshot.class));
+        assertEquals(Arrays.asList(6L, 7L), history.getGenerations());
+        assertEquals(2, history.getCapacity());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void markCurrentUnknown() {
+        SnapshotHistory history = new SnapshotHistory();
+        history.record(mock(Snapshot.class));
+        history.markCurrent(5);
+    }
+    
+    private static Snapshot measured(long length) {
+        MeasurableSnapshot snapshot = mock(MeasurableSnapshot.class);
+        when(snapshot.getContentLength()).thenReturn(length);
+        return snapshot;
+    }
+}
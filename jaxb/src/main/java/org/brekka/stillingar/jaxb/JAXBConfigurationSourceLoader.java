@@ -39,6 +39,7 @@ import org.brekka.stillingar.api.ConfigurationException;
 import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.api.ConfigurationSourceLoader;
 import org.brekka.stillingar.core.conversion.ConversionManager;
+import org.brekka.stillingar.core.conversion.ConverterCatalogue;
 import org.brekka.stillingar.core.conversion.TemporalAdapter;
 import org.brekka.stillingar.core.conversion.TypeConverter;
 import org.brekka.stillingar.core.conversion.TypeConverterListBuilder;
@@ -80,7 +81,7 @@ public class JAXBConfigurationSourceLoader implements ConfigurationSourceLoader
     }
     
     public JAXBConfigurationSourceLoader(String contextPath, List<URL> schemas, DefaultNamespaceContext namespaceContext) {
-        this(contextPath, schemas, namespaceContext, new ConversionManager(prepareConverters()));
+        this(contextPath, schemas, namespaceContext, new ConversionManager(defaultConverters()));
     }
     
     /**
@@ -160,6 +161,20 @@ public class JAXBConfigurationSourceLoader implements ConfigurationSourceLoader
         } catch (IOException e) { }
     }
     
+    /**
+     * The default converters, shared via the {@link ConverterCatalogue} so they are only prepared once per process.
+     * 
+     * @return the immutable list of default converters
+     */
+    public static List<TypeConverter<?>> defaultConverters() {
+        return ConverterCatalogue.get(JAXBConfigurationSourceLoader.class.getName(), new ConverterCatalogue.Source() {
+            @Override
+            public List<TypeConverter<?>> create() {
+                return prepareConverters();
+            }
+        });
+    }
+    
     public static List<TypeConverter<?>> prepareConverters() {
         TemporalAdapter temporalAdapter = new JAXBTemporalAdapter();
         return new TypeConverterListBuilder(DOMConfigurationSourceLoader.prepareConverters(temporalAdapter))
@@ -0,0 +1,521 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.processor;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+
+import org.brekka.stillingar.api.annotations.ConfigurationListener;
+import org.brekka.stillingar.api.annotations.Configured;
+
+/**
+ * Generates a <code>ConfiguredBinder</code> for each type that declares {@link Configured} fields/methods or a
+ * {@link ConfigurationListener} method. The binder is placed in the same package as the type and assigns values
+ * directly, so <code>ConfigurationBeanPostProcessor</code> does not need to use reflection to bind instances of the
+ * type.
+ * 
+ * Members that cannot be accessed directly from the package of the type (private, final or static fields and private
+ * methods, or package-private members inherited from another package) prevent the binder from being generated, as
+ * do {@link Configured}/{@link ConfigurationListener} methods declared by a super type. A note
+ * is issued and the type will simply be bound via reflection at runtime as before. Invalid annotation usage that would
+ * fail at runtime anyway is reported as a compilation error.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+@SupportedAnnotationTypes({ 
+    "org.brekka.stillingar.api.annotations.Configured", 
+    "org.brekka.stillingar.api.annotations.ConfigurationListener" 
+})
+public class ConfiguredBinderProcessor extends AbstractProcessor {
+
+    /**
+     * Appended to the binary name of the type to form the name of its binder, must match
+     * <code>ConfiguredBinder.CLASS_SUFFIX</code>.
+     */
+    static final String CLASS_SUFFIX = "$$StillingarBinder";
+    
+    private static final String BINDER = "org.brekka.stillingar.spring.bpp.ConfiguredBinder";
+    
+    private static final String MEMBER = "org.brekka.stillingar.spring.bpp.BinderMember";
+    
+    private static final String QUALIFIER = "org.springframework.beans.factory.annotation.Qualifier";
+    
+    /* (non-Javadoc)
+     * @see javax.annotation.processing.AbstractProcessor#getSupportedSourceVersion()
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+    
+    /* (non-Javadoc)
+     * @see javax.annotation.processing.AbstractProcessor#process(java.util.Set, javax.annotation.processing.RoundEnvironment)
+     */
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> types = new LinkedHashSet<TypeElement>();
+        collect(roundEnv.getElementsAnnotatedWith(Configured.class), types);
+        collect(roundEnv.getElementsAnnotatedWith(ConfigurationListener.class), types);
+        for (TypeElement type : types) {
+            BinderModel model = model(type);
+            if (model != null) {
+                write(model);
+            }
+        }
+        // Leave the annotations available to other processors
+        return false;
+    }
+    
+    private static void collect(Set<? extends Element> elements, Set<TypeElement> types) {
+        for (Element element : elements) {
+            if (element.getKind() == ElementKind.CLASS) {
+                types.add((TypeElement) element);
+            } else if (element.getKind() == ElementKind.FIELD
+                    || element.getKind() == ElementKind.METHOD) {
+                Element enclosing = element.getEnclosingElement();
+                if (enclosing.getKind() == ElementKind.CLASS) {
+                    types.add((TypeElement) enclosing);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Build the model of the binder for the type.
+     * 
+     * @param type
+     *            the type to bind
+     * @return the model, or null if no binder can be generated for the type.
+     */
+    private BinderModel model(TypeElement type) {
+        Set<Modifier> modifiers = type.getModifiers();
+        if (modifiers.contains(Modifier.ABSTRACT)) {
+            return null;
+        }
+        if (modifiers.contains(Modifier.PRIVATE)
+                || type.getNestingKind() == NestingKind.LOCAL
+                || type.getNestingKind() == NestingKind.ANONYMOUS) {
+            return skip(type, type, "the type is not accessible from its package");
+        }
+        String packageName = packageOf(type);
+        String typeName = erasure(type.asType());
+        BinderModel model = new BinderModel(type, packageName, typeName);
+        
+        // Fields of the whole hierarchy
+        TypeElement inspect = type;
+        while (inspect != null) {
+            for (VariableElement field : ElementFilter.fieldsIn(inspect.getEnclosedElements())) {
+                AnnotationMirror configured = annotation(field, Configured.class.getName());
+                if (configured == null) {
+                    continue;
+                }
+                Set<Modifier> fieldModifiers = field.getModifiers();
+                if (fieldModifiers.contains(Modifier.PRIVATE)
+                        || fieldModifiers.contains(Modifier.FINAL)
+                        || fieldModifiers.contains(Modifier.STATIC)) {
+                    return skip(type, field, format("the field '%s' is private, final or static", field));
+                }
+                if (!accessible(inspect, fieldModifiers, packageName)) {
+                    return skip(type, field, format("the field '%s' is not accessible from package '%s'", 
+                            field, packageName));
+                }
+                ValueShape shape = shape(field.asType(), field);
+                if (shape == null) {
+                    return null;
+                }
+                String target = format("((%s) bean).%s", erasure(inspect.asType()), field.getSimpleName());
+                model.members.add(format("%s.field(%s, %s, %s.class, %s.ValueKind.%s)", MEMBER, 
+                        literal(field.getSimpleName().toString()), literal(value(configured)),
+                        shape.valueType, MEMBER, shape.valueKind));
+                model.assignments.add(format("%s = (%s) value;", target, erasure(field.asType())));
+            }
+            inspect = superclass(inspect);
+        }
+        
+        // Like the reflective binding, only the methods declared by the type itself are considered
+        TypeElement superType = superclass(type);
+        while (superType != null) {
+            for (ExecutableElement method : ElementFilter.methodsIn(superType.getEnclosedElements())) {
+                if (annotation(method, Configured.class.getName()) != null
+                        || annotation(method, ConfigurationListener.class.getName()) != null) {
+                    return skip(type, method, format("the method '%s' is inherited from '%s'", 
+                            method, superType.getQualifiedName()));
+                }
+            }
+            superType = superclass(superType);
+        }
+        
+        // Methods declared by the type, in name order
+        List<ExecutableElement> methods = new ArrayList<ExecutableElement>(
+                ElementFilter.methodsIn(type.getEnclosedElements()));
+        Collections.sort(methods, new Comparator<ExecutableElement>() {
+            @Override
+            public int compare(ExecutableElement o1, ExecutableElement o2) {
+                return o1.getSimpleName().toString().compareTo(o2.getSimpleName().toString());
+            }
+        });
+        ExecutableElement listenerMethod = null;
+        for (ExecutableElement method : methods) {
+            AnnotationMirror configured = annotation(method, Configured.class.getName());
+            boolean listener = annotation(method, ConfigurationListener.class.getName()) != null;
+            if (!listener && configured == null) {
+                continue;
+            }
+            if (method.getModifiers().contains(Modifier.PRIVATE)
+                    || method.getModifiers().contains(Modifier.STATIC)) {
+                return skip(type, method, format("the method '%s' is private or static", method));
+            }
+            List<? extends VariableElement> parameters = method.getParameters();
+            if (listener) {
+                if (listenerMethod != null) {
+                    error(method, "Unable to create a configuration listener for the method '%s' (type '%s') " +
+                            "as it already contains a configuration listener on the method '%s'", 
+                            method.getSimpleName(), typeName, listenerMethod.getSimpleName());
+                    return null;
+                }
+                listenerMethod = method;
+                StringBuilder descriptor = new StringBuilder();
+                StringBuilder invocation = new StringBuilder();
+                for (int i = 0; i < parameters.size(); i++) {
+                    VariableElement parameter = parameters.get(i);
+                    String descriptorParam = listenerParameter(parameter);
+                    if (descriptorParam == null) {
+                        return null;
+                    }
+                    descriptor.append(", ").append(descriptorParam);
+                    if (i > 0) {
+                        invocation.append(", ");
+                    }
+                    invocation.append(format("(%s) args[%d]", erasure(parameter.asType()), i));
+                }
+                model.members.add(format("%s.listener(%s%s)", MEMBER, 
+                        literal(method.getSimpleName().toString()), descriptor));
+                model.listenerInvocation = format("bean.%s(%s);", method.getSimpleName(), invocation);
+            } else {
+                if (parameters.size() != 1) {
+                    error(method, "The method '%s' does not appear to be a setter. "
+                            + "A bean setter method should take only a single parameter.", method);
+                    return null;
+                }
+                TypeMirror parameterType = parameters.get(0).asType();
+                ValueShape shape = shape(parameterType, method);
+                if (shape == null) {
+                    return null;
+                }
+                model.members.add(format("%s.setter(%s, %s, %s.class, %s.ValueKind.%s)", MEMBER, 
+                        literal(method.getSimpleName().toString()), literal(value(configured)),
+                        shape.valueType, MEMBER, shape.valueKind));
+                model.assignments.add(format("bean.%s((%s) value);", method.getSimpleName(), erasure(parameterType)));
+            }
+        }
+        return model;
+    }
+    
+    /**
+     * @return the descriptor expression of a listener parameter, or null if it is invalid.
+     */
+    private String listenerParameter(VariableElement parameter) {
+        TypeMirror type = parameter.asType();
+        boolean list = isType(type, "java.util.List");
+        String elementType = erasure(type);
+        if (list) {
+            elementType = elementType(type, parameter);
+            if (elementType == null) {
+                return null;
+            }
+        }
+        AnnotationMirror configured = annotation(parameter, Configured.class.getName());
+        if (configured != null) {
+            return format("%s.Parameter.configured(%s.class, %b, %s)", MEMBER, elementType, list, 
+                    literal(value(configured)));
+        }
+        AnnotationMirror qualifier = annotation(parameter, QUALIFIER);
+        return format("%s.Parameter.bean(%s.class, %b, %s)", MEMBER, elementType, list, 
+                (qualifier != null ? literal(value(qualifier)) : "null"));
+    }
+    
+    /**
+     * Determine how the value of a field/setter of the specified type will be assigned.
+     * 
+     * @return the shape, or null if the type is invalid.
+     */
+    private ValueShape shape(TypeMirror type, Element element) {
+        if (isType(type, "java.util.List")) {
+            String elementType = elementType(type, element);
+            return (elementType != null ? new ValueShape(elementType, "LIST") : null);
+        }
+        if (isType(type, "java.util.EnumSet")) {
+            String elementType = elementType(type, element);
+            return (elementType != null ? new ValueShape(elementType, "ENUM_SET") : null);
+        }
+        if (isType(type, "java.util.Set")) {
+            List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+            if (arguments.size() == 1 
+                    && arguments.get(0).getKind() == TypeKind.DECLARED
+                    && ((DeclaredType) arguments.get(0)).asElement().getKind() == ElementKind.ENUM) {
+                return new ValueShape(erasure(arguments.get(0)), "ENUM_SET");
+            }
+        }
+        return new ValueShape(erasure(type), "SINGLE");
+    }
+    
+    private String elementType(TypeMirror type, Element element) {
+        List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+        if (arguments.size() != 1) {
+            error(element, "Not a parameterised list type: '%s'", type);
+            return null;
+        }
+        TypeMirror argument = arguments.get(0);
+        if (argument.getKind() != TypeKind.DECLARED) {
+            error(element, "The element type of '%s' must be a class", type);
+            return null;
+        }
+        return erasure(argument);
+    }
+    
+    private boolean isType(TypeMirror type, String name) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        return element.getQualifiedName().contentEquals(name);
+    }
+    
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+    
+    private String packageOf(Element element) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(element);
+        return pkg.getQualifiedName().toString();
+    }
+    
+    private boolean accessible(TypeElement declaringType, Set<Modifier> modifiers, String packageName) {
+        return modifiers.contains(Modifier.PUBLIC) 
+                || packageOf(declaringType).equals(packageName);
+    }
+    
+    private static TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+        if (element.getQualifiedName().contentEquals("java.lang.Object")) {
+            return null;
+        }
+        return element;
+    }
+    
+    private static AnnotationMirror annotation(Element element, String annotationType) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement mirrorType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (mirrorType.getQualifiedName().contentEquals(annotationType)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * @return the string 'value' of the annotation, or the empty string (the default of both annotations).
+     */
+    private static String value(AnnotationMirror annotation) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry 
+                : annotation.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals("value")) {
+                return String.valueOf(entry.getValue().getValue());
+            }
+        }
+        return "";
+    }
+    
+    private BinderModel skip(TypeElement type, Element element, String reason) {
+        processingEnv.getMessager().printMessage(Kind.NOTE, format(
+                "No configured binder generated for '%s' as %s, it will be bound via reflection", 
+                type.getQualifiedName(), reason), element);
+        return null;
+    }
+    
+    private void error(Element element, String message, Object... args) {
+        processingEnv.getMessager().printMessage(Kind.ERROR, format(message, args), element);
+    }
+    
+    private void write(BinderModel model) {
+        String binaryName = processingEnv.getElementUtils().getBinaryName(model.type).toString();
+        String binderName = binaryName + CLASS_SUFFIX;
+        String simpleName = binderName.substring(binderName.lastIndexOf('.') + 1);
+        PrintWriter out = null;
+        try {
+            Writer writer = processingEnv.getFiler().createSourceFile(binderName, model.type).openWriter();
+            out = new PrintWriter(writer);
+            if (!model.packageName.isEmpty()) {
+                out.printf("package %s;%n%n", model.packageName);
+            }
+            out.printf("/**%n * Binds the configured members of {@link %s}.%n", model.typeName);
+            out.printf(" * Generated by %s, do not edit.%n */%n", getClass().getName());
+            out.printf("public final class %s implements %s<%s> {%n%n", simpleName, BINDER, model.typeName);
+            out.printf("    private static final java.util.List<%s> MEMBERS = java.util.Collections.unmodifiableList(" 
+                    + "java.util.Arrays.<%s>asList(%n", MEMBER, MEMBER);
+            for (int i = 0; i < model.members.size(); i++) {
+                out.printf("            %s%s%n", model.members.get(i), (i < model.members.size() - 1 ? "," : ""));
+            }
+            out.printf("    ));%n%n");
+            out.printf("    @Override%n");
+            out.printf("    public java.util.List<%s> getMembers() {%n        return MEMBERS;%n    }%n%n", MEMBER);
+            out.printf("    @Override%n");
+            out.printf("    @SuppressWarnings({ \"unchecked\", \"rawtypes\" })%n");
+            out.printf("    public void assign(int index, %s bean, Object value) {%n", model.typeName);
+            out.printf("        switch (index) {%n");
+            int index = 0;
+            for (int i = 0; i < model.members.size(); i++) {
+                if (model.members.get(i).startsWith(MEMBER + ".listener(")) {
+                    continue;
+                }
+                out.printf("            case %d:%n                %s%n                break;%n", 
+                        i, model.assignments.get(index++));
+            }
+            out.printf("            default:%n");
+            out.printf("                throw new IllegalArgumentException(\"No field or setter at index \" + index);%n");
+            out.printf("        }%n    }%n%n");
+            out.printf("    @Override%n");
+            out.printf("    @SuppressWarnings({ \"unchecked\", \"rawtypes\" })%n");
+            out.printf("    public void invokeListener(%s bean, Object[] args) {%n", model.typeName);
+            if (model.listenerInvocation != null) {
+                out.printf("        %s%n", model.listenerInvocation);
+            } else {
+                out.printf("        // No listener method%n");
+            }
+            out.printf("    }%n}%n");
+        } catch (IOException e) {
+            error(model.type, "Failed to write the configured binder '%s': %s", binderName, e);
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+    
+    /**
+     * @return the Java string literal for the value.
+     */
+    static String literal(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        sb.append(format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+    
+    /**
+     * The type of value and how it is assigned.
+     */
+    private static final class ValueShape {
+        private final String valueType;
+        
+        private final String valueKind;
+
+        public ValueShape(String valueType, String valueKind) {
+            this.valueType = valueType;
+            this.valueKind = valueKind;
+        }
+    }
+    
+    /**
+     * Everything needed to write the binder source.
+     */
+    private static final class BinderModel {
+        private final TypeElement type;
+        
+        private final String packageName;
+        
+        private final String typeName;
+        
+        /**
+         * Member descriptor expressions, in registration order
+         */
+        private final List<String> members = new ArrayList<String>();
+        
+        /**
+         * Assignment statements of the field/setter members, in order
+         */
+        private final List<String> assignments = new ArrayList<String>();
+        
+        private String listenerInvocation;
+
+        public BinderModel(TypeElement type, String packageName, String typeName) {
+            this.type = type;
+            this.packageName = packageName;
+            this.typeName = typeName;
+        }
+    }
+}
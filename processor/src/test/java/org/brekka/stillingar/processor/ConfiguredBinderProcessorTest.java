@@ -0,0 +1,265 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.brekka.stillingar.spring.bpp.BinderMember;
+import org.brekka.stillingar.spring.bpp.ConfiguredBinder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compiles sample beans with the {@link ConfiguredBinderProcessor} and exercises the generated binders.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ConfiguredBinderProcessorTest {
+
+    private File workDir;
+    
+    private String compilerOutput;
+    
+    @Before
+    public void setUp() throws Exception {
+        workDir = File.createTempFile("binder", "");
+        workDir.delete();
+        workDir.mkdirs();
+    }
+    
+    @After
+    public void tearDown() {
+        delete(workDir);
+    }
+    
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void testGeneratedBinder() throws Exception {
+        ClassLoader loader = compile("sample/Sample.java", 
+                "package sample;\n" +
+                "import java.util.List;\n" +
+                "import org.brekka.stillingar.api.annotations.*;\n" +
+                "public class Sample {\n" +
+                "  @Configured(\"/c:Name\") String name;\n" +
+                "  @Configured public int port;\n" +
+                "  @Configured(\"//c:\\\"Item\\\"\") List<String> items;\n" +
+                "  String host; long timeout;\n" +
+                "  @Configured(\"/c:Host\") public void setHost(String host) { this.host = host; }\n" +
+                "  @ConfigurationListener public void configure(@Configured(\"/c:Timeout\") long timeout, List<Integer> all) {\n" +
+                "    this.timeout = timeout + all.size();\n" +
+                "  }\n" +
+                "}\n");
+        Class<?> beanType = loader.loadClass("sample.Sample");
+        ConfiguredBinder binder = (ConfiguredBinder) loader.loadClass(
+                "sample.Sample" + ConfiguredBinder.CLASS_SUFFIX).newInstance();
+        
+        List<BinderMember> members = binder.getMembers();
+        assertEquals(5, members.size());
+        BinderMember name = members.get(0);
+        assertEquals(BinderMember.Kind.FIELD, name.getKind());
+        assertEquals("name", name.getName());
+        assertEquals("/c:Name", name.getExpression());
+        assertEquals(String.class, name.getValueType());
+        BinderMember port = members.get(1);
+        assertEquals("", port.getExpression());
+        assertEquals(int.class, port.getValueType());
+        BinderMember items = members.get(2);
+        assertEquals("//c:\"Item\"", items.getExpression());
+        assertEquals(BinderMember.ValueKind.LIST, items.getValueKind());
+        assertEquals(String.class, items.getValueType());
+        BinderMember listener = members.get(3);
+        assertEquals(BinderMember.Kind.LISTENER, listener.getKind());
+        assertEquals(2, listener.getParameters().size());
+        assertTrue(listener.getParameters().get(0).isConfigured());
+        assertEquals("/c:Timeout", listener.getParameters().get(0).getExpression());
+        assertFalse(listener.getParameters().get(1).isConfigured());
+        assertTrue(listener.getParameters().get(1).isList());
+        assertEquals(Integer.class, listener.getParameters().get(1).getType());
+        assertNull(listener.getParameters().get(1).getQualifier());
+        BinderMember host = members.get(4);
+        assertEquals(BinderMember.Kind.SETTER, host.getKind());
+        assertEquals("setHost", host.getName());
+        
+        Object bean = beanType.newInstance();
+        binder.assign(0, bean, "test");
+        binder.assign(1, bean, 8080);
+        binder.assign(2, bean, Arrays.asList("a", "b"));
+        binder.assign(4, bean, "localhost");
+        binder.invokeListener(bean, new Object[] { 10L, Arrays.asList(1, 2) });
+        assertEquals("test", field(bean, "name"));
+        assertEquals(8080, field(bean, "port"));
+        assertEquals(Arrays.asList("a", "b"), field(bean, "items"));
+        assertEquals("localhost", field(bean, "host"));
+        assertEquals(12L, field(bean, "timeout"));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void testAssignListenerIndex() throws Exception {
+        ClassLoader loader = compile("sample/Listens.java", 
+                "package sample;\n" +
+                "import org.brekka.stillingar.api.annotations.*;\n" +
+                "public class Listens {\n" +
+                "  @ConfigurationListener public void configure() { }\n" +
+                "}\n");
+        ConfiguredBinder binder = (ConfiguredBinder) loader.loadClass(
+                "sample.Listens" + ConfiguredBinder.CLASS_SUFFIX).newInstance();
+        binder.assign(0, loader.loadClass("sample.Listens").newInstance(), null);
+    }
+    
+    @Test
+    public void testPrivateFieldFallsBackToReflection() throws Exception {
+        ClassLoader loader = compile("sample/Hidden.java", 
+                "package sample;\n" +
+                "import org.brekka.stillingar.api.annotations.*;\n" +
+                "public class Hidden {\n" +
+                "  @Configured private String name;\n" +
+                "}\n");
+        loader.loadClass("sample.Hidden");
+        try {
+            loader.loadClass("sample.Hidden" + ConfiguredBinder.CLASS_SUFFIX);
+            throw new AssertionError("No binder expected");
+        } catch (ClassNotFoundException e) {
+            // Expected
+        }
+        assertTrue(compilerOutput, compilerOutput.contains("bound via reflection"));
+    }
+    
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void testNoListenerIsNoOp() throws Exception {
+        ClassLoader loader = compile("sample/Plain.java",
+                "package sample;\n" +
+                "import org.brekka.stillingar.api.annotations.*;\n" +
+                "public class Plain {\n" +
+                "  @Configured public String name;\n" +
+                "}\n");
+        ConfiguredBinder binder = (ConfiguredBinder) loader.loadClass(
+                "sample.Plain" + ConfiguredBinder.CLASS_SUFFIX).newInstance();
+        binder.invokeListener(loader.loadClass("sample.Plain").newInstance(), new Object[0]);
+    }
+
+    @Test
+    public void testInheritedMethodFallsBackToReflection() throws Exception {
+        ClassLoader loader = compile("sample/Child.java",
+                "package sample;\n" +
+                "import org.brekka.stillingar.api.annotations.*;\n" +
+                "class Base {\n" +
+                "  @Configured public void setName(String name) { }\n" +
+                "}\n" +
+                "public class Child extends Base {\n" +
+                "  @Configured public String host;\n" +
+                "}\n");
+        loader.loadClass("sample.Base" + ConfiguredBinder.CLASS_SUFFIX);
+        try {
+            loader.loadClass("sample.Child" + ConfiguredBinder.CLASS_SUFFIX);
+            throw new AssertionError("No binder expected");
+        } catch (ClassNotFoundException e) {
+            // Expected
+        }
+        assertTrue(compilerOutput, compilerOutput.contains("is inherited from 'sample.Base'"));
+    }
+
+    @Test
+    public void testDuplicateListenerIsError() throws Exception {
+        assertNull(compile("sample/Twice.java", 
+                "package sample;\n" +
+                "import org.brekka.stillingar.api.annotations.*;\n" +
+                "public class Twice {\n" +
+                "  @ConfigurationListener public void a() { }\n" +
+                "  @ConfigurationListener public void b() { }\n" +
+                "}\n"));
+        assertTrue(compilerOutput, compilerOutput.contains("already contains a configuration listener"));
+    }
+    
+    @Test
+    public void testLiteral() {
+        assertEquals("\"a\\\"b\\\\c\\n\\u00e9\"", ConfiguredBinderProcessor.literal("a\"b\\c\n\u00e9"));
+    }
+    
+    /**
+     * @return the class loader for the compiled classes, or null if compilation failed.
+     */
+    private ClassLoader compile(String path, String source) throws IOException {
+        File sourceFile = new File(workDir, path);
+        sourceFile.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(sourceFile);
+        try {
+            writer.write(source);
+        } finally {
+            writer.close();
+        }
+        File classes = new File(workDir, "classes");
+        classes.mkdirs();
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        try {
+            Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjects(sourceFile);
+            List<String> options = Arrays.asList(
+                    "-processor", ConfiguredBinderProcessor.class.getName(),
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-d", classes.getPath(),
+                    "-s", classes.getPath());
+            StringWriter output = new StringWriter();
+            boolean success = compiler.getTask(output, fileManager, null, options, 
+                    Collections.<String>emptyList(), units).call();
+            compilerOutput = output.toString();
+            if (!success) {
+                return null;
+            }
+        } finally {
+            fileManager.close();
+        }
+        return new URLClassLoader(new URL[] { classes.toURI().toURL() }, getClass().getClassLoader());
+    }
+    
+    private static Object field(Object bean, String name) throws Exception {
+        java.lang.reflect.Field field = bean.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(bean);
+    }
+    
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
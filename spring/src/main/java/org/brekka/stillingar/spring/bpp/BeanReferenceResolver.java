@@ -20,7 +20,6 @@ import java.lang.ref.WeakReference;
 
 import org.brekka.stillingar.api.annotations.ConfigurationListener;
 import org.springframework.beans.factory.BeanFactory;
-import org.springframework.beans.factory.annotation.Qualifier;
 
 /**
  * Resolves a normal Spring managed bean from a {@link BeanFactory}. This is used by the {@link ConfigurationListener}
@@ -35,16 +34,16 @@ class BeanReferenceResolver implements ParameterValueResolver {
      */
     private final WeakReference<BeanFactory> beanFactoryRef;
     /**
-     * Optional qualifier to single out the bean by name
+     * Optional qualifier value to single out the bean by name
      */
-    private final Qualifier qualifier;
+    private final String qualifier;
     /**
      * The expected bean value type
      */
     private final Class<?> type;
 
 
-    public BeanReferenceResolver(BeanFactory beanFactory, Qualifier qualifier, Class<?> type) {
+    public BeanReferenceResolver(BeanFactory beanFactory, String qualifier, Class<?> type) {
         this.beanFactoryRef = new WeakReference<BeanFactory>(beanFactory);
         this.qualifier = qualifier;
         this.type = type;
@@ -66,7 +65,7 @@ class BeanReferenceResolver implements ParameterValueResolver {
         
         Object value;
         if (qualifier != null) {
-            value = beanFactory.getBean(qualifier.value(), type);
+            value = beanFactory.getBean(qualifier, type);
         } else {
             value = beanFactory.getBean(type);
         }
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.bpp;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.brekka.stillingar.api.annotations.ConfigurationListener;
+import org.brekka.stillingar.api.annotations.Configured;
+
+/**
+ * Describes a configured member of a bean type, either resolved via reflection or declared by a generated
+ * {@link ConfiguredBinder}. Instances are immutable.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class BinderMember {
+
+    /**
+     * The kind of member
+     */
+    public enum Kind {
+        /**
+         * A {@link Configured} field
+         */
+        FIELD,
+        /**
+         * A {@link Configured} single parameter method
+         */
+        SETTER,
+        /**
+         * The {@link ConfigurationListener} method
+         */
+        LISTENER,
+    }
+    
+    /**
+     * How the resolved value is assigned to a field or setter
+     */
+    public enum ValueKind {
+        /**
+         * Single value
+         */
+        SINGLE,
+        /**
+         * A {@link List} of values
+         */
+        LIST,
+        /**
+         * The values as an {@link EnumSet}
+         */
+        ENUM_SET,
+    }
+    
+    private final Kind kind;
+    
+    private final String name;
+    
+    private final String expression;
+    
+    private final Class<?> valueType;
+    
+    private final ValueKind valueKind;
+    
+    private final List<Parameter> parameters;
+    
+    private BinderMember(Kind kind, String name, String expression, Class<?> valueType, ValueKind valueKind,
+            List<Parameter> parameters) {
+        this.kind = kind;
+        this.name = name;
+        this.expression = expression;
+        this.valueType = valueType;
+        this.valueKind = valueKind;
+        this.parameters = parameters;
+    }
+    
+    /**
+     * @param name
+     *            the name of the field
+     * @param expression
+     *            the {@link Configured} expression
+     * @param valueType
+     *            the type of the field, or the element type if it is a list/set.
+     * @param valueKind
+     *            how the value is assigned
+     * @return the field member
+     */
+    public static BinderMember field(String name, String expression, Class<?> valueType, ValueKind valueKind) {
+        return new BinderMember(Kind.FIELD, name, expression, valueType, valueKind, null);
+    }
+    
+    /**
+     * @param name
+     *            the name of the setter method
+     * @param expression
+     *            the {@link Configured} expression
+     * @param valueType
+     *            the type of the parameter, or the element type if it is a list/set.
+     * @param valueKind
+     *            how the value is assigned
+     * @return the setter member
+     */
+    public static BinderMember setter(String name, String expression, Class<?> valueType, ValueKind valueKind) {
+        return new BinderMember(Kind.SETTER, name, expression, valueType, valueKind, null);
+    }
+    
+    /**
+     * @param name
+     *            the name of the listener method
+     * @param parameters
+     *            the parameters of the method
+     * @return the listener member
+     */
+    public static BinderMember listener(String name, Parameter... parameters) {
+        return new BinderMember(Kind.LISTENER, name, null, null, null, 
+                Collections.unmodifiableList(Arrays.asList(parameters)));
+    }
+    
+    /**
+     * @return the kind of member
+     */
+    public Kind getKind() {
+        return kind;
+    }
+    
+    /**
+     * @return the name of the field or method
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * @return the {@link Configured} expression of a field or setter.
+     */
+    public String getExpression() {
+        return expression;
+    }
+    
+    /**
+     * @return the type of value (or list element) of a field or setter.
+     */
+    public Class<?> getValueType() {
+        return valueType;
+    }
+    
+    /**
+     * @return how the value of a field or setter is assigned.
+     */
+    public ValueKind getValueKind() {
+        return valueKind;
+    }
+    
+    /**
+     * @return the parameters of the listener method, null for other kinds.
+     */
+    public List<Parameter> getParameters() {
+        return parameters;
+    }
+    
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return String.format("%s %s", kind, name);
+    }
+    
+    /**
+     * A parameter of the listener method, which is either configured or resolved from the bean factory.
+     */
+    public static final class Parameter {
+        
+        private final Class<?> type;
+        
+        private final boolean list;
+        
+        private final String expression;
+        
+        private final String qualifier;
+        
+        private final boolean configured;
+        
+        private Parameter(Class<?> type, boolean list, String expression, String qualifier, boolean configured) {
+            this.type = type;
+            this.list = list;
+            this.expression = expression;
+            this.qualifier = qualifier;
+            this.configured = configured;
+        }
+        
+        /**
+         * @param type
+         *            the parameter type, or element type if it is a list.
+         * @param list
+         *            true if the parameter is a list
+         * @param expression
+         *            the {@link Configured} expression
+         * @return the configured parameter
+         */
+        public static Parameter configured(Class<?> type, boolean list, String expression) {
+            return new Parameter(type, list, expression, null, true);
+        }
+        
+        /**
+         * @param type
+         *            the parameter type, or element type if it is a list.
+         * @param list
+         *            true if the parameter is a list
+         * @param qualifier
+         *            the qualifier of the bean to look up, null to look up by type only.
+         * @return the bean reference parameter
+         */
+        public static Parameter bean(Class<?> type, boolean list, String qualifier) {
+            return new Parameter(type, list, null, qualifier, false);
+        }
+        
+        /**
+         * @return the type of the parameter (or list element).
+         */
+        public Class<?> getType() {
+            return type;
+        }
+        
+        /**
+         * @return true if the parameter is a list.
+         */
+        public boolean isList() {
+            return list;
+        }
+        
+        /**
+         * @return true if the value is configured, false if it comes from the bean factory.
+         */
+        public boolean isConfigured() {
+            return configured;
+        }
+        
+        /**
+         * @return the {@link Configured} expression of a configured parameter.
+         */
+        public String getExpression() {
+            return expression;
+        }
+        
+        /**
+         * @return the qualifier used to look up a bean, if any.
+         */
+        public String getQualifier() {
+            return qualifier;
+        }
+    }
+}
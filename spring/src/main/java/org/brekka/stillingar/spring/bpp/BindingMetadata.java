@@ -0,0 +1,347 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.bpp;
+
+import static java.lang.String.format;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.annotations.ConfigurationListener;
+import org.brekka.stillingar.api.annotations.Configured;
+import org.brekka.stillingar.spring.bpp.BinderMember.Kind;
+import org.brekka.stillingar.spring.bpp.BinderMember.Parameter;
+import org.brekka.stillingar.spring.bpp.BinderMember.ValueKind;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+/**
+ * The configurable members of a bean class, resolved once so that every instance of the class can be bound without
+ * inspecting the class again. Instances are immutable and so can be shared between threads.
+ * 
+ * The members are either taken from a generated {@link ConfiguredBinder}, or resolved via reflection. In the latter
+ * case fields are listed for the whole class hierarchy, followed by the setter and listener methods declared by the
+ * class itself in name order, which is the order in which their values will be registered. The {@link MethodHandle}
+ * used to assign or invoke each member is also resolved here, once per member.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+final class BindingMetadata {
+
+    /**
+     * The class these bindings were resolved from.
+     */
+    private final Class<?> beanClass;
+    
+    /**
+     * Configured fields, setter methods and the listener method, in registration order.
+     */
+    private final List<MemberBinding> members;
+    
+    /**
+     * Whether the members were obtained from a generated binder.
+     */
+    private final boolean generated;
+    
+    /**
+     * Resolve the members via reflection.
+     * 
+     * @param beanClass
+     *            the class to inspect
+     * @param beanName
+     *            the name of the bean being configured, used only in error messages.
+     * @throws ConfigurationException
+     *             if the class contains invalid configuration annotations.
+     */
+    BindingMetadata(Class<?> beanClass, String beanName) {
+        this.beanClass = beanClass;
+        this.generated = false;
+        List<MemberBinding> members = new ArrayList<MemberBinding>();
+        
+        Class<?> inpectClass = beanClass;
+        while (inpectClass != null) {
+            Field[] declaredFields = inpectClass.getDeclaredFields();
+            for (Field field : declaredFields) {
+                Configured configured = field.getAnnotation(Configured.class);
+                if (configured != null) {
+                    members.add(field(field, configured));
+                }
+            }
+            inpectClass = inpectClass.getSuperclass();
+        }
+        
+        Method listenerMethod = null;
+        Method[] declaredMethods = beanClass.getDeclaredMethods();
+        Arrays.sort(declaredMethods, new Comparator<Method>() {
+            @Override
+            public int compare(Method o1, Method o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+        for (Method method : declaredMethods) {
+            Configured configured = method.getAnnotation(Configured.class);
+            ConfigurationListener configurationListener = method.getAnnotation(ConfigurationListener.class);
+            if (configurationListener != null) {
+                if (listenerMethod != null) {
+                    throw new ConfigurationException(format(
+                            "Unable to create a configuration listener for the method '%s' on the bean '%s' (type '%s') " +
+                            "as it already contains a configuration listener on the method '%s'", 
+                            method.getName(), beanName, beanClass.getName(), listenerMethod.getName()));
+                }
+                listenerMethod = method;
+                members.add(listener(method));
+            } else if (configured != null) {
+                members.add(setter(method, configured));
+            }
+        }
+        this.members = Collections.unmodifiableList(members);
+    }
+    
+    /**
+     * Resolve the binding for a single {@link Configured} field.
+     * 
+     * @param field
+     *            the field to bind
+     * @param configured
+     *            the annotation of the field
+     * @return the binding
+     */
+    private static MemberBinding field(Field field, Configured configured) {
+        Class<?> type = field.getType();
+        Type genericType = field.getGenericType();
+        ValueKind valueKind = valueKind(type, genericType);
+        BinderMember member = BinderMember.field(field.getName(), configured.value(), 
+                valueType(type, genericType, valueKind), valueKind);
+        return new MemberBinding(member, InjectionHandles.setter(field));
+    }
+    
+    /**
+     * Resolve the binding for a single {@link Configured} setter method.
+     * 
+     * @param method
+     *            the setter method to bind
+     * @param configured
+     *            the annotation of the method
+     * @return the binding
+     * @throws ConfigurationException
+     *             if the method does not take exactly one parameter.
+     */
+    private static MemberBinding setter(Method method, Configured configured) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length != 1) {
+            throw new ConfigurationException(format("The method '%s' does not appear to be a setter. "
+                    + "A bean setter method should take only a single parameter.", method));
+        }
+        Class<?> type = parameterTypes[0];
+        Type genericType = method.getGenericParameterTypes()[0];
+        ValueKind valueKind = valueKind(type, genericType);
+        BinderMember member = BinderMember.setter(method.getName(), configured.value(), 
+                valueType(type, genericType, valueKind), valueKind);
+        return new MemberBinding(member, InjectionHandles.setter(method));
+    }
+    
+    /**
+     * Resolve the binding for a single {@link ConfigurationListener} method.
+     * 
+     * @param method
+     *            the listener method to bind
+     * @return the binding
+     */
+    private static MemberBinding listener(Method method) {
+        BinderMember member = BinderMember.listener(method.getName(), parameters(method));
+        return new MemberBinding(member, InjectionHandles.listener(method));
+    }
+    
+    /**
+     * Take the members from a generated binder.
+     * 
+     * @param beanClass
+     *            the class the binder was generated for
+     * @param binder
+     *            the generated binder
+     */
+    BindingMetadata(Class<?> beanClass, ConfiguredBinder<?> binder) {
+        this.beanClass = beanClass;
+        this.generated = true;
+        List<BinderMember> binderMembers = binder.getMembers();
+        List<MemberBinding> members = new ArrayList<MemberBinding>(binderMembers.size());
+        for (int i = 0; i < binderMembers.size(); i++) {
+            BinderMember member = binderMembers.get(i);
+            MethodHandle handle;
+            if (member.getKind() == Kind.LISTENER) {
+                handle = InjectionHandles.listener(binder, member.getParameters().size());
+            } else {
+                handle = InjectionHandles.setter(binder, i);
+            }
+            members.add(new MemberBinding(member, handle));
+        }
+        this.members = Collections.unmodifiableList(members);
+    }
+    
+    /**
+     * @return the class these bindings were resolved from.
+     */
+    Class<?> getBeanClass() {
+        return beanClass;
+    }
+    
+    /**
+     * @return the configured fields, setter methods and listener method in registration order.
+     */
+    List<MemberBinding> getMembers() {
+        return members;
+    }
+    
+    /**
+     * @return true if the members were obtained from a generated {@link ConfiguredBinder}.
+     */
+    boolean isGenerated() {
+        return generated;
+    }
+    
+    private static Parameter[] parameters(Method method) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        Type[] genericParameterTypes = method.getGenericParameterTypes();
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        Parameter[] parameters = new Parameter[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> type = parameterTypes[i];
+            boolean list = false;
+            if (type == List.class) {
+                type = listType(genericParameterTypes[i]);
+                list = true;
+            }
+            Configured configured = null;
+            Qualifier qualifier = null;
+            for (Annotation annotation : parameterAnnotations[i]) {
+                if (annotation instanceof Configured) {
+                    configured = (Configured) annotation;
+                    break;
+                } else if (annotation instanceof Qualifier) {
+                    qualifier = (Qualifier) annotation;
+                }
+            }
+            if (configured != null) {
+                parameters[i] = Parameter.configured(type, list, configured.value());
+            } else {
+                parameters[i] = Parameter.bean(type, list, (qualifier != null ? qualifier.value() : null));
+            }
+        }
+        return parameters;
+    }
+    
+    private static ValueKind valueKind(Class<?> type, Type genericType) {
+        if (type == List.class) {
+            return ValueKind.LIST;
+        }
+        if (isEnumSet(type, genericType)) {
+            return ValueKind.ENUM_SET;
+        }
+        return ValueKind.SINGLE;
+    }
+    
+    private static Class<?> valueType(Class<?> type, Type genericType, ValueKind valueKind) {
+        if (valueKind == ValueKind.SINGLE) {
+            return type;
+        }
+        return listType(genericType);
+    }
+    
+    /**
+     * Determine whether the type is an {@link EnumSet}, or a {@link Set} parameterised with an enum type, either of
+     * which will be assigned an {@link EnumSet} of the values resolved for the list.
+     * 
+     * @param type
+     *            the raw type of the field/parameter
+     * @param genericType
+     *            the generic type of the field/parameter
+     * @return true if the value should be assigned as an {@link EnumSet}.
+     */
+    private static boolean isEnumSet(Class<?> type, Type genericType) {
+        if (type == EnumSet.class) {
+            return true;
+        }
+        if (type == Set.class
+                && genericType instanceof ParameterizedType) {
+            Type elementType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+            return elementType instanceof Class
+                    && ((Class<?>) elementType).isEnum();
+        }
+        return false;
+    }
+
+    /**
+     * Identifies the type of the parameterised list.
+     * 
+     * @param listType
+     *            the list type to inspect
+     * @return the list type or null if it is not parameterised.
+     */
+    @SuppressWarnings("rawtypes")
+    private static Class<?> listType(Type listType) {
+        Class<?> type;
+        if (listType instanceof ParameterizedType) {
+            ParameterizedType pType = (ParameterizedType) listType;
+            Type[] actualTypeArguments = pType.getActualTypeArguments();
+            type = (Class) actualTypeArguments[0];
+        } else {
+            throw new ConfigurationException(String.format(
+                    "Not a parameterised list type: '%s'", listType));
+        }
+        return type;
+    }
+    
+    /**
+     * A member along with the handle that assigns the field, or invokes the setter/listener method.
+     */
+    static final class MemberBinding {
+        
+        private final BinderMember member;
+        
+        private final MethodHandle handle;
+        
+        private MemberBinding(BinderMember member, MethodHandle handle) {
+            this.member = member;
+            this.handle = handle;
+        }
+        
+        /**
+         * @return the description of the member
+         */
+        BinderMember getMember() {
+            return member;
+        }
+        
+        /**
+         * @return the handle that assigns the field, or invokes the setter/listener method.
+         */
+        MethodHandle getHandle() {
+            return handle;
+        }
+    }
+}
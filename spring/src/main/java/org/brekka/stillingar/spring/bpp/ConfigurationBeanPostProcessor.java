@@ -19,17 +19,11 @@ package org.brekka.stillingar.spring.bpp;
 import static java.lang.String.format;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -45,12 +39,13 @@ import org.brekka.stillingar.core.ValueChangeListener;
 import org.brekka.stillingar.core.ValueDefinition;
 import org.brekka.stillingar.core.ValueDefinitionGroup;
 import org.brekka.stillingar.core.ValueListDefinition;
+import org.brekka.stillingar.spring.bpp.BinderMember.Parameter;
+import org.brekka.stillingar.spring.bpp.BindingMetadata.MemberBinding;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.core.Ordered;
 
@@ -62,6 +57,11 @@ import org.springframework.core.Ordered;
  * If the {@link ConfigurationSource} passed to this post-processor is also an instance of {@link ConfigurationService}
  * then all configuration will be registered to receive updates from the configuration source.
  * 
+ * The members of each bean class are resolved once into a {@link BindingMetadata} that is shared by all instances of
+ * the class. As a result the former <code>processField</code>, <code>processSetterMethod</code> and
+ * <code>processListenerMethod</code> extension points no longer exist, subclasses that overrode them should instead
+ * override {@link #prepareValueGroup(String, Object)}.
+ * 
  * @author Andrew Taylor
  */
 public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFactoryAware, DisposableBean, Ordered {
@@ -102,7 +102,40 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
      * A cache of the {@link ValueDefinitionGroup} assigned to a given type whose instances will not receive updates.
      * This is the case where a bean definition is non-singleton or the {@link ConfigurationSource} is immutable.
      */
-    private Map<Class<?>, ValueDefinitionGroup> onceOnlyDefinitionCache = new HashMap<Class<?>, ValueDefinitionGroup>();
+    private final ConcurrentMap<Class<?>, ValueDefinitionGroup> onceOnlyDefinitionCache = 
+            new ConcurrentHashMap<Class<?>, ValueDefinitionGroup>();
+    
+    /**
+     * The configurable members of each bean class encountered, resolved once and then reused to bind every instance
+     * of that class.
+     */
+    private final ConcurrentMap<Class<?>, BindingMetadata> bindingMetadataCache = 
+            new ConcurrentHashMap<Class<?>, BindingMetadata>();
+    
+    /**
+     * Whether binders generated by the annotation processor should be used when available.
+     */
+    private boolean useGeneratedBinders = true;
+    
+    /**
+     * Values resolved for once-only groups, reused for every instance created within the same configuration generation.
+     */
+    private final PrototypeValueCache prototypeValueCache;
+    
+    /**
+     * Whether the values of once-only groups should be cached per configuration generation.
+     */
+    private boolean cachePrototypeValues;
+    
+    /**
+     * Whether the {@link #prototypeValueCache} has been registered to be notified of refreshes.
+     */
+    private volatile boolean prototypeValueCacheRegistered;
+    
+    /**
+     * Whether each bean class encountered carries the marker annotation.
+     */
+    private final ConcurrentMap<Class<?>, Boolean> markedClassCache = new ConcurrentHashMap<Class<?>, Boolean>();
     
     /**
      * @param name
@@ -114,6 +147,7 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
     public ConfigurationBeanPostProcessor(String name, ConfigurationSource configurationSource) {
         this.name = name;
         this.configurationSource = configurationSource;
+        this.prototypeValueCache = new PrototypeValueCache(configurationSource);
     }
 
     /**
@@ -156,12 +190,15 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
                 }
             }
             registeredValueGroups.clear();
+            prototypeValueCacheRegistered = false;
         }
     }
 
     /**
      * When configuration values are encountered, they will be retrieved and applied only. No updates will be performed.
-     * Listeners will be called once to ensure we don't break their contract.
+     * Listeners will be called once to ensure we don't break their contract. If enabled via
+     * {@link #setCachePrototypeValues(boolean)}, the values are only retrieved for the first instance of a given type
+     * after each configuration refresh, with subsequent instances being assigned the same values.
      * 
      * @param bean
      *            the bean being configured
@@ -173,33 +210,32 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
         Class<? extends Object> targetClass = bean.getClass();
         ValueDefinitionGroup valueDefinitionGroup = onceOnlyDefinitionCache.get(targetClass);
         if (valueDefinitionGroup == null) {
-            synchronized (onceOnlyDefinitionCache) {
-                /*
-                 * Capture the type of the target being configured. We don't want to use the bean itself as the
-                 * definition will be reused for other instances, none of which should be updated.
-                 */
-                OnceOnlyTypeHolder target = new OnceOnlyTypeHolder(targetClass);
-                valueDefinitionGroup = prepareValueGroup(beanName, target);
-                // Cache the type.
-                onceOnlyDefinitionCache.put(targetClass, valueDefinitionGroup);
+            /*
+             * Capture the type of the target being configured. We don't want to use the bean itself as the
+             * definition will be reused for other instances, none of which should be updated.
+             */
+            OnceOnlyTypeHolder target = new OnceOnlyTypeHolder(targetClass);
+            valueDefinitionGroup = prepareValueGroup(beanName, target);
+            // Cache the type, keeping the first should another thread have got there too.
+            ValueDefinitionGroup existing = onceOnlyDefinitionCache.putIfAbsent(targetClass, valueDefinitionGroup);
+            if (existing != null) {
+                valueDefinitionGroup = existing;
             }
         }
+        ConfigurationSource source;
+        Object[] resolvedValues;
+        if (cachePrototypeValues) {
+            PrototypeValueCache.Generation generation = prototypeGeneration();
+            source = generation.getSource();
+            resolvedValues = generation.getValues(valueDefinitionGroup);
+        } else {
+            source = configurationSource;
+            resolvedValues = PrototypeValueCache.resolve(valueDefinitionGroup, source);
+        }
         Collection<ValueDefinition<?,?>> values = valueDefinitionGroup.getValues();
+        int index = 0;
         for (ValueDefinition<?,?> valueDefinition : values) {
-            Object value;
-            if (valueDefinition instanceof ValueListDefinition) {
-                if (valueDefinition.getExpression() != null) {
-                    value = configurationSource.retrieveList(valueDefinition.getExpression(), valueDefinition.getType());
-                } else {
-                    value = configurationSource.retrieveList(valueDefinition.getType());
-                }
-            } else {
-                if (valueDefinition.getExpression() != null) {
-                    value = configurationSource.retrieve(valueDefinition.getExpression(), valueDefinition.getType());
-                } else {
-                    value = configurationSource.retrieve(valueDefinition.getType());
-                }
-            }
+            Object value = resolvedValues[index++];
             ValueChangeListener listener = valueDefinition.getChangeListener();
             if (listener instanceof PrototypeValueChangeListener) {
                 PrototypeValueChangeListener pvcl = (PrototypeValueChangeListener) listener;
@@ -214,8 +250,31 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
              * Note we are deliberately not obtaining the semaphore.
              */
             PrototypeGroupChangeListener pgcl = (PrototypeGroupChangeListener) changeListener;
-            pgcl.onChange(configurationSource, bean);
+            pgcl.onChange(source, bean);
+        }
+    }
+    
+    /**
+     * Retrieve the current generation of once-only values. Where the configuration source can be updated, the
+     * cache is registered on first use so that it will start a new generation whenever the configuration is
+     * refreshed.
+     * 
+     * @return the current generation
+     */
+    private PrototypeValueCache.Generation prototypeGeneration() {
+        if (!prototypeValueCacheRegistered
+                && configurationSource instanceof ConfigurationService) {
+            synchronized (registeredValueGroups) {
+                if (!prototypeValueCacheRegistered) {
+                    ValueDefinitionGroup group = new ValueDefinitionGroup(name + "_prototypeValues", 
+                            new ArrayList<ValueDefinition<?,?>>(0), prototypeValueCache);
+                    ((ConfigurationService) configurationSource).register(group, false);
+                    registeredValueGroups.add(group);
+                    prototypeValueCacheRegistered = true;
+                }
+            }
         }
+        return prototypeValueCache.current();
     }
 
     /**
@@ -258,105 +317,152 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
             beanClass = ((OnceOnlyTypeHolder) target).get();
         }
 
-        Class<?> inpectClass = beanClass;
-        while (inpectClass != null) {
-            Field[] declaredFields = inpectClass.getDeclaredFields();
-            for (Field field : declaredFields) {
-                processField(field, valueList, target);
+        PostUpdateChangeListener beanChangeListener = null;
+        BindingMetadata metadata = bindingMetadata(beanClass, beanName);
+        for (MemberBinding binding : metadata.getMembers()) {
+            switch (binding.getMember().getKind()) {
+                case LISTENER:
+                    beanChangeListener = bindListenerMethod(binding, valueList, target, beanClass);
+                    break;
+                case FIELD:
+                    bindField(binding, valueList, target);
+                    break;
+                default:
+                    bindSetterMethod(binding, valueList, target);
+                    break;
             }
-            inpectClass = inpectClass.getSuperclass();
         }
-
-        PostUpdateChangeListener beanChangeListener = null;
-
-        Method[] declaredMethods = beanClass.getDeclaredMethods();
-        Arrays.sort(declaredMethods, new Comparator<Method>() {
-            @Override
-            public int compare(Method o1, Method o2) {
-                return o1.getName().compareTo(o2.getName());
+        ValueDefinitionGroup group = new ValueDefinitionGroup(beanName, valueList, beanChangeListener, target);
+        return group;
+    }
+    
+    /**
+     * Retrieve the binding metadata for the specified class, resolving it on first use.
+     * 
+     * @param beanClass
+     *            the class being configured
+     * @param beanName
+     *            the name of the bean, used in error messages should the class be invalid.
+     * @return the binding metadata
+     */
+    private BindingMetadata bindingMetadata(Class<?> beanClass, String beanName) {
+        BindingMetadata metadata = bindingMetadataCache.get(beanClass);
+        if (metadata == null) {
+            ConfiguredBinder<?> binder = generatedBinder(beanClass);
+            if (binder != null) {
+                metadata = new BindingMetadata(beanClass, binder);
+            } else {
+                metadata = new BindingMetadata(beanClass, beanName);
             }
-        });
-        for (Method method : declaredMethods) {
-            Configured configured = method.getAnnotation(Configured.class);
-
-            ConfigurationListener configurationListener = method.getAnnotation(ConfigurationListener.class);
-            if (configurationListener != null) {
-                if (beanChangeListener != null) {
-                    throw new ConfigurationException(format(
-                            "Unable to create a configuration listener for the method '%s' on the bean '%s' (type '%s') " +
-                            "as it already contains a configuration listener on the method '%s'", 
-                            method.getName(), beanName, beanClass.getName(), beanChangeListener.getMethod().getName()));
-                }
-                beanChangeListener = processListenerMethod(method, valueList, target);
+            BindingMetadata existing = bindingMetadataCache.putIfAbsent(beanClass, metadata);
+            if (existing != null) {
+                metadata = existing;
+            }
+        }
+        return metadata;
+    }
 
-            } else if (configured != null) {
-                processSetterMethod(configured, method, valueList, target);
+    /**
+     * Locate and instantiate the binder generated for the specified class by the annotation processor, if there is
+     * one. Binders are only considered for the exact class, as those generated for a super class will not know of the
+     * members declared by the subclass.
+     * 
+     * @param beanClass
+     *            the class being configured
+     * @return the binder or null if none was generated.
+     */
+    protected ConfiguredBinder<?> generatedBinder(Class<?> beanClass) {
+        if (!useGeneratedBinders) {
+            return null;
+        }
+        String binderName = beanClass.getName() + ConfiguredBinder.CLASS_SUFFIX;
+        Class<?> binderClass;
+        try {
+            binderClass = Class.forName(binderName, true, beanClass.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        if (!ConfiguredBinder.class.isAssignableFrom(binderClass)) {
+            throw new ConfigurationException(format(
+                    "The class '%s' does not implement %s", binderName, ConfiguredBinder.class.getName()));
+        }
+        try {
+            ConfiguredBinder<?> binder = (ConfiguredBinder<?>) binderClass.newInstance();
+            if (log.isDebugEnabled()) {
+                log.debug(format("Using generated binder '%s'", binderName));
             }
+            return binder;
+        } catch (InstantiationException e) {
+            throw new ConfigurationException(format("Failed to create the generated binder '%s'", binderName), e);
+        } catch (IllegalAccessException e) {
+            throw new ConfigurationException(format("Failed to create the generated binder '%s'", binderName), e);
         }
-        ValueDefinitionGroup group = new ValueDefinitionGroup(beanName, valueList, beanChangeListener, target);
-        return group;
     }
 
     /**
      * Encapsulates a field in a {@link ValueDefinition} so that it can be registered for updates.
      * 
-     * @param field
-     *            the field being processed
+     * @param binding
+     *            the field being bound
      * @param valueList
      *            the list of value definitions that the new {@link ValueDefinition} for this field will be added to.
      * @param bean
      *            the bean being configured.
      */
     @SuppressWarnings({ "rawtypes", "unchecked" })
-    protected void processField(Field field, List<ValueDefinition<?,?>> valueList, Object bean) {
-        Configured annotation = field.getAnnotation(Configured.class);
-        if (annotation != null) {
-            Class type = field.getType();
-            boolean list = false;
-            ValueDefinition<Object, ?> value;
-            if (type == List.class) {
-                type = listType(field.getGenericType());
-                FieldValueChangeListener<List<Object>> listener = new FieldValueChangeListener<List<Object>>(field, bean, type, list);
-                value = new ValueListDefinition<Object>(type, annotation.value(), listener);
-            } else {
-                FieldValueChangeListener<Object> listener = new FieldValueChangeListener<Object>(field, bean, type, list);
-                value = new SingleValueDefinition<Object>(type, annotation.value(), listener);
-            }
-            valueList.add(value);
+    private void bindField(MemberBinding binding, List<ValueDefinition<?,?>> valueList, Object bean) {
+        BinderMember member = binding.getMember();
+        String field = member.getName();
+        Class type = member.getValueType();
+        boolean list = false;
+        ValueDefinition<Object, ?> value;
+        switch (member.getValueKind()) {
+            case LIST:
+                FieldValueChangeListener<List<Object>> listListener = new FieldValueChangeListener<List<Object>>(field, binding.getHandle(), bean, type, list);
+                value = new ValueListDefinition<Object>(type, member.getExpression(), listListener);
+                break;
+            case ENUM_SET:
+                FieldValueChangeListener setListener = new FieldValueChangeListener(field, binding.getHandle(), bean, type, list);
+                value = new ValueListDefinition<Object>(type, member.getExpression(), new EnumSetValueChangeListener(setListener, type));
+                break;
+            default:
+                FieldValueChangeListener<Object> listener = new FieldValueChangeListener<Object>(field, binding.getHandle(), bean, type, list);
+                value = new SingleValueDefinition<Object>(type, member.getExpression(), listener);
+                break;
         }
+        valueList.add(value);
     }
 
     /**
      * Encapsulate a setter method in a {@link ValueDefinition} so that it can be registered for configuration updates.
      * 
-     * @param configured
-     *            the {@link Configured} attribute applied to the method.
-     * @param method
-     *            the method itself
+     * @param binding
+     *            the setter method being bound
      * @param valueList
      *            the list of value definitions that the new {@link ValueDefinition} for this field will be added to.
      * @param bean
      *            the bean being configured.
      */
     @SuppressWarnings({ "rawtypes", "unchecked" })
-    protected void processSetterMethod(Configured configured, Method method, List<ValueDefinition<?,?>> valueList,
-            Object bean) {
-        Class<?>[] parameterTypes = method.getParameterTypes();
-        if (parameterTypes.length != 1) {
-            throw new ConfigurationException(format("The method '%s' does not appear to be a setter. "
-                    + "A bean setter method should take only a single parameter.", method));
-        }
-        Class type = parameterTypes[0];
+    private void bindSetterMethod(MemberBinding binding, List<ValueDefinition<?,?>> valueList, Object bean) {
+        BinderMember member = binding.getMember();
+        String method = member.getName();
+        Class type = member.getValueType();
         boolean list = false;
         ValueDefinition<Object,?> value;
-        if (type == List.class) {
-            Type[] genericParameterTypes = method.getGenericParameterTypes();
-            type = listType(genericParameterTypes[0]);
-            MethodValueChangeListener<List<Object>> listener = new MethodValueChangeListener<List<Object>>(method, bean, type, list);
-            value = new ValueListDefinition<Object>(type, configured.value(), listener);
-        } else {
-            MethodValueChangeListener<Object> listener = new MethodValueChangeListener<Object>(method, bean, type, list);
-            value = new SingleValueDefinition<Object>(type, configured.value(), listener);
+        switch (member.getValueKind()) {
+            case LIST:
+                MethodValueChangeListener<List<Object>> listListener = new MethodValueChangeListener<List<Object>>(method, binding.getHandle(), bean, type, list);
+                value = new ValueListDefinition<Object>(type, member.getExpression(), listListener);
+                break;
+            case ENUM_SET:
+                MethodValueChangeListener setListener = new MethodValueChangeListener(method, binding.getHandle(), bean, type, list);
+                value = new ValueListDefinition<Object>(type, member.getExpression(), new EnumSetValueChangeListener(setListener, type));
+                break;
+            default:
+                MethodValueChangeListener<Object> listener = new MethodValueChangeListener<Object>(method, binding.getHandle(), bean, type, list);
+                value = new SingleValueDefinition<Object>(type, member.getExpression(), listener);
+                break;
         }
         valueList.add(value);
     }
@@ -365,75 +471,63 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
      * Encapsulate the 'listener' method that will be invoked once all fields/setter methods have been updated. The
      * parameters of this method will be added as individual {@link ValueDefinition}'s to <code>valueList</code>.
      * 
-     * @param method
-     *            the method being encapsulated
+     * @param binding
+     *            the listener method being bound
      * @param valueList
      *            the list of value definitions that the new {@link ValueDefinition}s for this field will be added to.
      * @param bean
      *            the bean being configured.
+     * @param beanClass
+     *            the class declaring the listener method.
      * @return the {@link PostUpdateChangeListener} that will invoke the listener method on configuration update.
      */
     @SuppressWarnings({ "unchecked", "rawtypes" })
-    protected PostUpdateChangeListener processListenerMethod(Method method, List<ValueDefinition<?,?>> valueList,
-            Object bean) {
-        Class<?>[] parameterTypes = method.getParameterTypes();
-        Type[] genericParameterTypes = method.getGenericParameterTypes();
-        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
-        List<ParameterValueResolver> argList = new ArrayList<ParameterValueResolver>();
-        for (int i = 0; i < parameterTypes.length; i++) {
-            ParameterValueResolver arg = null;
-            Annotation[] annotations = parameterAnnotations[i];
-            Class type = parameterTypes[i];
-            boolean list = false;
-            if (type == List.class) {
-                type = listType(genericParameterTypes[i]);
-                list = true;
-            }
-            Qualifier qualifier = null;
-            for (Annotation annotation : annotations) {
-                if (annotation instanceof Configured) {
-                    Configured paramConfigured = (Configured) annotation;
-                    MethodParameterListener mpl = new MethodParameterListener();
-                    ValueDefinition<Object, ?> value;
-                    if (list) {
-                        value = new ValueListDefinition<Object>(type, paramConfigured.value(), mpl);
-                    } else {
-                        value = new SingleValueDefinition<Object>(type, paramConfigured.value(), mpl);
-                    }
-                    valueList.add(value);
-                    arg = mpl;
-                    break;
-                } else if (annotation instanceof Qualifier) {
-                    qualifier = (Qualifier) annotation;
-                }
-            }
-            if (arg == null) {
-                if (qualifier != null) {
-                    try {
-                        beanFactory.getBean(qualifier.value(), type);
-                        arg = new BeanReferenceResolver(beanFactory, qualifier, type);
-                    } catch (NoSuchBeanDefinitionException e) {
-                        throw new ConfigurationException(
-                                format("Listener method '%s' parameter %d is not marked as %s and no bean "
-                                        + "definition could be found in the container with the qualifier '%s' and type '%s'.",
-                                        method.getName(), (i + 1), Configured.class.getSimpleName(), qualifier.value(),
-                                        type.getName()));
-                    }
+    private PostUpdateChangeListener bindListenerMethod(MemberBinding binding, List<ValueDefinition<?,?>> valueList,
+            Object bean, Class<?> beanClass) {
+        BinderMember member = binding.getMember();
+        String methodName = member.getName();
+        List<Parameter> parameters = member.getParameters();
+        List<ParameterValueResolver> argList = new ArrayList<ParameterValueResolver>(parameters.size());
+        for (int i = 0; i < parameters.size(); i++) {
+            Parameter parameter = parameters.get(i);
+            ParameterValueResolver arg;
+            Class type = parameter.getType();
+            String qualifier = parameter.getQualifier();
+            if (parameter.isConfigured()) {
+                MethodParameterListener mpl = new MethodParameterListener();
+                ValueDefinition<Object, ?> value;
+                if (parameter.isList()) {
+                    value = new ValueListDefinition<Object>(type, parameter.getExpression(), mpl);
                 } else {
-                    try {
-                        beanFactory.getBean(type);
-                        arg = new BeanReferenceResolver(beanFactory, type);
-                    } catch (NoSuchBeanDefinitionException e) {
-                        throw new ConfigurationException(format(
-                                "Listener method '%s' parameter %d is not marked as %s and no bean "
-                                        + "definition could be found in the container with the type '%s'.",
-                                method.getName(), (i + 1), Configured.class.getSimpleName(), type.getName()));
-                    }
+                    value = new SingleValueDefinition<Object>(type, parameter.getExpression(), mpl);
+                }
+                valueList.add(value);
+                arg = mpl;
+            } else if (qualifier != null) {
+                try {
+                    beanFactory.getBean(qualifier, type);
+                    arg = new BeanReferenceResolver(beanFactory, qualifier, type);
+                } catch (NoSuchBeanDefinitionException e) {
+                    throw new ConfigurationException(
+                            format("Listener method '%s' parameter %d is not marked as %s and no bean "
+                                    + "definition could be found in the container with the qualifier '%s' and type '%s'.",
+                                    methodName, (i + 1), Configured.class.getSimpleName(), qualifier,
+                                    type.getName()));
+                }
+            } else {
+                try {
+                    beanFactory.getBean(type);
+                    arg = new BeanReferenceResolver(beanFactory, type);
+                } catch (NoSuchBeanDefinitionException e) {
+                    throw new ConfigurationException(format(
+                            "Listener method '%s' parameter %d is not marked as %s and no bean "
+                                    + "definition could be found in the container with the type '%s'.",
+                            methodName, (i + 1), Configured.class.getSimpleName(), type.getName()));
                 }
             }
             argList.add(arg);
         }
-        return new PostUpdateChangeListener(bean, method, argList);
+        return new PostUpdateChangeListener(bean, methodName, beanClass, binding.getHandle(), argList);
     }
 
     /**
@@ -446,6 +540,10 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
      *         interfaces as they do not support fields or concrete method definitions.
      */
     private boolean hasMarkerAnnotation(Class<?> beanClass) {
+        Boolean cached = markedClassCache.get(beanClass);
+        if (cached != null) {
+            return cached.booleanValue();
+        }
         boolean retVal = false;
         Class<?> inpectClass = beanClass;
         while (inpectClass != null) {
@@ -455,6 +553,7 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
             }
             inpectClass = inpectClass.getSuperclass();
         }
+        markedClassCache.put(beanClass, Boolean.valueOf(retVal));
         return retVal;
     }
 
@@ -473,6 +572,36 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
      */
     public void setMarkerAnnotation(Class<? extends Annotation> markerAnnotation) {
         this.markerAnnotation = markerAnnotation;
+        this.markedClassCache.clear();
+    }
+
+    /**
+     * Determine whether binders generated at compile time by the annotation processor should be preferred over
+     * reflection when available. Enabled by default.
+     * 
+     * @param useGeneratedBinders
+     *            false to always use reflection.
+     */
+    public void setUseGeneratedBinders(boolean useGeneratedBinders) {
+        this.useGeneratedBinders = useGeneratedBinders;
+        this.bindingMetadataCache.clear();
+        this.onceOnlyDefinitionCache.clear();
+        this.prototypeValueCache.invalidate();
+    }
+    
+    /**
+     * Determine whether the values applied to non-singleton beans should be resolved once per configuration generation
+     * and then reused for every instance created, rather than being retrieved again for each instance. Disabled by
+     * default, as the same value instances (including lists and any other mutable values) will be assigned to every
+     * instance created within a generation, so a change made by one instance to its value would be seen by the others.
+     * Only enable where the values are treated as read-only.
+     * 
+     * @param cachePrototypeValues
+     *            true to resolve the values once per generation, false to retrieve them for every instance.
+     */
+    public void setCachePrototypeValues(boolean cachePrototypeValues) {
+        this.cachePrototypeValues = cachePrototypeValues;
+        this.prototypeValueCache.invalidate();
     }
 
     /**
@@ -489,25 +618,4 @@ public class ConfigurationBeanPostProcessor implements BeanPostProcessor, BeanFa
     public int getOrder() {
         return 10;
     }
-
-    /**
-     * Identifies the type of the parameterised list.
-     * 
-     * @param listType
-     *            the list type to inspect
-     * @return the list type or null if it is not parameterised.
-     */
-    @SuppressWarnings("rawtypes")
-    private static Class<?> listType(Type listType) {
-        Class<?> type;
-        if (listType instanceof ParameterizedType) {
-            ParameterizedType pType = (ParameterizedType) listType;
-            Type[] actualTypeArguments = pType.getActualTypeArguments();
-            type = (Class) actualTypeArguments[0];
-        } else {
-            throw new ConfigurationException(String.format(
-                    "Not a parameterised list type: '%s'", listType));
-        }
-        return type;
-    }
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.bpp;
+
+import java.util.List;
+
+import org.brekka.stillingar.api.annotations.ConfigurationListener;
+import org.brekka.stillingar.api.annotations.Configured;
+
+/**
+ * Binds the {@link Configured} fields, setter methods and {@link ConfigurationListener} method of a specific bean type
+ * without reflection. Implementations are generated at compile time by the <code>stillingar-processor</code>
+ * annotation processor, named after the bean type with {@link #CLASS_SUFFIX} appended and placed in the same package
+ * so that members can be accessed directly.
+ * 
+ * When {@link ConfigurationBeanPostProcessor} encounters a bean whose type has a binder, the binder will be used in
+ * place of inspecting the type via reflection.
+ * 
+ * @param <T> the bean type
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public interface ConfiguredBinder<T> {
+
+    /**
+     * Appended to the binary name of the bean type to form the name of its binder.
+     */
+    String CLASS_SUFFIX = "$$StillingarBinder";
+    
+    /**
+     * The configured members of the bean type, in the order in which they should be registered. The list must
+     * include the fields of super types, as the reflective binding does.
+     * 
+     * @return the members, which should not change between calls.
+     */
+    List<BinderMember> getMembers();
+    
+    /**
+     * Assign a new value to a field or setter member.
+     * 
+     * @param index
+     *            the index of the member within {@link #getMembers()}
+     * @param bean
+     *            the bean to update
+     * @param value
+     *            the new value, a {@link List} or {@link java.util.EnumSet} as determined by the member.
+     */
+    void assign(int index, T bean, Object value);
+    
+    /**
+     * Invoke the listener method.
+     * 
+     * @param bean
+     *            the bean to invoke the listener of
+     * @param args
+     *            the values of the listener parameters
+     */
+    void invokeListener(T bean, Object[] args);
+}
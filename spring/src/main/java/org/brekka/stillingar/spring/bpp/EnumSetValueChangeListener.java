@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.bpp;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import org.brekka.stillingar.core.Expirable;
+import org.brekka.stillingar.core.ValueChangeListener;
+
+/**
+ * Adapts the list of enum constants resolved for a list value definition into an {@link EnumSet} before passing it
+ * on to the field/method listener.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+class EnumSetValueChangeListener<E extends Enum<E>> implements ValueChangeListener<List<E>>,
+                    PrototypeValueChangeListener<List<E>>, Expirable {
+
+    /**
+     * The listener that will receive the set
+     */
+    private final InvocationChangeListenerSupport<EnumSet<E>> delegate;
+    
+    /**
+     * The type of enum in the set
+     */
+    private final Class<E> enumType;
+    
+    /**
+     * @param delegate
+     *            the listener that will receive the set
+     * @param enumType
+     *            the type of enum in the set
+     */
+    public EnumSetValueChangeListener(InvocationChangeListenerSupport<EnumSet<E>> delegate, Class<E> enumType) {
+        this.delegate = delegate;
+        this.enumType = enumType;
+    }
+    
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.ValueChangeListener#onChange(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public void onChange(List<E> newValue, List<E> oldValue) {
+        delegate.onChange(toSet(newValue), toSet(oldValue));
+    }
+    
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.spring.bpp.PrototypeValueChangeListener#onChange(java.lang.Object, java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public void onChange(List<E> newValue, List<E> oldValue, Object target) {
+        delegate.onChange(toSet(newValue), toSet(oldValue), target);
+    }
+    
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.Expirable#isExpired()
+     */
+    @Override
+    public boolean isExpired() {
+        return delegate.isExpired();
+    }
+    
+    private EnumSet<E> toSet(List<E> values) {
+        if (values == null) {
+            return null;
+        }
+        EnumSet<E> set = EnumSet.noneOf(enumType);
+        set.addAll(values);
+        return set;
+    }
+}
@@ -16,19 +16,25 @@
 
 package org.brekka.stillingar.spring.bpp;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
 
 /**
- * Change listener that will use reflection to update a specific field of a bean.
+ * Change listener that will update a specific field of a bean via a pre-resolved {@link MethodHandle}.
  * 
  * @author Andrew Taylor (andrew@brekka.org)
  */
 class FieldValueChangeListener<T extends Object> extends InvocationChangeListenerSupport<T> {
 
     /**
-     * The field being updated
+     * The name of the field being updated
      */
-    private final Field field;
+    private final String fieldName;
+    
+    /**
+     * Assigns the field, see {@link InjectionHandles}.
+     */
+    private final MethodHandle setter;
 
     /**
      * 
@@ -42,11 +48,31 @@ class FieldValueChangeListener<T extends Object> extends InvocationChangeListene
      *            Determines whether the value is a list (true if it is)
      */
     public FieldValueChangeListener(Field field, Object target, Class<?> expectedValueType, boolean list) {
+        this((field != null ? field.getName() : null), (field != null ? InjectionHandles.setter(field) : null), 
+                target, expectedValueType, list);
+    }
+    
+    /**
+     * 
+     * @param fieldName
+     *            the name of the field being updated
+     * @param setter
+     *            the handle that assigns the field, as resolved by {@link InjectionHandles}.
+     * @param target
+     *            The object containing the field being updated.
+     * @param expectedValueType
+     *            The type of the value that is expected.
+     * @param list
+     *            Determines whether the value is a list (true if it is)
+     */
+    public FieldValueChangeListener(String fieldName, MethodHandle setter, Object target, Class<?> expectedValueType, 
+            boolean list) {
         super(target, expectedValueType, list, "Field");
-        if (field == null) {
+        if (fieldName == null) {
             throw new IllegalArgumentException("Field may not be null");
         }
-        this.field = field;
+        this.fieldName = fieldName;
+        this.setter = setter;
     }
 
     /**
@@ -54,12 +80,11 @@ class FieldValueChangeListener<T extends Object> extends InvocationChangeListene
      */
     public void onChange(T newValue, T oldValue, Object target) {
         try {
-            if (!field.isAccessible()) {
-                field.setAccessible(true);
-            }
-            field.set(target, newValue);
-        } catch (IllegalAccessException e) {
-            throwError(field.getName(), newValue, e);
+            setter.invokeExact(target, (Object) newValue);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throwError(fieldName, newValue, e);
         }
     }
 }
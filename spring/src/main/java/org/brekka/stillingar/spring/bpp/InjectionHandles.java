@@ -0,0 +1,194 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.bpp;
+
+import static java.lang.String.format;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.brekka.stillingar.api.ConfigurationException;
+
+/**
+ * Resolves the {@link MethodHandle}s used to assign configured values and invoke listener methods. Access checks are
+ * performed once when the handle is resolved rather than on every invocation, and each handle is adapted to a generic
+ * shape so that it can be invoked exactly without an argument array. Static members are given a receiver parameter
+ * that is ignored, so that they share the same shape as instance members.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+final class InjectionHandles {
+
+    /**
+     * The most listener method parameters that will be passed without an argument array.
+     */
+    static final int MAX_DIRECT_ARITY = 3;
+    
+    /**
+     * Shape of the setter handles, <code>(Object target, Object value)void</code>.
+     */
+    static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    
+    /**
+     * Shape of the listener handles taking an argument array, <code>(Object target, Object[] args)void</code>.
+     */
+    static final MethodType SPREAD_TYPE = MethodType.methodType(void.class, Object.class, Object[].class);
+    
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    
+    /**
+     * {@link ConfiguredBinder#assign(int, Object, Object)}
+     */
+    private static final MethodHandle BINDER_ASSIGN;
+    
+    /**
+     * {@link ConfiguredBinder#invokeListener(Object, Object[])}
+     */
+    private static final MethodHandle BINDER_INVOKE_LISTENER;
+    
+    static {
+        try {
+            BINDER_ASSIGN = LOOKUP.findVirtual(ConfiguredBinder.class, "assign", 
+                    MethodType.methodType(void.class, int.class, Object.class, Object.class));
+            BINDER_INVOKE_LISTENER = LOOKUP.findVirtual(ConfiguredBinder.class, "invokeListener", 
+                    MethodType.methodType(void.class, Object.class, Object[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    
+    private InjectionHandles() { }
+    
+    /**
+     * @param field
+     *            the field to assign
+     * @return a handle of type {@link #SETTER_TYPE} that will assign the field.
+     */
+    static MethodHandle setter(Field field) {
+        makeAccessible(field);
+        MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflectSetter(field);
+        } catch (IllegalAccessException e) {
+            throw new ConfigurationException(format("Unable to access the field '%s'", field), e);
+        }
+        return adapt(withReceiver(handle, field), SETTER_TYPE, field);
+    }
+    
+    /**
+     * @param method
+     *            the single parameter setter method to invoke
+     * @return a handle of type {@link #SETTER_TYPE} that will invoke the method, discarding any return value.
+     */
+    static MethodHandle setter(Method method) {
+        return adapt(unreflect(method), SETTER_TYPE, method);
+    }
+    
+    /**
+     * Resolve the handle for a listener method. Methods taking up to {@link #MAX_DIRECT_ARITY} parameters are adapted
+     * to take the target followed by each argument as an {@link Object}, others to {@link #SPREAD_TYPE}.
+     * 
+     * @param method
+     *            the listener method
+     * @return the adapted handle.
+     */
+    static MethodHandle listener(Method method) {
+        MethodHandle handle = unreflect(method);
+        int arity = method.getParameterTypes().length;
+        if (arity <= MAX_DIRECT_ARITY) {
+            return adapt(handle, MethodType.genericMethodType(arity + 1).changeReturnType(void.class), method);
+        }
+        try {
+            handle = handle.asSpreader(Object[].class, arity);
+        } catch (IllegalArgumentException | WrongMethodTypeException e) {
+            throw new ConfigurationException(format("Unable to adapt the method '%s'", method), e);
+        }
+        return adapt(handle, SPREAD_TYPE, method);
+    }
+    
+    /**
+     * @param binder
+     *            the generated binder
+     * @param index
+     *            the index of the field or setter member
+     * @return a handle of type {@link #SETTER_TYPE} that will assign the member via the binder.
+     */
+    static MethodHandle setter(ConfiguredBinder<?> binder, int index) {
+        return MethodHandles.insertArguments(BINDER_ASSIGN.bindTo(binder), 0, index);
+    }
+    
+    /**
+     * @param binder
+     *            the generated binder
+     * @param arity
+     *            the number of parameters the listener method takes.
+     * @return a handle of the same shape as {@link #listener(Method)} that will invoke the listener via the binder.
+     */
+    static MethodHandle listener(ConfiguredBinder<?> binder, int arity) {
+        MethodHandle handle = BINDER_INVOKE_LISTENER.bindTo(binder);
+        if (arity <= MAX_DIRECT_ARITY) {
+            return handle.asCollector(Object[].class, arity);
+        }
+        return handle;
+    }
+    
+    /**
+     * @return the handle for the method, with an ignored receiver parameter prepended if the method is static.
+     */
+    private static MethodHandle unreflect(Method method) {
+        makeAccessible(method);
+        MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new ConfigurationException(format("Unable to access the method '%s'", method), e);
+        }
+        return withReceiver(handle, method);
+    }
+    
+    /**
+     * Static members have no receiver, so one is added that will be discarded.
+     */
+    private static MethodHandle withReceiver(MethodHandle handle, Member member) {
+        if (Modifier.isStatic(member.getModifiers())) {
+            return MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        return handle;
+    }
+    
+    private static MethodHandle adapt(MethodHandle handle, MethodType type, Member member) {
+        try {
+            return handle.asType(type);
+        } catch (WrongMethodTypeException e) {
+            throw new ConfigurationException(format("Unable to adapt the member '%s' to the type %s", member, type), e);
+        }
+    }
+    
+    private static void makeAccessible(AccessibleObject member) {
+        if (!member.isAccessible()) {
+            member.setAccessible(true);
+        }
+    }
+}
@@ -16,20 +16,26 @@
 
 package org.brekka.stillingar.spring.bpp;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 
 /**
- * Change listener that will use reflection to update a specific method of a bean.
+ * Change listener that will update a bean by invoking a specific setter method via a pre-resolved
+ * {@link MethodHandle}.
  * 
  * @author Andrew Taylor (andrew@brekka.org)
  */
 class MethodValueChangeListener<T extends Object> extends InvocationChangeListenerSupport<T> {
 
     /**
-     * The method being updated
+     * The name of the method being updated
      */
-    private final Method method;
+    private final String methodName;
+    
+    /**
+     * Invokes the method, see {@link InjectionHandles}.
+     */
+    private final MethodHandle setter;
 
     /**
      * @param method
@@ -42,20 +48,38 @@ class MethodValueChangeListener<T extends Object> extends InvocationChangeListen
      *            Determines whether the value is a list (true if it is)
      */
     public MethodValueChangeListener(Method method, Object target, Class<?> expectedValueType, boolean list) {
+        this(method.getName(), InjectionHandles.setter(method), target, expectedValueType, list);
+    }
+    
+    /**
+     * @param methodName
+     *            The name of the method being updated
+     * @param setter
+     *            the handle that invokes the method, as resolved by {@link InjectionHandles}.
+     * @param target
+     *            The object containing the method being updated.
+     * @param expectedValueType
+     *            The type of the value that is expected.
+     * @param list
+     *            Determines whether the value is a list (true if it is)
+     */
+    public MethodValueChangeListener(String methodName, MethodHandle setter, Object target, Class<?> expectedValueType, 
+            boolean list) {
         super(target, expectedValueType, list, "Method");
-        this.method = method;
+        this.methodName = methodName;
+        this.setter = setter;
     }
 
     /**
-     * Use reflection to invoke the setter with the new value on the target object.
+     * Invoke the setter with the new value on the target object.
      */
     public void onChange(T newValue, T oldValue, Object target) {
         try {
-            method.invoke(target, newValue);
-        } catch (IllegalAccessException e) {
-            throwError(method.getName(), newValue, e);
-        } catch (InvocationTargetException e) {
-            throwError(method.getName(), newValue, e);
+            setter.invokeExact(target, (Object) newValue);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throwError(methodName, newValue, e);
         }
     }
 }
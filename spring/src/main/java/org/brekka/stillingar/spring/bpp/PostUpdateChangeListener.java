@@ -18,8 +18,8 @@ package org.brekka.stillingar.spring.bpp;
 
 import static java.lang.String.format;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.ref.WeakReference;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.List;
@@ -41,14 +41,24 @@ class PostUpdateChangeListener implements GroupChangeListener, PrototypeGroupCha
     private final WeakReference<Object> targetRef;
 
     /**
-     * The method to invoke
+     * The name of the method to invoke
      */
-    private final Method method;
+    private final String methodName;
+    
+    /**
+     * The type declaring the method
+     */
+    private final Class<?> declaringType;
+    
+    /**
+     * Invokes the method, see {@link InjectionHandles}.
+     */
+    private final MethodHandle invoker;
 
     /**
      * Value resolvers for the parameters of the method.
      */
-    private final List<ParameterValueResolver> parameterValues;
+    private final ParameterValueResolver[] parameterValues;
 
     /**
      * @param target
@@ -59,9 +69,28 @@ class PostUpdateChangeListener implements GroupChangeListener, PrototypeGroupCha
      *            Value resolvers for the parameters of the method.
      */
     public PostUpdateChangeListener(Object target, Method method, List<ParameterValueResolver> parameterValues) {
+        this(target, method.getName(), method.getDeclaringClass(), InjectionHandles.listener(method), parameterValues);
+    }
+    
+    /**
+     * @param target
+     *            The target object containing the method to be invoked
+     * @param methodName
+     *            The name of the method to invoke
+     * @param declaringType
+     *            The type declaring the method
+     * @param invoker
+     *            the handle that invokes the method, as resolved by {@link InjectionHandles}.
+     * @param parameterValues
+     *            Value resolvers for the parameters of the method.
+     */
+    public PostUpdateChangeListener(Object target, String methodName, Class<?> declaringType, MethodHandle invoker, 
+            List<ParameterValueResolver> parameterValues) {
         this.targetRef = new WeakReference<Object>(target);
-        this.method = method;
-        this.parameterValues = parameterValues;
+        this.methodName = methodName;
+        this.declaringType = declaringType;
+        this.invoker = invoker;
+        this.parameterValues = parameterValues.toArray(new ParameterValueResolver[parameterValues.size()]);
     }
 
     /**
@@ -82,22 +111,29 @@ class PostUpdateChangeListener implements GroupChangeListener, PrototypeGroupCha
      *            the target object on which the specified method will be invoked.
      */
     public void onChange(ConfigurationSource configurationSource, Object target) {
-        Object[] args = new Object[parameterValues.size()];
-        for (int i = 0; i < parameterValues.size(); i++) {
-            ParameterValueResolver arg = parameterValues.get(i);
-            args[i] = arg.getValue();
-        }
+        ParameterValueResolver[] params = parameterValues;
         try {
-            if (!method.isAccessible()) {
-                method.setAccessible(true);
+            switch (params.length) {
+                case 0:
+                    invoker.invokeExact(target);
+                    break;
+                case 1:
+                    invoker.invokeExact(target, params[0].getValue());
+                    break;
+                case 2:
+                    invoker.invokeExact(target, params[0].getValue(), params[1].getValue());
+                    break;
+                case 3:
+                    invoker.invokeExact(target, params[0].getValue(), params[1].getValue(), params[2].getValue());
+                    break;
+                default:
+                    invoker.invokeExact(target, resolveArgs());
+                    break;
             }
-            method.invoke(target, args);
-        } catch (IllegalAccessException e) {
-            throwError(args, e, method);
-        } catch (InvocationTargetException e) {
-            throwError(args, e, method);
-        } catch (IllegalArgumentException e) {
-            throwError(args, e, method);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throwError(resolveArgs(), e);
         }
     }
     
@@ -118,17 +154,30 @@ class PostUpdateChangeListener implements GroupChangeListener, PrototypeGroupCha
      * @param cause
      *            the underlying cause of the problem.
      */
-    protected void throwError(Object[] args, Throwable cause, Method method) {
+    protected void throwError(Object[] args, Throwable cause) {
         throw new ConfigurationException(format("Listener method '%s' of type '%s' with arguments %s",
-                method.getName(), method.getDeclaringClass().getName(), Arrays.toString(args)), cause);
+                methodName, declaringType.getName(), Arrays.toString(args)), cause);
+    }
+
+    /**
+     * Resolve the current values of all parameters into a new array.
+     * 
+     * @return the argument array
+     */
+    private Object[] resolveArgs() {
+        Object[] args = new Object[parameterValues.length];
+        for (int i = 0; i < parameterValues.length; i++) {
+            args[i] = parameterValues[i].getValue();
+        }
+        return args;
     }
 
     /**
-     * Retrieve the method that will be invoked.
+     * Retrieve the name of the method that will be invoked.
      * 
-     * @return the method
+     * @return the method name
      */
-    public Method getMethod() {
-        return method;
+    public String getMethodName() {
+        return methodName;
     }
 }
\ No newline at end of file
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.bpp;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.GroupChangeListener;
+import org.brekka.stillingar.core.ValueDefinition;
+import org.brekka.stillingar.core.ValueDefinitionGroup;
+import org.brekka.stillingar.core.ValueListDefinition;
+
+/**
+ * Retains the values resolved for each once-only {@link ValueDefinitionGroup}, so that they are retrieved and
+ * converted once per configuration generation rather than once per prototype instance. When registered as the listener
+ * of a (value-less) group with a configuration service, every refresh starts a new generation that resolves against
+ * the refreshed source, discarding all values of the previous generation.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+class PrototypeValueCache implements GroupChangeListener {
+
+    /**
+     * The current generation, replaced wholesale on refresh so that values being resolved concurrently with a refresh
+     * can only ever end up in the generation being discarded.
+     */
+    private volatile Generation current;
+    
+    /**
+     * @param configurationSource
+     *            the source to resolve values from until the first refresh.
+     */
+    public PrototypeValueCache(ConfigurationSource configurationSource) {
+        this.current = new Generation(configurationSource);
+    }
+    
+    /**
+     * The configuration has been refreshed, start a new generation.
+     */
+    @Override
+    public void onChange(ConfigurationSource configurationSource) {
+        this.current = new Generation(configurationSource);
+    }
+    
+    /**
+     * Discard the values of the current generation, without changing the source they are resolved from.
+     */
+    public void invalidate() {
+        this.current = new Generation(current.getSource());
+    }
+    
+    /**
+     * @return the current generation
+     */
+    public Generation current() {
+        return current;
+    }
+    
+    /**
+     * Resolve the values of each of the definitions within the group from the specified source, in the iteration
+     * order of {@link ValueDefinitionGroup#getValues()}.
+     * 
+     * @param valueDefinitionGroup
+     *            the group to resolve
+     * @param configurationSource
+     *            the source to resolve the values from
+     * @return the values
+     */
+    public static Object[] resolve(ValueDefinitionGroup valueDefinitionGroup, ConfigurationSource configurationSource) {
+        Collection<ValueDefinition<?,?>> valueDefinitions = valueDefinitionGroup.getValues();
+        Object[] values = new Object[valueDefinitions.size()];
+        int i = 0;
+        for (ValueDefinition<?,?> valueDefinition : valueDefinitions) {
+            Object value;
+            if (valueDefinition instanceof ValueListDefinition) {
+                if (valueDefinition.getExpression() != null) {
+                    value = configurationSource.retrieveList(valueDefinition.getExpression(), valueDefinition.getType());
+                } else {
+                    value = configurationSource.retrieveList(valueDefinition.getType());
+                }
+            } else {
+                if (valueDefinition.getExpression() != null) {
+                    value = configurationSource.retrieve(valueDefinition.getExpression(), valueDefinition.getType());
+                } else {
+                    value = configurationSource.retrieve(valueDefinition.getType());
+                }
+            }
+            values[i++] = value;
+        }
+        return values;
+    }
+    
+    /**
+     * The values resolved from one version of the configuration.
+     */
+    static final class Generation {
+        
+        private final ConfigurationSource source;
+        
+        /**
+         * Resolved values, keyed on the identity of the group.
+         */
+        private final ConcurrentMap<ValueDefinitionGroup, Object[]> values = 
+                new ConcurrentHashMap<ValueDefinitionGroup, Object[]>();
+        
+        Generation(ConfigurationSource source) {
+            this.source = source;
+        }
+        
+        /**
+         * Retrieve the values of the group for this generation, resolving them on first use. Should another thread
+         * resolve the same group concurrently, the first values cached are kept.
+         * 
+         * @param valueDefinitionGroup
+         *            the group
+         * @return the values, which must not be modified.
+         */
+        public Object[] getValues(ValueDefinitionGroup valueDefinitionGroup) {
+            Object[] groupValues = values.get(valueDefinitionGroup);
+            if (groupValues == null) {
+                groupValues = resolve(valueDefinitionGroup, source);
+                Object[] existing = values.putIfAbsent(valueDefinitionGroup, groupValues);
+                if (existing != null) {
+                    groupValues = existing;
+                }
+            }
+            return groupValues;
+        }
+        
+        /**
+         * @return the source from which the values of this generation are resolved.
+         */
+        public ConfigurationSource getSource() {
+            return source;
+        }
+    }
+}
@@ -48,6 +48,10 @@ class AnnotationConfigBeanDefinitionParser extends AbstractSingleBeanDefinitionP
             }
             builder.addPropertyValue("markerAnnotation", theClass);
         }
+        String cachePrototypeValues = element.getAttribute("cache-prototype-values");
+        if (StringUtils.hasLength(cachePrototypeValues)) {
+            builder.addPropertyValue("cachePrototypeValues", Boolean.valueOf(cachePrototypeValues));
+        }
     }
     
     @Override
@@ -19,22 +19,29 @@ package org.brekka.stillingar.spring.config;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.core.conversion.BulkConverter;
+import org.brekka.stillingar.core.conversion.ConversionCache;
 import org.brekka.stillingar.core.conversion.ConversionManager;
+import org.brekka.stillingar.core.conversion.ConverterCatalogue;
+import org.brekka.stillingar.core.conversion.EnumConverter;
 import org.brekka.stillingar.core.conversion.TemporalAdapter;
 import org.brekka.stillingar.core.conversion.xml.DocumentConverter;
 import org.brekka.stillingar.core.dom.DOMConfigurationSourceLoader;
 import org.brekka.stillingar.core.dom.DefaultNamespaceContext;
 import org.brekka.stillingar.core.properties.PropertiesConfigurationSourceLoader;
+import org.brekka.stillingar.core.snapshot.CoalescingRefresher;
 import org.brekka.stillingar.core.snapshot.SnapshotBasedConfigurationService;
 import org.brekka.stillingar.spring.bpp.ConfigurationBeanPostProcessor;
 import org.brekka.stillingar.spring.converter.ApplicationContextConverter;
-import org.brekka.stillingar.spring.expr.DefaultPlaceholderParser;
+import org.brekka.stillingar.spring.converter.SharedConverters;
+import org.brekka.stillingar.spring.expr.IndexedPlaceholderParser;
 import org.brekka.stillingar.spring.pc.ConfigurationPlaceholderConfigurer;
 import org.brekka.stillingar.spring.resource.BasicResourceNameResolver;
 import org.brekka.stillingar.spring.resource.FixedResourceSelector;
@@ -46,13 +53,16 @@ import org.brekka.stillingar.spring.resource.dir.ResourceDirectory;
 import org.brekka.stillingar.spring.resource.dir.PlatformDirectory;
 import org.brekka.stillingar.spring.resource.dir.SystemPropertyDirectory;
 import org.brekka.stillingar.spring.resource.dir.WebappDirectory;
+import org.brekka.stillingar.spring.snapshot.AdaptivePollingResourceMonitor;
 import org.brekka.stillingar.spring.snapshot.ConfigurationSnapshotRefresher;
+import org.brekka.stillingar.spring.snapshot.DirectorySnapshotManager;
 import org.brekka.stillingar.spring.snapshot.LoggingSnapshotEventHandler;
 import org.brekka.stillingar.spring.snapshot.NoopResourceMonitor;
-import org.brekka.stillingar.spring.snapshot.PollingResourceMonitor;
 import org.brekka.stillingar.spring.snapshot.ResourceSnapshotManager;
+import org.brekka.stillingar.spring.snapshot.SnapshotCache;
 import org.brekka.stillingar.spring.snapshot.SnapshotDeltaValueInterceptor;
 import org.brekka.stillingar.spring.version.ApplicationVersionFromMaven;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
 import org.springframework.beans.factory.parsing.BeanComponentDefinition;
 import org.springframework.beans.factory.support.AbstractBeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
@@ -103,8 +113,10 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
         builder.addConstructorArgValue(prepareResourceManager(element, engine, parserContext));
         builder.addConstructorArgValue("true".equals(element.getAttribute("snapshot-required")));
         builder.addConstructorArgValue(prepareDefaultConfigurationSource(element, engine));
-        prepareSnapshotEventHandler(element, builder);
+        prepareSnapshotEventHandler(element, parserContext, builder);
         builder.addPropertyValue("deltaValueInterceptor", prepareDeltaValueInterceptor(element));
+        prepareSnapshotHistory(element, builder);
+        prepareConversionCache(element, parserContext, builder);
         builder.getRawBeanDefinition().setDestroyMethodName("shutdown");
 
         // Other identifiable context beans
@@ -116,6 +128,17 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
     }
 
 
+    protected void prepareSnapshotHistory(Element element, BeanDefinitionBuilder builder) {
+        String historySize = element.getAttribute("history-size");
+        if (StringUtils.hasLength(historySize)) {
+            builder.addPropertyValue("historySize", Integer.valueOf(historySize));
+        }
+        String historyMaxBytes = element.getAttribute("history-max-bytes");
+        if (StringUtils.hasLength(historyMaxBytes)) {
+            builder.addPropertyValue("historyMaxBytes", Long.valueOf(historyMaxBytes));
+        }
+    }
+
     protected void preparePostProcessor(Element element, ParserContext parserContext) {
         String id = element.getAttribute("id");
         String name = getName(element);
@@ -133,6 +156,10 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
                 }
                 postProcessor.addPropertyValue("markerAnnotation", theClass);
             }
+            String cachePrototypeValues = annotationConfigElement.getAttribute("cache-prototype-values");
+            if (StringUtils.hasLength(cachePrototypeValues)) {
+                postProcessor.addPropertyValue("cachePrototypeValues", Boolean.valueOf(cachePrototypeValues));
+            }
         }
         parserContext.registerBeanComponent(new BeanComponentDefinition(postProcessor.getBeanDefinition(), id
                 + "-postProcessor"));
@@ -161,7 +188,7 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
                 suffix = "}";
             }
             BeanDefinitionBuilder placeholderParser = BeanDefinitionBuilder
-                    .genericBeanDefinition(DefaultPlaceholderParser.class);
+                    .genericBeanDefinition(IndexedPlaceholderParser.class);
             placeholderParser.addConstructorArgValue(prefix);
             placeholderParser.addConstructorArgValue(suffix);
 
@@ -192,7 +219,7 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
                 prepareJAXB(element, parserContext, builder);
                 break;
             case PROPS:
-                // No extra handling for properties
+                prepareProperties(element, parserContext, builder);
                 break;
             default:
                 // No special requirements
@@ -210,7 +237,11 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
      */
     protected void prepareXmlBeans(Element element, ParserContext parserContext, BeanDefinitionBuilder builder) {
         // ConversionManager
-        builder.addConstructorArgValue(prepareXmlBeansConversionManager());
+        AbstractBeanDefinition conversionManager = prepareXmlBeansConversionManager();
+        prepareBulkConverter(element, conversionManager);
+        prepareEnumConverter(element, conversionManager);
+        applyConversionCache(element, conversionManager);
+        builder.addConstructorArgValue(conversionManager);
         
         // Namespaces
         builder.addConstructorArgReference(this.namespacesId);
@@ -223,7 +254,11 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
      */
     protected void prepareDOM(Element element, ParserContext parserContext, BeanDefinitionBuilder builder) {
         // ConversionManager
-        builder.addConstructorArgValue(prepareDOMConversionManager());
+        AbstractBeanDefinition conversionManager = prepareDOMConversionManager();
+        prepareBulkConverter(element, conversionManager);
+        prepareEnumConverter(element, conversionManager);
+        applyConversionCache(element, conversionManager);
+        builder.addConstructorArgValue(conversionManager);
         
         // Namespaces
         builder.addConstructorArgReference(this.namespacesId);
@@ -259,7 +294,142 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
         builder.addConstructorArgReference(this.namespacesId);
         
         // ConversionManager
-        builder.addConstructorArgValue(prepareJAXBConversionManager());
+        AbstractBeanDefinition conversionManager = prepareJAXBConversionManager();
+        prepareBulkConverter(element, conversionManager);
+        prepareEnumConverter(element, conversionManager);
+        applyConversionCache(element, conversionManager);
+        builder.addConstructorArgValue(conversionManager);
+    }
+    
+    /**
+     * The properties loader uses its own default conversion manager unless list conversion, enum conversion or
+     * conversion caching has been customised.
+     * 
+     * @param element
+     * @param parserContext
+     * @param builder
+     */
+    protected void prepareProperties(Element element, ParserContext parserContext, BeanDefinitionBuilder builder) {
+        if (!hasBulkConverterAttributes(element)
+                && !hasEnumConverterAttributes(element)
+                && !hasConversionCache(element)) {
+            return;
+        }
+        BeanDefinitionBuilder convertersBuilder = BeanDefinitionBuilder.genericBeanDefinition(
+                PropertiesConfigurationSourceLoader.class);
+        convertersBuilder.setFactoryMethod("defaultConverters");
+        BeanDefinitionBuilder conversionManagerBuilder = BeanDefinitionBuilder.genericBeanDefinition(ConversionManager.class);
+        conversionManagerBuilder.addConstructorArgValue(convertersBuilder.getBeanDefinition());
+        AbstractBeanDefinition conversionManager = conversionManagerBuilder.getBeanDefinition();
+        prepareBulkConverter(element, conversionManager);
+        prepareEnumConverter(element, conversionManager);
+        applyConversionCache(element, conversionManager);
+        builder.addConstructorArgValue(conversionManager);
+    }
+    
+    /**
+     * Set the {@link BulkConverter} on the conversion manager if a parallel list conversion threshold has been
+     * specified. Without one, lists are converted serially and the parallelism is ignored.
+     * 
+     * @param element
+     * @param conversionManager
+     */
+    protected void prepareBulkConverter(Element element, AbstractBeanDefinition conversionManager) {
+        if (!hasBulkConverterAttributes(element)) {
+            return;
+        }
+        String threshold = element.getAttribute("list-parallel-threshold");
+        String parallelism = element.getAttribute("list-parallelism");
+        BeanDefinitionBuilder builder = BeanDefinitionBuilder.genericBeanDefinition(BulkConverter.class);
+        builder.addConstructorArgValue(Integer.valueOf(threshold));
+        builder.addConstructorArgValue(StringUtils.hasLength(parallelism) 
+                ? Integer.valueOf(parallelism) : Integer.valueOf(0));
+        conversionManager.getPropertyValues().addPropertyValue("bulkConverter", builder.getBeanDefinition());
+    }
+    
+    private static boolean hasBulkConverterAttributes(Element element) {
+        return StringUtils.hasLength(element.getAttribute("list-parallel-threshold"));
+    }
+    
+    /**
+     * Replace the {@link EnumConverter} of the conversion manager if enum names are to be matched ignoring case, or
+     * aliases have been specified.
+     * 
+     * @param element
+     * @param conversionManager
+     */
+    protected void prepareEnumConverter(Element element, AbstractBeanDefinition conversionManager) {
+        if (!hasEnumConverterAttributes(element)) {
+            return;
+        }
+        String aliasesRef = element.getAttribute("enum-aliases-ref");
+        BeanDefinitionBuilder builder = BeanDefinitionBuilder.genericBeanDefinition(EnumConverter.class);
+        builder.addConstructorArgValue(Boolean.valueOf(element.getAttribute("enum-ignore-case")));
+        if (StringUtils.hasLength(aliasesRef)) {
+            builder.addConstructorArgReference(aliasesRef);
+        } else {
+            builder.addConstructorArgValue(Collections.emptyMap());
+        }
+        conversionManager.getPropertyValues().addPropertyValue("enumConverter", builder.getBeanDefinition());
+    }
+    
+    private static boolean hasEnumConverterAttributes(Element element) {
+        return Boolean.valueOf(element.getAttribute("enum-ignore-case")).booleanValue()
+            || StringUtils.hasLength(element.getAttribute("enum-aliases-ref"));
+    }
+    
+    /**
+     * Register the {@link ConversionCache} if any conversion cache types have been specified. The same cache is
+     * shared by the conversion manager of the loader and the configuration service, so that the service knows which
+     * values can be the same instance between snapshots.
+     * 
+     * @param element
+     * @param parserContext
+     * @param builder
+     */
+    protected void prepareConversionCache(Element element, ParserContext parserContext, BeanDefinitionBuilder builder) {
+        if (!hasConversionCache(element)) {
+            return;
+        }
+        String[] typeNames = StringUtils.tokenizeToStringArray(element.getAttribute("conversion-cache-types"), " ,\t\n");
+        ManagedList<Class<?>> types = new ManagedList<Class<?>>(typeNames.length);
+        for (String typeName : typeNames) {
+            try {
+                types.add(ClassUtils.forName(typeName, Thread.currentThread().getContextClassLoader()));
+            } catch (ClassNotFoundException e) {
+                throw new ConfigurationException(String.format(
+                        "Unable to find the conversion cache type '%s'", typeName), e);
+            }
+        }
+        BeanDefinitionBuilder cache = BeanDefinitionBuilder.genericBeanDefinition(ConversionCache.class);
+        cache.addConstructorArgValue(types);
+        String maxEntries = element.getAttribute("conversion-cache-max-entries");
+        cache.addConstructorArgValue(StringUtils.hasLength(maxEntries) 
+                ? Integer.valueOf(maxEntries) : Integer.valueOf(ConversionCache.DEFAULT_MAX_ENTRIES));
+        String maxSize = element.getAttribute("conversion-cache-max-size");
+        cache.addConstructorArgValue(StringUtils.hasLength(maxSize) 
+                ? Long.valueOf(maxSize) : Long.valueOf(ConversionCache.DEFAULT_MAX_WEIGHT));
+        String cacheId = getConversionCacheReference(element);
+        parserContext.registerBeanComponent(new BeanComponentDefinition(cache.getBeanDefinition(), cacheId));
+        builder.addPropertyReference("conversionCache", cacheId);
+    }
+    
+    /**
+     * Set the shared {@link ConversionCache} on the conversion manager, if one has been registered.
+     * 
+     * @param element
+     * @param conversionManager
+     */
+    protected void applyConversionCache(Element element, AbstractBeanDefinition conversionManager) {
+        if (!hasConversionCache(element)) {
+            return;
+        }
+        conversionManager.getPropertyValues().addPropertyValue("conversionCache", 
+                new RuntimeBeanReference(getConversionCacheReference(element)));
+    }
+    
+    private static boolean hasConversionCache(Element element) {
+        return StringUtils.hasLength(element.getAttribute("conversion-cache-types"));
     }
 
     /**
@@ -291,7 +461,25 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
             } catch (NumberFormatException e) {
                 throw new IllegalArgumentException("The attribute reload-interval is invalid", e);
             }
-            if (reloadInterval >= MINIMUM_RELOAD_INTERVAL) {
+            if (reloadInterval >= MINIMUM_RELOAD_INTERVAL && isWatched(element)) {
+                /*
+                 * The shared file watch hub will trigger the refresh as soon as a change is detected, so there
+                 * is no need for a scheduler thread per service.
+                 */
+                BeanDefinitionBuilder refresher = BeanDefinitionBuilder
+                        .genericBeanDefinition(ConfigurationSnapshotRefresher.class);
+                refresher.addConstructorArgReference(id);
+                refresher.addConstructorArgReference(getResourceMonitorReference(element));
+                // Merge bursts of changes into a single refresh
+                String quietPeriod = element.getAttribute("reload-quiet-period");
+                String maxDelay = element.getAttribute("reload-max-delay");
+                refresher.addConstructorArgValue(StringUtils.hasLength(quietPeriod) 
+                        ? Long.valueOf(quietPeriod) : Long.valueOf(CoalescingRefresher.DEFAULT_QUIET_PERIOD));
+                refresher.addConstructorArgValue(StringUtils.hasLength(maxDelay) 
+                        ? Long.valueOf(maxDelay) : Long.valueOf(CoalescingRefresher.DEFAULT_MAX_DELAY));
+                parserContext.registerBeanComponent(new BeanComponentDefinition(refresher
+                        .getBeanDefinition(), id + "-refresher"));
+            } else if (reloadInterval >= MINIMUM_RELOAD_INTERVAL) {
                 // Update task
                 BeanDefinitionBuilder updateTask = BeanDefinitionBuilder
                         .genericBeanDefinition(ConfigurationSnapshotRefresher.class);
@@ -301,17 +489,8 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
                 BeanDefinitionBuilder scheduledExecutorTask = BeanDefinitionBuilder
                         .genericBeanDefinition(ScheduledExecutorTask.class);
                 scheduledExecutorTask.addConstructorArgValue(updateTask.getBeanDefinition());
-                if (watchableAvailable) {
-                    /*
-                     * The WatchedResourceMonitor is blocking with a timeout of reloadInterval. Must set a period, choose
-                     * an interval of 1s.
-                     */
-                    scheduledExecutorTask.addPropertyValue("period", 1000);
-                    scheduledExecutorTask.addPropertyValue("delay", 1000);
-                } else {
-                    scheduledExecutorTask.addPropertyValue("period", reloadInterval);
-                    scheduledExecutorTask.addPropertyValue("delay", reloadInterval);
-                }
+                scheduledExecutorTask.addPropertyValue("period", reloadInterval);
+                scheduledExecutorTask.addPropertyValue("delay", reloadInterval);
 
                 ManagedList<Object> taskList = new ManagedList<Object>();
                 taskList.add(scheduledExecutorTask.getBeanDefinition());
@@ -333,10 +512,29 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
      * @return
      */
     protected AbstractBeanDefinition prepareResourceManager(Element element, Engine engine, ParserContext parserContext) {
+        String confDir = element.getAttribute("conf-dir");
+        if (StringUtils.hasLength(confDir)) {
+            return prepareDirectoryManager(element, confDir, parserContext);
+        }
         BeanDefinitionBuilder builder = BeanDefinitionBuilder.genericBeanDefinition(ResourceSnapshotManager.class);
         builder.addConstructorArgValue(prepareResourceSelector(element, engine, parserContext));
         builder.addConstructorArgReference(getLoaderReference(element));
-        builder.addConstructorArgValue(prepareResourceMonitor(element));
+        AbstractBeanDefinition resourceMonitor = prepareResourceMonitor(element);
+        if (isWatched(element)) {
+            // Named so that the refresher can listen to it
+            String monitorId = getResourceMonitorReference(element);
+            parserContext.registerBeanComponent(new BeanComponentDefinition(resourceMonitor, monitorId));
+            builder.addConstructorArgReference(monitorId);
+        } else {
+            builder.addConstructorArgValue(resourceMonitor);
+        }
+        builder.addPropertyReference("snapshotEventHandler", getSnapshotEventHandlerReference(element));
+        String snapshotCache = element.getAttribute("snapshot-cache");
+        if (StringUtils.hasLength(snapshotCache)) {
+            BeanDefinitionBuilder cache = BeanDefinitionBuilder.genericBeanDefinition(SnapshotCache.class);
+            cache.addConstructorArgValue(Paths.get(snapshotCache));
+            builder.addPropertyValue("snapshotCache", cache.getBeanDefinition());
+        }
         Element handlers = selectSingleChildElement(element, "handlers", true);
         if (handlers != null) {
             String rejectedRef = handlers.getAttribute("rejected-ref");
@@ -347,6 +545,46 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
         return builder.getBeanDefinition();
     }
 
+    /**
+     * Load the configuration from the fragments within a <code>conf.d</code> style directory. The manager checks the
+     * fragments itself on each refresh, so no resource monitor is required.
+     * 
+     * @param element
+     * @param confDir
+     * @param parserContext
+     * @return
+     */
+    protected AbstractBeanDefinition prepareDirectoryManager(Element element, String confDir, ParserContext parserContext) {
+        BeanDefinitionBuilder builder = BeanDefinitionBuilder.genericBeanDefinition(DirectorySnapshotManager.class);
+        builder.addConstructorArgValue(parserContext.getReaderContext().getResourceLoader().getResource(confDir));
+        builder.addConstructorArgReference(getLoaderReference(element));
+        String pattern = element.getAttribute("conf-dir-pattern");
+        builder.addConstructorArgValue(StringUtils.hasLength(pattern) ? pattern : DirectorySnapshotManager.DEFAULT_PATTERN);
+        return builder.getBeanDefinition();
+    }
+
+    /**
+     * Will the resource be monitored via the {@link org.brekka.stillingar.spring.snapshot.FileWatchHub}.
+     * 
+     * @param element
+     * @return
+     */
+    protected boolean isWatched(Element element) {
+        return watchableAvailable 
+                && StringUtils.hasLength(element.getAttribute("reload-interval"))
+                && !StringUtils.hasLength(element.getAttribute("conf-dir"))
+                && !"poll".equals(element.getAttribute("reload-strategy"));
+    }
+    
+    /**
+     * @param element
+     * @return
+     */
+    protected static String getResourceMonitorReference(Element element) {
+        String id = element.getAttribute("id");
+        return id + "-resourceMonitor";
+    }
+
     /**
      * @param element
      * @return
@@ -355,11 +593,23 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
         BeanDefinitionBuilder builder = null;
         String reloadIntervalStr = element.getAttribute("reload-interval");
         if (StringUtils.hasLength(reloadIntervalStr)) {
-            if (watchableAvailable) { // Must have a reload-interval to use watched.
+            if (isWatched(element)) { // Must have a reload-interval to use watched.
                 builder = BeanDefinitionBuilder.genericBeanDefinition("org.brekka.stillingar.spring.snapshot.WatchedResourceMonitor");
                 builder.addConstructorArgValue(Integer.valueOf(reloadIntervalStr));
             } else {
-                builder = BeanDefinitionBuilder.genericBeanDefinition(PollingResourceMonitor.class);
+                // Invoked at the reload-interval, backing off while the resource is idle
+                long reloadInterval = Long.valueOf(reloadIntervalStr);
+                String maxIntervalStr = element.getAttribute("reload-max-interval");
+                long maxInterval = StringUtils.hasLength(maxIntervalStr) 
+                        ? Long.valueOf(maxIntervalStr) : AdaptivePollingResourceMonitor.DEFAULT_MAX_INTERVAL;
+                builder = BeanDefinitionBuilder.genericBeanDefinition(AdaptivePollingResourceMonitor.class);
+                builder.addConstructorArgValue(Long.valueOf(reloadInterval));
+                builder.addConstructorArgValue(Long.valueOf(Math.max(maxInterval, reloadInterval)));
+                String reloadAlso = element.getAttribute("reload-also");
+                if (StringUtils.hasLength(reloadAlso)) {
+                    // Inspected in the same pass as the configuration resource
+                    builder.addPropertyValue("additionalResources", StringUtils.tokenizeToStringArray(reloadAlso, " ,\t\n"));
+                }
             }
         } else {
             builder = BeanDefinitionBuilder.genericBeanDefinition(NoopResourceMonitor.class);
@@ -381,6 +631,9 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
             builder = BeanDefinitionBuilder.genericBeanDefinition(ScanningResourceSelector.class);
             builder.addConstructorArgValue(prepareBaseDirectoryList(element));
             builder.addConstructorArgValue(prepareResourceNameResolver(element, engine));
+            String discoveryTimeout = element.getAttribute("discovery-timeout");
+            builder.addConstructorArgValue(StringUtils.hasLength(discoveryTimeout) 
+                    ? Long.valueOf(discoveryTimeout) : Long.valueOf(ScanningResourceSelector.DEFAULT_PROBE_TIMEOUT));
         }
         return builder.getBeanDefinition();
     }
@@ -559,18 +812,36 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
      * @param element
      * @return
      */
-    protected void prepareSnapshotEventHandler(Element element, BeanDefinitionBuilder serviceBuilder) {
-        Element handlers = selectSingleChildElement(element, "handlers", true);
-        if (handlers != null) {
-            String eventRef = handlers.getAttribute("event-ref");
-            if (StringUtils.hasLength(eventRef)) {
-                serviceBuilder.addConstructorArgReference(eventRef);
-                return;
-            }
+    protected void prepareSnapshotEventHandler(Element element, ParserContext parserContext, 
+            BeanDefinitionBuilder serviceBuilder) {
+        String eventHandlerRef = getSnapshotEventHandlerReference(element);
+        if (!hasSnapshotEventHandlerRef(element)) {
+            // Register the default so that it can be shared with the resource snapshot manager
+            BeanDefinitionBuilder eventBuilder = BeanDefinitionBuilder.genericBeanDefinition(LoggingSnapshotEventHandler.class);
+            eventBuilder.addConstructorArgValue(getName(element));
+            parserContext.registerBeanComponent(new BeanComponentDefinition(eventBuilder.getBeanDefinition(), 
+                    eventHandlerRef));
+        }
+        serviceBuilder.addConstructorArgReference(eventHandlerRef);
+    }
+    
+    /**
+     * The name of the snapshot event handler bean, either specified via the 'event-ref' attribute of 'handlers',
+     * or derived from the id of the configuration service.
+     * 
+     * @param element
+     * @return
+     */
+    protected String getSnapshotEventHandlerReference(Element element) {
+        if (hasSnapshotEventHandlerRef(element)) {
+            return selectSingleChildElement(element, "handlers", true).getAttribute("event-ref");
         }
-        BeanDefinitionBuilder eventBuilder = BeanDefinitionBuilder.genericBeanDefinition(LoggingSnapshotEventHandler.class);
-        eventBuilder.addConstructorArgValue(getName(element));
-        serviceBuilder.addConstructorArgValue(eventBuilder.getBeanDefinition());
+        return element.getAttribute("id") + "-snapshotEventHandler";
+    }
+    
+    private static boolean hasSnapshotEventHandlerRef(Element element) {
+        Element handlers = selectSingleChildElement(element, "handlers", true);
+        return handlers != null && StringUtils.hasLength(handlers.getAttribute("event-ref"));
     }
     
     /**
@@ -579,6 +850,10 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
      */
     protected Object prepareDeltaValueInterceptor(Element element) {
         BeanDefinitionBuilder builder = BeanDefinitionBuilder.genericBeanDefinition(SnapshotDeltaValueInterceptor.class);
+        String releaseTimeout = element.getAttribute("release-timeout");
+        if (StringUtils.hasLength(releaseTimeout)) {
+            builder.addConstructorArgValue(Long.valueOf(releaseTimeout));
+        }
         return builder.getBeanDefinition();
     }
 
@@ -630,93 +905,83 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
     }
 
     protected AbstractBeanDefinition prepareXmlBeansConversionManager() {
-        BeanDefinitionBuilder builder = BeanDefinitionBuilder.genericBeanDefinition(ConversionManager.class);
         List<String> converterShortNames = Arrays.asList("BigDecimalConverter", "BigIntegerConverter",
                 "BooleanConverter", "ByteConverter", "ByteArrayConverter", "UUIDConverter", "EnumConverter",
                 "DoubleConverter", "ElementConverter", "FloatConverter", "IntegerConverter", "LongConverter",
                 "ShortConverter", "StringConverter", "URIConverter", "DocumentConverter", "LocaleConverter"
         );
-        ManagedList<AbstractBeanDefinition> converters = toManagedConverterList(converterShortNames, "org.brekka.stillingar.xmlbeans.conversion");
-        converters.addAll(prepareTemporalConverters("org.brekka.stillingar.xmlbeans.conversion", "XmlBeansTemporalAdapter"));
-
-        BeanDefinitionBuilder appCxtBeanDefBuilder = BeanDefinitionBuilder.genericBeanDefinition(ApplicationContextConverter.class);
-        appCxtBeanDefBuilder.addConstructorArgValue(
-                BeanDefinitionBuilder.genericBeanDefinition("org.brekka.stillingar.xmlbeans.conversion.DocumentConverter").getBeanDefinition()
-        );
-        converters.add(appCxtBeanDefBuilder.getBeanDefinition());
-        builder.addConstructorArgValue(converters);
-        return builder.getBeanDefinition();
+        return prepareConversionManager(
+                toClassNames(converterShortNames, "org.brekka.stillingar.xmlbeans.conversion"),
+                "org.brekka.stillingar.xmlbeans.conversion", "XmlBeansTemporalAdapter", 
+                "org.brekka.stillingar.xmlbeans.conversion.DocumentConverter");
     }
     
     protected AbstractBeanDefinition prepareDOMConversionManager() {
-        BeanDefinitionBuilder builder = BeanDefinitionBuilder
-                .genericBeanDefinition(ConversionManager.class);
-        ManagedList<AbstractBeanDefinition> converters = prepareCoreConverters();
-        converters.addAll(prepareTemporalConverters(TemporalAdapter.class.getPackage().getName(), TemporalAdapter.class.getSimpleName()));
-        
-        BeanDefinitionBuilder appCxtBeanDefBuilder = BeanDefinitionBuilder.genericBeanDefinition(ApplicationContextConverter.class);
-        appCxtBeanDefBuilder.addConstructorArgValue(
-                BeanDefinitionBuilder.genericBeanDefinition(DocumentConverter.class).getBeanDefinition()
-        );
-        converters.add(appCxtBeanDefBuilder.getBeanDefinition());
-        builder.addConstructorArgValue(converters);
-        return builder.getBeanDefinition();
+        return prepareConversionManager(prepareCoreConverters(), 
+                TemporalAdapter.class.getPackage().getName(), TemporalAdapter.class.getSimpleName(),
+                DocumentConverter.class.getName());
     }
 
     protected AbstractBeanDefinition prepareJAXBConversionManager() {
-        BeanDefinitionBuilder builder = BeanDefinitionBuilder
-                .genericBeanDefinition(ConversionManager.class);
-        ManagedList<AbstractBeanDefinition> converters = prepareCoreConverters();
-        converters.addAll(prepareTemporalConverters("org.brekka.stillingar.jaxb.conversion", "JAXBTemporalAdapter"));
+        return prepareConversionManager(prepareCoreConverters(), 
+                "org.brekka.stillingar.jaxb.conversion", "JAXBTemporalAdapter",
+                DocumentConverter.class.getName());
+    }
+    
+    /**
+     * The stateless converters are obtained once per class loader via {@link SharedConverters}, leaving only the
+     * {@link ApplicationContextConverter} to be created for each context.
+     * 
+     * @param converterClassNames
+     *            the converters with no-argument constructors.
+     * @param customClassPackage
+     *            the package containing the temporal adapter and the engine specific period converter.
+     * @param temporalAdapterClassShortName
+     *            the name of the temporal adapter class within <code>customClassPackage</code>.
+     * @param documentConverterClassName
+     *            the document converter to pass to the {@link ApplicationContextConverter}.
+     * @return the conversion manager bean definition
+     */
+    protected AbstractBeanDefinition prepareConversionManager(List<String> converterClassNames, 
+            String customClassPackage, String temporalAdapterClassShortName, String documentConverterClassName) {
+        BeanDefinitionBuilder builder = BeanDefinitionBuilder.genericBeanDefinition(ConversionManager.class);
+        
+        List<String> classNames = new ArrayList<String>(converterClassNames);
+        classNames.add("org.brekka.stillingar.core.conversion.time.DurationConverter");
+        List<String> temporalConverterShortNames = new ArrayList<String>(Arrays.asList("DateConverter", 
+                "CalendarConverter", "time.InstantConverter", "time.LocalDateConverter", "time.LocalTimeConverter"));
+        if (ConverterCatalogue.isJodaTimeAvailable()) {
+            // JodaTime is present, add the support classes
+            temporalConverterShortNames.addAll(Arrays.asList("DateTimeConverter", "LocalDateConverter", "LocalTimeConverter"));
+            if (customClassPackage != null) {
+                classNames.add(customClassPackage + ".PeriodConverter");
+            }
+        }
+        
+        BeanDefinitionBuilder sharedBuilder = BeanDefinitionBuilder.genericBeanDefinition(SharedConverters.class);
+        sharedBuilder.setFactoryMethod("get");
+        sharedBuilder.addConstructorArgValue(classNames);
+        sharedBuilder.addConstructorArgValue(customClassPackage + "." + temporalAdapterClassShortName);
+        sharedBuilder.addConstructorArgValue(toClassNames(temporalConverterShortNames, "org.brekka.stillingar.core.conversion"));
+        builder.addConstructorArgValue(sharedBuilder.getBeanDefinition());
 
+        ManagedList<AbstractBeanDefinition> converters = new ManagedList<AbstractBeanDefinition>();
         BeanDefinitionBuilder appCxtBeanDefBuilder = BeanDefinitionBuilder.genericBeanDefinition(ApplicationContextConverter.class);
         appCxtBeanDefBuilder.addConstructorArgValue(
-                BeanDefinitionBuilder.genericBeanDefinition(DocumentConverter.class).getBeanDefinition()
+                BeanDefinitionBuilder.genericBeanDefinition(documentConverterClassName).getBeanDefinition()
         );
         converters.add(appCxtBeanDefBuilder.getBeanDefinition());
         builder.addConstructorArgValue(converters);
         return builder.getBeanDefinition();
     }
     
-    protected ManagedList<AbstractBeanDefinition> prepareCoreConverters() {
+    protected List<String> prepareCoreConverters() {
         List<String> coreConverterShortNames = Arrays.asList("BigDecimalConverter", "BigIntegerConverter",
                 "BooleanConverter", "ByteConverter", "ByteArrayConverter",
                 "DoubleConverter", "xml.ElementConverter", "FloatConverter", "IntegerConverter", "LongConverter",
                 "ShortConverter", "StringConverter", "URIConverter", "xml.DocumentConverter", "LocaleConverter",
                 "UUIDConverter", "EnumConverter");
-        return toManagedConverterList(coreConverterShortNames, "org.brekka.stillingar.core.conversion");
-    }
-    
-    /**
-     * @param string
-     * @return
-     */
-    protected Collection<? extends AbstractBeanDefinition> prepareTemporalConverters(String customClassPackage, 
-            String temporalAdapterClassShortName) {
-        ManagedList<AbstractBeanDefinition> converters = new ManagedList<AbstractBeanDefinition>();
-        BeanDefinitionBuilder temporalBeanBuilder = BeanDefinitionBuilder.genericBeanDefinition(
-                customClassPackage + "." + temporalAdapterClassShortName);
-        AbstractBeanDefinition temporalBeanDef = temporalBeanBuilder.getBeanDefinition();
-        
-        List<String> temporalConverterShortNames = Arrays.asList("DateConverter", "CalendarConverter");
-        if (ClassUtils.isPresent("org.joda.time.ReadableInstant", Thread.currentThread().getContextClassLoader())) {
-            // JodaTime is present, add the support classes
-            temporalConverterShortNames = new ArrayList<String>(temporalConverterShortNames);
-            temporalConverterShortNames.addAll(Arrays.asList("DateTimeConverter", "LocalDateConverter", "LocalTimeConverter"));
-            
-            if (customClassPackage != null) {
-                BeanDefinitionBuilder converterBldr = BeanDefinitionBuilder
-                        .genericBeanDefinition(customClassPackage + ".PeriodConverter");
-                converters.add(converterBldr.getBeanDefinition());
-            }
-        }
-        for (String shortName : temporalConverterShortNames) {
-            BeanDefinitionBuilder converterBldr = BeanDefinitionBuilder
-                    .genericBeanDefinition("org.brekka.stillingar.core.conversion." + shortName);
-            converterBldr.addConstructorArgValue(temporalBeanDef);
-            converters.add(converterBldr.getBeanDefinition());
-        }
-        return converters;
+        return toClassNames(coreConverterShortNames, "org.brekka.stillingar.core.conversion");
     }
 
 
@@ -754,6 +1019,11 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
         String id = element.getAttribute("id");
         return id + "-loader";
     }
+    
+    protected static String getConversionCacheReference(Element element) {
+        String id = element.getAttribute("id");
+        return id + "-conversionCache";
+    }
 
     protected static String getName(Element element) {
         // Optional application name, will use the id if not specified.
@@ -813,17 +1083,15 @@ class ConfigurationServiceBeanDefinitionParser extends AbstractSingleBeanDefinit
     }
     
     /**
-     * @param converters
-     * @param converterShortNames
+     * @param shortNames
+     * @param packagePrefix
      */
-    private static ManagedList<AbstractBeanDefinition> toManagedConverterList(List<String> converterShortNames, String packagePrefix) {
-        ManagedList<AbstractBeanDefinition> converters = new ManagedList<AbstractBeanDefinition>();
-        for (String shortName : converterShortNames) {
-            BeanDefinitionBuilder converterBldr = BeanDefinitionBuilder
-                    .genericBeanDefinition(packagePrefix + "." + shortName);
-            converters.add(converterBldr.getBeanDefinition());
+    private static List<String> toClassNames(List<String> shortNames, String packagePrefix) {
+        List<String> classNames = new ArrayList<String>(shortNames.size());
+        for (String shortName : shortNames) {
+            classNames.add(packagePrefix + "." + shortName);
         }
-        return converters;
+        return classNames;
     }
 
     enum Engine {
@@ -16,7 +16,7 @@
 
 package org.brekka.stillingar.spring.config;
 
-import org.brekka.stillingar.spring.expr.DefaultPlaceholderParser;
+import org.brekka.stillingar.spring.expr.IndexedPlaceholderParser;
 import org.brekka.stillingar.spring.pc.ConfigurationPlaceholderConfigurer;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.AbstractSingleBeanDefinitionParser;
@@ -42,7 +42,7 @@ class PropertyPlaceholderBeanDefinitionParser extends AbstractSingleBeanDefiniti
         builder.addConstructorArgReference(serviceRef);
 
         BeanDefinitionBuilder placeholderParser = BeanDefinitionBuilder
-                .genericBeanDefinition(DefaultPlaceholderParser.class);
+                .genericBeanDefinition(IndexedPlaceholderParser.class);
         placeholderParser.addConstructorArgValue(prefix);
         placeholderParser.addConstructorArgValue(suffix);
 
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.converter;
+
+import java.util.List;
+
+import org.brekka.stillingar.core.conversion.ConverterCatalogue;
+import org.brekka.stillingar.core.conversion.TemporalAdapter;
+import org.brekka.stillingar.core.conversion.TypeConverter;
+import org.brekka.stillingar.core.conversion.TypeConverterListBuilder;
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Static factory used by the Spring namespace to obtain the stateless converters for a {@link 
+ * org.brekka.stillingar.core.conversion.ConversionManager} from the {@link ConverterCatalogue}. The converters are
+ * instantiated only the first time a given combination of class names is requested from a given class loader, so an
+ * application that creates many contexts will share one set of converters between them. Converters that depend on the application context
+ * (such as {@link ApplicationContextConverter}) must not be obtained this way.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class SharedConverters {
+
+    /**
+     * Non-instantiable
+     */
+    private SharedConverters() {
+    }
+    
+    /**
+     * Retrieve the shared list of converters.
+     * 
+     * @param converterClassNames
+     *            converters with a no-argument constructor.
+     * @param temporalAdapterClassName
+     *            the {@link TemporalAdapter} implementation to pass to the temporal converters.
+     * @param temporalConverterClassNames
+     *            converters that require a {@link TemporalAdapter} as their only constructor argument.
+     * @return the immutable shared list of converters.
+     */
+    public static List<TypeConverter<?>> get(final List<String> converterClassNames,
+            final String temporalAdapterClassName, final List<String> temporalConverterClassNames) {
+        String key = SharedConverters.class.getName() + converterClassNames + temporalAdapterClassName
+                + temporalConverterClassNames;
+        return ConverterCatalogue.get(key, new ConverterCatalogue.Source() {
+            @Override
+            public List<TypeConverter<?>> create() {
+                TypeConverterListBuilder builder = new TypeConverterListBuilder();
+                for (String className : converterClassNames) {
+                    builder.addClass(className);
+                }
+                Class<?> temporalAdapterClass = ClassUtils.resolveClassName(
+                        temporalAdapterClassName, ConverterCatalogue.getClassLoader());
+                Object temporalAdapter = BeanUtils.instantiateClass(temporalAdapterClass);
+                for (String className : temporalConverterClassNames) {
+                    builder.addClass(className, temporalAdapter);
+                }
+                return builder.toList();
+            }
+        });
+    }
+}
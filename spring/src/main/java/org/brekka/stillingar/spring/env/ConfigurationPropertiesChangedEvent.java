@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.env;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by a {@link ConfigurationPropertySource} when a refresh of the configuration has changed the value of one
+ * or more of its keys. The new values are available from the property source by the time the event is published.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ConfigurationPropertiesChangedEvent extends ApplicationEvent {
+
+    /**
+     * Serial UID
+     */
+    private static final long serialVersionUID = -3526101874610542263L;
+    
+    /**
+     * The keys whose values have changed.
+     */
+    private final Set<String> changedKeys;
+
+    /**
+     * @param propertySource
+     *            the property source whose values have changed.
+     * @param changedKeys
+     *            the keys whose values have changed.
+     */
+    public ConfigurationPropertiesChangedEvent(ConfigurationPropertySource propertySource, Set<String> changedKeys) {
+        super(propertySource);
+        this.changedKeys = Collections.unmodifiableSet(changedKeys);
+    }
+    
+    /**
+     * @return the property source whose values have changed.
+     */
+    public ConfigurationPropertySource getPropertySource() {
+        return (ConfigurationPropertySource) getSource();
+    }
+    
+    /**
+     * @return the keys whose values have changed (with a value that is now different, added or removed).
+     */
+    public Set<String> getChangedKeys() {
+        return changedKeys;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.env;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.ConfigurationService;
+import org.brekka.stillingar.core.GroupChangeListener;
+import org.brekka.stillingar.core.ValueDefinition;
+import org.brekka.stillingar.core.ValueDefinitionGroup;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+
+/**
+ * Exposes the values of a {@link ConfigurationService} as simple named string properties, for code that looks up
+ * configuration by key on request paths rather than having it injected. Each key is an expression understood by the
+ * underlying configuration source.
+ * 
+ * Values are held in a flat index keyed on the expression. A key is resolved from the configuration the first time it
+ * is requested, after which lookups are a single hash lookup. On each refresh of the configuration service a new index
+ * is built once by resolving every known key against the new configuration, replacing the old index wholesale. Where
+ * any values differ a {@link ConfigurationPropertiesChangedEvent} is published listing the keys that changed.
+ * 
+ * This fills the role of a Spring <code>PropertySource</code>, which is not available in the version of Spring this
+ * module is built against, and follows the same <code>getProperty</code>/<code>containsProperty</code> contract.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ConfigurationPropertySource implements GroupChangeListener, ApplicationEventPublisherAware, 
+        InitializingBean, DisposableBean {
+    
+    /**
+     * Marks keys for which the configuration defines no value.
+     */
+    private static final Object MISSING = new Object();
+
+    /**
+     * The name of this property source.
+     */
+    private final String name;
+    
+    /**
+     * The service providing the values and refresh notifications.
+     */
+    private final ConfigurationService configurationService;
+    
+    /**
+     * The (value-less) group registered with the configuration service to be notified of refreshes.
+     */
+    private final ValueDefinitionGroup refreshGroup;
+    
+    /**
+     * The current index, replaced wholesale on refresh so that keys resolved concurrently with a refresh can only end
+     * up in the index being discarded.
+     */
+    private volatile Index current;
+    
+    /**
+     * Used to publish change events, can be null.
+     */
+    private ApplicationEventPublisher applicationEventPublisher;
+    
+    /**
+     * @param name
+     *            the name of this property source.
+     * @param configurationService
+     *            the service providing the values and refresh notifications.
+     */
+    public ConfigurationPropertySource(String name, ConfigurationService configurationService) {
+        this.name = name;
+        this.configurationService = configurationService;
+        this.refreshGroup = new ValueDefinitionGroup(name, new ArrayList<ValueDefinition<?,?>>(0), this);
+        this.current = new Index(configurationService);
+    }
+    
+    /* (non-Javadoc)
+     * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+     */
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        configurationService.register(refreshGroup, false);
+    }
+    
+    /* (non-Javadoc)
+     * @see org.springframework.beans.factory.DisposableBean#destroy()
+     */
+    @Override
+    public void destroy() throws Exception {
+        configurationService.unregister(refreshGroup);
+    }
+    
+    /**
+     * Retrieve the value of the specified key.
+     * 
+     * @param key
+     *            the expression identifying the value.
+     * @return the value converted to a string, or null if the configuration defines no value for the key.
+     */
+    public String getProperty(String key) {
+        Object value = current.get(key);
+        if (value == MISSING) {
+            return null;
+        }
+        return (String) value;
+    }
+    
+    /**
+     * @param key
+     *            the expression identifying the value.
+     * @return true if the configuration defines a (non-null) value for the key.
+     */
+    public boolean containsProperty(String key) {
+        return current.get(key) != MISSING;
+    }
+    
+    /**
+     * @return the keys currently held in the index, which are those that have been requested so far.
+     */
+    public Set<String> getPropertyNames() {
+        return Collections.unmodifiableSet(current.values.keySet());
+    }
+    
+    /**
+     * @return the name of this property source.
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * The configuration has been refreshed, rebuild the index for the new configuration and notify any listeners of the
+     * keys whose values have changed.
+     */
+    @Override
+    public void onChange(ConfigurationSource configurationSource) {
+        Index previous = current;
+        Index next = new Index(configurationSource);
+        Set<String> changedKeys = new HashSet<String>();
+        for (Map.Entry<String, Object> entry : previous.values.entrySet()) {
+            String key = entry.getKey();
+            Object value = next.get(key);
+            if (!value.equals(entry.getValue())) {
+                changedKeys.add(key);
+            }
+        }
+        this.current = next;
+        if (!changedKeys.isEmpty() 
+                && applicationEventPublisher != null) {
+            applicationEventPublisher.publishEvent(new ConfigurationPropertiesChangedEvent(this, changedKeys));
+        }
+    }
+    
+    /* (non-Javadoc)
+     * @see org.springframework.context.ApplicationEventPublisherAware#setApplicationEventPublisher(org.springframework.context.ApplicationEventPublisher)
+     */
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+    
+    /**
+     * The values resolved from one version of the configuration.
+     */
+    private static final class Index {
+        
+        private final ConfigurationSource source;
+        
+        /**
+         * Resolved values, or {@link ConfigurationPropertySource#MISSING}, keyed on the expression.
+         */
+        private final ConcurrentMap<String, Object> values = new ConcurrentHashMap<String, Object>();
+        
+        Index(ConfigurationSource source) {
+            this.source = source;
+        }
+        
+        /**
+         * Retrieve the value of the key, resolving it from the source on first use.
+         * 
+         * @param key
+         *            the expression
+         * @return the value or {@link ConfigurationPropertySource#MISSING}, never null.
+         */
+        Object get(String key) {
+            Object value = values.get(key);
+            if (value == null) {
+                value = resolve(key);
+                Object existing = values.putIfAbsent(key, value);
+                if (existing != null) {
+                    value = existing;
+                }
+            }
+            return value;
+        }
+        
+        private Object resolve(String key) {
+            if (!source.isAvailable(key)) {
+                return MISSING;
+            }
+            String value = source.retrieve(key, String.class);
+            if (value == null) {
+                return MISSING;
+            }
+            return value;
+        }
+    }
+}
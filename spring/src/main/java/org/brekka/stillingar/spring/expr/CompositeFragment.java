@@ -78,6 +78,20 @@ public class CompositeFragment implements Fragment {
         return fragments;
     }
     
+    /**
+     * @return the parser that will be used to resolve values from the looked-up values.
+     */
+    DefaultPlaceholderParser getParser() {
+        return parser;
+    }
+    
+    /**
+     * @return whether the combined value of the sub-fragments is itself an expression to be evaluated.
+     */
+    public boolean isEvaluate() {
+        return evaluate;
+    }
+    
     /* (non-Javadoc)
      * @see java.lang.Object#toString()
      */
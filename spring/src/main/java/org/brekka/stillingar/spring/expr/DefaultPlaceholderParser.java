@@ -156,6 +156,20 @@ public class DefaultPlaceholderParser implements PlaceholderParser {
         return new CompositeFragment(fragments, inExpression, this);
     }
 
+    /**
+     * Compile the plan used to resolve a looked-up value that contains placeholders. The value is parsed as a nested
+     * placeholder string.
+     * 
+     * @param value
+     *            the value to parse
+     * @param inExpression
+     *            whether the value is itself an expression
+     * @return the plan
+     */
+    protected EvaluationPlan resolvedValuePlan(String value, boolean inExpression) {
+        return EvaluationPlan.compile(parse(value, 1, inExpression));
+    }
+
     /**
      * Find the index of the closing bracket with the sub string. If nested brackets are encountered, then they are
      * counted in order to find the correct closing bracket.
@@ -182,6 +196,34 @@ public class DefaultPlaceholderParser implements PlaceholderParser {
     }
     
 
+    /**
+     * @return the string prefix that identifies a placeholder.
+     */
+    protected String getPlaceholderPrefix() {
+        return placeholderPrefix;
+    }
+
+    /**
+     * @return the string suffix the identifies the end of a placeholder.
+     */
+    protected String getPlaceholderSuffix() {
+        return placeholderSuffix;
+    }
+
+    /**
+     * @return the string prefix that identifies a nested placeholder.
+     */
+    protected String getNestedPrefix() {
+        return nestedPrefix;
+    }
+
+    /**
+     * @return the opening bracket symbol used to identify nested placeholders and well-balanced expressions.
+     */
+    protected String getPlaceholderPrefixSymbol() {
+        return placeholderPrefixSymbol;
+    }
+
     /**
      * Extract all {@link ExpressionFragment}s from the given fragment and return them
      * 
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.expr;
+
+import static java.lang.String.format;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+
+/**
+ * A {@link Fragment} tree compiled into a flat sequence of segments, so that it can be evaluated repeatedly without
+ * walking the tree. Adjacent literals are merged into a single static segment (a plan without any expressions
+ * evaluates to a constant), while each {@link ExpressionFragment} becomes a slot that obtains its current value.
+ * Nested placeholders whose combined value forms the expression to look up become a nested plan.
+ * 
+ * The tree produced by the parser cannot itself be circular, so circular references can only arise from values that
+ * resolve to further placeholders. Values are therefore only parsed again (and tracked for circular references) when
+ * they actually contain the placeholder prefix. The set used to track them is only allocated at that point.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class EvaluationPlan {
+
+    /**
+     * The segments to concatenate.
+     */
+    private final Segment[] segments;
+    
+    /**
+     * The value of the plan when it consists only of literals, otherwise null.
+     */
+    private final String constant;
+    
+    /**
+     * Total length of the static segments, used to size the buffer.
+     */
+    private final int staticLength;
+    
+    private EvaluationPlan(List<Segment> segments) {
+        this.segments = segments.toArray(new Segment[segments.size()]);
+        int length = 0;
+        boolean allStatic = true;
+        for (Segment segment : segments) {
+            if (segment instanceof Literal) {
+                length += ((Literal) segment).value.length();
+            } else {
+                allStatic = false;
+            }
+        }
+        this.staticLength = length;
+        if (allStatic) {
+            this.constant = (this.segments.length == 1 ? ((Literal) this.segments[0]).value : "");
+        } else {
+            this.constant = null;
+        }
+    }
+    
+    /**
+     * Compile the fragment 'tree' into a plan.
+     * 
+     * @param fragment
+     *            the fragment to compile
+     * @return the plan
+     */
+    public static EvaluationPlan compile(Fragment fragment) {
+        List<Segment> segments = new ArrayList<Segment>();
+        StringBuilder literal = new StringBuilder();
+        collect(fragment, segments, literal);
+        flushLiteral(segments, literal);
+        return new EvaluationPlan(segments);
+    }
+    
+    /**
+     * Evaluate the plan against the configuration source.
+     * 
+     * @param configurationSource
+     *            the source from which to retrieve the values of expressions that have not been assigned a value.
+     * @return the evaluation result
+     */
+    public String evaluate(ConfigurationSource configurationSource) {
+        return evaluate(configurationSource, null);
+    }
+    
+    /**
+     * @return true if this plan always evaluates to the same value.
+     */
+    public boolean isConstant() {
+        return constant != null;
+    }
+    
+    /**
+     * @param visitedValues
+     *            the values currently being resolved, may be null if none.
+     */
+    String evaluate(ConfigurationSource configurationSource, Set<String> visitedValues) {
+        if (constant != null) {
+            return constant;
+        }
+        if (segments.length == 1) {
+            return segments[0].evaluate(configurationSource, visitedValues);
+        }
+        StringBuilder sb = new StringBuilder(staticLength + 16 * segments.length);
+        for (Segment segment : segments) {
+            sb.append(segment.evaluate(configurationSource, visitedValues));
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Resolve a looked-up (or concatenated) value, which may itself contain placeholders.
+     * 
+     * @param value
+     *            the value to resolve
+     * @param inExpression
+     *            whether the value is itself an expression whose value should be looked up.
+     * @param parser
+     *            the parser used to parse values containing placeholders.
+     * @param configurationSource
+     *            the source of expression values
+     * @param visitedValues
+     *            the values currently being resolved (may be null if none) used to detect circular references.
+     * @return the resolved value
+     * @throws IllegalArgumentException
+     *             if a circular reference is detected.
+     */
+    static String resolve(String value, boolean inExpression, DefaultPlaceholderParser parser, 
+            ConfigurationSource configurationSource, Set<String> visitedValues) {
+        if (value.indexOf(parser.getNestedPrefix()) < 0) {
+            if (!inExpression) {
+                return value;
+            }
+            // The value is the expression to look up
+            String retrieved = configurationSource.retrieve(value, String.class);
+            return resolve(retrieved, false, parser, configurationSource, visitedValues);
+        }
+        Set<String> visited = visitedValues;
+        if (visited == null) {
+            visited = new HashSet<String>();
+        }
+        if (!visited.add(value)) {
+            throw new IllegalArgumentException(format("Circular reference detected while resolving '%s'", value));
+        }
+        String retVal = parser.resolvedValuePlan(value, inExpression).evaluate(configurationSource, visited);
+        visited.remove(value);
+        return retVal;
+    }
+    
+    private static void collect(Fragment fragment, List<Segment> segments, StringBuilder literal) {
+        if (fragment instanceof StringFragment) {
+            literal.append(((StringFragment) fragment).getValue());
+        } else if (fragment instanceof ExpressionFragment) {
+            flushLiteral(segments, literal);
+            segments.add(new Slot((ExpressionFragment) fragment));
+        } else if (fragment instanceof CompositeFragment) {
+            CompositeFragment composite = (CompositeFragment) fragment;
+            if (composite.isEvaluate()) {
+                flushLiteral(segments, literal);
+                List<Segment> nestedSegments = new ArrayList<Segment>();
+                StringBuilder nestedLiteral = new StringBuilder();
+                for (Fragment child : composite.getFragments()) {
+                    collect(child, nestedSegments, nestedLiteral);
+                }
+                flushLiteral(nestedSegments, nestedLiteral);
+                segments.add(new Nested(new EvaluationPlan(nestedSegments), composite.getParser()));
+            } else {
+                for (Fragment child : composite.getFragments()) {
+                    collect(child, segments, literal);
+                }
+            }
+        } else {
+            flushLiteral(segments, literal);
+            segments.add(new Opaque(fragment));
+        }
+    }
+    
+    private static void flushLiteral(List<Segment> segments, StringBuilder literal) {
+        if (literal.length() > 0) {
+            segments.add(new Literal(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+    
+    /**
+     * Part of a plan
+     */
+    private interface Segment {
+        String evaluate(ConfigurationSource configurationSource, Set<String> visitedValues);
+    }
+    
+    /**
+     * Static text
+     */
+    private static final class Literal implements Segment {
+        private final String value;
+
+        Literal(String value) {
+            this.value = value;
+        }
+        
+        @Override
+        public String evaluate(ConfigurationSource configurationSource, Set<String> visitedValues) {
+            return value;
+        }
+    }
+    
+    /**
+     * The value of an expression fragment
+     */
+    private static final class Slot implements Segment {
+        private final ExpressionFragment fragment;
+
+        Slot(ExpressionFragment fragment) {
+            this.fragment = fragment;
+        }
+        
+        @Override
+        public String evaluate(ConfigurationSource configurationSource, Set<String> visitedValues) {
+            return resolve(fragment.currentValue(configurationSource), false, fragment.getParser(), 
+                    configurationSource, visitedValues);
+        }
+    }
+    
+    /**
+     * A nested placeholder whose combined value is the expression to look up
+     */
+    private static final class Nested implements Segment {
+        private final EvaluationPlan plan;
+        
+        private final DefaultPlaceholderParser parser;
+
+        Nested(EvaluationPlan plan, DefaultPlaceholderParser parser) {
+            this.plan = plan;
+            this.parser = parser;
+        }
+        
+        @Override
+        public String evaluate(ConfigurationSource configurationSource, Set<String> visitedValues) {
+            String expression = plan.evaluate(configurationSource, visitedValues);
+            return resolve(expression, true, parser, configurationSource, visitedValues);
+        }
+    }
+    
+    /**
+     * Fragment of an unknown type, evaluated directly.
+     */
+    private static final class Opaque implements Segment {
+        private final Fragment fragment;
+
+        Opaque(Fragment fragment) {
+            this.fragment = fragment;
+        }
+        
+        @Override
+        public String evaluate(ConfigurationSource configurationSource, Set<String> visitedValues) {
+            return fragment.evaluate(configurationSource, 
+                    (visitedValues != null ? visitedValues : new HashSet<String>()));
+        }
+    }
+}
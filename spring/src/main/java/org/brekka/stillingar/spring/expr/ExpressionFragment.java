@@ -82,11 +82,29 @@ public class ExpressionFragment implements Fragment {
      */
     @Override
     public String evaluate(ConfigurationSource configurationSource, Set<String> visitedExpressions) {
-        String theValue = value;
-        if (!this.changed) {
-            theValue = configurationSource.retrieve(expression, String.class);
+        return evaluate(currentValue(configurationSource), visitedExpressions, parser, configurationSource, false);
+    }
+    
+    /**
+     * The value most recently assigned via {@link #setValue(String)}, or if none has been assigned yet, the value
+     * retrieved from the configuration source.
+     * 
+     * @param configurationSource
+     *            the source to retrieve the value from if none has been assigned.
+     * @return the unresolved value.
+     */
+    String currentValue(ConfigurationSource configurationSource) {
+        if (this.changed) {
+            return value;
         }
-        return evaluate(theValue, visitedExpressions, parser, configurationSource, false);
+        return configurationSource.retrieve(expression, String.class);
+    }
+    
+    /**
+     * @return the parser that will be used to resolve values from the looked-up values.
+     */
+    DefaultPlaceholderParser getParser() {
+        return parser;
     }
 
     /*
@@ -100,7 +118,8 @@ public class ExpressionFragment implements Fragment {
     }
 
     /**
-     * Helper method to evaluate the expression and any resolved expression.
+     * Helper method to evaluate the expression and any resolved expression. Only values that contain placeholders
+     * are parsed again, see {@link EvaluationPlan#resolve}.
      * 
      * @param value
      * @param visitedExpressions
@@ -111,14 +130,6 @@ public class ExpressionFragment implements Fragment {
      */
     static String evaluate(String value, Set<String> visitedExpressions, DefaultPlaceholderParser helper,
             ConfigurationSource configurationSource, boolean inExpression) {
-        String retVal;
-        if (visitedExpressions.add(value)) {
-            Fragment valueFragment = helper.parse(value, 1, inExpression);
-            retVal = valueFragment.evaluate(configurationSource, visitedExpressions);
-            visitedExpressions.remove(value);
-        } else {
-            throw new IllegalArgumentException(String.format("Circular reference detected while resolving '%s'", value));
-        }
-        return retVal;
+        return EvaluationPlan.resolve(value, inExpression, helper, configurationSource, visitedExpressions);
     }
 }
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.expr;
+
+import static java.lang.String.format;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.brekka.stillingar.api.ConfigurationException;
+
+/**
+ * Produces the same {@link Fragment} structure as {@link DefaultPlaceholderParser}, but lexes the string in a single
+ * pass over its character indices. Substrings are only taken for the literal and expression parts that end up in
+ * fragments, rather than for every character examined.
+ * 
+ * The fragments parsed for a given top-level string are also retained in a small LRU cache. As
+ * {@link ExpressionFragment}s capture the values assigned to them, each call returns a fresh copy of the cached tree
+ * (sharing the immutable {@link StringFragment}s and strings) so that separate callers never share state. The
+ * {@link EvaluationPlan}s for looked-up values that themselves contain placeholders are cached too.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class IndexedPlaceholderParser extends DefaultPlaceholderParser {
+
+    /**
+     * The default maximum number of parsed strings to retain.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 512;
+    
+    /**
+     * The single character opening bracket symbol, or -1 if the symbol is not a single character (in which case it
+     * can never match, consistent with {@link DefaultPlaceholderParser}).
+     */
+    private final int prefixSymbolChar;
+    
+    /**
+     * The single character suffix, or -1 if the suffix is not a single character.
+     */
+    private final int suffixChar;
+    
+    /**
+     * Previously parsed fragment trees, keyed on the top-level string.
+     */
+    private final Map<String, Fragment> fragmentCache;
+    
+    /**
+     * Plans compiled for looked-up values containing placeholders, keyed on the value.
+     */
+    private final Map<String, EvaluationPlan> valuePlanCache;
+    
+    /**
+     * Plans compiled for looked-up values containing placeholders that are themselves expressions, keyed on the
+     * value.
+     */
+    private final Map<String, EvaluationPlan> expressionPlanCache;
+    
+    /**
+     * @param placeholderPrefix
+     *            The string prefix that identifies a placeholder.
+     * @param placeholderSuffix
+     *            The string suffix the identifies the end of a placeholder.
+     */
+    public IndexedPlaceholderParser(String placeholderPrefix, String placeholderSuffix) {
+        this(placeholderPrefix, placeholderSuffix, DEFAULT_CACHE_SIZE);
+    }
+    
+    /**
+     * @param placeholderPrefix
+     *            The string prefix that identifies a placeholder.
+     * @param placeholderSuffix
+     *            The string suffix the identifies the end of a placeholder.
+     * @param cacheSize
+     *            the maximum number of parsed strings to retain. Zero disables caching.
+     */
+    public IndexedPlaceholderParser(String placeholderPrefix, String placeholderSuffix, int cacheSize) {
+        super(placeholderPrefix, placeholderSuffix);
+        this.prefixSymbolChar = singleChar(getPlaceholderPrefixSymbol());
+        this.suffixChar = singleChar(getPlaceholderSuffix());
+        this.fragmentCache = lruMap(cacheSize);
+        this.valuePlanCache = lruMap(cacheSize);
+        this.expressionPlanCache = lruMap(cacheSize);
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.spring.expr.DefaultPlaceholderParser#parse(java.lang.String)
+     */
+    @Override
+    public Fragment parse(String strVal) {
+        if (!strVal.contains(getPlaceholderPrefix())) {
+            return new StringFragment(strVal);
+        }
+        Fragment fragment = fragmentCache.get(strVal);
+        if (fragment == null) {
+            fragment = parse(strVal, 0, false);
+            fragmentCache.put(strVal, fragment);
+        }
+        return copy(fragment);
+    }
+    
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.spring.expr.DefaultPlaceholderParser#parse(java.lang.String, int, boolean)
+     */
+    @Override
+    Fragment parse(String strVal, int depth, boolean inExpression) {
+        return parse(strVal, 0, strVal.length(), depth, inExpression);
+    }
+    
+    /**
+     * Plans for looked-up values are cached. They can be safely shared as the {@link ExpressionFragment}s they
+     * contain are never assigned a value, always retrieving it from the configuration source being evaluated.
+     */
+    @Override
+    protected EvaluationPlan resolvedValuePlan(String value, boolean inExpression) {
+        Map<String, EvaluationPlan> cache = (inExpression ? expressionPlanCache : valuePlanCache);
+        EvaluationPlan plan = cache.get(value);
+        if (plan == null) {
+            plan = super.resolvedValuePlan(value, inExpression);
+            cache.put(value, plan);
+        }
+        return plan;
+    }
+    
+    /**
+     * Parse the region <code>[start, end)</code> of the string.
+     * 
+     * @param strVal
+     *            the string containing the region to parse
+     * @param start
+     *            the index of the first character of the region
+     * @param end
+     *            the index after the last character of the region
+     * @param depth
+     *            the current nested placeholder depth (0 = top).
+     * @param inExpression
+     *            are we currently within an expression?
+     * @return the {@link Fragment} 'tree' that represents the region.
+     */
+    private Fragment parse(String strVal, int start, int end, int depth, boolean inExpression) {
+        String prefix = (depth == 0 ? getPlaceholderPrefix() : getNestedPrefix());
+        int prefixLength = prefix.length();
+        List<Fragment> fragments = null;
+        int literalStart = start;
+        int i = start;
+        while (i < end) {
+            if (i + prefixLength <= end
+                    && strVal.regionMatches(i, prefix, 0, prefixLength)) {
+                if (fragments == null) {
+                    fragments = new ArrayList<Fragment>();
+                }
+                if (i > literalStart) {
+                    // We have regular string data
+                    fragments.add(new StringFragment(strVal.substring(literalStart, i)));
+                }
+                int contentStart = i + prefixLength;
+                int closingIndex = findClosing(strVal, contentStart, end);
+                fragments.add(parse(strVal, contentStart, closingIndex, depth + 1, true));
+                i = closingIndex + 1;
+                literalStart = i;
+            } else {
+                i++;
+            }
+        }
+        
+        if (fragments == null) {
+            String value = strVal.substring(start, end);
+            if (inExpression) {
+                return new ExpressionFragment(value, this);
+            }
+            return new StringFragment(value);
+        }
+        if (end > literalStart) {
+            fragments.add(new StringFragment(strVal.substring(literalStart, end)));
+        }
+        return new CompositeFragment(fragments, inExpression, this);
+    }
+    
+    /**
+     * Find the index of the closing bracket within the region of the string. If nested brackets are encountered, then
+     * they are counted in order to find the correct closing bracket.
+     * 
+     * @return the index of the closing bracket within <code>strVal</code>
+     */
+    private int findClosing(String strVal, int start, int end) {
+        int depth = 1;
+        for (int i = start; i < end; i++) {
+            char c = strVal.charAt(i);
+            if (c == prefixSymbolChar) {
+                depth++;
+            } else if (c == suffixChar) {
+                depth--;
+            }
+            if (depth == 0) {
+                return i;
+            }
+        }
+        throw new ConfigurationException(format("Failed to locate closing bracket '%s' in expression fragment "
+                + "'%s' (reached depth %d)", getPlaceholderSuffix(), strVal.substring(start, end), depth));
+    }
+    
+    /**
+     * Copy the fragment tree, creating new instances of the stateful fragments.
+     */
+    private Fragment copy(Fragment fragment) {
+        if (fragment instanceof ExpressionFragment) {
+            return new ExpressionFragment(((ExpressionFragment) fragment).getExpression(), this);
+        }
+        if (fragment instanceof CompositeFragment) {
+            CompositeFragment composite = (CompositeFragment) fragment;
+            List<Fragment> fragments = composite.getFragments();
+            List<Fragment> copies = new ArrayList<Fragment>(fragments.size());
+            for (Fragment child : fragments) {
+                copies.add(copy(child));
+            }
+            return new CompositeFragment(copies, composite.isEvaluate(), this);
+        }
+        return fragment;
+    }
+    
+    private static int singleChar(String value) {
+        return (value.length() == 1 ? value.charAt(0) : -1);
+    }
+    
+    @SuppressWarnings("serial")
+    private static <V> Map<String, V> lruMap(final int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+}
@@ -46,6 +46,13 @@ public class StringFragment implements Fragment {
         return value;
     }
     
+    /**
+     * @return the string literal.
+     */
+    public String getValue() {
+        return value;
+    }
+    
     /* (non-Javadoc)
      * @see java.lang.Object#toString()
      */
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.pc;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.core.Expirable;
+import org.brekka.stillingar.spring.expr.Fragment;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Base for listeners that update Spring's internal definition of a (prototype) bean, so that new bean instances are
+ * created with the latest configuration. The value last applied is remembered so that the definition is only touched
+ * when the value actually changes, which allows {@link BeanPlaceholderGroupListener} to apply the changes to a
+ * definition as a single batch.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+abstract class AbstractDefinitionChangeListener extends AbstractExpressionGroupListener implements Expirable {
+    
+    /**
+     * The name of the bean that will be used to lookup its bean definition in the beanFactory.
+     */
+    private final String beanName;
+
+    /**
+     * Bean factory to lookup the bean definition in.
+     */
+    private final WeakReference<ConfigurableListableBeanFactory> beanFactoryRef;
+    
+    /**
+     * The value last applied to the definition.
+     */
+    private String appliedValue;
+    
+    /**
+     * Whether a value has been applied.
+     */
+    private boolean applied;
+
+    /**
+     * @param beanName
+     *            The name of the bean that will be used to lookup its bean definition in the beanFactory.
+     * @param beanFactory
+     *            Bean factory to lookup the bean definition in.
+     * @param fragment
+     *            the fragment that will be used to evaluate and obtain the value which will be passed to
+     *            {@link #onChange(String)}
+     */
+    protected AbstractDefinitionChangeListener(String beanName, ConfigurableListableBeanFactory beanFactory, 
+            Fragment fragment) {
+        super(fragment);
+        this.beanName = beanName;
+        this.beanFactoryRef = new WeakReference<ConfigurableListableBeanFactory>(beanFactory);
+    }
+    
+    /**
+     * Update the definition with the new value, if it has changed.
+     */
+    @Override
+    protected void onChange(String newValue) {
+        if (!isChanged(newValue)) {
+            return;
+        }
+        ConfigurableListableBeanFactory beanFactory = beanFactoryRef.get();
+        if (beanFactory == null) {
+            return;
+        }
+        BeanDefinition beanDef = beanFactory.getMergedBeanDefinition(beanName);
+        if (applyTo(beanDef, newValue) 
+                && isConstructorArgument()) {
+            resetResolvedConstructor(beanDef, beanName);
+        }
+        setAppliedValue(newValue);
+    }
+    
+    /**
+     * Apply the new value to the bean definition.
+     * 
+     * @param beanDef
+     *            the (merged) definition to update
+     * @param newValue
+     *            the new value
+     * @return true if the definition was modified.
+     */
+    abstract boolean applyTo(BeanDefinition beanDef, String newValue);
+    
+    /**
+     * @return true if changes to this value require the resolved constructor of the definition to be reset.
+     */
+    boolean isConstructorArgument() {
+        return false;
+    }
+    
+    /**
+     * Determine whether the value differs from the one last applied.
+     * 
+     * @param newValue
+     *            the newly evaluated value
+     * @return true if the definition needs to be updated.
+     */
+    boolean isChanged(String newValue) {
+        return !applied 
+            || !ObjectUtils.nullSafeEquals(newValue, appliedValue);
+    }
+    
+    /**
+     * @param appliedValue
+     *            the value that the definition now holds
+     */
+    void setAppliedValue(String appliedValue) {
+        this.appliedValue = appliedValue;
+        this.applied = true;
+    }
+    
+    /**
+     * @return the bean factory, or null if it has been collected
+     */
+    ConfigurableListableBeanFactory getBeanFactory() {
+        return beanFactoryRef.get();
+    }
+    
+    /**
+     * @return the name of the bean whose definition is updated.
+     */
+    public String getBeanName() {
+        return beanName;
+    }
+    
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.Expirable#isExpired()
+     */
+    @Override
+    public boolean isExpired() {
+        return beanFactoryRef.isEnqueued();
+    }
+    
+    /**
+     * Spring implements caching of constructor values, which can be reset by clearing the package-private field
+     * 'resolvedConstructorOrFactoryMethod' on RootBeanDefinition. Naturally this will fail if a security manager is
+     * present but there doesn't seem to be any other way to do it. Make sure to warn about this in the documentation!
+     * 
+     * @param beanDef
+     *            the merged definition whose constructor arguments have changed
+     * @param beanName
+     *            the name of the bean, for error reporting.
+     */
+    static void resetResolvedConstructor(BeanDefinition beanDef, String beanName) {
+        try {
+            Field field = beanDef.getClass().getDeclaredField("resolvedConstructorOrFactoryMethod");
+            field.setAccessible(true);
+            field.set(beanDef, null);
+        } catch (Exception e) {
+            throw new ConfigurationException(String.format("Unable to update constructor arguments. "
+                    + "Failed to reset the cached constructor state for bean '%s'", beanName), e);
+        }
+    }
+}
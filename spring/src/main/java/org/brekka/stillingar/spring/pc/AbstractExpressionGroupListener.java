@@ -16,23 +16,23 @@
 
 package org.brekka.stillingar.spring.pc;
 
-import java.util.HashSet;
-
 import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.core.GroupChangeListener;
+import org.brekka.stillingar.spring.expr.EvaluationPlan;
 import org.brekka.stillingar.spring.expr.Fragment;
 
 /**
- * Evaluates the fragment and passes the result to the onChange method.
+ * Evaluates the fragment and passes the result to the onChange method. The fragment is compiled into an
+ * {@link EvaluationPlan} up front, rather than being walked on each change.
  *
  * @author Andrew Taylor (andrew@brekka.org)
  */
 public abstract class AbstractExpressionGroupListener implements GroupChangeListener {
 
     /**
-     * The fragment that will be evaluated
+     * The plan compiled from the fragment that will be evaluated
      */
-    private final Fragment fragment;
+    private final EvaluationPlan plan;
     
     /**
      * @param fragment The fragment that will be evaluated
@@ -42,7 +42,7 @@ public abstract class AbstractExpressionGroupListener implements GroupChangeList
         if (fragment == null) {
             throw new IllegalArgumentException("A fragment must be specified");
         }
-        this.fragment = fragment;
+        this.plan = EvaluationPlan.compile(fragment);
     }
 
     /* (non-Javadoc)
@@ -50,9 +50,20 @@ public abstract class AbstractExpressionGroupListener implements GroupChangeList
      */
     @Override
     public void onChange(ConfigurationSource configurationSource) {
-        String value = fragment.evaluate(configurationSource, new HashSet<String>());
+        String value = evaluate(configurationSource);
         onChange(value);
     }
+    
+    /**
+     * Evaluate the fragment without applying the result.
+     * 
+     * @param configurationSource
+     *            the source to evaluate the fragment against
+     * @return the value
+     */
+    String evaluate(ConfigurationSource configurationSource) {
+        return plan.evaluate(configurationSource);
+    }
 
     protected abstract void onChange(String newValue);
 }
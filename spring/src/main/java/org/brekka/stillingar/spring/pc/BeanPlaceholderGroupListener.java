@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.pc;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.Expirable;
+import org.brekka.stillingar.core.GroupChangeListener;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+/**
+ * Listener for the single group registered for all of the placeholders found within a bean definition. Changes to
+ * the definition are applied together in one batch, touching the definition only for values that have actually
+ * changed, while the properties of a singleton bean are evaluated and then applied to the bean instance in a single
+ * pass using the setters cached by each property listener.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+class BeanPlaceholderGroupListener implements GroupChangeListener, Expirable {
+    /**
+     * The name of the bean that the placeholders belong to.
+     */
+    private final String beanName;
+
+    /**
+     * Bean factory to lookup the bean in.
+     */
+    private final WeakReference<BeanFactory> beanFactoryRef;
+    
+    /**
+     * Properties of the singleton bean instance to update.
+     */
+    private final BeanPropertyChangeListener[] propertyListeners;
+    
+    /**
+     * Listeners that update the bean definition.
+     */
+    private final AbstractDefinitionChangeListener[] definitionListeners;
+    
+    /**
+     * @param beanName
+     *            The name of the bean that the placeholders belong to.
+     * @param beanFactory
+     *            Bean factory to lookup the bean in.
+     * @param propertyListeners
+     *            Properties of the singleton bean instance to update.
+     * @param definitionListeners
+     *            Listeners that update the bean definition.
+     */
+    public BeanPlaceholderGroupListener(String beanName, BeanFactory beanFactory,
+            List<BeanPropertyChangeListener> propertyListeners, 
+            List<AbstractDefinitionChangeListener> definitionListeners) {
+        this.beanName = beanName;
+        this.beanFactoryRef = new WeakReference<BeanFactory>(beanFactory);
+        this.propertyListeners = propertyListeners.toArray(
+                new BeanPropertyChangeListener[propertyListeners.size()]);
+        this.definitionListeners = definitionListeners.toArray(
+                new AbstractDefinitionChangeListener[definitionListeners.size()]);
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.GroupChangeListener#onChange(org.brekka.stillingar.api.ConfigurationSource)
+     */
+    @Override
+    public void onChange(ConfigurationSource configurationSource) {
+        if (definitionListeners.length > 0) {
+            applyDefinitionChanges(configurationSource);
+        }
+        if (propertyListeners.length == 0) {
+            return;
+        }
+        Object bean = propertyListeners[0].getBean();
+        if (bean == null) {
+            return;
+        }
+        for (BeanPropertyChangeListener listener : propertyListeners) {
+            listener.apply(bean, listener.evaluate(configurationSource));
+        }
+    }
+    
+    /**
+     * Apply all of the changed definition values as a single batch. The merged bean definition is only looked up if
+     * at least one value has changed, and its resolved constructor is reset at most once.
+     */
+    private void applyDefinitionChanges(ConfigurationSource configurationSource) {
+        BeanDefinition beanDef = null;
+        boolean constructorChanged = false;
+        for (AbstractDefinitionChangeListener listener : definitionListeners) {
+            String newValue = listener.evaluate(configurationSource);
+            if (!listener.isChanged(newValue)) {
+                continue;
+            }
+            if (beanDef == null) {
+                ConfigurableListableBeanFactory beanFactory = listener.getBeanFactory();
+                if (beanFactory == null) {
+                    return;
+                }
+                beanDef = beanFactory.getMergedBeanDefinition(beanName);
+            }
+            if (listener.applyTo(beanDef, newValue)) {
+                constructorChanged |= listener.isConstructorArgument();
+            }
+            listener.setAppliedValue(newValue);
+        }
+        if (constructorChanged) {
+            AbstractDefinitionChangeListener.resetResolvedConstructor(beanDef, beanName);
+        }
+    }
+    
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.Expirable#isExpired()
+     */
+    @Override
+    public boolean isExpired() {
+        return beanFactoryRef.isEnqueued();
+    }
+    
+    /**
+     * @return the number of placeholders (properties and constructor arguments) handled by this listener.
+     */
+    public int getBindingCount() {
+        return propertyListeners.length + definitionListeners.length;
+    }
+}
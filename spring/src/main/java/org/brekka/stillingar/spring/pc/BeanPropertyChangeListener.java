@@ -27,7 +27,8 @@ import org.springframework.beans.factory.BeanFactory;
 
 /**
  * A value change listener that will resolve property changes by looking up the named bean in the {@link BeanFactory}
- * and then updating the instance directly.
+ * and then updating the instance directly. The bean instance is retained weakly and the property setter is resolved
+ * once per bean class, so subsequent updates do not need to go back to the bean factory or build a bean wrapper.
  * 
  * @author Andrew Taylor (andrew@brekka.org)
  */
@@ -46,6 +47,16 @@ class BeanPropertyChangeListener extends AbstractExpressionGroupListener impleme
      * Bean factory to lookup the bean in.
      */
     private final WeakReference<BeanFactory> beanFactoryRef;
+    
+    /**
+     * The bean instance last looked up from the bean factory.
+     */
+    private WeakReference<Object> beanRef;
+    
+    /**
+     * The setter resolved for the property of the bean class, or null if not yet resolved (or not resolvable).
+     */
+    private PropertySetter setter;
 
     /**
      * @param beanName
@@ -65,6 +76,13 @@ class BeanPropertyChangeListener extends AbstractExpressionGroupListener impleme
         this.beanFactoryRef = new WeakReference<BeanFactory>(beanFactory);
     }
     
+    /**
+     * @return the name of the property being updated.
+     */
+    public String getProperty() {
+        return property;
+    }
+    
     /* (non-Javadoc)
      * @see org.brekka.stillingar.core.ExpiringListener#isExpired()
      */
@@ -77,12 +95,52 @@ class BeanPropertyChangeListener extends AbstractExpressionGroupListener impleme
      * Handle the change by using reflection to change the bean property.
      */
     public void onChange(String newValue) {
-        BeanFactory beanFactory = beanFactoryRef.get();
-        if (beanFactory == null) {
+        Object bean = getBean();
+        if (bean == null) {
             return;
         }
-        Object bean = beanFactory.getBean(beanName);
-        BeanWrapper beanWrapper = PropertyAccessorFactory.forBeanPropertyAccess(bean);
-        beanWrapper.setPropertyValue(new PropertyValue(property, newValue));
+        apply(bean, newValue);
+    }
+    
+    /**
+     * Retrieve the bean instance, only going to the bean factory if the previously retrieved instance has been
+     * garbage collected.
+     * 
+     * @return the bean or null if the bean factory is no longer available.
+     */
+    Object getBean() {
+        Object bean = (beanRef != null ? beanRef.get() : null);
+        if (bean == null) {
+            BeanFactory beanFactory = beanFactoryRef.get();
+            if (beanFactory == null) {
+                return null;
+            }
+            bean = beanFactory.getBean(beanName);
+            beanRef = new WeakReference<Object>(bean);
+        }
+        return bean;
+    }
+    
+    /**
+     * Set the property of the bean to the new value, using the cached setter where the property is a simple one.
+     * Nested or indexed property paths fall back to a bean wrapper.
+     * 
+     * @param bean
+     *            the bean to update
+     * @param newValue
+     *            the new value
+     */
+    void apply(Object bean, String newValue) {
+        Class<?> beanClass = bean.getClass();
+        if (setter == null 
+                || !setter.appliesTo(beanClass)) {
+            setter = PropertySetter.resolve(beanClass, property);
+        }
+        if (setter != null) {
+            setter.set(bean, newValue);
+        } else {
+            BeanWrapper beanWrapper = PropertyAccessorFactory.forBeanPropertyAccess(bean);
+            beanWrapper.setPropertyValue(new PropertyValue(property, newValue));
+        }
     }
-}
\ No newline at end of file
+}
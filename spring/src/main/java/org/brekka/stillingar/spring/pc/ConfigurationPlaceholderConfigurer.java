@@ -16,9 +16,10 @@
 
 package org.brekka.stillingar.spring.pc;
 
-
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.brekka.stillingar.api.ConfigurationSource;
-import org.brekka.stillingar.spring.expr.DefaultPlaceholderParser;
+import org.brekka.stillingar.spring.expr.IndexedPlaceholderParser;
 import org.brekka.stillingar.spring.expr.PlaceholderParser;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanDefinitionStoreException;
@@ -31,7 +32,6 @@ import org.springframework.beans.factory.config.BeanDefinitionVisitor;
 import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.config.PropertyPlaceholderConfigurer;
-import org.springframework.util.StringValueResolver;
 
 /**
  * Identifies and replaces placeholders defined within a Spring configuration with values obtained from a
@@ -44,6 +44,11 @@ import org.springframework.util.StringValueResolver;
 public class ConfigurationPlaceholderConfigurer implements BeanFactoryPostProcessor, BeanFactoryAware, BeanNameAware,
         InitializingBean {
 
+    /**
+     * Logger providing helpful output (if enabled).
+     */
+    private static final Log log = LogFactory.getLog(ConfigurationPlaceholderConfigurer.class);
+
     /**
      * The source for configuration values
      */
@@ -74,7 +79,7 @@ public class ConfigurationPlaceholderConfigurer implements BeanFactoryPostProces
     @Override
     public void afterPropertiesSet() throws Exception {
         if (placeholderParser == null) {
-            placeholderParser = new DefaultPlaceholderParser("${", "}");
+            placeholderParser = new IndexedPlaceholderParser("${", "}");
         }
     }
 
@@ -86,8 +91,8 @@ public class ConfigurationPlaceholderConfigurer implements BeanFactoryPostProces
     public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactoryToProcess) throws BeansException {
 
         String[] beanNames = beanFactoryToProcess.getBeanDefinitionNames();
+        CustomStringValueResolver valueResolver = new CustomStringValueResolver(this.placeholderParser, this.configurationSource, this.beanFactory);
         for (String curName : beanNames) {
-            CustomStringValueResolver valueResolver = new CustomStringValueResolver(this.placeholderParser, this.configurationSource, this.beanFactory);
 
             // Check that we're not parsing our own bean definition,
             // to avoid failing on unresolvable placeholders in properties file
@@ -98,13 +103,19 @@ public class ConfigurationPlaceholderConfigurer implements BeanFactoryPostProces
                 try {
                     BeanDefinitionVisitor visitor = new CustomBeanDefinitionVisitor(curName, beanDef.isSingleton(), valueResolver);
                     visitor.visitBeanDefinition(beanDef);
+                    valueResolver.registerBeanGroup();
                 } catch (Exception ex) {
                     throw new BeanDefinitionStoreException(beanDef.getResourceDescription(), curName, ex);
                 }
             }
         }
 
-        StringValueResolver valueResolver = new CustomStringValueResolver(this.placeholderParser, this.configurationSource, this.beanFactory);
+        // No longer associated with a bean definition, values will simply be resolved.
+        valueResolver.setBeanDefVisitor(null);
+        if (log.isInfoEnabled()) {
+            log.info(String.format("Registered %d placeholders for updates in %d bean groups", 
+                    valueResolver.getBindingCount(), valueResolver.getGroupCount()));
+        }
 
         // New in Spring 2.5: resolve placeholders in alias target names and
         // aliases as well.
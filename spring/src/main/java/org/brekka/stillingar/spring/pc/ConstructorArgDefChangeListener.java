@@ -16,11 +16,8 @@
 
 package org.brekka.stillingar.spring.pc;
 
-import java.lang.ref.WeakReference;
-import java.lang.reflect.Field;
 import java.util.List;
 
-import org.brekka.stillingar.api.ConfigurationException;
 import org.brekka.stillingar.spring.expr.Fragment;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
@@ -34,12 +31,7 @@ import org.springframework.util.ObjectUtils;
  * 
  * @author Andrew Taylor (andrew@brekka.org)
  */
-public class ConstructorArgDefChangeListener extends AbstractExpressionGroupListener {
-
-    /**
-     * The name of the bean that will be used to lookup its bean definition in the beanFactory.
-     */
-    private final String beanName;
+public class ConstructorArgDefChangeListener extends AbstractDefinitionChangeListener {
 
     /**
      * The index of this constructor argument (may be null).
@@ -51,11 +43,6 @@ public class ConstructorArgDefChangeListener extends AbstractExpressionGroupList
      */
     private final String constructorArgType;
 
-    /**
-     * Bean factory to lookup the bean definition in.
-     */
-    private final WeakReference<ConfigurableListableBeanFactory> beanFactoryRef;
-
     /**
      * @param beanName
      *            The name of the bean that will be used to lookup its bean definition in the beanFactory.
@@ -71,26 +58,18 @@ public class ConstructorArgDefChangeListener extends AbstractExpressionGroupList
      */
     public ConstructorArgDefChangeListener(String beanName, Integer constructorArgIndex, String constructorArgType,
             ConfigurableListableBeanFactory beanFactory, Fragment fragment) {
-        super(fragment);
-        this.beanName = beanName;
+        super(beanName, beanFactory, fragment);
         this.constructorArgIndex = constructorArgIndex;
         this.constructorArgType = constructorArgType;
-        this.beanFactoryRef = new WeakReference<ConfigurableListableBeanFactory>(beanFactory);
     }
 
     /*
      * (non-Javadoc)
      * 
-     * @see org.brekka.stillingar.spring.pc.AbstractExpressionGroupListener#onChange(java.lang.String)
+     * @see org.brekka.stillingar.spring.pc.AbstractDefinitionChangeListener#applyTo(org.springframework.beans.factory.config.BeanDefinition, java.lang.String)
      */
     @Override
-    protected void onChange(String newValue) {
-        ConfigurableListableBeanFactory beanFactory = beanFactoryRef.get();
-        if (beanFactory == null) {
-            return;
-        }
-        
-        BeanDefinition beanDef = beanFactory.getMergedBeanDefinition(beanName);
+    boolean applyTo(BeanDefinition beanDef, String newValue) {
         ConstructorArgumentValues mutableConstructorValues = beanDef.getConstructorArgumentValues();
         ValueHolder valueHolder = null;
         List<ValueHolder> genericArgumentValues = mutableConstructorValues.getGenericArgumentValues();
@@ -113,25 +92,20 @@ public class ConstructorArgDefChangeListener extends AbstractExpressionGroupList
                         constructorArgType));
             }
         }
-        if (!ObjectUtils.nullSafeEquals(newValue, valueHolder.getValue())) {
-            valueHolder.setValue(newValue);
-            try {
-                /*
-                 * Spring implements caching of constructor values, which can be reset by clearing the package-private
-                 * field 'resolvedConstructorOrFactoryMethod' on RootBeanDefinition. Naturally this will fail if a
-                 * security manager is present but there doesn't seem to be any other way to do it. Make sure to warn
-                 * about this in the documentation!
-                 */
-                Field field = beanDef.getClass().getDeclaredField("resolvedConstructorOrFactoryMethod");
-                field.setAccessible(true);
-                field.set(beanDef, null);
-            } catch (Exception e) {
-                throw new ConfigurationException(String.format("Unable to update value for constructor argument '%s'. "
-                        + "Failed to reset the cached constructor state for bean '%s'",
-                        (constructorArgIndex != null ? constructorArgIndex.toString() : constructorArgType), beanName),
-                        e);
-            }
+        if (ObjectUtils.nullSafeEquals(newValue, valueHolder.getValue())) {
+            return false;
         }
+        valueHolder.setValue(newValue);
+        return true;
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.brekka.stillingar.spring.pc.AbstractDefinitionChangeListener#isConstructorArgument()
+     */
+    @Override
+    boolean isConstructorArgument() {
+        return true;
     }
-
 }
@@ -17,18 +17,17 @@
 package org.brekka.stillingar.spring.pc;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 
 import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.core.ConfigurationService;
-import org.brekka.stillingar.core.GroupChangeListener;
 import org.brekka.stillingar.core.SingleValueDefinition;
 import org.brekka.stillingar.core.ValueChangeListener;
 import org.brekka.stillingar.core.ValueDefinition;
 import org.brekka.stillingar.core.ValueDefinitionGroup;
-import org.brekka.stillingar.spring.expr.ExpressionFragment;
 import org.brekka.stillingar.spring.expr.DefaultPlaceholderParser;
+import org.brekka.stillingar.spring.expr.EvaluationPlan;
+import org.brekka.stillingar.spring.expr.ExpressionFragment;
 import org.brekka.stillingar.spring.expr.Fragment;
 import org.brekka.stillingar.spring.expr.PlaceholderParser;
 import org.brekka.stillingar.spring.expr.StringFragment;
@@ -47,6 +46,26 @@ class CustomStringValueResolver implements StringValueResolver {
     private final BeanFactory beanFactory;
     
     private CustomBeanDefinitionVisitor beanDefVisitor;
+    
+    /**
+     * Value definitions of the placeholders encountered for the current bean, yet to be registered.
+     */
+    private final List<ValueDefinition<?,?>> pendingValues = new ArrayList<ValueDefinition<?,?>>();
+    
+    /**
+     * Singleton property listeners of the current bean, yet to be registered.
+     */
+    private final List<BeanPropertyChangeListener> pendingPropertyListeners = new ArrayList<BeanPropertyChangeListener>();
+    
+    /**
+     * Bean definition listeners of the current bean, yet to be registered.
+     */
+    private final List<AbstractDefinitionChangeListener> pendingDefinitionListeners = 
+            new ArrayList<AbstractDefinitionChangeListener>();
+    
+    private int bindingCount;
+    
+    private int groupCount;
 
     /**
      * @param beanDefVisitor
@@ -69,15 +88,14 @@ class CustomStringValueResolver implements StringValueResolver {
             return ((StringFragment) fragment).evaluate(null, null);
         }
         
-        String value = fragment.evaluate(configurationSource, new HashSet<String>());
+        String value = EvaluationPlan.compile(fragment).evaluate(configurationSource);
         
         if (beanDefVisitor != null
                 && configurationSource instanceof ConfigurationService) {
-            ConfigurationService ucs = (ConfigurationService) configurationSource;
             PropertyValue currentProperty = beanDefVisitor.getCurrentProperty();
             ValueHolder currentConstructorValue = beanDefVisitor.getCurrentConstructorValue();
             String beanName = beanDefVisitor.getBeanName();
-            GroupChangeListener listener = null;
+            AbstractExpressionGroupListener listener = null;
             if (currentProperty != null) {
                 if (beanDefVisitor.isSingleton()) {
                     // Singleton, we update the single bean instance
@@ -96,9 +114,16 @@ class CustomStringValueResolver implements StringValueResolver {
                         (ConfigurableListableBeanFactory) beanFactory, fragment);
             }
             if (listener != null) {
-                List<ValueDefinition<?,?>> values = toValueDefinitions(fragment);
-                ValueDefinitionGroup group = new ValueDefinitionGroup(beanName, values, listener);
-                ucs.register(group, false);
+                // Registered along with the other placeholders of the bean by registerBeanGroup()
+                pendingValues.addAll(toValueDefinitions(fragment));
+                if (listener instanceof BeanPropertyChangeListener) {
+                    pendingPropertyListeners.add((BeanPropertyChangeListener) listener);
+                } else {
+                    AbstractDefinitionChangeListener definitionListener = (AbstractDefinitionChangeListener) listener;
+                    // The visitor applies the value to the definition, so it only needs updating if it changes
+                    definitionListener.setAppliedValue(value);
+                    pendingDefinitionListeners.add(definitionListener);
+                }
             }
         }
         return value;
@@ -124,7 +149,49 @@ class CustomStringValueResolver implements StringValueResolver {
         return valueDefs;
     }
 
+    /**
+     * Register a single group covering all of the placeholders encountered since the current bean definition visitor
+     * was set, so that the configuration service only needs to track one group per bean rather than one per
+     * placeholder. Does nothing if no updatable placeholders were encountered.
+     */
+    public void registerBeanGroup() {
+        if (beanDefVisitor == null
+                || pendingPropertyListeners.isEmpty() && pendingDefinitionListeners.isEmpty()) {
+            return;
+        }
+        String beanName = beanDefVisitor.getBeanName();
+        BeanPlaceholderGroupListener listener = new BeanPlaceholderGroupListener(beanName, beanFactory, 
+                pendingPropertyListeners, pendingDefinitionListeners);
+        ValueDefinitionGroup group = new ValueDefinitionGroup(beanName, 
+                new ArrayList<ValueDefinition<?,?>>(pendingValues), listener);
+        ((ConfigurationService) configurationSource).register(group, false);
+        bindingCount += listener.getBindingCount();
+        groupCount++;
+        clearPending();
+    }
+
     public void setBeanDefVisitor(CustomBeanDefinitionVisitor beanDefVisitor) {
         this.beanDefVisitor = beanDefVisitor;
+        clearPending();
+    }
+    
+    /**
+     * @return the number of placeholders registered for updates, each of which previously had a group of its own.
+     */
+    public int getBindingCount() {
+        return bindingCount;
+    }
+    
+    /**
+     * @return the number of groups registered for updates.
+     */
+    public int getGroupCount() {
+        return groupCount;
+    }
+    
+    private void clearPending() {
+        pendingValues.clear();
+        pendingPropertyListeners.clear();
+        pendingDefinitionListeners.clear();
     }
 }
\ No newline at end of file
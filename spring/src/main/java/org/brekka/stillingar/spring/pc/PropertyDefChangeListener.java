@@ -16,39 +16,26 @@
 
 package org.brekka.stillingar.spring.pc;
 
-import java.lang.ref.WeakReference;
-
-import org.brekka.stillingar.core.Expirable;
 import org.brekka.stillingar.spring.expr.Fragment;
 import org.springframework.beans.MutablePropertyValues;
 import org.springframework.beans.PropertyValue;
-import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.util.ObjectUtils;
 
 /**
- * A value change listener that will resolve property changes by looking up the named bean in the {@link BeanFactory}
- * and then updating the instance directly.
+ * A listener that will update a property of Spring's internal definition of a prototype bean, so that new bean
+ * instances are created with the latest configuration.
  * 
  * @author Andrew Taylor (andrew@brekka.org)
  */
-class PropertyDefChangeListener extends AbstractExpressionGroupListener implements Expirable {
-    /**
-     * The name of the bean within the Spring context. Will be used to lookup its current definition.
-     */
-    private final String beanName;
+class PropertyDefChangeListener extends AbstractDefinitionChangeListener {
 
     /**
      * The name of the property being updated.
      */
     private final String propertyName;
 
-    /**
-     * The bean factory in which to resolve the bean definition of bean identified by <code>beanName</code>
-     */
-    private final WeakReference<ConfigurableListableBeanFactory> beanFactoryRef;
-
     
     /**
      * @param beanName
@@ -63,33 +50,21 @@ class PropertyDefChangeListener extends AbstractExpressionGroupListener implemen
      */
     public PropertyDefChangeListener(String beanName, String propertyName, ConfigurableListableBeanFactory beanFactory,
             Fragment fragment) {
-        super(fragment);
-        this.beanName = beanName;
+        super(beanName, beanFactory, fragment);
         this.propertyName = propertyName;
-        this.beanFactoryRef = new WeakReference<ConfigurableListableBeanFactory>(beanFactory);
     }
 
     /**
      * Update the property with the new value
      */
-    public void onChange(String newValue) {
-        ConfigurableListableBeanFactory beanFactory = beanFactoryRef.get();
-        if (beanFactory == null) {
-            return;
-        }
-        BeanDefinition beanDef = beanFactory.getMergedBeanDefinition(beanName);
+    @Override
+    boolean applyTo(BeanDefinition beanDef, String newValue) {
         MutablePropertyValues mutablePropertyValues = beanDef.getPropertyValues();
         PropertyValue propertyValue = mutablePropertyValues.getPropertyValue(propertyName);
-        if (!ObjectUtils.nullSafeEquals(newValue, propertyValue.getValue())) {
-            mutablePropertyValues.add(propertyValue.getName(), newValue);
+        if (ObjectUtils.nullSafeEquals(newValue, propertyValue.getValue())) {
+            return false;
         }
-    }
-    
-    /* (non-Javadoc)
-     * @see org.brekka.stillingar.core.ExpiringListener#isExpired()
-     */
-    @Override
-    public boolean isExpired() {
-        return beanFactoryRef.isEnqueued();
+        mutablePropertyValues.add(propertyValue.getName(), newValue);
+        return true;
     }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.pc;
+
+import static java.lang.String.format;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.SimpleTypeConverter;
+import org.springframework.beans.TypeConverter;
+import org.springframework.core.MethodParameter;
+import org.springframework.util.ClassUtils;
+
+/**
+ * The resolved setter for a simple (non-nested) property of a given bean class, along with the converter used to turn
+ * the placeholder string into the property type. Resolving the property descriptor and access checks happen once,
+ * after which each update is a conversion (skipped where the property accepts a string) followed by an exact
+ * {@link MethodHandle} invocation.
+ * 
+ * Instances are not thread-safe as the underlying {@link SimpleTypeConverter} is not, which is fine given that
+ * configuration updates are applied by a single thread.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+final class PropertySetter {
+    
+    /**
+     * Shape of the setter handles, <code>(Object target, Object value)void</code>.
+     */
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    
+    /**
+     * The class the setter was resolved against.
+     */
+    private final Class<?> beanClass;
+    
+    /**
+     * The name of the property.
+     */
+    private final String property;
+    
+    /**
+     * Handle of type {@link #SETTER_TYPE} that will invoke the write method.
+     */
+    private final MethodHandle handle;
+    
+    /**
+     * The write method parameter, retaining any generic type information for the converter.
+     */
+    private final MethodParameter parameter;
+    
+    /**
+     * Will the property accept the string value without conversion.
+     */
+    private final boolean acceptsString;
+    
+    /**
+     * Converts the string value to the property type, using the same default editors as a bean wrapper.
+     */
+    private final TypeConverter converter = new SimpleTypeConverter();
+    
+    private PropertySetter(Class<?> beanClass, String property, Method writeMethod, MethodHandle handle) {
+        this.beanClass = beanClass;
+        this.property = property;
+        this.handle = handle;
+        this.parameter = new MethodParameter(writeMethod, 0);
+        this.acceptsString = ClassUtils.isAssignable(parameter.getParameterType(), String.class);
+    }
+    
+    /**
+     * Resolve the setter for the specified property of the bean class.
+     * 
+     * @param beanClass
+     *            the class of the bean instance
+     * @param property
+     *            the property name
+     * @return the setter or null if the property is a nested/indexed path or has no write method, in which case the
+     *         caller should fall back to a bean wrapper.
+     */
+    static PropertySetter resolve(Class<?> beanClass, String property) {
+        if (property.indexOf('.') >= 0 
+                || property.indexOf('[') >= 0) {
+            return null;
+        }
+        PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(beanClass, property);
+        if (descriptor == null) {
+            return null;
+        }
+        Method writeMethod = descriptor.getWriteMethod();
+        if (writeMethod == null) {
+            return null;
+        }
+        if (!writeMethod.isAccessible()) {
+            writeMethod.setAccessible(true);
+        }
+        MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflect(writeMethod).asType(SETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new ConfigurationException(format("Unable to access the write method '%s' of property '%s'", 
+                    writeMethod, property), e);
+        }
+        return new PropertySetter(beanClass, property, writeMethod, handle);
+    }
+    
+    /**
+     * @param beanClass
+     *            the class of the current bean instance
+     * @return true if this setter was resolved for that class.
+     */
+    boolean appliesTo(Class<?> beanClass) {
+        return this.beanClass == beanClass;
+    }
+    
+    /**
+     * Convert the value to the property type and invoke the write method.
+     * 
+     * @param bean
+     *            the bean to update, must be an instance of the class this setter was resolved for.
+     * @param value
+     *            the new string value of the property.
+     */
+    void set(Object bean, String value) {
+        Object converted = value;
+        if (!acceptsString) {
+            converted = converter.convertIfNecessary(value, parameter.getParameterType(), parameter);
+        }
+        try {
+            handle.invokeExact(bean, converted);
+        } catch (Error e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ConfigurationException(format("Failed to set property '%s' of bean class '%s' to '%s'", 
+                    property, beanClass.getName(), value), e);
+        }
+    }
+}
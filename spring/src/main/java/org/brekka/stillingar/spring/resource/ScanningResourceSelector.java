@@ -23,6 +23,16 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -34,6 +44,14 @@ import org.springframework.core.io.Resource;
  * A resource selector that will iterate a list of known directories looking for files with names determined by
  * {@link ResourceNameResolver}. The order of directories is important with the highest priority appearing first.
  * 
+ * The directories are probed in parallel, as checking for a file on a slow or unavailable mount can block for some
+ * time. The first match in priority order still wins, with any directory that does not respond within the probe
+ * timeout being reported as a rejected location. The location found is cached by the selector so that subsequent
+ * selections using the same names only need to re-check that one location, as happens each time the
+ * {@link org.brekka.stillingar.spring.snapshot.ResourceSnapshotManager} detects a change. A location is only cached when every
+ * higher priority directory was fully checked and found not to contain a match; a fallback selected because a
+ * preferred directory timed out or failed is used this time, with the scan repeated on the next selection.
+ * 
  * @author Andrew Taylor
  */
 public class ScanningResourceSelector implements ResourceSelector {
@@ -52,15 +70,45 @@ public class ScanningResourceSelector implements ResourceSelector {
      * Will be used to generate file names to combine with the base directories in order to find resources.
      */
     private final ResourceNameResolver resourceNameResolver;
+    
+    /**
+     * The default time (in milliseconds) to wait for the directories to be probed.
+     */
+    public static final long DEFAULT_PROBE_TIMEOUT = 5000;
+    
+    /**
+     * Locations previously selected by this selector, keyed on the directories and names searched.
+     */
+    private final ConcurrentMap<String, Resource> resolved = new ConcurrentHashMap<String, Resource>();
+    
+    /**
+     * Time (in milliseconds) to wait for the directories to be probed. Zero or less will probe serially without a
+     * timeout.
+     */
+    private final long probeTimeout;
 
     /**
+     * Probe using the {@link #DEFAULT_PROBE_TIMEOUT}.
      * 
      * @param baseDirectories
      * @param resourceNameResolver
      */
     public ScanningResourceSelector(List<BaseDirectory> baseDirectories, ResourceNameResolver resourceNameResolver) {
+        this(baseDirectories, resourceNameResolver, DEFAULT_PROBE_TIMEOUT);
+    }
+    
+    /**
+     * @param baseDirectories
+     * @param resourceNameResolver
+     * @param probeTimeout
+     *            time (in milliseconds) to wait for the directories to be probed. Zero or less will probe serially
+     *            without a timeout.
+     */
+    public ScanningResourceSelector(List<BaseDirectory> baseDirectories, ResourceNameResolver resourceNameResolver,
+            long probeTimeout) {
         this.baseDirectories = baseDirectories;
         this.resourceNameResolver = resourceNameResolver;
+        this.probeTimeout = probeTimeout;
     }
 
     /*
@@ -71,17 +119,152 @@ public class ScanningResourceSelector implements ResourceSelector {
     @Override
     public Resource getResource() throws NoSnapshotAvailableException {
         Set<String> names = resourceNameResolver.getNames();
-        List<RejectedSnapshotLocation> rejected = new ArrayList<RejectedSnapshotLocation>();
+        List<BaseDirectory> locationBases = new ArrayList<BaseDirectory>(baseDirectories.size());
         for (BaseDirectory locationBase : baseDirectories) {
-            if (locationBase == null) {
-                continue;
+            if (locationBase != null) {
+                locationBases.add(locationBase);
+            }
+        }
+        
+        String cacheKey = cacheKey(locationBases, names);
+        Resource cached = resolved.get(cacheKey);
+        if (cached != null) {
+            if (isUsable(cached)) {
+                return cached;
+            }
+            resolved.remove(cacheKey, cached);
+        }
+        
+        List<RejectedSnapshotLocation> rejected = new ArrayList<RejectedSnapshotLocation>();
+        Resource resource;
+        if (probeTimeout > 0) {
+            resource = probeParallel(locationBases, names, rejected);
+        } else {
+            resource = probeSerial(locationBases, names, rejected);
+        }
+        if (resource != null) {
+            if (isConclusive(rejected)) {
+                resolved.put(cacheKey, resource);
             }
+            return resource;
+        }
+        throw new NoSnapshotAvailableException(names, rejected);
+    }
+    
+    /**
+     * Check each directory in turn, on the calling thread.
+     */
+    protected Resource probeSerial(List<BaseDirectory> locationBases, Set<String> names,
+            List<RejectedSnapshotLocation> rejected) {
+        for (BaseDirectory locationBase : locationBases) {
             Resource resource = findInBaseDir(locationBase, names, rejected);
             if (resource != null) {
                 return resource;
             }
         }
-        throw new NoSnapshotAvailableException(names, rejected);
+        return null;
+    }
+    
+    /**
+     * Check all directories concurrently, then take the results in priority order. Directories that have not
+     * responded by the time the probe timeout expires are rejected, as are any lower priority directories still
+     * being checked once a match is found.
+     */
+    protected Resource probeParallel(List<BaseDirectory> locationBases, final Set<String> names,
+            List<RejectedSnapshotLocation> rejected) {
+        List<Future<Probe>> probes = new ArrayList<Future<Probe>>(locationBases.size());
+        for (final BaseDirectory locationBase : locationBases) {
+            probes.add(SharedExecutor.INSTANCE.submit(new Callable<Probe>() {
+                @Override
+                public Probe call() throws Exception {
+                    List<RejectedSnapshotLocation> probeRejected = new ArrayList<RejectedSnapshotLocation>();
+                    Resource resource = findInBaseDir(locationBase, names, probeRejected);
+                    return new Probe(resource, probeRejected);
+                }
+            }));
+        }
+        
+        long deadline = System.currentTimeMillis() + probeTimeout;
+        Resource found = null;
+        for (int i = 0; i < probes.size(); i++) {
+            Future<Probe> probe = probes.get(i);
+            if (found != null) {
+                probe.cancel(true);
+                continue;
+            }
+            BaseDirectory locationBase = locationBases.get(i);
+            try {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                Probe result = probe.get(remaining, TimeUnit.MILLISECONDS);
+                rejected.addAll(result.rejected);
+                found = result.resource;
+            } catch (TimeoutException e) {
+                probe.cancel(true);
+                rejected.add(new Rejected(locationBase.getDisposition(), null, format(
+                        "Directory did not respond within %d ms", probeTimeout), false));
+            } catch (ExecutionException e) {
+                rejected.add(new Rejected(locationBase.getDisposition(), null, format(
+                        "Failed to probe directory: %s", e.getCause()), false));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (int j = i; j < probes.size(); j++) {
+                    probes.get(j).cancel(true);
+                }
+                break;
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * Forget all cached locations, forcing the next selection to scan again.
+     */
+    public void clearCache() {
+        resolved.clear();
+    }
+    
+    /**
+     * Determine whether each of the rejected locations was actually checked, rather than timing out or failing.
+     */
+    private static boolean isConclusive(List<RejectedSnapshotLocation> rejected) {
+        for (RejectedSnapshotLocation location : rejected) {
+            if (location instanceof Rejected
+                    && !((Rejected) location).conclusive) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean isUsable(Resource resource) {
+        try {
+            return resource.exists() 
+                    && resource.isReadable();
+        } catch (RuntimeException e) {
+            if (log.isWarnEnabled()) {
+                log.warn(format("Previously selected resource '%s' could not be checked", resource), e);
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * Identify a search by the directories (as described by their resources, which does not require I/O) and names.
+     */
+    private static String cacheKey(List<BaseDirectory> locationBases, Set<String> names) {
+        StringBuilder key = new StringBuilder();
+        for (BaseDirectory locationBase : locationBases) {
+            key.append(locationBase.getDisposition()).append('=');
+            Resource dir = locationBase.getDirResource();
+            if (dir instanceof UnresolvableResource) {
+                key.append("<unresolvable>");
+            } else {
+                key.append(dir.getDescription());
+            }
+            key.append('\n');
+        }
+        key.append(names);
+        return key.toString();
     }
 
     /**
@@ -115,6 +298,7 @@ public class ScanningResourceSelector implements ResourceSelector {
                 }
             }
             String message;
+            boolean conclusive = true;
             if (dir.exists()) {
                 StringBuilder messageBuilder = new StringBuilder();
                 for (String name : names) {
@@ -134,6 +318,7 @@ public class ScanningResourceSelector implements ResourceSelector {
                         }
                     } catch (IOException e) {
                         // Location could not be resolved, log as warning, then move on to the next one.
+                        conclusive = false;
                         if (log.isWarnEnabled()) {
                             log.warn(format("Resource location '%s' encountered problem", locationBase), e);
                         }
@@ -147,12 +332,40 @@ public class ScanningResourceSelector implements ResourceSelector {
             } else {
                 message = "Directory does not exist";
             }
-            rejected.add(new Rejected(locationBase.getDisposition(), dirPath, message));
+            rejected.add(new Rejected(locationBase.getDisposition(), dirPath, message, conclusive));
         }
         // No resource found
         return null;
     }
 
+    /**
+     * The outcome of probing a single directory.
+     */
+    private static class Probe {
+        private final Resource resource;
+        private final List<RejectedSnapshotLocation> rejected;
+        
+        Probe(Resource resource, List<RejectedSnapshotLocation> rejected) {
+            this.resource = resource;
+            this.rejected = rejected;
+        }
+    }
+    
+    /**
+     * Lazily created daemon pool shared by all selectors. Unbounded as a probe stuck on an unresponsive mount may
+     * never return.
+     */
+    private static final class SharedExecutor {
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "stillingar-discovery");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
     /**
      * Internal structure for holding rejected snapshot details.
      */
@@ -161,6 +374,11 @@ public class ScanningResourceSelector implements ResourceSelector {
         private final String disposition;
         private final String path;
         private final String message;
+        
+        /**
+         * False if the location could not be fully checked (it timed out or failed), so may yet contain a match.
+         */
+        private final boolean conclusive;
 
         /**
          * @param disposition
@@ -168,9 +386,21 @@ public class ScanningResourceSelector implements ResourceSelector {
          * @param message
          */
         public Rejected(String disposition, String path, String message) {
+            this(disposition, path, message, true);
+        }
+        
+        /**
+         * @param disposition
+         * @param path
+         * @param message
+         * @param conclusive
+         *            false if the location could not be fully checked.
+         */
+        public Rejected(String disposition, String path, String message, boolean conclusive) {
             this.disposition = disposition;
             this.path = path;
             this.message = message;
+            this.conclusive = conclusive;
         }
 
         /*
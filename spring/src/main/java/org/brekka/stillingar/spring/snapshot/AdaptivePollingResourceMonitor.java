@@ -0,0 +1,275 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.snapshot;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.springframework.core.io.Resource;
+
+/**
+ * Polling monitor for file systems where watching is unavailable or unreliable, such as NFS. Intended to be called at
+ * a fixed rate equal to the minimum interval, it only actually inspects the file system when its current interval
+ * has elapsed. That interval is reset to the minimum whenever a change is detected, and doubles on each idle poll up
+ * to the maximum, so that edits made in quick succession are picked up promptly while an idle file costs very little.
+ * 
+ * Changes are detected using a {@link FileFingerprint} (size, last modified and file key from a single stat call).
+ * Additional resources can be registered via {@link #addResource(Resource)} (or the <code>reload-also</code> attribute
+ * of the namespace), in which case all are inspected in the same pass and a change to any of them is reported. Resources that are not files fall back to the last modified
+ * time reported by the resource itself.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class AdaptivePollingResourceMonitor implements ResourceMonitor {
+
+    /**
+     * The default maximum interval (in milliseconds) between polls of an idle resource.
+     */
+    public static final long DEFAULT_MAX_INTERVAL = 30000;
+    
+    /**
+     * The interval after a change is detected.
+     */
+    private final long minInterval;
+    
+    /**
+     * The ceiling for the interval while idle.
+     */
+    private final long maxInterval;
+    
+    /**
+     * The files to inspect on each poll.
+     */
+    private final List<Path> files = new ArrayList<Path>();
+    
+    /**
+     * The files added in addition to the primary resource, retained should the monitor be initialised again.
+     */
+    private final List<Path> additionalFiles = new ArrayList<Path>();
+    
+    /**
+     * The primary resource, used directly when it is not a file.
+     */
+    private Resource resource;
+    
+    /**
+     * Is the primary resource a file (in which case it is covered by the fingerprints).
+     */
+    private boolean resourceIsFile;
+    
+    /**
+     * The fingerprints seen on the last poll.
+     */
+    private Map<Path, FileFingerprint> previousFingerprints = Collections.emptyMap();
+    
+    /**
+     * The last modified of a resource that is not a file, seen on the last poll.
+     */
+    private long previousLastModified;
+    
+    /**
+     * The current interval between polls.
+     */
+    private long currentInterval;
+    
+    /**
+     * When the next poll is due.
+     */
+    private long nextPoll;
+    
+    /**
+     * The number of times the file system has actually been inspected.
+     */
+    private long pollCount;
+    
+    /**
+     * Poll with the {@link #DEFAULT_MAX_INTERVAL}.
+     * 
+     * @param minInterval
+     *            the interval (in milliseconds) to poll at after a change is detected.
+     */
+    public AdaptivePollingResourceMonitor(long minInterval) {
+        this(minInterval, DEFAULT_MAX_INTERVAL);
+    }
+    
+    /**
+     * @param minInterval
+     *            the interval (in milliseconds) to poll at after a change is detected.
+     * @param maxInterval
+     *            the maximum interval (in milliseconds) that polling will back off to while the resource is idle.
+     */
+    public AdaptivePollingResourceMonitor(long minInterval, long maxInterval) {
+        if (minInterval <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Minimum interval must be greater than zero, not %d", minInterval));
+        }
+        if (maxInterval < minInterval) {
+            throw new IllegalArgumentException(String.format(
+                    "Maximum interval %d must not be less than the minimum interval %d", maxInterval, minInterval));
+        }
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.currentInterval = minInterval;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.spring.snapshot.ResourceMonitor#initialise(org.springframework.core.io.Resource)
+     */
+    @Override
+    public synchronized void initialise(Resource resource) {
+        this.resource = resource;
+        this.files.clear();
+        Path file = toPath(resource);
+        this.resourceIsFile = (file != null);
+        if (file != null) {
+            this.files.add(file);
+        }
+        this.files.addAll(additionalFiles);
+        reset();
+    }
+    
+    /**
+     * Add a further resource to be inspected in the same pass as the one this monitor was initialised with.
+     * 
+     * @param additional
+     *            the resource to add, which must be a file.
+     */
+    public synchronized void addResource(Resource additional) {
+        Path file = toPath(additional);
+        if (file == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Only file resources can be added to the monitor, not '%s'", additional));
+        }
+        this.additionalFiles.add(file);
+        this.files.add(file);
+        reset();
+    }
+    
+    /**
+     * Add further resources to be inspected in the same pass as the one this monitor is initialised with.
+     * 
+     * @param additionalResources
+     *            the resources to add, each of which must be a file.
+     */
+    public void setAdditionalResources(Resource[] additionalResources) {
+        for (Resource additional : additionalResources) {
+            addResource(additional);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.spring.snapshot.ResourceMonitor#hasChanged()
+     */
+    @Override
+    public synchronized boolean hasChanged() {
+        long now = currentTimeMillis();
+        // Allow for the caller's schedule drifting slightly ahead of ours
+        if (now + minInterval / 2 < nextPoll) {
+            return false;
+        }
+        boolean changed = poll();
+        if (changed) {
+            currentInterval = minInterval;
+        } else {
+            currentInterval = Math.min(currentInterval * 2, maxInterval);
+        }
+        nextPoll = now + currentInterval;
+        return changed;
+    }
+    
+    /**
+     * @return the interval (in milliseconds) until the next poll following the last one.
+     */
+    public synchronized long getCurrentInterval() {
+        return currentInterval;
+    }
+    
+    /**
+     * @return the number of times the file system has actually been inspected.
+     */
+    public synchronized long getPollCount() {
+        return pollCount;
+    }
+    
+    /**
+     * @return the current time in milliseconds
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+    
+    /**
+     * Capture the current state, starting again at the minimum interval.
+     */
+    private void reset() {
+        this.previousFingerprints = fingerprints();
+        this.previousLastModified = lastModified();
+        this.currentInterval = minInterval;
+        this.nextPoll = currentTimeMillis() + minInterval;
+    }
+    
+    private boolean poll() {
+        pollCount++;
+        Map<Path, FileFingerprint> fingerprints = fingerprints();
+        long lastModified = lastModified();
+        boolean changed = !fingerprints.equals(previousFingerprints) 
+                || lastModified > previousLastModified;
+        previousFingerprints = fingerprints;
+        previousLastModified = lastModified;
+        return changed;
+    }
+    
+    private Map<Path, FileFingerprint> fingerprints() {
+        try {
+            return FileFingerprint.of(files);
+        } catch (IOException e) {
+            throw new ConfigurationException(String.format(
+                    "Unable to read the attributes of the files %s", files), e);
+        }
+    }
+    
+    /**
+     * Only used for a resource that is not a file.
+     */
+    private long lastModified() {
+        if (resource == null 
+                || resourceIsFile) {
+            return 0;
+        }
+        try {
+            return resource.lastModified();
+        } catch (IOException e) {
+            throw new ConfigurationException(String.format(
+                    "Unable to determine the last modified for the resource '%s'", resource), e);
+        }
+    }
+    
+    private static Path toPath(Resource resource) {
+        try {
+            return resource.getFile().toPath();
+        } catch (IOException e) {
+            // Not a file
+            return null;
+        }
+    }
+}
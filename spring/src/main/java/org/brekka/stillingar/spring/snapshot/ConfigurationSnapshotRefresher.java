@@ -18,11 +18,14 @@ package org.brekka.stillingar.spring.snapshot;
 
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.logging.Log;
+import org.brekka.stillingar.core.snapshot.CoalescingRefresher;
 import org.brekka.stillingar.core.snapshot.SnapshotBasedConfigurationService;
 
 /**
  * Simple adapter class that invokes the {@link SnapshotBasedConfigurationService#refresh()} method via
- * the {@link #run()}, allowing it to be called by scheduling frameworks.
+ * the {@link #run()}, allowing it to be called by scheduling frameworks. When driven by a
+ * {@link WatchedResourceMonitor}, changes are always handed to a {@link CoalescingRefresher} so that the refresh runs on
+ * its scheduler thread, leaving the thread delivering file events free to serve the other watched files.
  * 
  * @author Andrew Taylor (andrew@brekka.org)
  */
@@ -38,6 +41,11 @@ public class ConfigurationSnapshotRefresher implements Runnable {
      */
     private final SnapshotBasedConfigurationService snapshotBasedConfigurationSource;
     
+    /**
+     * Coalesces changes detected by a monitor (optional).
+     */
+    private CoalescingRefresher coalescingRefresher;
+    
     
     /**
      * @param snapshotBasedConfigurationSource
@@ -45,6 +53,46 @@ public class ConfigurationSnapshotRefresher implements Runnable {
     public ConfigurationSnapshotRefresher(SnapshotBasedConfigurationService snapshotBasedConfigurationSource) {
         this.snapshotBasedConfigurationSource = snapshotBasedConfigurationSource;
     }
+    
+    /**
+     * Refresh as soon as possible whenever the monitor detects a change, rather than via a scheduler. The refresh
+     * itself still happens on the thread of a {@link CoalescingRefresher} (without any quiet period), as the monitor
+     * notifies its listener on the shared watcher thread, which must not block.
+     * 
+     * @param snapshotBasedConfigurationSource
+     * @param resourceMonitor
+     *            the monitor that will trigger the refresh.
+     */
+    public ConfigurationSnapshotRefresher(SnapshotBasedConfigurationService snapshotBasedConfigurationSource,
+            WatchedResourceMonitor resourceMonitor) {
+        this(snapshotBasedConfigurationSource, resourceMonitor, 0, 0);
+    }
+    
+    /**
+     * Refresh when the monitor detects a change, coalescing bursts of changes into a single refresh via a
+     * {@link CoalescingRefresher}.
+     * 
+     * @param snapshotBasedConfigurationSource
+     * @param resourceMonitor
+     *            the monitor that will trigger the refresh.
+     * @param quietPeriod
+     *            time to wait after the last change before refreshing (milliseconds).
+     * @param maxDelay
+     *            maximum time to wait after the first pending change (milliseconds).
+     */
+    public ConfigurationSnapshotRefresher(SnapshotBasedConfigurationService snapshotBasedConfigurationSource,
+            WatchedResourceMonitor resourceMonitor, long quietPeriod, long maxDelay) {
+        this(snapshotBasedConfigurationSource);
+        this.coalescingRefresher = new CoalescingRefresher(snapshotBasedConfigurationSource, quietPeriod, maxDelay);
+        resourceMonitor.setChangeListener(coalescingRefresher);
+    }
+    
+    /**
+     * @return the coalescing stage in front of the refresh, providing metrics (null if changes are not coalesced).
+     */
+    public CoalescingRefresher getCoalescingRefresher() {
+        return coalescingRefresher;
+    }
 
 
     /**
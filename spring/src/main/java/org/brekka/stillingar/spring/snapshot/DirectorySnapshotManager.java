@@ -0,0 +1,378 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static java.lang.String.format;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ConfigurationSourceLoader;
+import org.brekka.stillingar.core.LayeredConfigurationSource;
+import org.brekka.stillingar.core.snapshot.InvalidSnapshotException;
+import org.brekka.stillingar.core.snapshot.NoSnapshotAvailableException;
+import org.brekka.stillingar.core.snapshot.RejectedSnapshotLocation;
+import org.brekka.stillingar.core.snapshot.Snapshot;
+import org.brekka.stillingar.core.snapshot.SnapshotManager;
+import org.springframework.core.io.Resource;
+
+/**
+ * Snapshot manager for a <code>conf.d</code> style directory, where the configuration is split across a number of
+ * fragment files. Each fragment is loaded as its own source and the fragments are combined into a single
+ * {@link LayeredConfigurationSource}, ordered by file name with later names taking priority (so
+ * <code>90-local.xml</code> overrides <code>10-base.xml</code>).
+ * 
+ * Each call to {@link #retrieveUpdated()} fingerprints the fragments (see {@link FileFingerprint}), and only those
+ * that have been added or changed are parsed again. Unchanged fragments keep their existing source instance so that
+ * the layered index can be carried over, meaning the cost of a refresh depends on the size of the change rather
+ * than the size of the whole configuration.
+ * 
+ * Fragments that fail to parse, or that were changed by a snapshot that was subsequently rejected, are remembered
+ * by their fingerprint and skipped until the file changes again, with the version of the fragment already in use (if
+ * any) retained in their place. This avoids parsing and rejecting the same broken fragment on every refresh.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class DirectorySnapshotManager implements SnapshotManager {
+    
+    /**
+     * Logger
+     */
+    private static final Log log = LogFactory.getLog(DirectorySnapshotManager.class);
+    
+    /**
+     * Fragments loaded by default
+     */
+    public static final String DEFAULT_PATTERN = "*.xml";
+
+    /**
+     * The directory containing the fragments
+     */
+    private final Resource directory;
+    
+    /**
+     * Will actually load the fragments
+     */
+    private final ConfigurationSourceLoader configurationSourceLoader;
+    
+    /**
+     * Glob identifying the fragment files within the directory.
+     */
+    private final String pattern;
+    
+    /**
+     * Fragments currently in use, keyed on path. Guarded by this.
+     */
+    private Map<Path, Fragment> fragments = Collections.emptyMap();
+    
+    /**
+     * The fragments in use before the latest snapshot, restored should it be rejected. Guarded by this.
+     */
+    private Map<Path, Fragment> previousFragments = Collections.emptyMap();
+    
+    /**
+     * Fingerprints of the fragments parsed for the latest snapshot, which are remembered as rejected should it be
+     * rejected. Guarded by this.
+     */
+    private Map<Path, FileFingerprint> latestParsed = Collections.emptyMap();
+    
+    /**
+     * Fingerprints of fragments that failed to parse or whose snapshot was rejected, skipped until they change.
+     * Guarded by this.
+     */
+    private Map<Path, FileFingerprint> rejectedFragments = Collections.emptyMap();
+    
+    /**
+     * The combined source of the fragments currently in use. Guarded by this.
+     */
+    private LayeredConfigurationSource layered;
+    
+    /**
+     * The combined source before the latest snapshot. Guarded by this.
+     */
+    private LayeredConfigurationSource previousLayered;
+    
+    /**
+     * The most recently loaded snapshot. Guarded by this.
+     */
+    private Snapshot latestSnapshot;
+    
+    /**
+     * The total number of fragments parsed.
+     */
+    private volatile long parsedFragmentCount;
+    
+    /**
+     * Load fragments matching {@link #DEFAULT_PATTERN}.
+     * 
+     * @param directory
+     *            the directory containing the fragments
+     * @param configurationSourceLoader
+     *            will load each fragment
+     */
+    public DirectorySnapshotManager(Resource directory, ConfigurationSourceLoader configurationSourceLoader) {
+        this(directory, configurationSourceLoader, DEFAULT_PATTERN);
+    }
+    
+    /**
+     * @param directory
+     *            the directory containing the fragments
+     * @param configurationSourceLoader
+     *            will load each fragment
+     * @param pattern
+     *            glob identifying the fragment files within the directory (eg <code>*.xml</code>).
+     */
+    public DirectorySnapshotManager(Resource directory, ConfigurationSourceLoader configurationSourceLoader, 
+            String pattern) {
+        this.directory = directory;
+        this.configurationSourceLoader = configurationSourceLoader;
+        this.pattern = pattern;
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotManager#retrieveInitial()
+     */
+    @Override
+    public synchronized Snapshot retrieveInitial() throws NoSnapshotAvailableException {
+        Map<Path, FileFingerprint> scan;
+        try {
+            scan = scan();
+        } catch (IOException e) {
+            throw new NoSnapshotAvailableException(Collections.singleton(pattern), 
+                    Collections.<RejectedSnapshotLocation>singletonList(new Rejected(directory, e.getMessage())));
+        }
+        if (scan.isEmpty()) {
+            throw new NoSnapshotAvailableException(Collections.singleton(pattern), 
+                    Collections.<RejectedSnapshotLocation>singletonList(new Rejected(directory, 
+                            "no configuration fragments found")));
+        }
+        try {
+            return load(scan);
+        } catch (IOException e) {
+            throw new ConfigurationException(format("Directory '%s'", directory), e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotManager#retrieveUpdated()
+     */
+    @Override
+    public synchronized Snapshot retrieveUpdated() throws InvalidSnapshotException {
+        if (layered == null) {
+            // No initial configuration yet, just return null
+            return null;
+        }
+        try {
+            return load(scan());
+        } catch (IOException e) {
+            throw new InvalidSnapshotException(format("Failed to refresh fragments in directory '%s'", directory), e);
+        } catch (RuntimeException e) {
+            throw new InvalidSnapshotException(format("Failed to refresh fragments in directory '%s'", directory), e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.brekka.stillingar.core.snapshot.SnapshotManager#reject(org.brekka.stillingar.core.snapshot.Snapshot)
+     */
+    @Override
+    public synchronized void reject(Snapshot rejectedSnapshot) {
+        if (rejectedSnapshot != null 
+                && rejectedSnapshot == latestSnapshot) {
+            fragments = previousFragments;
+            layered = previousLayered;
+            latestSnapshot = null;
+            if (!latestParsed.isEmpty()) {
+                Map<Path, FileFingerprint> rejected = new TreeMap<Path, FileFingerprint>(rejectedFragments);
+                rejected.putAll(latestParsed);
+                rejectedFragments = rejected;
+                if (log.isWarnEnabled()) {
+                    log.warn(format("The fragments %s from '%s' were rejected, they will be ignored until changed", 
+                            latestParsed.keySet(), directory));
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return the total number of fragments parsed since this manager was created.
+     */
+    public long getParsedFragmentCount() {
+        return parsedFragmentCount;
+    }
+    
+    /**
+     * Load the fragments identified by the scan, reusing those that are unchanged.
+     * 
+     * @return the new snapshot or null if nothing has changed.
+     */
+    private Snapshot load(Map<Path, FileFingerprint> scan) throws IOException {
+        Map<Path, Fragment> loaded = new TreeMap<Path, Fragment>();
+        Map<Path, FileFingerprint> parsed = new TreeMap<Path, FileFingerprint>();
+        Map<Path, FileFingerprint> stillRejected = new TreeMap<Path, FileFingerprint>();
+        long timestamp = 0;
+        long contentLength = 0;
+        for (Map.Entry<Path, FileFingerprint> entry : scan.entrySet()) {
+            Path file = entry.getKey();
+            FileFingerprint fingerprint = entry.getValue();
+            Fragment fragment = fragments.get(file);
+            if (fingerprint.equals(rejectedFragments.get(file))) {
+                // Unchanged since rejected, keep whatever version is in use
+                stillRejected.put(file, fingerprint);
+            } else if (fragment == null 
+                    || !fragment.fingerprint.equals(fingerprint)) {
+                try {
+                    fragment = new Fragment(fingerprint, parse(file));
+                } catch (ConfigurationException e) {
+                    if (layered != null) {
+                        // Only once running, startup should not silently omit a fragment
+                        Map<Path, FileFingerprint> rejected = new TreeMap<Path, FileFingerprint>(rejectedFragments);
+                        rejected.put(file, fingerprint);
+                        rejectedFragments = rejected;
+                    }
+                    throw e;
+                }
+                parsed.put(file, fingerprint);
+            }
+            if (fragment != null) {
+                loaded.put(file, fragment);
+                timestamp = Math.max(timestamp, fragment.fingerprint.getLastModified());
+                contentLength += fragment.fingerprint.getSize();
+            }
+        }
+        rejectedFragments = stillRejected;
+        if (parsed.isEmpty() 
+                && loaded.keySet().equals(fragments.keySet())) {
+            return null;
+        }
+        
+        List<ConfigurationSource> layers = new ArrayList<ConfigurationSource>(loaded.size());
+        for (Fragment fragment : loaded.values()) {
+            // Last name has the highest priority
+            layers.add(0, fragment.source);
+        }
+        LayeredConfigurationSource next = (layered == null 
+                ? new LayeredConfigurationSource(layers) : layered.rebuild(layers));
+        if (log.isInfoEnabled()) {
+            log.info(format("Loaded %d of %d fragments from '%s'", parsed.size(), loaded.size(), directory));
+        }
+        
+        Snapshot snapshot = new ResourceSnapshot(next, new Date(timestamp), directory, contentLength);
+        previousFragments = fragments;
+        previousLayered = layered;
+        fragments = loaded;
+        layered = next;
+        latestSnapshot = snapshot;
+        latestParsed = parsed;
+        return snapshot;
+    }
+    
+    private ConfigurationSource parse(Path file) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        try {
+            ConfigurationSource source = configurationSourceLoader.parse(new ByteArrayInputStream(content), null);
+            parsedFragmentCount++;
+            return source;
+        } catch (RuntimeException e) {
+            // Wrap to include location details
+            throw new ConfigurationException(format("Fragment '%s' processing problem", file), e);
+        }
+    }
+    
+    /**
+     * Fingerprint every fragment in the directory, in name order.
+     */
+    private Map<Path, FileFingerprint> scan() throws IOException {
+        Path dir = directory.getFile().toPath();
+        List<Path> files = new ArrayList<Path>();
+        DirectoryStream<Path> stream = Files.newDirectoryStream(dir, pattern);
+        try {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        } finally {
+            stream.close();
+        }
+        Map<Path, FileFingerprint> scan = new TreeMap<Path, FileFingerprint>();
+        for (Map.Entry<Path, FileFingerprint> entry : FileFingerprint.of(files).entrySet()) {
+            if (entry.getValue() != null) {
+                // Null if removed since being listed
+                scan.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return scan;
+    }
+    
+    /**
+     * A loaded fragment
+     */
+    private static final class Fragment {
+        private final FileFingerprint fingerprint;
+        private final ConfigurationSource source;
+        
+        Fragment(FileFingerprint fingerprint, ConfigurationSource source) {
+            this.fingerprint = fingerprint;
+            this.source = source;
+        }
+    }
+    
+    /**
+     * The directory could not be used
+     */
+    private static final class Rejected implements RejectedSnapshotLocation {
+        private final Resource directory;
+        private final String message;
+        
+        Rejected(Resource directory, String message) {
+            this.directory = directory;
+            this.message = message;
+        }
+        
+        @Override
+        public String getDisposition() {
+            return "Fragment directory";
+        }
+        
+        @Override
+        public String getPath() {
+            return directory.getDescription();
+        }
+        
+        @Override
+        public String getMessage() {
+            return message;
+        }
+        
+        @Override
+        public String toString() {
+            return "[" + getDisposition() + " - " + getPath() + " - " + getMessage() + "]";
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.snapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Identifies a particular version of a file by its size, last modified time and file key (the inode on Unix
+ * systems). All three are obtained from a single stat call, and together they detect changes that the last modified
+ * time alone would miss, such as a file being replaced by a rename within the same second (common on network file
+ * systems with a coarse timestamp granularity).
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class FileFingerprint {
+
+    /**
+     * The size in bytes
+     */
+    private final long size;
+    
+    /**
+     * Last modified in milliseconds
+     */
+    private final long lastModified;
+    
+    /**
+     * The file key, null if the file system does not provide one.
+     */
+    private final Object fileKey;
+    
+    /**
+     * @param size
+     * @param lastModified
+     * @param fileKey
+     */
+    public FileFingerprint(long size, long lastModified, Object fileKey) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.fileKey = fileKey;
+    }
+    
+    /**
+     * Read the fingerprint of the specified file.
+     * 
+     * @param file
+     *            the file to read
+     * @return the fingerprint or null if the file does not exist.
+     * @throws IOException
+     *             if the attributes of the file cannot be read.
+     */
+    public static FileFingerprint of(Path file) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        return new FileFingerprint(attributes.size(), attributes.lastModifiedTime().toMillis(), attributes.fileKey());
+    }
+    
+    /**
+     * Read the fingerprints of all the specified files in a single pass.
+     * 
+     * @param files
+     *            the files to read
+     * @return the fingerprints keyed on file, in the same order. Files that do not exist will have a null value.
+     * @throws IOException
+     *             if the attributes of any file cannot be read.
+     */
+    public static Map<Path, FileFingerprint> of(Collection<Path> files) throws IOException {
+        Map<Path, FileFingerprint> fingerprints = new LinkedHashMap<Path, FileFingerprint>();
+        for (Path file : files) {
+            fingerprints.put(file, of(file));
+        }
+        return fingerprints;
+    }
+    
+    /**
+     * @return the size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+    
+    /**
+     * @return the last modified in milliseconds
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+    
+    /**
+     * @return the file key (can be null).
+     */
+    public Object getFileKey() {
+        return fileKey;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        int result = (int) (size ^ (size >>> 32));
+        result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+        result = 31 * result + (fileKey != null ? fileKey.hashCode() : 0);
+        return result;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof FileFingerprint)) {
+            return false;
+        }
+        FileFingerprint other = (FileFingerprint) obj;
+        return size == other.size
+            && lastModified == other.lastModified
+            && (fileKey == null ? other.fileKey == null : fileKey.equals(other.fileKey));
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return String.format("size=%d, lastModified=%d, fileKey=%s", size, lastModified, fileKey);
+    }
+}
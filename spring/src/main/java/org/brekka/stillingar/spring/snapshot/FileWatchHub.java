@@ -0,0 +1,296 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Process-wide hub for watching files via the JDK 7 "watch" capability. Rather than each monitored resource opening
+ * its own {@link WatchService} and dedicating a thread to waiting on it, all registrations share a single service and
+ * a single daemon thread per {@link FileSystem}. Directories containing more than one watched file are only registered
+ * once.
+ * 
+ * Listeners are invoked on the watcher thread, so should not block for long. The thread is started on the first
+ * registration for a file system and stops once the last registration for that file system is cancelled. Should
+ * events be lost ({@link StandardWatchEventKinds#OVERFLOW}) or the directory itself be removed, every listener in
+ * that directory is notified, as it is no longer possible to tell which files were affected.
+ * 
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class FileWatchHub {
+    /**
+     * Logger
+     */
+    private static final Log log = LogFactory.getLog(FileWatchHub.class);
+    
+    /**
+     * The shared instance
+     */
+    private static final FileWatchHub INSTANCE = new FileWatchHub();
+    
+    /**
+     * One watcher per file system
+     */
+    private final Map<FileSystem, Watcher> watchers = new HashMap<FileSystem, Watcher>();
+    
+    /**
+     * @return the process-wide hub.
+     */
+    public static FileWatchHub getInstance() {
+        return INSTANCE;
+    }
+    
+    /**
+     * Watch for the creation or modification of the specified file.
+     * 
+     * @param file
+     *            the file to watch, which need not yet exist though its parent directory must.
+     * @param listener
+     *            notified when a change is detected.
+     * @return the registration, which must be cancelled when the watch is no longer required.
+     * @throws IOException
+     *             if the directory of the file cannot be watched.
+     */
+    public synchronized Registration register(Path file, Listener listener) throws IOException {
+        Path absoluteFile = file.toAbsolutePath();
+        FileSystem fileSystem = absoluteFile.getFileSystem();
+        Watcher watcher = watchers.get(fileSystem);
+        if (watcher == null) {
+            watcher = new Watcher(fileSystem);
+            watchers.put(fileSystem, watcher);
+            watcher.start();
+        }
+        Registration registration = new Registration(watcher, absoluteFile, listener);
+        try {
+            watcher.add(registration);
+        } catch (IOException e) {
+            if (watcher.isEmpty()) {
+                watchers.remove(fileSystem);
+                watcher.close();
+            }
+            throw e;
+        }
+        return registration;
+    }
+    
+    /**
+     * Called when a registration is cancelled, stopping the watcher once it has no more registrations.
+     */
+    synchronized void cancelled(Registration registration) {
+        Watcher watcher = registration.watcher;
+        if (watcher.remove(registration)) {
+            watchers.remove(watcher.fileSystem);
+            watcher.close();
+        }
+    }
+    
+    /**
+     * Number of file systems currently being watched (ie the number of watcher threads).
+     */
+    synchronized int getWatcherCount() {
+        return watchers.size();
+    }
+    
+    /**
+     * Notified of changes to a watched file.
+     */
+    public interface Listener {
+        
+        /**
+         * The file was created or modified.
+         * 
+         * @param file
+         *            the absolute path of the file.
+         */
+        void changed(Path file);
+    }
+    
+    /**
+     * A file registered with the hub.
+     */
+    public final class Registration {
+        private final Watcher watcher;
+        private final Path file;
+        private final Listener listener;
+        private volatile boolean cancelled;
+        
+        private Registration(Watcher watcher, Path file, Listener listener) {
+            this.watcher = watcher;
+            this.file = file;
+            this.listener = listener;
+        }
+        
+        /**
+         * Stop watching the file. Has no effect if already cancelled.
+         */
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                cancelled(this);
+            }
+        }
+        
+        /**
+         * @return the file being watched
+         */
+        public Path getFile() {
+            return file;
+        }
+        
+        void fire() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                listener.changed(file);
+            } catch (RuntimeException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn(String.format("Listener for '%s' failed", file), e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Watches all registered directories of a single file system, on its own daemon thread.
+     */
+    private static final class Watcher implements Runnable {
+        private final FileSystem fileSystem;
+        private final WatchService watchService;
+        private final Map<Path, WatchKey> keys = new HashMap<Path, WatchKey>();
+        private final Map<WatchKey, List<Registration>> registrations = new HashMap<WatchKey, List<Registration>>();
+        private final Thread thread;
+        
+        Watcher(FileSystem fileSystem) throws IOException {
+            this.fileSystem = fileSystem;
+            this.watchService = fileSystem.newWatchService();
+            this.thread = new Thread(this, "stillingar-watch-" + fileSystem.getClass().getSimpleName());
+            this.thread.setDaemon(true);
+        }
+        
+        void start() {
+            thread.start();
+        }
+        
+        synchronized void add(Registration registration) throws IOException {
+            Path dir = registration.file.getParent();
+            WatchKey key = keys.get(dir);
+            if (key == null) {
+                key = dir.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_CREATE);
+                keys.put(dir, key);
+                registrations.put(key, new ArrayList<Registration>());
+            }
+            registrations.get(key).add(registration);
+        }
+        
+        synchronized boolean isEmpty() {
+            return keys.isEmpty();
+        }
+        
+        /**
+         * @return true if this watcher has no more registrations.
+         */
+        synchronized boolean remove(Registration registration) {
+            Path dir = registration.file.getParent();
+            WatchKey key = keys.get(dir);
+            if (key != null) {
+                List<Registration> list = registrations.get(key);
+                list.remove(registration);
+                if (list.isEmpty()) {
+                    key.cancel();
+                    keys.remove(dir);
+                    registrations.remove(key);
+                }
+            }
+            return keys.isEmpty();
+        }
+        
+        void close() {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Failed to close watch service", e);
+                }
+            }
+        }
+        
+        /* (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    List<Registration> toFire = new ArrayList<Registration>();
+                    List<WatchEvent<?>> events = key.pollEvents();
+                    boolean valid = key.reset();
+                    synchronized (this) {
+                        List<Registration> list = registrations.get(key);
+                        if (list == null) {
+                            // Cancelled in the meantime
+                        } else if (!valid) {
+                            // Directory has gone (or been replaced), let everyone in it re-evaluate
+                            toFire.addAll(list);
+                        } else {
+                            collect(events, list, toFire);
+                        }
+                    }
+                    for (Registration registration : toFire) {
+                        registration.fire();
+                    }
+                }
+            } catch (ClosedWatchServiceException e) {
+                // Closed, all done
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Watcher for '%s' stopped", fileSystem));
+            }
+        }
+        
+        private static void collect(List<WatchEvent<?>> events, List<Registration> list, List<Registration> toFire) {
+            for (Registration registration : list) {
+                Path name = registration.file.getFileName();
+                for (WatchEvent<?> event : events) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || name.equals(event.context())) {
+                        toFire.add(registration);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+}
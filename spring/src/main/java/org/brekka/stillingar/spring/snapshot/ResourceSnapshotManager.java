@@ -18,28 +18,45 @@ package org.brekka.stillingar.spring.snapshot;
 
 import static java.lang.String.format;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Date;
+import java.util.zip.CRC32;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.brekka.stillingar.api.ConfigurationException;
 import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.api.ConfigurationSourceLoader;
 import org.brekka.stillingar.core.snapshot.InvalidSnapshotException;
 import org.brekka.stillingar.core.snapshot.NoSnapshotAvailableException;
 import org.brekka.stillingar.core.snapshot.Snapshot;
+import org.brekka.stillingar.core.snapshot.SnapshotEventHandler;
 import org.brekka.stillingar.core.snapshot.SnapshotManager;
 import org.brekka.stillingar.spring.resource.RejectedResourceHandler;
 import org.brekka.stillingar.spring.resource.ResourceSelector;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
 
 /**
  * Snapshot manager based around resources.
  * 
+ * The optional {@link SnapshotCache} is only consulted at startup when the {@link ResourceSelector} cannot provide a
+ * resource. Whenever the resource is available it is loaded directly, as the cached content would have to be parsed
+ * just the same and confirming that it still matches the resource means reading the resource anyway.
+ * 
  * @author Andrew Taylor
  */
 public class ResourceSnapshotManager implements SnapshotManager {
+    
+    /**
+     * Logger
+     */
+    private static final Log log = LogFactory.getLog(ResourceSnapshotManager.class);
 
 	/**
 	 * Will actually load the configuration sources
@@ -61,11 +78,53 @@ public class ResourceSnapshotManager implements SnapshotManager {
 	 */
 	private RejectedResourceHandler rejectedResourceHandler; 
 	
+	/**
+	 * Notified when a change is detected but the content is unchanged (optional).
+	 */
+	private SnapshotEventHandler snapshotEventHandler;
+	
 	/**
 	 * The configuration resource identified by the {@link ResourceSelector}.
 	 */
 	private Resource configurationResource;
 	
+	/**
+	 * Fingerprint of the content of the snapshot currently in use (null if not yet known).
+	 */
+	private ContentHash currentHash;
+	
+	/**
+	 * Fingerprint of the content of the snapshot in use before the most recent load, restored should the most
+	 * recent snapshot be rejected.
+	 */
+	private ContentHash previousHash;
+	
+	/**
+	 * The most recently loaded snapshot
+	 */
+	private Snapshot latestSnapshot;
+	
+	/**
+	 * Retains the last snapshot to be applied successfully (optional).
+	 */
+	private SnapshotCache snapshotCache;
+	
+	/**
+	 * Content of the most recently loaded snapshot, held until it is accepted so that it can be cached. Only set when
+	 * there is a cache.
+	 */
+	private byte[] latestContent;
+	
+	/**
+	 * Fingerprint of the resource the most recent snapshot was loaded from.
+	 */
+	private FileFingerprint latestFingerprint;
+	
+	/**
+	 * Count of reloads skipped due to the content being unchanged.
+	 */
+	private volatile long skippedReloads;
+	
 	/**
 	 * @param resourceSelector Determines where the resources that the snapshots will be based on will be loaded from.
 	 * @param configurationSourceLoader Will actually load the snapshots
@@ -85,7 +144,22 @@ public class ResourceSnapshotManager implements SnapshotManager {
 	 */
 	@Override
 	public Snapshot retrieveInitial() throws NoSnapshotAvailableException {
-	    Resource configurationResource = resourceSelector.getResource();
+	    Resource configurationResource;
+	    try {
+	        configurationResource = resourceSelector.getResource();
+	    } catch (NoSnapshotAvailableException e) {
+	        // Start on the last known good configuration, should there be one
+	        Snapshot cached = loadFromCache();
+	        if (cached == null) {
+	            throw e;
+	        }
+	        if (log.isWarnEnabled()) {
+	            log.warn(format("No configuration resource available, using the last known good configuration "
+	                    + "from '%s', originally loaded from '%s'. Changes will not be detected until restart.", 
+	                    snapshotCache.getFile(), cached.getLocation()), e);
+	        }
+	        return cached;
+	    }
 	    this.configurationResource = configurationResource;
 	    Snapshot snapshot = performLoad(configurationResource);
 	    this.resourceMonitor.initialise(configurationResource);
@@ -103,12 +177,56 @@ public class ResourceSnapshotManager implements SnapshotManager {
 	        return null;
 	    }
         if (resourceMonitor.hasChanged()) {
-            Snapshot snapshot = performLoad(configurationResource);
+            Resource resource = reselect();
+            if (resource == null) {
+                return null;
+            }
+            Snapshot snapshot = performLoad(resource);
             return snapshot;
         }
         return null;
 	}
 	
+	/**
+	 * Ask the {@link ResourceSelector} for the resource again following a change, in case the resource has been
+	 * removed. A {@link org.brekka.stillingar.spring.resource.ScanningResourceSelector} will only re-check the
+	 * location it selected previously, scanning again only should that location no longer be usable. When a different
+	 * resource is selected, the monitor is switched over to it.
+	 * 
+	 * @return the resource to load, or null if none is available, in which case the current snapshot is retained.
+	 */
+	private Resource reselect() {
+	    Resource resource;
+	    try {
+	        resource = resourceSelector.getResource();
+	    } catch (NoSnapshotAvailableException e) {
+	        if (log.isWarnEnabled()) {
+	            log.warn(format("The configuration resource '%s' is no longer available, "
+	                    + "retaining the current configuration", configurationResource), e);
+	        }
+	        return null;
+	    }
+	    if (!resource.equals(configurationResource)) {
+	        if (log.isInfoEnabled()) {
+	            log.info(format("The configuration resource has changed from '%s' to '%s'", 
+	                    configurationResource, resource));
+	        }
+	        configurationResource = resource;
+	        resourceMonitor.initialise(resource);
+	    }
+	    return resource;
+	}
+	
+	/**
+	 * The number of detected changes for which the content was found to be identical to the snapshot already in use,
+	 * meaning the reload was skipped.
+	 * 
+	 * @return the count of skipped reloads
+	 */
+	public long getSkippedReloadCount() {
+	    return skippedReloads;
+	}
+	
 	/* (non-Javadoc)
      * @see org.brekka.stillingar.core.snapshot.SnapshotManager#reject(org.brekka.stillingar.core.snapshot.Snapshot)
      */
@@ -117,16 +235,92 @@ public class ResourceSnapshotManager implements SnapshotManager {
         if (rejectedSnapshot instanceof ResourceSnapshot) {
             ResourceSnapshot resourceSnapshot = (ResourceSnapshot) rejectedSnapshot;
             Resource resource = resourceSnapshot.getResource();
+            synchronized (this) {
+                if (rejectedSnapshot == latestSnapshot) {
+                    // The rejected content is not in use, so an identical change should not be skipped.
+                    currentHash = previousHash;
+                    latestSnapshot = null;
+                    latestContent = null;
+                }
+            }
             if (rejectedResourceHandler != null) {
                 rejectedResourceHandler.rejected(resource);
             }
         }
     }
 	   
+	/* (non-Javadoc)
+	 * @see org.brekka.stillingar.core.snapshot.SnapshotManager#accepted(org.brekka.stillingar.core.snapshot.Snapshot)
+	 */
+	@Override
+	public void accepted(Snapshot acceptedSnapshot) {
+	    byte[] content;
+	    FileFingerprint fingerprint;
+	    synchronized (this) {
+	        if (acceptedSnapshot != latestSnapshot 
+	                || latestContent == null) {
+	            return;
+	        }
+	        content = latestContent;
+	        fingerprint = latestFingerprint;
+	        latestContent = null;
+	    }
+	    try {
+	        snapshotCache.store(acceptedSnapshot.getLocation(), fingerprint, content);
+	    } catch (IOException e) {
+	        // Not fatal, the cache will just be out of date
+	        if (log.isWarnEnabled()) {
+	            log.warn(format("Failed to update the snapshot cache '%s'", snapshotCache.getFile()), e);
+	        }
+	    }
+	}
+	
+	/**
+	 * Load the snapshot from the cache, for use when the configuration resource is unavailable.
+	 * 
+	 * @return the snapshot or null if there is no cache entry.
+	 */
+	protected Snapshot loadFromCache() {
+	    if (snapshotCache == null) {
+	        return null;
+	    }
+	    SnapshotCache.Entry entry = snapshotCache.load();
+	    if (entry == null) {
+	        return null;
+	    }
+	    Resource snapshotResource;
+	    try {
+	        if (entry.getLocation() != null) {
+	            snapshotResource = new UrlResource(entry.getLocation());
+	        } else {
+	            snapshotResource = new FileSystemResource(snapshotCache.getFile().toFile());
+	        }
+	        ConfigurationSource configurationSource = configurationSourceLoader.parse(entry.openContent(), null);
+	        FileFingerprint fingerprint = entry.getFingerprint();
+	        Date timestamp = new Date(fingerprint != null ? fingerprint.getLastModified() : 0);
+	        Snapshot snapshot = new ResourceSnapshot(configurationSource, timestamp, snapshotResource, 
+	                entry.getLength());
+	        synchronized (this) {
+	            currentHash = new ContentHash(entry.getLength(), entry.getCrc());
+	            latestSnapshot = snapshot;
+	            latestContent = null;
+	        }
+	        return snapshot;
+	    } catch (IOException e) {
+	        throw new ConfigurationException(format("Snapshot cache '%s'", snapshotCache.getFile()), e);
+	    } catch (RuntimeException e) {
+	        // Wrap to include location details
+	        throw new ConfigurationException(format("Snapshot cache '%s' processing problem", 
+	                snapshotCache.getFile()), e);
+	    }
+	}
+	
     /**
-     * Perform the load operation that will convert a resource into a snapshot.
+     * Perform the load operation that will convert a resource into a snapshot. The content is read fully and
+     * fingerprinted first, so that should it match the snapshot currently in use, the parse is skipped and null
+     * returned.
      * @param resourceToLoad the resouce to load into a snapshot
-     * @return the snapshot loaded from the specified resource
+     * @return the snapshot loaded from the specified resource, or null if the content is unchanged.
      * @throws ConfigurationException if something goes wrong such as an IO error.
      */
     protected Snapshot performLoad(Resource resourceToLoad) {
@@ -135,10 +329,35 @@ public class ResourceSnapshotManager implements SnapshotManager {
                 && resourceToLoad.isReadable()) {
             InputStream sourceStream = null;
             try {
-                sourceStream = resourceToLoad.getInputStream();
                 long timestamp = resourceToLoad.lastModified();
-                ConfigurationSource configurationSource = configurationSourceLoader.parse(sourceStream, null);
-                snapshot = new ResourceSnapshot(configurationSource, new Date(timestamp), resourceToLoad);
+                FileFingerprint fingerprint = (snapshotCache != null ? fingerprint(resourceToLoad) : null);
+                sourceStream = resourceToLoad.getInputStream();
+                byte[] content = readFully(sourceStream);
+                ContentHash hash = new ContentHash(content);
+                boolean unchanged;
+                synchronized (this) {
+                    unchanged = hash.equals(currentHash);
+                    if (unchanged) {
+                        skippedReloads++;
+                    }
+                }
+                if (unchanged) {
+                    if (snapshotEventHandler != null) {
+                        snapshotEventHandler.unchangedSnapshotSkipped(resourceToLoad.getURI());
+                    }
+                    return null;
+                }
+                ConfigurationSource configurationSource = configurationSourceLoader.parse(
+                        new ByteArrayInputStream(content), null);
+                snapshot = new ResourceSnapshot(configurationSource, new Date(timestamp), resourceToLoad, 
+                        content.length);
+                synchronized (this) {
+                    previousHash = currentHash;
+                    currentHash = hash;
+                    latestSnapshot = snapshot;
+                    latestContent = (snapshotCache != null ? content : null);
+                    latestFingerprint = fingerprint;
+                }
             } catch (IOException e) {
                 throw new ConfigurationException(format("Resouce '%s'", resourceToLoad), e);
             } catch (RuntimeException e) {
@@ -157,6 +376,46 @@ public class ResourceSnapshotManager implements SnapshotManager {
     public void setRejectedResourceHandler(RejectedResourceHandler rejectedResourceHandler) {
         this.rejectedResourceHandler = rejectedResourceHandler;
     }
+    
+    /**
+     * @param snapshotEventHandler the handler to notify of reloads skipped due to unchanged content.
+     */
+    public void setSnapshotEventHandler(SnapshotEventHandler snapshotEventHandler) {
+        this.snapshotEventHandler = snapshotEventHandler;
+    }
+    
+    /**
+     * @param snapshotCache
+     *            retains the last snapshot to be applied successfully, used at startup when the resource is
+     *            unavailable.
+     */
+    public void setSnapshotCache(SnapshotCache snapshotCache) {
+        this.snapshotCache = snapshotCache;
+    }
+    
+    /**
+     * The fingerprint of a file resource, null if the resource is not a file.
+     */
+    private static FileFingerprint fingerprint(Resource resource) {
+        try {
+            return FileFingerprint.of(resource.getFile().toPath());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Read the whole stream into memory, so that the same bytes that are fingerprinted are also parsed.
+     */
+    private static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(8192);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            os.write(buffer, 0, read);
+        }
+        return os.toByteArray();
+    }
 	
 	/**
 	 * Close the steams
@@ -170,5 +429,38 @@ public class ResourceSnapshotManager implements SnapshotManager {
             // Ignore
         }
     }
-
+    
+    /**
+     * Fingerprint of resource content, the combination of its length and CRC-32.
+     */
+    private static final class ContentHash {
+        private final int length;
+        private final long crc;
+        
+        ContentHash(byte[] content) {
+            CRC32 crc32 = new CRC32();
+            crc32.update(content, 0, content.length);
+            this.length = content.length;
+            this.crc = crc32.getValue();
+        }
+        
+        ContentHash(int length, long crc) {
+            this.length = length;
+            this.crc = crc;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ContentHash)) {
+                return false;
+            }
+            ContentHash other = (ContentHash) obj;
+            return length == other.length && crc == other.crc;
+        }
+        
+        @Override
+        public int hashCode() {
+            return (int) (crc ^ length);
+        }
+    }
 }
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static java.lang.String.format;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Keeps a copy of the last configuration that was successfully applied in a local file, so that the application can
+ * start even when the configuration resource is on a mount that is unavailable. The file holds the content
+ * along with its location, the {@link FileFingerprint} of the resource it was read from and a CRC-32 of the content.
+ * It is replaced atomically on each store, and memory mapped when read.
+ * 
+ * Configuration sources are not serializable, so the cached content must still be parsed. As that is no cheaper than
+ * loading the resource itself, the cache is only read when the resource is unavailable.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class SnapshotCache {
+    
+    /**
+     * Logger
+     */
+    private static final Log log = LogFactory.getLog(SnapshotCache.class);
+    
+    /**
+     * Identifies the file format ("STLC")
+     */
+    private static final int MAGIC = 0x53544C43;
+    
+    /**
+     * Format version
+     */
+    private static final int VERSION = 1;
+    
+    /**
+     * The cache file
+     */
+    private final Path file;
+    
+    /**
+     * @param file
+     *            the file to hold the cache, whose directory must be writable.
+     */
+    public SnapshotCache(Path file) {
+        if (file == null) {
+            throw new IllegalArgumentException("A cache file must be specified");
+        }
+        this.file = file.toAbsolutePath();
+    }
+    
+    /**
+     * Store the specified content, replacing whatever is currently cached.
+     * 
+     * @param location
+     *            where the content was loaded from
+     * @param fingerprint
+     *            the fingerprint of the resource the content was read from (can be null if it is not a file).
+     * @param content
+     *            the content itself
+     * @throws IOException
+     *             if the cache cannot be written.
+     */
+    public void store(URI location, FileFingerprint fingerprint, byte[] content) throws IOException {
+        CRC32 crc32 = new CRC32();
+        crc32.update(content, 0, content.length);
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(content.length + 256);
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(location != null ? location.toString() : "");
+        out.writeBoolean(fingerprint != null);
+        if (fingerprint != null) {
+            out.writeLong(fingerprint.getSize());
+            out.writeLong(fingerprint.getLastModified());
+            out.writeUTF(fingerprint.getFileKey() != null ? fingerprint.getFileKey().toString() : "");
+        }
+        out.writeLong(crc32.getValue());
+        out.writeInt(content.length);
+        out.write(content);
+        out.flush();
+        
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(baos.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    /**
+     * Load the cached entry.
+     * 
+     * @return the entry or null if there is no cache, or it is not valid.
+     */
+    public Entry load() {
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return read(buffer);
+            } finally {
+                channel.close();
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn(format("Unable to read the snapshot cache '%s'", file), e);
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * @return the cache file
+     */
+    public Path getFile() {
+        return file;
+    }
+    
+    private Entry read(ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC 
+                    || buffer.getInt() != VERSION) {
+                warnInvalid("unrecognised format");
+                return null;
+            }
+            String location = readUTF(buffer);
+            FileFingerprint fingerprint = null;
+            if (buffer.get() != 0) {
+                long size = buffer.getLong();
+                long lastModified = buffer.getLong();
+                String fileKey = readUTF(buffer);
+                fingerprint = new FileFingerprint(size, lastModified, fileKey);
+            }
+            long crc = buffer.getLong();
+            int length = buffer.getInt();
+            if (length != buffer.remaining()) {
+                warnInvalid("truncated content");
+                return null;
+            }
+            ByteBuffer content = buffer.slice();
+            CRC32 crc32 = new CRC32();
+            crc32.update(content.duplicate());
+            if (crc32.getValue() != crc) {
+                warnInvalid("checksum mismatch");
+                return null;
+            }
+            return new Entry(location.isEmpty() ? null : URI.create(location), fingerprint, crc, content);
+        } catch (BufferUnderflowException e) {
+            warnInvalid("truncated header");
+            return null;
+        } catch (IllegalArgumentException e) {
+            warnInvalid(e.getMessage());
+            return null;
+        }
+    }
+    
+    private void warnInvalid(String reason) {
+        if (log.isWarnEnabled()) {
+            log.warn(format("Ignoring invalid snapshot cache '%s': %s", file, reason));
+        }
+    }
+    
+    /**
+     * Counterpart of {@link DataOutputStream#writeUTF(String)}, which is plain UTF-8 for the strings stored here.
+     */
+    private static String readUTF(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * The cached content
+     */
+    public static final class Entry {
+        private final URI location;
+        private final FileFingerprint fingerprint;
+        private final long crc;
+        private final ByteBuffer content;
+        
+        Entry(URI location, FileFingerprint fingerprint, long crc, ByteBuffer content) {
+            this.location = location;
+            this.fingerprint = fingerprint;
+            this.crc = crc;
+            this.content = content;
+        }
+        
+        /**
+         * @return where the content was originally loaded from (can be null).
+         */
+        public URI getLocation() {
+            return location;
+        }
+        
+        /**
+         * @return the fingerprint of the resource the content was read from (can be null). Its file key is the
+         *         string form of the original.
+         */
+        public FileFingerprint getFingerprint() {
+            return fingerprint;
+        }
+        
+        /**
+         * @return the CRC-32 of the content
+         */
+        public long getCrc() {
+            return crc;
+        }
+        
+        /**
+         * @return the length of the content
+         */
+        public int getLength() {
+            return content.remaining();
+        }
+        
+        /**
+         * @return a stream over the content, read directly from the mapped cache file.
+         */
+        public InputStream openContent() {
+            final ByteBuffer buffer = content.duplicate();
+            return new InputStream() {
+                @Override
+                public int read() {
+                    return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+                }
+                
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (!buffer.hasRemaining()) {
+                        return -1;
+                    }
+                    int count = Math.min(len, buffer.remaining());
+                    buffer.get(b, off, count);
+                    return count;
+                }
+                
+                @Override
+                public int available() {
+                    return buffer.remaining();
+                }
+            };
+        }
+    }
+}
@@ -18,6 +18,14 @@ package org.brekka.stillingar.spring.snapshot;
 
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -31,12 +39,47 @@ import org.springframework.context.Lifecycle;
  * Delta value interceptor that looks for value beans implementing {@link Lifecycle}, {@link InitializingBean} or
  * {@link DisposableBean}, calling their corresponding start/stop methods if it encounters such beans.
  * 
+ * New values are started on the refreshing thread, as they must be ready before they are assigned. Released values
+ * are stopped asynchronously so that a slow shutdown does not hold up the refresh, with each release bounded by a
+ * timeout after which it is interrupted and logged. A timeout of zero restores synchronous release.
+ * 
  * @author Andrew Taylor (andrew@brekka.org)
  */
 public class SnapshotDeltaValueInterceptor implements DeltaValueInterceptor {
 
     private static final Log log = LogFactory.getLog(SnapshotDeltaValueInterceptor.class);
     
+    /**
+     * The default maximum time (in milliseconds) to allow a released value to stop.
+     */
+    public static final long DEFAULT_RELEASE_TIMEOUT = 30000;
+    
+    /**
+     * Maximum time (in milliseconds) to allow a released value to stop. Zero or less means release synchronously.
+     */
+    private final long releaseTimeout;
+    
+    /**
+     * The number of releases that did not complete within the timeout.
+     */
+    private final AtomicLong timedOutReleaseCount = new AtomicLong();
+    
+    /**
+     * Release asynchronously, using the {@link #DEFAULT_RELEASE_TIMEOUT}.
+     */
+    public SnapshotDeltaValueInterceptor() {
+        this(DEFAULT_RELEASE_TIMEOUT);
+    }
+    
+    /**
+     * @param releaseTimeout
+     *            maximum time (in milliseconds) to allow a released value to stop. Zero or less means values will be
+     *            released synchronously on the refreshing thread.
+     */
+    public SnapshotDeltaValueInterceptor(long releaseTimeout) {
+        this.releaseTimeout = releaseTimeout;
+    }
+    
     /*
      * (non-Javadoc)
      * 
@@ -82,7 +125,54 @@ public class SnapshotDeltaValueInterceptor implements DeltaValueInterceptor {
      * @see org.brekka.stillingar.core.delta.DeltaValueInterceptor#released(java.lang.Object)
      */
     @Override
-    public void released(Object value) {
+    public void released(final Object value) {
+        if (releaseTimeout <= 0) {
+            releaseNow(value);
+            return;
+        }
+        final Future<?> release = SharedExecutors.RELEASE.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    releaseNow(value);
+                } catch (RuntimeException e) {
+                    if (log.isErrorEnabled()) {
+                        log.error(String.format("Failed to release value '%s'", value), e);
+                    }
+                }
+            }
+        });
+        SharedExecutors.TIMEOUT.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (release.isDone()) {
+                    return;
+                }
+                timedOutReleaseCount.incrementAndGet();
+                release.cancel(true);
+                if (log.isWarnEnabled()) {
+                    log.warn(String.format("Release of value '%s' did not complete within %d ms, interrupted",
+                            value, releaseTimeout));
+                }
+            }
+        }, releaseTimeout, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * @return the maximum time (in milliseconds) allowed for a released value to stop.
+     */
+    public long getReleaseTimeout() {
+        return releaseTimeout;
+    }
+    
+    /**
+     * @return the number of releases that did not complete within the timeout.
+     */
+    public long getTimedOutReleaseCount() {
+        return timedOutReleaseCount.get();
+    }
+
+    protected void releaseNow(Object value) {
         if (value instanceof List) {
             List<?> valueList = (List<?>) value;
             for (Object subValue : valueList) {
@@ -113,4 +203,31 @@ public class SnapshotDeltaValueInterceptor implements DeltaValueInterceptor {
             }
         }
     }
+    
+    /**
+     * Lazily created daemon executors shared by all instances. Releases run on a cached pool so that one value that
+     * hangs on stop does not hold up the others.
+     */
+    private static final class SharedExecutors {
+        private static final ExecutorService RELEASE = Executors.newCachedThreadPool(
+                daemonThreads("stillingar-release"));
+        private static final ScheduledExecutorService TIMEOUT;
+        static {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, 
+                    daemonThreads("stillingar-release-timeout"));
+            executor.setRemoveOnCancelPolicy(true);
+            TIMEOUT = executor;
+        }
+        
+        private static ThreadFactory daemonThreads(final String name) {
+            return new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+        }
+    }
 }
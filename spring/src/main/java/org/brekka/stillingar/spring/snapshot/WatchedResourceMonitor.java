@@ -17,13 +17,11 @@
 package org.brekka.stillingar.spring.snapshot;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardWatchEventKinds;
-import java.nio.file.WatchEvent;
-import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,9 +30,17 @@ import org.springframework.beans.factory.DisposableBean;
 import org.springframework.core.io.Resource;
 
 /**
- * Monitors for changes to a resource using the JDK 7 "watch" capability. This results in the {@link #hasChanged()}
- * method becoming blocking, waiting for a change to occur. To avoid blocking indefinately, a timeout can be specified
- * after which {@link #hasChanged()} will give up and return false.
+ * Monitors for changes to a resource using the JDK 7 "watch" capability, via the process-wide {@link FileWatchHub}.
+ * 
+ * By default this results in the {@link #hasChanged()} method becoming blocking, waiting for a change to occur. To
+ * avoid blocking indefinately, a timeout can be specified after which {@link #hasChanged()} will give up and return
+ * false. Alternatively a change listener can be set, in which case it will be invoked by the hub as soon as a change
+ * is detected and {@link #hasChanged()} will never block. This avoids the need for a thread per monitored resource.
+ * 
+ * Symbolic links are followed, with every link in the chain watched as well as the real file. This covers mounts
+ * such as Kubernetes ConfigMaps, which update by atomically swapping a <code>..data</code> directory link so that
+ * no event is ever raised for the file name itself. Whenever any part of the chain changes it is resolved again and
+ * the watches moved to the new targets.
  * 
  * @author Andrew Taylor (andrew@brekka.org)
  */
@@ -48,11 +54,11 @@ public class WatchedResourceMonitor implements ResourceMonitor, DisposableBean {
      * The timeout for the {@link #hasChanged()} method.
      */
     private final long timeout;
-
+    
     /**
-     * The service doing the watching of the resource directory.
+     * The hub doing the watching of the resource directory.
      */
-    private WatchService watchService;
+    private final FileWatchHub fileWatchHub;
 
     /**
      * The actual resource as a path
@@ -60,9 +66,40 @@ public class WatchedResourceMonitor implements ResourceMonitor, DisposableBean {
     private Path resourceFile;
 
     /**
-     * Watch key
+     * Maximum number of links to follow, guards against cycles.
+     */
+    private static final int MAX_LINKS = 40;
+
+    /**
+     * The resource file followed by each link encountered while resolving it, ending with the real file. Guarded
+     * by this.
+     */
+    private List<Path> chain = Collections.emptyList();
+
+    /**
+     * Registrations with the hub, one per entry in the chain. Guarded by this.
      */
-    private WatchKey watchKey;
+    private List<FileWatchHub.Registration> registrations = Collections.emptyList();
+    
+    /**
+     * Listener shared by all registrations.
+     */
+    private final FileWatchHub.Listener hubListener = new FileWatchHub.Listener() {
+        @Override
+        public void changed(Path file) {
+            onChainChange(file);
+        }
+    };
+    
+    /**
+     * Has a change been detected since the last call to {@link #hasChanged()}. Guarded by this.
+     */
+    private boolean changed;
+    
+    /**
+     * Invoked when a change is detected (optional).
+     */
+    private volatile Runnable changeListener;
 
     /**
      * Watch with no timeout
@@ -79,7 +116,18 @@ public class WatchedResourceMonitor implements ResourceMonitor, DisposableBean {
      *            the timeout in milliseconds.
      */
     public WatchedResourceMonitor(long timeout) {
+        this(timeout, FileWatchHub.getInstance());
+    }
+    
+    /**
+     * @param timeout
+     *            the timeout in milliseconds.
+     * @param fileWatchHub
+     *            the hub to register with.
+     */
+    public WatchedResourceMonitor(long timeout, FileWatchHub fileWatchHub) {
         this.timeout = timeout;
+        this.fileWatchHub = fileWatchHub;
     }
 
     /*
@@ -90,11 +138,10 @@ public class WatchedResourceMonitor implements ResourceMonitor, DisposableBean {
     @Override
     public void initialise(Resource resource) {
         try {
-            this.resourceFile = resource.getFile().toPath();
-            Path parent = resourceFile.getParent();
-            this.watchService = parent.getFileSystem().newWatchService();
-            this.watchKey = parent.register(this.watchService, StandardWatchEventKinds.ENTRY_MODIFY,
-                    StandardWatchEventKinds.ENTRY_CREATE);
+            this.resourceFile = resource.getFile().toPath().toAbsolutePath();
+            synchronized (this) {
+                rewatch(resolveChain(resourceFile));
+            }
         } catch (IOException e) {
             throw new ConfigurationException(String.format(
                     "Failed to initialize watcher for resource '%s'", resource.toString()), e);
@@ -107,43 +154,43 @@ public class WatchedResourceMonitor implements ResourceMonitor, DisposableBean {
      * @see org.brekka.stillingar.spring.snapshot.ResourceMonitor#hasChanged()
      */
     @Override
-    public boolean hasChanged() {
-        if (!watchKey.isValid()) {
+    public synchronized boolean hasChanged() {
+        if (registrations.isEmpty()) {
             return false;
         }
-        boolean changed = false;
         try {
-            WatchKey watchKey;
-            if (timeout > 0) {
-                watchKey = watchService.poll(timeout, TimeUnit.MILLISECONDS);
-            } else {
-                // Indefinite blocking
-                watchKey = watchService.take();
-            }
-            if (watchKey != null) {
-                if (watchKey != this.watchKey) {
-                    throw new IllegalStateException("WatchKey does not match that registered with the service");
-                }
-                List<WatchEvent<?>> pollEvents = watchKey.pollEvents();
-                if (log.isDebugEnabled()) {
-                    log.debug(String.format("Found %d events", pollEvents.size()));
-                }
-                for (WatchEvent<?> watchEvent : pollEvents) {
-                    Path name = (Path) watchEvent.context();
-                    if (resourceFile.getFileName().equals(name)) {
-                        changed = true;
-                        if (log.isInfoEnabled()) {
-                            log.info(String.format("Found change to file '%s'", name));
-                        }
-                        break;
+            if (!changed && changeListener == null) {
+                if (timeout > 0) {
+                    long deadline = System.currentTimeMillis() + timeout;
+                    long remaining = timeout;
+                    while (!changed && remaining > 0) {
+                        wait(remaining);
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                } else {
+                    // Indefinite blocking
+                    while (!changed) {
+                        wait();
                     }
                 }
-                watchKey.reset();
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
-        return changed;
+        boolean result = changed;
+        changed = false;
+        return result;
+    }
+    
+    /**
+     * Set a listener to be invoked (on the hub thread) whenever a change is detected. Once set, {@link #hasChanged()}
+     * will no longer block.
+     * 
+     * @param changeListener
+     *            the listener, typically a {@link ConfigurationSnapshotRefresher}.
+     */
+    public void setChangeListener(Runnable changeListener) {
+        this.changeListener = changeListener;
     }
 
     /*
@@ -156,7 +203,136 @@ public class WatchedResourceMonitor implements ResourceMonitor, DisposableBean {
         if (log.isInfoEnabled()) {
             log.info(String.format("Shutdown watch on '%s'", resourceFile));
         }
-        watchKey.cancel();
-        watchService.close();
+        List<FileWatchHub.Registration> toCancel;
+        synchronized (this) {
+            toCancel = registrations;
+            registrations = Collections.emptyList();
+        }
+        for (FileWatchHub.Registration registration : toCancel) {
+            registration.cancel();
+        }
+    }
+    
+    /**
+     * @return the paths currently being watched, the resource file first and the real file last.
+     */
+    public synchronized List<Path> getWatchedChain() {
+        return chain;
+    }
+    
+    /**
+     * Called by the hub when any path in the chain changes. The chain is resolved again, moving the watches should
+     * a link now point elsewhere, then the change is reported against the resource file.
+     */
+    protected void onChainChange(Path file) {
+        synchronized (this) {
+            if (registrations.isEmpty()) {
+                // Destroyed
+                return;
+            }
+            try {
+                List<Path> latest = resolveChain(resourceFile);
+                if (!latest.equals(chain)) {
+                    if (log.isInfoEnabled()) {
+                        log.info(String.format("Resource '%s' now resolves to '%s'", 
+                                resourceFile, latest.get(latest.size() - 1)));
+                    }
+                    rewatch(latest);
+                }
+            } catch (IOException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn(String.format("Failed to re-resolve the links for '%s', keeping existing watches", 
+                            resourceFile), e);
+                }
+            }
+        }
+        onChange(file);
+    }
+    
+    /**
+     * Register the new chain before cancelling the previous registrations, so that the hub never sees the watcher
+     * empty while the chain is moved.
+     */
+    private void rewatch(List<Path> latest) throws IOException {
+        List<FileWatchHub.Registration> previous = registrations;
+        List<FileWatchHub.Registration> current = new ArrayList<FileWatchHub.Registration>(latest.size());
+        try {
+            for (Path path : latest) {
+                current.add(fileWatchHub.register(path, hubListener));
+            }
+        } catch (IOException e) {
+            for (FileWatchHub.Registration registration : current) {
+                registration.cancel();
+            }
+            throw e;
+        }
+        this.chain = latest;
+        this.registrations = current;
+        for (FileWatchHub.Registration registration : previous) {
+            registration.cancel();
+        }
+    }
+    
+    /**
+     * Resolve the symbolic links leading to the specified file, one path component at a time. Links located in an
+     * ancestor of the file's directory (eg <code>/var</code> to <code>/private/var</code>) are followed but not
+     * watched as such links are not expected to be swapped.
+     * 
+     * @param file
+     *            the absolute file
+     * @return the file, each link encountered and finally the real file (which may not exist yet).
+     */
+    static List<Path> resolveChain(Path file) throws IOException {
+        List<Path> chain = new ArrayList<Path>();
+        chain.add(file);
+        Path originalDir = file.getParent();
+        Path current = file.normalize();
+        int links = 0;
+        boolean relinked = true;
+        while (relinked) {
+            relinked = false;
+            Path prefix = current.getRoot();
+            for (int i = 0; i < current.getNameCount(); i++) {
+                prefix = prefix.resolve(current.getName(i));
+                if (!Files.isSymbolicLink(prefix)) {
+                    continue;
+                }
+                if (++links > MAX_LINKS) {
+                    throw new IOException(String.format("Too many links while resolving '%s'", file));
+                }
+                if (!originalDir.startsWith(prefix) 
+                        && !chain.contains(prefix)) {
+                    chain.add(prefix);
+                }
+                Path target = prefix.getParent().resolve(Files.readSymbolicLink(prefix));
+                if (i + 1 < current.getNameCount()) {
+                    target = target.resolve(current.subpath(i + 1, current.getNameCount()));
+                }
+                current = target.normalize();
+                relinked = true;
+                break;
+            }
+        }
+        if (!chain.contains(current)) {
+            chain.add(current);
+        }
+        return chain;
+    }
+    
+    /**
+     * Called by the hub when the file changes
+     */
+    protected void onChange(Path file) {
+        if (log.isInfoEnabled()) {
+            log.info(String.format("Found change to file '%s'", file.getFileName()));
+        }
+        synchronized (this) {
+            changed = true;
+            notifyAll();
+        }
+        Runnable listener = this.changeListener;
+        if (listener != null) {
+            listener.run();
+        }
     }
 }
@@ -32,6 +32,7 @@ import java.util.Locale;
 import java.util.UUID;
 
 import org.brekka.stillingar.api.ConfigurationException;
+import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.core.ConfigurationService;
 import org.brekka.stillingar.core.ValueChangeListener;
 import org.brekka.stillingar.core.ValueDefinition;
@@ -267,6 +268,104 @@ public class ConfigurationBeanPostProcessorTest {
         }
     }
     
+    @Test
+    public void testSameClassBoundPerInstance() throws Exception {
+        when(beanFactory.isSingleton(anyString())).thenReturn(true);
+        when(beanFactory.getBean(eq(Calendar.class))).thenReturn(Calendar.getInstance());
+        when(beanFactory.getBean(eq("value9"), eq(String.class))).thenReturn("v9");
+        
+        ConfiguredTestBean first = new ConfiguredTestBean();
+        ConfiguredTestBean second = new ConfiguredTestBean();
+        beanPostProcessor.postProcessBeforeInitialization(first, "first");
+        beanPostProcessor.postProcessBeforeInitialization(second, "second");
+        
+        ArgumentCaptor<ValueDefinitionGroup> vdg = ArgumentCaptor.forClass(ValueDefinitionGroup.class);
+        verify(configurationService, times(2)).register(vdg.capture(), eq(true));
+        ValueDefinitionGroup secondGroup = vdg.getAllValues().get(1);
+        assertEquals("second", secondGroup.getName());
+        assertEquals(vdg.getAllValues().get(0).getValues().size(), secondGroup.getValues().size());
+        
+        for (ValueDefinition<?, ?> valueDefinition : secondGroup.getValues()) {
+            if ("/c:value1".equals(valueDefinition.getExpression())) {
+                verifyValue("/c:value1", valueDefinition, "v1", String.class, false);
+            }
+        }
+        assertEquals("v1", second.getValue1());
+        assertNull(first.getValue1());
+    }
+    
+    @Test
+    public void testGeneratedBinderPreferred() throws Exception {
+        when(beanFactory.isSingleton(eq("bob"))).thenReturn(false);
+        when(configurationService.retrieve(eq("/c:value1"), eq(String.class))).thenReturn("v1");
+        GeneratedBinderBean$$StillingarBinder.assignments = 0;
+        
+        GeneratedBinderBean bean = new GeneratedBinderBean();
+        beanPostProcessor.postProcessBeforeInitialization(bean, "bob");
+        
+        assertEquals("v1", bean.value1);
+        assertEquals(1, bean.listenerCalls);
+        assertEquals(1, GeneratedBinderBean$$StillingarBinder.assignments);
+        
+        // Reflection when disabled
+        beanPostProcessor.setUseGeneratedBinders(false);
+        bean = new GeneratedBinderBean();
+        beanPostProcessor.postProcessBeforeInitialization(bean, "bob");
+        assertEquals("v1", bean.value1);
+        assertEquals(1, GeneratedBinderBean$$StillingarBinder.assignments);
+    }
+    
+    @Test
+    public void testPrototypeValuesResolvedOncePerGeneration() throws Exception {
+        beanPostProcessor.setCachePrototypeValues(true);
+        when(beanFactory.isSingleton(eq("bob"))).thenReturn(false);
+        when(configurationService.retrieve(eq("/c:value1"), eq(String.class))).thenReturn("v1");
+        
+        GeneratedBinderBean first = new GeneratedBinderBean();
+        GeneratedBinderBean second = new GeneratedBinderBean();
+        beanPostProcessor.postProcessBeforeInitialization(first, "bob");
+        beanPostProcessor.postProcessBeforeInitialization(second, "bob");
+        assertEquals("v1", first.value1);
+        assertEquals("v1", second.value1);
+        assertEquals(1, second.listenerCalls);
+        verify(configurationService, times(1)).retrieve(eq("/c:value1"), eq(String.class));
+        
+        // Refresh, the next instance should be resolved from the new source
+        ArgumentCaptor<ValueDefinitionGroup> vdg = ArgumentCaptor.forClass(ValueDefinitionGroup.class);
+        verify(configurationService).register(vdg.capture(), eq(false));
+        ConfigurationSource refreshed = mock(ConfigurationSource.class);
+        when(refreshed.retrieve(eq("/c:value1"), eq(String.class))).thenReturn("v2");
+        vdg.getValue().getChangeListener().onChange(refreshed);
+        
+        GeneratedBinderBean third = new GeneratedBinderBean();
+        GeneratedBinderBean fourth = new GeneratedBinderBean();
+        beanPostProcessor.postProcessBeforeInitialization(third, "bob");
+        beanPostProcessor.postProcessBeforeInitialization(fourth, "bob");
+        assertEquals("v2", third.value1);
+        assertEquals("v2", fourth.value1);
+        verify(refreshed, times(1)).retrieve(eq("/c:value1"), eq(String.class));
+        
+        // No caching when disabled
+        beanPostProcessor.setCachePrototypeValues(false);
+        beanPostProcessor.postProcessBeforeInitialization(new GeneratedBinderBean(), "bob");
+        beanPostProcessor.postProcessBeforeInitialization(new GeneratedBinderBean(), "bob");
+        verify(configurationService, times(3)).retrieve(eq("/c:value1"), eq(String.class));
+        
+        beanPostProcessor.destroy();
+        verify(configurationService).unregister(eq(vdg.getValue()));
+    }
+    
+    @Test
+    public void testPrototypeValuesNotCachedByDefault() throws Exception {
+        when(beanFactory.isSingleton(eq("bob"))).thenReturn(false);
+        when(configurationService.retrieve(eq("/c:value1"), eq(String.class))).thenReturn("v1");
+        
+        beanPostProcessor.postProcessBeforeInitialization(new GeneratedBinderBean(), "bob");
+        beanPostProcessor.postProcessBeforeInitialization(new GeneratedBinderBean(), "bob");
+        verify(configurationService, times(2)).retrieve(eq("/c:value1"), eq(String.class));
+        verify(configurationService, never()).register(any(ValueDefinitionGroup.class), eq(false));
+    }
+    
     @SuppressWarnings({ "rawtypes", "unchecked" })
     private static void verifyValue(String expression, ValueDefinition vd, Object value, Class<?> type, boolean list) {
         assertEquals(expression, vd.getExpression());
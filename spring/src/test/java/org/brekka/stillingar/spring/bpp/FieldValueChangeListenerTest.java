@@ -0,0 +1,172 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.bpp;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.brekka.stillingar.api.annotations.ConfigurationListener;
+import org.brekka.stillingar.api.annotations.Configured;
+import org.brekka.stillingar.core.ReferentUpdateException;
+import org.junit.Test;
+
+/**
+ * FieldValueChangeListener Test, along with the other handle based listeners.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class FieldValueChangeListenerTest {
+
+    @Test
+    public void assignsPrivatePrimitiveField() throws Exception {
+        Target target = new Target();
+        Field field = Target.class.getDeclaredField("count");
+        FieldValueChangeListener<Integer> listener = new FieldValueChangeListener<Integer>(field, target, int.class, false);
+        listener.onChange(42, null);
+        assertEquals(42, target.count);
+    }
+    
+    @Test
+    public void wrongTypeReported() throws Exception {
+        Target target = new Target();
+        Field field = Target.class.getDeclaredField("count");
+        FieldValueChangeListener<Object> listener = new FieldValueChangeListener<Object>(field, target, int.class, false);
+        try {
+            listener.onChange("forty two", null);
+            fail();
+        } catch (ReferentUpdateException e) {
+            assertTrue(e.getCause() instanceof ClassCastException);
+        }
+    }
+    
+    @Test
+    public void setterExceptionReported() throws Exception {
+        Target target = new Target();
+        Method method = Target.class.getDeclaredMethod("setName", String.class);
+        MethodValueChangeListener<String> listener = new MethodValueChangeListener<String>(method, target, String.class, false);
+        listener.onChange("bob", null);
+        assertEquals("bob", target.name);
+        try {
+            listener.onChange(null, null);
+            fail();
+        } catch (ReferentUpdateException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+    
+    @Test
+    public void listenerArities() throws Exception {
+        Target target = new Target();
+        Method three = Target.class.getDeclaredMethod("three", String.class, String.class, String.class);
+        new PostUpdateChangeListener(target, three, Arrays.asList(value("a"), value("b"), value("c"))).onChange(null);
+        assertEquals("abc", target.name);
+        
+        Method four = Target.class.getDeclaredMethod("four", String.class, String.class, String.class, int.class);
+        new PostUpdateChangeListener(target, four, Arrays.asList(value("a"), value("b"), value("c"), value(4))).onChange(null);
+        assertEquals("abc4", target.name);
+        
+        Method none = Target.class.getDeclaredMethod("none");
+        new PostUpdateChangeListener(target, none, Collections.<ParameterValueResolver>emptyList()).onChange(null);
+        assertEquals("none", target.name);
+    }
+    
+    @Test
+    public void staticMembers() throws Exception {
+        Target target = new Target();
+        Field field = Target.class.getDeclaredField("shared");
+        new FieldValueChangeListener<Integer>(field, target, int.class, false).onChange(7, null);
+        assertEquals(7, Target.shared);
+        
+        Method setter = Target.class.getDeclaredMethod("setShared", int.class);
+        new MethodValueChangeListener<Integer>(setter, target, int.class, false).onChange(8, null);
+        assertEquals(8, Target.shared);
+        
+        Method listener = Target.class.getDeclaredMethod("sharedListener", int.class);
+        new PostUpdateChangeListener(target, listener, Arrays.asList(value(9))).onChange(null);
+        assertEquals(9, Target.shared);
+        
+        // Resolving the handles for the whole class must not fail on the static members
+        BindingMetadata metadata = new BindingMetadata(StaticTarget.class, "staticTarget");
+        assertEquals(3, metadata.getMembers().size());
+    }
+    
+    private static ParameterValueResolver value(final Object value) {
+        return new ParameterValueResolver() {
+            @Override
+            public Object getValue() {
+                return value;
+            }
+        };
+    }
+    
+    static class Target {
+        private static int shared;
+        
+        private int count;
+        
+        private String name;
+        
+        void setName(String name) {
+            if (name == null) {
+                throw new IllegalArgumentException("Name required");
+            }
+            this.name = name;
+        }
+        
+        @SuppressWarnings("unused")
+        private void three(String a, String b, String c) {
+            this.name = a + b + c;
+        }
+        
+        @SuppressWarnings("unused")
+        private void four(String a, String b, String c, int d) {
+            this.name = a + b + c + d;
+        }
+        
+        @SuppressWarnings("unused")
+        private void none() {
+            this.name = "none";
+        }
+        
+        static void setShared(int value) {
+            shared = value;
+        }
+        
+        @SuppressWarnings("unused")
+        private static void sharedListener(int value) {
+            shared = value;
+        }
+    }
+    
+    static class StaticTarget {
+        @Configured("/c:Value")
+        private static int value;
+        
+        @Configured("/c:Other")
+        static void setOther(String other) {
+        }
+        
+        @ConfigurationListener
+        static void configure(@Configured("/c:Value") int value) {
+        }
+    }
+}
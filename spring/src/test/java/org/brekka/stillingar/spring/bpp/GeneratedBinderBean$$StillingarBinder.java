@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.bpp;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Equivalent of the binder the stillingar-processor would generate for {@link GeneratedBinderBean}. Counts the
+ * assignments so tests can confirm it was used in place of reflection.
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public final class GeneratedBinderBean$$StillingarBinder implements ConfiguredBinder<GeneratedBinderBean> {
+
+    static int assignments;
+    
+    private static final List<BinderMember> MEMBERS = Arrays.asList(
+            BinderMember.field("value1", "/c:value1", String.class, BinderMember.ValueKind.SINGLE),
+            BinderMember.listener("configure"));
+    
+    @Override
+    public List<BinderMember> getMembers() {
+        return MEMBERS;
+    }
+
+    @Override
+    public void assign(int index, GeneratedBinderBean bean, Object value) {
+        switch (index) {
+            case 0:
+                bean.value1 = (String) value;
+                assignments++;
+                break;
+            default:
+                throw new IllegalArgumentException("No field or setter at index " + index);
+        }
+    }
+
+    @Override
+    public void invokeListener(GeneratedBinderBean bean, Object[] args) {
+        bean.configure();
+    }
+}
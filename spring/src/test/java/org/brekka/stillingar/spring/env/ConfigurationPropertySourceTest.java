@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.ConfigurationService;
+import org.brekka.stillingar.core.ValueDefinitionGroup;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+
+/**
+ * Test of ConfigurationPropertySource
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ConfigurationPropertySourceTest {
+
+    private ConfigurationService configurationService;
+    
+    private ApplicationEventPublisher publisher;
+    
+    private ConfigurationPropertySource propertySource;
+    
+    @Before
+    public void setUp() throws Exception {
+        configurationService = mock(ConfigurationService.class);
+        when(configurationService.isAvailable("host")).thenReturn(true);
+        when(configurationService.retrieve("host", String.class)).thenReturn("localhost");
+        when(configurationService.isAvailable("port")).thenReturn(true);
+        when(configurationService.retrieve("port", String.class)).thenReturn("8080");
+        
+        publisher = mock(ApplicationEventPublisher.class);
+        propertySource = new ConfigurationPropertySource("stillingar", configurationService);
+        propertySource.setApplicationEventPublisher(publisher);
+        propertySource.afterPropertiesSet();
+    }
+    
+    @Test
+    public void testLookupResolvedOnce() {
+        assertEquals("localhost", propertySource.getProperty("host"));
+        assertEquals("localhost", propertySource.getProperty("host"));
+        assertTrue(propertySource.containsProperty("host"));
+        verify(configurationService, times(1)).retrieve("host", String.class);
+        
+        assertNull(propertySource.getProperty("missing"));
+        assertFalse(propertySource.containsProperty("missing"));
+        verify(configurationService, times(1)).isAvailable("missing");
+        assertEquals(new HashSet<String>(Arrays.asList("host", "missing")), propertySource.getPropertyNames());
+    }
+    
+    @Test
+    public void testRefreshRebuildsIndex() {
+        ValueDefinitionGroup group = registeredGroup();
+        propertySource.getProperty("host");
+        propertySource.getProperty("port");
+        propertySource.getProperty("path");
+        
+        ConfigurationSource refreshed = mock(ConfigurationSource.class);
+        when(refreshed.isAvailable("host")).thenReturn(true);
+        when(refreshed.retrieve("host", String.class)).thenReturn("remote");
+        when(refreshed.isAvailable("port")).thenReturn(true);
+        when(refreshed.retrieve("port", String.class)).thenReturn("8080");
+        when(refreshed.isAvailable("path")).thenReturn(true);
+        when(refreshed.retrieve("path", String.class)).thenReturn("app");
+        group.getChangeListener().onChange(refreshed);
+        
+        // Each known key is resolved once during the refresh, not again on lookup
+        assertEquals("remote", propertySource.getProperty("host"));
+        assertEquals("8080", propertySource.getProperty("port"));
+        assertEquals("app", propertySource.getProperty("path"));
+        verify(refreshed, times(1)).retrieve("host", String.class);
+        
+        ArgumentCaptor<ApplicationEvent> captor = ArgumentCaptor.forClass(ApplicationEvent.class);
+        verify(publisher).publishEvent(captor.capture());
+        ConfigurationPropertiesChangedEvent event = (ConfigurationPropertiesChangedEvent) captor.getValue();
+        assertSame(propertySource, event.getPropertySource());
+        assertEquals(new HashSet<String>(Arrays.asList("host", "path")), event.getChangedKeys());
+    }
+    
+    @Test
+    public void testUnchangedRefreshNotPublished() {
+        ValueDefinitionGroup group = registeredGroup();
+        propertySource.getProperty("host");
+        
+        ConfigurationSource refreshed = mock(ConfigurationSource.class);
+        when(refreshed.isAvailable("host")).thenReturn(true);
+        when(refreshed.retrieve("host", String.class)).thenReturn("localhost");
+        group.getChangeListener().onChange(refreshed);
+        verify(publisher, never()).publishEvent(any(ApplicationEvent.class));
+    }
+    
+    @Test
+    public void testDestroyUnregisters() throws Exception {
+        ValueDefinitionGroup group = registeredGroup();
+        propertySource.destroy();
+        verify(configurationService).unregister(group);
+    }
+    
+    private ValueDefinitionGroup registeredGroup() {
+        ArgumentCaptor<ValueDefinitionGroup> captor = ArgumentCaptor.forClass(ValueDefinitionGroup.class);
+        verify(configurationService).register(captor.capture(), eq(false));
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.expr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashSet;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of EvaluationPlan
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class EvaluationPlanTest {
+
+    private ConfigurationSource source;
+    
+    @Before
+    public void setUp() {
+        source = mock(ConfigurationSource.class);
+        when(source.retrieve(eq("val2"), eq(String.class))).thenReturn("bob");
+        when(source.retrieve(eq("test1.bob.a"), eq(String.class))).thenReturn("${internal}thing");
+        when(source.retrieve(eq("internal"), eq(String.class))).thenReturn("some");
+        when(source.retrieve(eq("abc.something"), eq(String.class))).thenReturn("part1");
+        when(source.retrieve(eq("conf2"), eq(String.class))).thenReturn("part2");
+    }
+    
+    @Test
+    public void testSameResultAsFragment() {
+        PlaceholderParser parser = new IndexedPlaceholderParser("$config{", "}");
+        String input = "$config{abc.${test1.${val2}.a}}.other.$config{conf2}";
+        String expected = parser.parse(input).evaluate(source, new HashSet<String>());
+        
+        EvaluationPlan plan = EvaluationPlan.compile(parser.parse(input));
+        assertFalse(plan.isConstant());
+        assertEquals("part1.other.part2", expected);
+        assertEquals(expected, plan.evaluate(source));
+    }
+    
+    @Test
+    public void testConstant() {
+        PlaceholderParser parser = new IndexedPlaceholderParser("${", "}");
+        EvaluationPlan plan = EvaluationPlan.compile(parser.parse("no placeholders"));
+        assertTrue(plan.isConstant());
+        assertEquals("no placeholders", plan.evaluate(null));
+    }
+    
+    @Test
+    public void testPlainValueNotParsedAgain() {
+        DefaultPlaceholderParser parser = spy(new DefaultPlaceholderParser("${", "}"));
+        EvaluationPlan plan = EvaluationPlan.compile(parser.parse("a ${conf2} b ${val2}"));
+        assertEquals("a part2 b bob", plan.evaluate(source));
+        verify(parser, never()).resolvedValuePlan(anyString(), anyBoolean());
+    }
+    
+    @Test
+    public void testAssignedValue() {
+        PlaceholderParser parser = new IndexedPlaceholderParser("${", "}");
+        Fragment fragment = parser.parse("x${conf2}");
+        EvaluationPlan plan = EvaluationPlan.compile(fragment);
+        DefaultPlaceholderParser.findExpressionFragments(fragment).get(0).setValue("${internal}");
+        assertEquals("xsome", plan.evaluate(source));
+    }
+    
+    @Test
+    public void testResolvedValuePlanCached() {
+        IndexedPlaceholderParser parser = new IndexedPlaceholderParser("${", "}");
+        assertSame(parser.resolvedValuePlan("${internal}thing", false), parser.resolvedValuePlan("${internal}thing", false));
+    }
+    
+    @Test
+    public void testCircularReference() {
+        when(source.retrieve(eq("loop"), eq(String.class))).thenReturn("${loop}");
+        PlaceholderParser parser = new IndexedPlaceholderParser("${", "}");
+        EvaluationPlan plan = EvaluationPlan.compile(parser.parse("${loop}"));
+        try {
+            plan.evaluate(source);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Circular reference detected while resolving '${loop}'", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.expr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.brekka.stillingar.api.ConfigurationException;
+import org.junit.Test;
+
+/**
+ * Test of IndexedPlaceholderParser
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class IndexedPlaceholderParserTest {
+
+    private static final String[] INPUTS = {
+        "",
+        "plain text",
+        "${simple}",
+        "before ${simple} after",
+        "${one}${two}",
+        "${abc.${test1.${val2}.a}}.other.${conf2}",
+        "${/c:Config/c:Value[@name='x']}",
+        "${outer{inner}}",
+        "$${double}",
+        "${a}}b",
+        "${}",
+        "é${ü}ñ",
+    };
+    
+    @Test
+    public void testSameStructureAsDefault() {
+        assertSameStructure("${", "}");
+        assertSameStructure("$config{", "}");
+        assertSameStructure("#[", "]");
+    }
+    
+    @Test
+    public void testSameFailure() {
+        String[] inputs = { "${unclosed", "a ${b ${c}", "${x{y}" };
+        for (String input : inputs) {
+            String expected = failure(new DefaultPlaceholderParser("${", "}"), input);
+            String actual = failure(new IndexedPlaceholderParser("${", "}"), input);
+            assertEquals(expected, actual);
+        }
+    }
+    
+    @Test
+    public void testCachedTreeIsCopied() {
+        IndexedPlaceholderParser parser = new IndexedPlaceholderParser("${", "}");
+        String input = "a ${first} b ${second}";
+        Fragment first = parser.parse(input);
+        Fragment second = parser.parse(input);
+        assertEquals(first.toString(), second.toString());
+        
+        List<ExpressionFragment> firstExpressions = DefaultPlaceholderParser.findExpressionFragments(first);
+        List<ExpressionFragment> secondExpressions = DefaultPlaceholderParser.findExpressionFragments(second);
+        assertNotSame(firstExpressions.get(0), secondExpressions.get(0));
+        // Immutable literals are shared
+        assertSame(((CompositeFragment) first).getFragments().get(0), ((CompositeFragment) second).getFragments().get(0));
+        
+        firstExpressions.get(0).setValue("1");
+        firstExpressions.get(1).setValue("2");
+        secondExpressions.get(0).setValue("3");
+        secondExpressions.get(1).setValue("4");
+        assertEquals("a 1 b 2", first.evaluate(null, new java.util.HashSet<String>()));
+        assertEquals("a 3 b 4", second.evaluate(null, new java.util.HashSet<String>()));
+    }
+    
+    private static void assertSameStructure(String prefix, String suffix) {
+        DefaultPlaceholderParser expectedParser = new DefaultPlaceholderParser(prefix, suffix);
+        IndexedPlaceholderParser parser = new IndexedPlaceholderParser(prefix, suffix);
+        for (String input : INPUTS) {
+            String converted = input.replace("${", prefix).replace("}", suffix).replace("{", prefix.substring(prefix.length() - 1));
+            assertEquals(converted, describe(expectedParser.parse(converted)), describe(parser.parse(converted)));
+            // Nested re-parse of resolved values
+            assertEquals(converted, describe(expectedParser.parse(converted, 1, true)), 
+                    describe(parser.parse(converted, 1, true)));
+        }
+    }
+    
+    private static String describe(Fragment fragment) {
+        if (fragment instanceof CompositeFragment) {
+            CompositeFragment composite = (CompositeFragment) fragment;
+            StringBuilder sb = new StringBuilder("Composite(").append(composite.isEvaluate()).append(")[");
+            for (Fragment child : composite.getFragments()) {
+                sb.append(describe(child)).append(", ");
+            }
+            return sb.append("]").toString();
+        }
+        return fragment.toString();
+    }
+    
+    private static String failure(PlaceholderParser parser, String input) {
+        try {
+            parser.parse(input);
+            fail(input);
+            return null;
+        } catch (ConfigurationException e) {
+            return e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.pc;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.core.ConfigurationService;
+import org.brekka.stillingar.core.ValueChangeListener;
+import org.brekka.stillingar.core.ValueDefinition;
+import org.brekka.stillingar.core.ValueDefinitionGroup;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+/**
+ * Test of ConfigurationPlaceholderConfigurer
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ConfigurationPlaceholderConfigurerTest {
+    
+    private static final Map<String, String> NEW_VALUES = new HashMap<String, String>();
+    
+    static {
+        NEW_VALUES.put("/c:Name", "name2");
+        NEW_VALUES.put("/c:Host", "remote");
+        NEW_VALUES.put("/c:Port", "9090");
+        NEW_VALUES.put("/c:Path", "other");
+    }
+
+    private ConfigurationService configurationService;
+    
+    private CountingBeanFactory beanFactory;
+    
+    private ConfigurationPlaceholderConfigurer configurer;
+    
+    @Before
+    public void setUp() throws Exception {
+        configurationService = mock(ConfigurationService.class);
+        when(configurationService.retrieve(eq("/c:Name"), eq(String.class))).thenReturn("name1");
+        when(configurationService.retrieve(eq("/c:Host"), eq(String.class))).thenReturn("localhost");
+        when(configurationService.retrieve(eq("/c:Port"), eq(String.class))).thenReturn("8080");
+        when(configurationService.retrieve(eq("/c:Path"), eq(String.class))).thenReturn("app");
+        
+        beanFactory = new CountingBeanFactory();
+        configurer = new ConfigurationPlaceholderConfigurer(configurationService);
+        configurer.setBeanFactory(beanFactory);
+        configurer.setBeanName("configurer");
+        configurer.afterPropertiesSet();
+    }
+    
+    @Test
+    public void testOneGroupPerSingletonBean() throws Exception {
+        beanFactory.registerBeanDefinition("single", definition(BeanDefinition.SCOPE_SINGLETON));
+        configurer.postProcessBeanFactory(beanFactory);
+        
+        ValueDefinitionGroup group = registeredGroup();
+        assertEquals("single", group.getName());
+        // Four properties/arguments, five expressions
+        assertEquals(5, group.getValues().size());
+        
+        PlaceholderTestBean bean = (PlaceholderTestBean) beanFactory.getBean("single");
+        assertEquals("name1", bean.getName());
+        assertEquals("localhost", bean.getHost());
+        assertEquals(8080, bean.getPort());
+        assertEquals("http://localhost/app", bean.getUrl());
+        
+        ConfigurationSource refreshed = mock(ConfigurationSource.class);
+        update(group, refreshed, NEW_VALUES);
+        assertEquals("remote", bean.getHost());
+        assertEquals(9090, bean.getPort());
+        assertEquals("http://remote/other", bean.getUrl());
+        // Constructor argument is applied to the definition only
+        assertEquals("name1", bean.getName());
+    }
+    
+    @Test
+    public void testOneGroupPerPrototypeBean() throws Exception {
+        beanFactory.registerBeanDefinition("proto", definition(BeanDefinition.SCOPE_PROTOTYPE));
+        configurer.postProcessBeanFactory(beanFactory);
+        
+        ValueDefinitionGroup group = registeredGroup();
+        assertEquals("proto", group.getName());
+        // As an application context would, so that merged definitions are retained
+        beanFactory.freezeConfiguration();
+        
+        update(group, mock(ConfigurationSource.class), NEW_VALUES);
+        // One lookup for the whole batch
+        assertEquals(1, beanFactory.mergedLookups);
+        PlaceholderTestBean bean = (PlaceholderTestBean) beanFactory.getBean("proto");
+        assertEquals("name2", bean.getName());
+        assertEquals("remote", bean.getHost());
+        assertEquals(9090, bean.getPort());
+        assertEquals("http://remote/other", bean.getUrl());
+    }
+    
+    @Test
+    public void testUnchangedDefinitionNotTouched() throws Exception {
+        beanFactory.registerBeanDefinition("proto", definition(BeanDefinition.SCOPE_PROTOTYPE));
+        configurer.postProcessBeanFactory(beanFactory);
+        ValueDefinitionGroup group = registeredGroup();
+        beanFactory.freezeConfiguration();
+        
+        Map<String, String> sameValues = new HashMap<String, String>();
+        sameValues.put("/c:Name", "name1");
+        sameValues.put("/c:Host", "localhost");
+        sameValues.put("/c:Port", "8080");
+        sameValues.put("/c:Path", "app");
+        update(group, mock(ConfigurationSource.class), sameValues);
+        assertEquals(0, beanFactory.mergedLookups);
+        
+        update(group, mock(ConfigurationSource.class), NEW_VALUES);
+        update(group, mock(ConfigurationSource.class), NEW_VALUES);
+        assertEquals(1, beanFactory.mergedLookups);
+    }
+    
+    @Test
+    public void testSingletonRetrievedOnceForUpdates() throws Exception {
+        beanFactory.registerBeanDefinition("single", definition(BeanDefinition.SCOPE_SINGLETON));
+        configurer.postProcessBeanFactory(beanFactory);
+        ValueDefinitionGroup group = registeredGroup();
+        PlaceholderTestBean bean = (PlaceholderTestBean) beanFactory.getBean("single");
+        int lookups = beanFactory.beanLookups;
+        
+        update(group, mock(ConfigurationSource.class), NEW_VALUES);
+        Map<String, String> nextValues = new HashMap<String, String>(NEW_VALUES);
+        nextValues.put("/c:Port", "7070");
+        update(group, mock(ConfigurationSource.class), nextValues);
+        assertEquals(7070, bean.getPort());
+        assertEquals("remote", bean.getHost());
+        // Only the first update needs to go to the bean factory
+        assertEquals(lookups + 1, beanFactory.beanLookups);
+    }
+    
+    private ValueDefinitionGroup registeredGroup() {
+        ArgumentCaptor<ValueDefinitionGroup> captor = ArgumentCaptor.forClass(ValueDefinitionGroup.class);
+        verify(configurationService, times(1)).register(captor.capture(), eq(false));
+        verify(configurationService, times(0)).register(any(ValueDefinition.class), eq(false));
+        return captor.getValue();
+    }
+    
+    /**
+     * Simulate the configuration service applying new values to the group.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static void update(ValueDefinitionGroup group, ConfigurationSource source, Map<String, String> values) {
+        for (ValueDefinition<?, ?> definition : group.getValues()) {
+            ValueChangeListener listener = definition.getChangeListener();
+            listener.onChange(values.get(definition.getExpression()), null);
+        }
+        group.getChangeListener().onChange(source);
+    }
+    
+    private static BeanDefinition definition(String scope) {
+        return BeanDefinitionBuilder.genericBeanDefinition(PlaceholderTestBean.class)
+                .setScope(scope)
+                .addConstructorArgValue("${/c:Name}")
+                .addPropertyValue("host", "${/c:Host}")
+                .addPropertyValue("port", "${/c:Port}")
+                .addPropertyValue("url", "http://${/c:Host}/${/c:Path}")
+                .getBeanDefinition();
+    }
+    
+    /**
+     * Counts the lookups of merged bean definitions and beans made by the listeners.
+     */
+    @SuppressWarnings("serial")
+    private static class CountingBeanFactory extends DefaultListableBeanFactory {
+        private int mergedLookups;
+        
+        private int beanLookups;
+        
+        @Override
+        public Object getBean(String name) {
+            beanLookups++;
+            return super.getBean(name);
+        }
+        
+        @Override
+        public BeanDefinition getMergedBeanDefinition(String name) {
+            mergedLookups++;
+            return super.getMergedBeanDefinition(name);
+        }
+    }
+}
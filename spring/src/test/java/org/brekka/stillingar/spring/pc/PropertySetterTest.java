@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.pc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.beans.TypeMismatchException;
+
+/**
+ * Test of PropertySetter
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class PropertySetterTest {
+
+    @Test
+    public void testStringProperty() {
+        PropertySetter setter = PropertySetter.resolve(PlaceholderTestBean.class, "host");
+        PlaceholderTestBean bean = new PlaceholderTestBean("name");
+        setter.set(bean, "localhost");
+        assertEquals("localhost", bean.getHost());
+        assertTrue(setter.appliesTo(PlaceholderTestBean.class));
+        assertFalse(setter.appliesTo(Object.class));
+    }
+    
+    @Test
+    public void testConvertedProperty() {
+        PropertySetter setter = PropertySetter.resolve(PlaceholderTestBean.class, "port");
+        PlaceholderTestBean bean = new PlaceholderTestBean("name");
+        setter.set(bean, "8080");
+        assertEquals(8080, bean.getPort());
+    }
+    
+    @Test(expected = TypeMismatchException.class)
+    public void testConversionFailure() {
+        PropertySetter setter = PropertySetter.resolve(PlaceholderTestBean.class, "port");
+        setter.set(new PlaceholderTestBean("name"), "notANumber");
+    }
+    
+    @Test
+    public void testUnresolvable() {
+        // Nested paths and read-only properties are left to a bean wrapper
+        assertNull(PropertySetter.resolve(PlaceholderTestBean.class, "nested.host"));
+        assertNull(PropertySetter.resolve(PlaceholderTestBean.class, "name"));
+        assertNull(PropertySetter.resolve(PlaceholderTestBean.class, "missing"));
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.resource;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.brekka.stillingar.core.snapshot.NoSnapshotAvailableException;
+import org.brekka.stillingar.core.snapshot.RejectedSnapshotLocation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * ScanningResourceSelector Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ScanningResourceSelectorTest {
+
+    private static final ResourceNameResolver NAMES = new ResourceNameResolver() {
+        @Override
+        public Set<String> getNames() {
+            return Collections.singleton("app.xml");
+        }
+    };
+    
+    private File high;
+    
+    private File low;
+    
+    @Before
+    public void setUp() throws Exception {
+        high = Files.createTempDirectory("high").toFile();
+        low = Files.createTempDirectory("low").toFile();
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        for (File dir : Arrays.asList(high, low)) {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+    
+    @Test
+    public void priorityOrderWins() throws Exception {
+        new File(high, "app.xml").createNewFile();
+        new File(low, "app.xml").createNewFile();
+        List<BaseDirectory> dirs = Arrays.<BaseDirectory>asList(new Dir("high", high, 0), new Dir("low", low, 0));
+        
+        Resource resource = new ScanningResourceSelector(dirs, NAMES).getResource();
+        assertEquals(new File(high, "app.xml"), resource.getFile());
+    }
+    
+    @Test
+    public void unresponsiveDirectoryIsSkipped() throws Exception {
+        new File(low, "app.xml").createNewFile();
+        List<BaseDirectory> dirs = Arrays.<BaseDirectory>asList(new Dir("slow", high, 10000), new Dir("low", low, 0));
+        
+        long start = System.currentTimeMillis();
+        Resource resource = new ScanningResourceSelector(dirs, NAMES, 200).getResource();
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(new File(low, "app.xml"), resource.getFile());
+    }
+    
+    @Test
+    public void timeoutReportedAsRejected() throws Exception {
+        List<BaseDirectory> dirs = Arrays.<BaseDirectory>asList(new Dir("slow", high, 10000), new Dir("low", low, 0));
+        try {
+            new ScanningResourceSelector(dirs, NAMES, 200).getResource();
+            fail("Expected NoSnapshotAvailableException");
+        } catch (NoSnapshotAvailableException e) {
+            List<RejectedSnapshotLocation> locations = e.getLocations();
+            assertEquals(2, locations.size());
+            assertEquals("slow", locations.get(0).getDisposition());
+            assertTrue(locations.get(0).getMessage().contains("200 ms"));
+            assertEquals("low", locations.get(1).getDisposition());
+        }
+    }
+    
+    @Test
+    public void resolvedLocationIsCached() throws Exception {
+        new File(low, "app.xml").createNewFile();
+        Dir highDir = new Dir("high", high, 0);
+        List<BaseDirectory> dirs = Arrays.<BaseDirectory>asList(highDir, new Dir("low", low, 0));
+        
+        ScanningResourceSelector selector = new ScanningResourceSelector(dirs, NAMES);
+        Resource first = selector.getResource();
+        int probes = highDir.probes.get();
+        
+        // Only the cached location is re-checked
+        Resource second = selector.getResource();
+        assertEquals(first.getFile(), second.getFile());
+        assertEquals(probes, highDir.probes.get());
+        
+        // The cache belongs to the selector
+        new ScanningResourceSelector(dirs, NAMES).getResource();
+        assertEquals(probes + 1, highDir.probes.get());
+        
+        // Once it disappears, a full scan is made
+        new File(low, "app.xml").delete();
+        new File(high, "app.xml").createNewFile();
+        Resource third = selector.getResource();
+        assertEquals(new File(high, "app.xml"), third.getFile());
+    }
+    
+    @Test
+    public void fallbackAfterTimeoutNotCached() throws Exception {
+        new File(high, "app.xml").createNewFile();
+        new File(low, "app.xml").createNewFile();
+        Dir slowDir = new Dir("slow", high, 1000);
+        List<BaseDirectory> dirs = Arrays.<BaseDirectory>asList(slowDir, new Dir("low", low, 0));
+        ScanningResourceSelector selector = new ScanningResourceSelector(dirs, NAMES, 200);
+        
+        Resource first = selector.getResource();
+        assertEquals(new File(low, "app.xml"), first.getFile());
+        
+        // The preferred directory becomes responsive again and is selected
+        slowDir.delay = 0;
+        Resource second = selector.getResource();
+        assertEquals(new File(high, "app.xml"), second.getFile());
+    }
+    
+    private static class Dir implements BaseDirectory {
+        private final String disposition;
+        private final File dir;
+        private volatile long delay;
+        private final AtomicInteger probes = new AtomicInteger();
+        
+        Dir(String disposition, File dir, long delay) {
+            this.disposition = disposition;
+            this.dir = dir;
+            this.delay = delay;
+        }
+        
+        @Override
+        public Resource getDirResource() {
+            return new FileSystemResource(dir.getAbsolutePath() + "/") {
+                @Override
+                public boolean exists() {
+                    probes.incrementAndGet();
+                    if (delay > 0) {
+                        try {
+                            Thread.sleep(delay);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return super.exists();
+                }
+            };
+        }
+        
+        @Override
+        public String getDisposition() {
+            return disposition;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * AdaptivePollingResourceMonitor Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class AdaptivePollingResourceMonitorTest {
+
+    private File dir;
+    
+    private File file;
+    
+    private TestMonitor monitor;
+    
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+        file = new File(dir, "config.xml");
+        Files.write(file.toPath(), "one".getBytes());
+        monitor = new TestMonitor(1000, 8000);
+        monitor.initialise(new FileSystemResource(file));
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+    
+    @Test
+    public void backsOffWhileIdle() throws Exception {
+        long[] expected = { 2000, 4000, 8000, 8000 };
+        for (long interval : expected) {
+            monitor.now += monitor.getCurrentInterval();
+            assertFalse(monitor.hasChanged());
+            assertEquals(interval, monitor.getCurrentInterval());
+        }
+        assertEquals(4, monitor.getPollCount());
+    }
+    
+    @Test
+    public void skipsPollsUntilDue() throws Exception {
+        monitor.now += 1000;
+        assertFalse(monitor.hasChanged());
+        // Next due in 2000
+        monitor.now += 1000;
+        assertFalse(monitor.hasChanged());
+        assertEquals(1, monitor.getPollCount());
+        monitor.now += 1000;
+        assertFalse(monitor.hasChanged());
+        assertEquals(2, monitor.getPollCount());
+    }
+    
+    @Test
+    public void changeResetsInterval() throws Exception {
+        monitor.now += 1000;
+        assertFalse(monitor.hasChanged());
+        monitor.now += 2000;
+        assertFalse(monitor.hasChanged());
+        assertEquals(4000, monitor.getCurrentInterval());
+        
+        // Same size and timestamp, only the file key differs
+        long lastModified = file.lastModified();
+        File replacement = new File(dir, "config.xml.new");
+        Files.write(replacement.toPath(), "two".getBytes());
+        replacement.setLastModified(lastModified);
+        Files.move(replacement.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, 
+                StandardCopyOption.ATOMIC_MOVE);
+        
+        monitor.now += 4000;
+        assertTrue(monitor.hasChanged());
+        assertEquals(1000, monitor.getCurrentInterval());
+        monitor.now += 1000;
+        assertFalse(monitor.hasChanged());
+    }
+    
+    @Test
+    public void batchesAdditionalResources() throws Exception {
+        File other = new File(dir, "other.xml");
+        Files.write(other.toPath(), "other".getBytes());
+        monitor.addResource(new FileSystemResource(other));
+        
+        Files.write(other.toPath(), "changed".getBytes());
+        monitor.now += 1000;
+        assertTrue(monitor.hasChanged());
+        assertEquals(1, monitor.getPollCount());
+    }
+    
+    @Test
+    public void additionalResourcesSurviveInitialise() throws Exception {
+        File other = new File(dir, "other.xml");
+        Files.write(other.toPath(), "other".getBytes());
+        TestMonitor configured = new TestMonitor(1000, 8000);
+        configured.setAdditionalResources(new Resource[] { new FileSystemResource(other) });
+        configured.initialise(new FileSystemResource(file));
+
+        Files.write(other.toPath(), "changed".getBytes());
+        configured.now += 1000;
+        assertTrue(configured.hasChanged());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void maxLessThanMin() throws Exception {
+        new AdaptivePollingResourceMonitor(1000, 500);
+    }
+    
+    private static class TestMonitor extends AdaptivePollingResourceMonitor {
+        private long now = 1000000;
+        
+        TestMonitor(long minInterval, long maxInterval) {
+            super(minInterval, maxInterval);
+        }
+        
+        @Override
+        protected long currentTimeMillis() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.brekka.stillingar.core.snapshot.SnapshotBasedConfigurationService;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * ConfigurationSnapshotRefresher Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ConfigurationSnapshotRefresherTest {
+
+    /**
+     * A change notified on the watcher thread must not wait for the refresh to complete.
+     */
+    @Test
+    public void watchedChangeRefreshesOffWatcherThread() throws Exception {
+        SnapshotBasedConfigurationService service = mock(SnapshotBasedConfigurationService.class);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread[] refreshThread = new Thread[1];
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                refreshThread[0] = Thread.currentThread();
+                release.await(5, TimeUnit.SECONDS);
+                return null;
+            }
+        }).when(service).refresh();
+        WatchedResourceMonitor monitor = mock(WatchedResourceMonitor.class);
+        
+        ConfigurationSnapshotRefresher refresher = new ConfigurationSnapshotRefresher(service, monitor);
+        ArgumentCaptor<Runnable> listener = ArgumentCaptor.forClass(Runnable.class);
+        verify(monitor).setChangeListener(listener.capture());
+        assertSame(refresher.getCoalescingRefresher(), listener.getValue());
+        
+        // Returns immediately even though the refresh is blocked
+        listener.getValue().run();
+        verify(service, timeout(5000)).refresh();
+        assertNotNull(refreshThread[0]);
+        assertNotSame(Thread.currentThread(), refreshThread[0]);
+        release.countDown();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.brekka.stillingar.core.properties.PropertiesConfigurationSourceLoader;
+import org.brekka.stillingar.core.snapshot.NoSnapshotAvailableException;
+import org.brekka.stillingar.core.snapshot.Snapshot;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * DirectorySnapshotManager Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class DirectorySnapshotManagerTest {
+
+    private Path dir;
+    
+    private DirectorySnapshotManager manager;
+    
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory(getClass().getSimpleName());
+        manager = new DirectorySnapshotManager(new FileSystemResource(dir.toFile()), 
+                new PropertiesConfigurationSourceLoader(), "*.properties");
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        for (File file : dir.toFile().listFiles()) {
+            file.delete();
+        }
+        Files.delete(dir);
+    }
+    
+    @Test
+    public void laterFragmentsOverride() throws Exception {
+        write("10-base.properties", "a=base\nb=base");
+        write("90-local.properties", "a=local");
+        write("ignored.txt", "a=ignored");
+        
+        Snapshot snapshot = manager.retrieveInitial();
+        assertEquals("local", snapshot.getSource().retrieve("a", String.class));
+        assertEquals("base", snapshot.getSource().retrieve("b", String.class));
+        assertEquals(2, manager.getParsedFragmentCount());
+    }
+    
+    @Test
+    public void onlyChangedFragmentsParsed() throws Exception {
+        write("10-base.properties", "a=base");
+        write("20-other.properties", "b=other");
+        write("90-local.properties", "c=local");
+        manager.retrieveInitial();
+        assertEquals(3, manager.getParsedFragmentCount());
+        
+        assertNull(manager.retrieveUpdated());
+        
+        write("20-other.properties", "b=changed");
+        Snapshot snapshot = manager.retrieveUpdated();
+        assertEquals("changed", snapshot.getSource().retrieve("b", String.class));
+        assertEquals("base", snapshot.getSource().retrieve("a", String.class));
+        assertEquals(4, manager.getParsedFragmentCount());
+        
+        Files.delete(dir.resolve("90-local.properties"));
+        snapshot = manager.retrieveUpdated();
+        assertFalse(snapshot.getSource().isAvailable("c"));
+        assertEquals(4, manager.getParsedFragmentCount());
+    }
+    
+    @Test
+    public void rejectedFragmentSkippedUntilChanged() throws Exception {
+        write("10-base.properties", "a=base");
+        write("20-other.properties", "b=other");
+        manager.retrieveInitial();
+        
+        write("10-base.properties", "a=broken");
+        Snapshot rejected = manager.retrieveUpdated();
+        manager.reject(rejected);
+        assertEquals(3, manager.getParsedFragmentCount());
+        
+        // The rejected fragment is unchanged, so neither parsed nor offered again
+        assertNull(manager.retrieveUpdated());
+        assertNull(manager.retrieveUpdated());
+        assertEquals(3, manager.getParsedFragmentCount());
+        
+        // Other changes are applied along with the version of the fragment still in use
+        write("20-other.properties", "b=changed");
+        Snapshot snapshot = manager.retrieveUpdated();
+        assertEquals("changed", snapshot.getSource().retrieve("b", String.class));
+        assertEquals("base", snapshot.getSource().retrieve("a", String.class));
+        assertEquals(4, manager.getParsedFragmentCount());
+        
+        write("10-base.properties", "a=fixed");
+        snapshot = manager.retrieveUpdated();
+        assertEquals("fixed", snapshot.getSource().retrieve("a", String.class));
+        assertEquals(5, manager.getParsedFragmentCount());
+    }
+    
+    @Test(expected=NoSnapshotAvailableException.class)
+    public void emptyDirectory() throws Exception {
+        manager.retrieveInitial();
+    }
+    
+    private void write(String name, String content) throws Exception {
+        Path file = dir.resolve(name);
+        long previous = Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : 0;
+        Files.write(file, content.getBytes("UTF-8"));
+        // Ensure the change is visible on file systems with a coarse timestamp
+        file.toFile().setLastModified(Math.max(System.currentTimeMillis(), previous + 2000));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * FileWatchHub Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class FileWatchHubTest {
+
+    private File dir;
+    
+    private FileWatchHub hub;
+    
+    @Before
+    public void setUp() throws Exception {
+        dir = new File(System.getProperty("java.io.tmpdir"), getClass().getSimpleName());
+        dir.mkdirs();
+        hub = new FileWatchHub();
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+    
+    @Test
+    public void testSharedWatcherDispatchesByFile() throws Exception {
+        File one = new File(dir, "one.xml");
+        File two = new File(dir, "two.xml");
+        one.createNewFile();
+        two.createNewFile();
+        LatchListener oneListener = new LatchListener();
+        LatchListener twoListener = new LatchListener();
+        FileWatchHub.Registration oneReg = hub.register(one.toPath(), oneListener);
+        FileWatchHub.Registration twoReg = hub.register(two.toPath(), twoListener);
+        assertEquals(1, hub.getWatcherCount());
+        
+        Thread.sleep(500);
+        write(two);
+        assertTrue(twoListener.latch.await(30, TimeUnit.SECONDS));
+        assertEquals(1, oneListener.latch.getCount());
+        
+        oneReg.cancel();
+        assertEquals(1, hub.getWatcherCount());
+        twoReg.cancel();
+        assertEquals(0, hub.getWatcherCount());
+    }
+    
+    private static void write(File file) throws Exception {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write("Test\n".getBytes());
+        } finally {
+            fos.close();
+        }
+        file.setLastModified(System.currentTimeMillis());
+    }
+    
+    private static class LatchListener implements FileWatchHub.Listener {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        
+        @Override
+        public void changed(Path file) {
+            latch.countDown();
+        }
+    }
+}
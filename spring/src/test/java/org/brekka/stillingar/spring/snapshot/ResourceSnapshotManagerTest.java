@@ -0,0 +1,201 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+
+import org.brekka.stillingar.api.ConfigurationSource;
+import org.brekka.stillingar.api.ConfigurationSourceLoader;
+import org.brekka.stillingar.core.snapshot.NoSnapshotAvailableException;
+import org.brekka.stillingar.core.snapshot.Snapshot;
+import org.brekka.stillingar.core.snapshot.SnapshotEventHandler;
+import org.brekka.stillingar.spring.resource.ResourceSelector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * ResourceSnapshotManager Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class ResourceSnapshotManagerTest {
+
+    private File file;
+    
+    private ConfigurationSourceLoader loader;
+    
+    private SnapshotEventHandler eventHandler;
+    
+    private ResourceSnapshotManager manager;
+    
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile(getClass().getSimpleName(), ".properties");
+        write("key=value\n");
+        ResourceSelector selector = mock(ResourceSelector.class);
+        when(selector.getResource()).thenReturn(new FileSystemResource(file));
+        ResourceMonitor monitor = mock(ResourceMonitor.class);
+        when(monitor.hasChanged()).thenReturn(true);
+        loader = mock(ConfigurationSourceLoader.class);
+        when(loader.parse(any(InputStream.class), any(Charset.class))).thenReturn(mock(ConfigurationSource.class));
+        eventHandler = mock(SnapshotEventHandler.class);
+        manager = new ResourceSnapshotManager(selector, loader, monitor);
+        manager.setSnapshotEventHandler(eventHandler);
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    @Test
+    public void testIdenticalContentSkipped() throws Exception {
+        assertNotNull(manager.retrieveInitial());
+        write("key=value\n");
+        assertNull(manager.retrieveUpdated());
+        assertNull(manager.retrieveUpdated());
+        verify(loader, times(1)).parse(any(InputStream.class), any(Charset.class));
+        verify(eventHandler, times(2)).unchangedSnapshotSkipped(any(URI.class));
+        assertEquals(2, manager.getSkippedReloadCount());
+    }
+    
+    @Test
+    public void testChangedContentLoaded() throws Exception {
+        assertNotNull(manager.retrieveInitial());
+        write("key=other\n");
+        assertNotNull(manager.retrieveUpdated());
+        verify(loader, times(2)).parse(any(InputStream.class), any(Charset.class));
+        verify(eventHandler, never()).unchangedSnapshotSkipped(any(URI.class));
+    }
+    
+    @Test
+    public void testRejectedContentNotSkipped() throws Exception {
+        assertNotNull(manager.retrieveInitial());
+        write("key=bad\n");
+        Snapshot rejected = manager.retrieveUpdated();
+        manager.reject(rejected);
+        // Identical to the rejected snapshot, which is not in use, so must be loaded again
+        rejected = manager.retrieveUpdated();
+        assertNotNull(rejected);
+        manager.reject(rejected);
+        write("key=value\n");
+        // Identical to the snapshot still in use
+        assertNull(manager.retrieveUpdated());
+    }
+    
+    @Test
+    public void testResourceReselectedOnChange() throws Exception {
+        File other = File.createTempFile(getClass().getSimpleName(), ".properties");
+        try {
+            ResourceSelector selector = mock(ResourceSelector.class);
+            when(selector.getResource())
+                .thenReturn(new FileSystemResource(file))
+                .thenReturn(new FileSystemResource(file))
+                .thenReturn(new FileSystemResource(other))
+                .thenThrow(new NoSnapshotAvailableException(null, null));
+            ResourceMonitor monitor = mock(ResourceMonitor.class);
+            when(monitor.hasChanged()).thenReturn(true);
+            ResourceSnapshotManager reselecting = new ResourceSnapshotManager(selector, loader, monitor);
+            assertNotNull(reselecting.retrieveInitial());
+            
+            // Same resource, content unchanged
+            assertNull(reselecting.retrieveUpdated());
+            verify(monitor, times(1)).initialise(any(Resource.class));
+            
+            // Moved
+            Snapshot moved = reselecting.retrieveUpdated();
+            assertEquals(other.toURI(), moved.getLocation());
+            verify(monitor).initialise(new FileSystemResource(other));
+            
+            // Gone, the current snapshot is retained
+            assertNull(reselecting.retrieveUpdated());
+            verify(loader, times(2)).parse(any(InputStream.class), any(Charset.class));
+        } finally {
+            other.delete();
+        }
+    }
+    
+    @Test
+    public void testStartsFromCacheWhenUnavailable() throws Exception {
+        File cacheFile = File.createTempFile(getClass().getSimpleName(), ".cache");
+        try {
+            manager.setSnapshotCache(new SnapshotCache(cacheFile.toPath()));
+            Snapshot initial = manager.retrieveInitial();
+            manager.accepted(initial);
+            assertTrue(cacheFile.length() > 0);
+            
+            // Restart with the resource unavailable
+            ResourceSelector missing = mock(ResourceSelector.class);
+            when(missing.getResource()).thenThrow(new NoSnapshotAvailableException(null, null));
+            ConfigurationSourceLoader cacheLoader = mock(ConfigurationSourceLoader.class);
+            when(cacheLoader.parse(any(InputStream.class), any(Charset.class))).thenReturn(mock(ConfigurationSource.class));
+            ResourceSnapshotManager restarted = new ResourceSnapshotManager(missing, cacheLoader, mock(ResourceMonitor.class));
+            restarted.setSnapshotCache(new SnapshotCache(cacheFile.toPath()));
+            Snapshot cached = restarted.retrieveInitial();
+            assertEquals(file.toURI(), cached.getLocation());
+            verify(cacheLoader).parse(any(InputStream.class), any(Charset.class));
+        } finally {
+            cacheFile.delete();
+        }
+    }
+    
+    @Test
+    public void testAvailableResourceLoadedInPreferenceToCache() throws Exception {
+        File cacheFile = File.createTempFile(getClass().getSimpleName(), ".cache");
+        try {
+            manager.setSnapshotCache(new SnapshotCache(cacheFile.toPath()));
+            manager.accepted(manager.retrieveInitial());
+            
+            // Same size and modification time, but different content
+            long lastModified = file.lastModified();
+            write("key=VALUE\n");
+            file.setLastModified(lastModified);
+            
+            ResourceSelector selector = mock(ResourceSelector.class);
+            when(selector.getResource()).thenReturn(new FileSystemResource(file));
+            ResourceMonitor monitor = mock(ResourceMonitor.class);
+            when(monitor.hasChanged()).thenReturn(true);
+            ResourceSnapshotManager restarted = new ResourceSnapshotManager(selector, loader, monitor);
+            restarted.setSnapshotCache(new SnapshotCache(cacheFile.toPath()));
+            assertNotNull(restarted.retrieveInitial());
+            // Taken from the resource rather than the cache, so the same content is not reloaded
+            assertNull(restarted.retrieveUpdated());
+        } finally {
+            cacheFile.delete();
+        }
+    }
+    
+    private void write(String content) throws Exception {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(content.getBytes("UTF-8"));
+        } finally {
+            fos.close();
+        }
+    }
+}
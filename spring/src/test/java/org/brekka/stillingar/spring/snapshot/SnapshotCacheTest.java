@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * SnapshotCache Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class SnapshotCacheTest {
+
+    private Path file;
+    
+    private SnapshotCache cache;
+    
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile(getClass().getSimpleName(), ".cache");
+        Files.delete(file);
+        cache = new SnapshotCache(file);
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+    
+    @Test
+    public void roundTrip() throws Exception {
+        assertNull(cache.load());
+        FileFingerprint fingerprint = new FileFingerprint(5, 1234L, "(dev=1,ino=2)");
+        cache.store(URI.create("file:/etc/app.xml"), fingerprint, "hello".getBytes("UTF-8"));
+        
+        SnapshotCache.Entry entry = cache.load();
+        assertEquals(URI.create("file:/etc/app.xml"), entry.getLocation());
+        assertEquals(5, entry.getLength());
+        assertEquals(1234L, entry.getFingerprint().getLastModified());
+        assertEquals("(dev=1,ino=2)", entry.getFingerprint().getFileKey());
+        assertEquals("hello", read(entry.openContent()));
+        // Repeatable
+        assertEquals("hello", read(entry.openContent()));
+    }
+    
+    @Test
+    public void corruptionDetected() throws Exception {
+        cache.store(null, null, "hello".getBytes("UTF-8"));
+        RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw");
+        try {
+            raf.seek(raf.length() - 1);
+            raf.write('X');
+        } finally {
+            raf.close();
+        }
+        assertNull(cache.load());
+    }
+    
+    private static String read(InputStream is) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[2];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            baos.write(buffer, 0, read);
+        }
+        return baos.toString("UTF-8");
+    }
+}
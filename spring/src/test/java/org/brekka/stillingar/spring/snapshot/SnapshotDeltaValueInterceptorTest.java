@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brekka.stillingar.spring.snapshot;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.context.Lifecycle;
+
+/**
+ * SnapshotDeltaValueInterceptor Test
+ *
+ * @author Andrew Taylor (andrew@brekka.org)
+ */
+public class SnapshotDeltaValueInterceptorTest {
+
+    @Test
+    public void releaseIsAsynchronous() throws Exception {
+        SnapshotDeltaValueInterceptor interceptor = new SnapshotDeltaValueInterceptor(5000);
+        CountDownLatch proceed = new CountDownLatch(1);
+        BlockingLifecycle value = new BlockingLifecycle(proceed);
+        interceptor.created(value);
+        assertTrue(value.isRunning());
+        
+        // Would block forever if the release were performed on this thread
+        interceptor.released(value);
+        proceed.countDown();
+        assertTrue(value.stopped.await(5, TimeUnit.SECONDS));
+        assertEquals(0, interceptor.getTimedOutReleaseCount());
+    }
+    
+    @Test
+    public void releaseIsInterruptedAfterTimeout() throws Exception {
+        SnapshotDeltaValueInterceptor interceptor = new SnapshotDeltaValueInterceptor(50);
+        BlockingLifecycle value = new BlockingLifecycle(new CountDownLatch(1));
+        interceptor.created(value);
+        interceptor.released(value);
+        
+        assertTrue(value.interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, interceptor.getTimedOutReleaseCount());
+    }
+    
+    @Test
+    public void synchronousReleaseWhenNoTimeout() throws Exception {
+        SnapshotDeltaValueInterceptor interceptor = new SnapshotDeltaValueInterceptor(0);
+        CountDownLatch proceed = new CountDownLatch(0);
+        BlockingLifecycle value = new BlockingLifecycle(proceed);
+        interceptor.created(value);
+        interceptor.released(value);
+        assertFalse(value.isRunning());
+    }
+    
+    private static class BlockingLifecycle implements Lifecycle {
+        private final CountDownLatch proceed;
+        private final CountDownLatch stopped = new CountDownLatch(1);
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+        private volatile boolean running;
+        
+        BlockingLifecycle(CountDownLatch proceed) {
+            this.proceed = proceed;
+        }
+        
+        @Override
+        public void start() {
+            running = true;
+        }
+        
+        @Override
+        public void stop() {
+            try {
+                proceed.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                return;
+            }
+            running = false;
+            stopped.countDown();
+        }
+        
+        @Override
+        public boolean isRunning() {
+            return running;
+        }
+    }
+}
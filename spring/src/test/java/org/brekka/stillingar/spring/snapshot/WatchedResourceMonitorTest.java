@@ -20,6 +20,11 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Before;
@@ -77,4 +82,49 @@ public class WatchedResourceMonitorTest {
         dir.delete();
     }
 
+    /**
+     * Kubernetes ConfigMap style update, where the file is only reached via a <code>..data</code> link that is
+     * atomically swapped to a new directory.
+     */
+    @Test
+    public void testSymlinkSwap() throws Exception {
+        Path dir = Files.createTempDirectory(getClass().getSimpleName());
+        Path v1 = Files.createDirectory(dir.resolve("..v1"));
+        Files.write(v1.resolve("config.xml"), "one".getBytes());
+        Files.createSymbolicLink(dir.resolve("..data"), Paths.get("..v1"));
+        Path file = Files.createSymbolicLink(dir.resolve("config.xml"), Paths.get("..data/config.xml"));
+        
+        watchedResourceMonitor.initialise(new FileSystemResource(file.toFile()));
+        assertEquals(v1.resolve("config.xml"), last(watchedResourceMonitor.getWatchedChain()));
+        assertFalse(watchedResourceMonitor.hasChanged());
+        
+        // Swap
+        Path v2 = Files.createDirectory(dir.resolve("..v2"));
+        Files.write(v2.resolve("config.xml"), "two".getBytes());
+        Path tmpLink = Files.createSymbolicLink(dir.resolve("..data_tmp"), Paths.get("..v2"));
+        Files.move(tmpLink, dir.resolve("..data"), StandardCopyOption.REPLACE_EXISTING, 
+                StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(v1.resolve("config.xml"));
+        Files.delete(v1);
+        Thread.sleep(500);
+        assertTrue(watchedResourceMonitor.hasChanged());
+        assertEquals(v2.resolve("config.xml"), last(watchedResourceMonitor.getWatchedChain()));
+        
+        // The new target is now watched directly
+        Thread.sleep(500);
+        watchedResourceMonitor.hasChanged();
+        Files.write(v2.resolve("config.xml"), "three".getBytes());
+        Thread.sleep(500);
+        assertTrue(watchedResourceMonitor.hasChanged());
+        
+        Files.delete(file);
+        Files.delete(dir.resolve("..data"));
+        Files.delete(v2.resolve("config.xml"));
+        Files.delete(v2);
+        Files.delete(dir);
+    }
+    
+    private static Path last(List<Path> chain) {
+        return chain.get(chain.size() - 1);
+    }
 }
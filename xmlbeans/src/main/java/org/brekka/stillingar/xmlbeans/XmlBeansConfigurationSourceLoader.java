@@ -31,10 +31,15 @@ import org.brekka.stillingar.api.ConfigurationSource;
 import org.brekka.stillingar.api.ConfigurationSourceLoader;
 import org.brekka.stillingar.core.conversion.CalendarConverter;
 import org.brekka.stillingar.core.conversion.ConversionManager;
+import org.brekka.stillingar.core.conversion.ConverterCatalogue;
 import org.brekka.stillingar.core.conversion.DateConverter;
 import org.brekka.stillingar.core.conversion.TemporalAdapter;
 import org.brekka.stillingar.core.conversion.TypeConverter;
 import org.brekka.stillingar.core.conversion.TypeConverterListBuilder;
+import org.brekka.stillingar.core.conversion.time.DurationConverter;
+import org.brekka.stillingar.core.conversion.time.InstantConverter;
+import org.brekka.stillingar.core.conversion.time.LocalDateConverter;
+import org.brekka.stillingar.core.conversion.time.LocalTimeConverter;
 import org.brekka.stillingar.core.dom.DefaultNamespaceContext;
 import org.brekka.stillingar.xmlbeans.conversion.BigDecimalConverter;
 import org.brekka.stillingar.xmlbeans.conversion.BigIntegerConverter;
@@ -76,7 +81,7 @@ public class XmlBeansConfigurationSourceLoader implements ConfigurationSourceLoa
     private XmlOptions loadXmlOptions;
 
     public XmlBeansConfigurationSourceLoader() {
-        this(new ConversionManager(prepareConverters()));
+        this(new ConversionManager(defaultConverters()));
     }
     
     public XmlBeansConfigurationSourceLoader(ConversionManager conversionManager) {
@@ -84,7 +89,7 @@ public class XmlBeansConfigurationSourceLoader implements ConfigurationSourceLoa
     }
     
     public XmlBeansConfigurationSourceLoader(DefaultNamespaceContext xpathNamespaces) {
-        this(new ConversionManager(prepareConverters()), xpathNamespaces);
+        this(new ConversionManager(defaultConverters()), xpathNamespaces);
     }
     
     public XmlBeansConfigurationSourceLoader(ConversionManager conversionManager, DefaultNamespaceContext xpathNamespaces) {
@@ -139,6 +144,20 @@ public class XmlBeansConfigurationSourceLoader implements ConfigurationSourceLoa
         this.validate = validate;
     }
     
+    /**
+     * The default converters, shared via the {@link ConverterCatalogue} so they are only prepared once per process.
+     * 
+     * @return the immutable list of default converters
+     */
+    public static List<TypeConverter<?>> defaultConverters() {
+        return ConverterCatalogue.get(XmlBeansConfigurationSourceLoader.class.getName(), new ConverterCatalogue.Source() {
+            @Override
+            public List<TypeConverter<?>> create() {
+                return prepareConverters();
+            }
+        });
+    }
+    
     public static List<TypeConverter<?>> prepareConverters() {
         TemporalAdapter temporalAdapter = new XmlBeansTemporalAdapter();
         return new TypeConverterListBuilder().<TypeConverter<?>> 
@@ -148,7 +167,9 @@ public class XmlBeansConfigurationSourceLoader implements ConfigurationSourceLoa
                 new ShortConverter(), new StringConverter(), new URIConverter(), new ElementConverter(), 
                 new DocumentConverter(), new LocaleConverter(), new UUIDConverter(), new EnumConverter(),
                 new ElementConverter(), new DocumentConverter(),  new ByteArrayConverter(),
-                new CalendarConverter(temporalAdapter), new DateConverter(temporalAdapter))
+                new CalendarConverter(temporalAdapter), new DateConverter(temporalAdapter),
+                new InstantConverter(temporalAdapter), new LocalDateConverter(temporalAdapter),
+                new LocalTimeConverter(temporalAdapter), new DurationConverter())
             .inPackage("org.brekka.stillingar.core.conversion")
                 .addOptionalClass("DateTimeConverter", temporalAdapter)
                 .addOptionalClass("LocalTimeConverter", temporalAdapter)